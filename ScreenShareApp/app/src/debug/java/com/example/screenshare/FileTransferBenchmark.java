@@ -0,0 +1,297 @@
+package com.example.screenshare;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+import org.webrtc.DataChannel;
+import org.webrtc.IceCandidate;
+import org.webrtc.MediaConstraints;
+import org.webrtc.MediaStream;
+import org.webrtc.PeerConnection;
+import org.webrtc.PeerConnectionFactory;
+import org.webrtc.RtpReceiver;
+import org.webrtc.SdpObserver;
+import org.webrtc.SessionDescription;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Debug builds only. Measures FileTransfer throughput between two PeerConnections in this
+// process, connected over loopback host candidates. With the app open:
+//
+//   adb shell am broadcast -n com.example.screenshare/.FileTransferBenchmark \
+//       --ei size_mb 64 --ei rate_kbps 0
+//   adb logcat -s FileTransferBenchmark
+//
+// rate_kbps > 0 applies the same pacing WebRTCClient derives from the bandwidth estimate.
+public class FileTransferBenchmark extends BroadcastReceiver {
+    private static final String TAG = "FileTransferBenchmark";
+    private static final long STEP_TIMEOUT_S = 10;
+    private static final long TRANSFER_TIMEOUT_S = 300;
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        int sizeMb = intent.getIntExtra("size_mb", 64);
+        int rateKbps = intent.getIntExtra("rate_kbps", 0);
+        Context appContext = context.getApplicationContext();
+        new Thread(() -> {
+            try {
+                run(appContext, sizeMb, rateKbps);
+            } catch (Exception e) {
+                Log.e(TAG, "Benchmark failed", e);
+            }
+        }, TAG).start();
+    }
+
+    private void run(Context context, int sizeMb, int rateKbps) throws Exception {
+        PeerConnectionFactory.initialize(PeerConnectionFactory.InitializationOptions.builder(context)
+                .createInitializationOptions());
+        PeerConnectionFactory factory = PeerConnectionFactory.builder().createPeerConnectionFactory();
+
+        File dir = new File(context.getCacheDir(), "transfer-benchmark");
+        File source = createSource(new File(dir, "source.bin"), sizeMb);
+        File receiveDir = new File(dir, "received");
+
+        Peer sender = new Peer(factory);
+        Peer receiver = new Peer(factory);
+        Result result = new Result();
+        FileTransfer outgoing = new FileTransfer(sender.channel, new File(dir, "unused"), result);
+        FileTransfer incoming = new FileTransfer(receiver.channel, receiveDir, result);
+        try {
+            connect(sender, receiver);
+            long deadline = System.currentTimeMillis() + STEP_TIMEOUT_S * 1000;
+            while (!(outgoing.isOpen() && incoming.isOpen())) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("data channel did not open");
+                }
+                Thread.sleep(10);
+            }
+
+            outgoing.setMaxSendRateBps(rateKbps * 1000L);
+            outgoing.sendFile(source);
+            if (!result.done.await(TRANSFER_TIMEOUT_S, TimeUnit.SECONDS)) {
+                throw new IOException("transfer timed out");
+            }
+            if (result.failure != null) {
+                throw new IOException(result.failure);
+            }
+
+            // elapsed covers streaming plus the receiver's checksum round trip, not the sender's hash
+            double mbits = result.bytes * 8 / 1e6;
+            Log.i(TAG, String.format("%d MB in %d ms: %.1f Mbit/s (%s, chunk %d B, buffer %d-%d KB)",
+                    sizeMb, result.elapsedMs, mbits * 1000 / Math.max(1, result.elapsedMs),
+                    rateKbps > 0 ? "paced at " + rateKbps + " kbps" : "unpaced",
+                    FileTransfer.CHUNK_SIZE, FileTransfer.LOW_WATER / 1024, FileTransfer.HIGH_WATER / 1024));
+        } finally {
+            outgoing.close();
+            incoming.close();
+            sender.connection.dispose();
+            receiver.connection.dispose();
+            factory.dispose();
+            deleteRecursively(dir);
+        }
+    }
+
+    private static File createSource(File file, int sizeMb) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("cannot create " + parent);
+        }
+        byte[] block = new byte[1024 * 1024];
+        Random random = new Random(42);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (int i = 0; i < sizeMb; i++) {
+                random.nextBytes(block);
+                out.write(block);
+            }
+        }
+        return file;
+    }
+
+    // Exchanges complete descriptions (candidates included) instead of trickling candidates
+    private static void connect(Peer offerer, Peer answerer) throws Exception {
+        Sdp offer = new Sdp();
+        offerer.connection.createOffer(offer, new MediaConstraints());
+        offerer.setLocal(offer.await());
+        answerer.setRemote(offerer.awaitGathered());
+
+        Sdp answer = new Sdp();
+        answerer.connection.createAnswer(answer, new MediaConstraints());
+        answerer.setLocal(answer.await());
+        offerer.setRemote(answerer.awaitGathered());
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static class Peer implements PeerConnection.Observer {
+        final PeerConnection connection;
+        final DataChannel channel;
+        final CountDownLatch gathered = new CountDownLatch(1);
+
+        Peer(PeerConnectionFactory factory) {
+            PeerConnection.RTCConfiguration config = new PeerConnection.RTCConfiguration(new ArrayList<>());
+            config.sdpSemantics = PeerConnection.SdpSemantics.UNIFIED_PLAN;
+            connection = factory.createPeerConnection(config, this);
+            // Same negotiated channel WebRTCClient uses
+            DataChannel.Init init = new DataChannel.Init();
+            init.negotiated = true;
+            init.id = 1;
+            channel = connection.createDataChannel("transfer", init);
+        }
+
+        void setLocal(SessionDescription description) throws Exception {
+            Sdp result = new Sdp();
+            connection.setLocalDescription(result, description);
+            result.awaitSet();
+        }
+
+        void setRemote(SessionDescription description) throws Exception {
+            Sdp result = new Sdp();
+            connection.setRemoteDescription(result, description);
+            result.awaitSet();
+        }
+
+        SessionDescription awaitGathered() throws Exception {
+            if (!gathered.await(STEP_TIMEOUT_S, TimeUnit.SECONDS)) {
+                throw new IOException("ICE gathering timed out");
+            }
+            return connection.getLocalDescription();
+        }
+
+        @Override
+        public void onIceGatheringChange(PeerConnection.IceGatheringState state) {
+            if (state == PeerConnection.IceGatheringState.COMPLETE) {
+                gathered.countDown();
+            }
+        }
+
+        @Override
+        public void onSignalingChange(PeerConnection.SignalingState state) {
+        }
+
+        @Override
+        public void onIceConnectionChange(PeerConnection.IceConnectionState state) {
+            Log.d(TAG, "ICE " + state);
+        }
+
+        @Override
+        public void onIceConnectionReceivingChange(boolean receiving) {
+        }
+
+        @Override
+        public void onIceCandidate(IceCandidate candidate) {
+        }
+
+        @Override
+        public void onIceCandidatesRemoved(IceCandidate[] candidates) {
+        }
+
+        @Override
+        public void onAddStream(MediaStream stream) {
+        }
+
+        @Override
+        public void onRemoveStream(MediaStream stream) {
+        }
+
+        @Override
+        public void onDataChannel(DataChannel dataChannel) {
+        }
+
+        @Override
+        public void onRenegotiationNeeded() {
+        }
+
+        @Override
+        public void onAddTrack(RtpReceiver receiver, MediaStream[] streams) {
+        }
+    }
+
+    private static class Sdp implements SdpObserver {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private SessionDescription description;
+        private String error;
+
+        SessionDescription await() throws Exception {
+            awaitSet();
+            return description;
+        }
+
+        void awaitSet() throws Exception {
+            if (!done.await(STEP_TIMEOUT_S, TimeUnit.SECONDS)) {
+                throw new IOException("SDP step timed out");
+            }
+            if (error != null) {
+                throw new IOException(error);
+            }
+        }
+
+        @Override
+        public void onCreateSuccess(SessionDescription sessionDescription) {
+            description = sessionDescription;
+            done.countDown();
+        }
+
+        @Override
+        public void onSetSuccess() {
+            done.countDown();
+        }
+
+        @Override
+        public void onCreateFailure(String s) {
+            error = s;
+            done.countDown();
+        }
+
+        @Override
+        public void onSetFailure(String s) {
+            error = s;
+            done.countDown();
+        }
+    }
+
+    private static class Result implements FileTransfer.Listener {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile long bytes;
+        volatile long elapsedMs;
+        volatile String failure;
+
+        @Override
+        public void onTransferProgress(String name, long bytes, long total, boolean incoming) {
+        }
+
+        @Override
+        public void onFileSent(String name, long bytes, long elapsedMs) {
+            this.bytes = bytes;
+            this.elapsedMs = elapsedMs;
+            done.countDown();
+        }
+
+        @Override
+        public void onFileReceived(File file) {
+        }
+
+        @Override
+        public void onTransferFailed(String name, String reason, boolean incoming) {
+            failure = name + ": " + reason;
+            done.countDown();
+        }
+
+        @Override
+        public void onClipboardReceived(String text) {
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.screenshare;
+
+import android.util.Log;
+import org.json.JSONObject;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Measures the host's uplink by streaming padding to the signaling server's /probe endpoint.
+// The result seeds the encoder start bitrate so the first frames are sharp on good links
+// and do not stall on bad ones.
+public class BandwidthProbe {
+    private static final String TAG = "BandwidthProbe";
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int MAX_PROBE_BYTES = 512 * 1024;
+    private static final int PROBE_DURATION_MS = 1000;
+    private static final int CONNECT_TIMEOUT_MS = 3000;
+
+    // Leave headroom for RTP overhead and TCP slow start skew
+    private static final double UTILIZATION = 0.8;
+    public static final int MIN_START_BITRATE_KBPS = 300;
+    public static final int MAX_START_BITRATE_KBPS = 2500;
+
+    private final String probeUrl;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile int measuredKbps = -1;
+
+    public BandwidthProbe(String serverUrl) {
+        this.probeUrl = serverUrl.endsWith("/") ? serverUrl + "probe" : serverUrl + "/probe";
+    }
+
+    public void start() {
+        Thread thread = new Thread(() -> {
+            try {
+                measuredKbps = measure();
+                Log.d(TAG, "Measured uplink: " + measuredKbps + " kbps");
+            } catch (Exception e) {
+                Log.w(TAG, "Bandwidth probe failed", e);
+            } finally {
+                done.countDown();
+            }
+        }, "BandwidthProbe");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Blocks until the probe finishes or the timeout expires; returns -1 if nothing was measured
+    public int awaitKbps(long timeoutMs) {
+        try {
+            done.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return measuredKbps;
+    }
+
+    // Start bitrate to configure on the sender, clamped to a range the screen encoder can use
+    public int awaitStartBitrateKbps(long timeoutMs) {
+        int kbps = awaitKbps(timeoutMs);
+        if (kbps <= 0) {
+            return -1;
+        }
+        int start = (int) (kbps * UTILIZATION);
+        return Math.max(MIN_START_BITRATE_KBPS, Math.min(MAX_START_BITRATE_KBPS, start));
+    }
+
+    private int measure() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(probeUrl).openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(CONNECT_TIMEOUT_MS + PROBE_DURATION_MS);
+            connection.setChunkedStreamingMode(CHUNK_SIZE);
+            connection.setRequestProperty("Content-Type", "application/octet-stream");
+
+            byte[] padding = new byte[CHUNK_SIZE];
+            int sent = 0;
+            long startNs = System.nanoTime();
+            try (OutputStream out = connection.getOutputStream()) {
+                while (sent < MAX_PROBE_BYTES
+                        && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs) < PROBE_DURATION_MS) {
+                    out.write(padding);
+                    sent += padding.length;
+                }
+            }
+
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                return -1;
+            }
+
+            StringBuilder body = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(connection.getInputStream(), "UTF-8"))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    body.append(line);
+                }
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+
+            // Prefer the server's view: it excludes our local socket buffering
+            JSONObject result = new JSONObject(body.toString());
+            long bytes = result.optLong("bytes", sent);
+            long durationMs = result.optLong("durationMs", elapsedMs);
+            if (durationMs <= 0) {
+                durationMs = elapsedMs;
+            }
+            return (int) (bytes * 8 / Math.max(1, durationMs));
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
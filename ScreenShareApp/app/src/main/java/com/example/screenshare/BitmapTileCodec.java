@@ -0,0 +1,30 @@
+package com.example.screenshare;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import java.io.ByteArrayOutputStream;
+import java.nio.IntBuffer;
+
+// Lossless tile images: WebP on Android 11+, PNG before. Pixels are RGBA bytes as read from an
+// ImageReader into little-endian ints, which is also ARGB_8888's memory layout.
+public class BitmapTileCodec implements TileDiffEngine.TileCodec {
+    // For lossless WebP this is effort, not quality: lower is faster and a bit larger
+    private static final int WEBP_EFFORT = 50;
+
+    @Override
+    public byte[] encode(int[] pixels, int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        try {
+            bitmap.copyPixelsFromBuffer(IntBuffer.wrap(pixels, 0, width * height));
+            ByteArrayOutputStream out = new ByteArrayOutputStream(width * height / 4);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                bitmap.compress(Bitmap.CompressFormat.WEBP_LOSSLESS, WEBP_EFFORT, out);
+            } else {
+                bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            }
+            return out.toByteArray();
+        } finally {
+            bitmap.recycle();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.screenshare;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+import android.util.Log;
+
+// Decides which screens of a MonitorWallActivity may decode. Hardware decoders are few and
+// each holds a pool of full-size frames, so only the focused screen and then the visible
+// ones in grid order get one, up to the device's limit. The rest are paused.
+public class DecoderBudget {
+    private static final String TAG = "DecoderBudget";
+    // Used when the codec list does not say; also an upper bound, since the reported instance
+    // counts ignore memory
+    private static final int DEFAULT_LIMIT = 4;
+    private static final int MAX_LIMIT = 6;
+    // Codecs the host offers (VP8 first); the most limited hardware decoder decides
+    private static final String[] MIME_TYPES = {"video/x-vnd.on2.vp8", "video/avc", "video/x-vnd.on2.vp9"};
+    // Output and reference frames a decoder typically keeps, for the memory estimate
+    private static final int FRAMES_PER_DECODER = 8;
+
+    private final int limit;
+
+    public DecoderBudget(int limit) {
+        this.limit = Math.max(1, limit);
+    }
+
+    public static DecoderBudget forDevice() {
+        return new DecoderBudget(queryLimit());
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    // Which of the screens (in grid order) may decode
+    public boolean[] assign(boolean[] visible, int focused) {
+        boolean[] active = new boolean[visible.length];
+        int used = 0;
+        if (focused >= 0 && focused < visible.length && visible[focused]) {
+            active[focused] = true;
+            used++;
+        }
+        for (int i = 0; i < visible.length && used < limit; i++) {
+            if (visible[i] && !active[i]) {
+                active[i] = true;
+                used++;
+            }
+        }
+        return active;
+    }
+
+    // Rough YUV 4:2:0 footprint of one decoder at this resolution
+    public static long estimateMemoryBytes(int width, int height) {
+        return (long) width * height * 3 / 2 * FRAMES_PER_DECODER;
+    }
+
+    private static int queryLimit() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return DEFAULT_LIMIT;
+        }
+        int limit = MAX_LIMIT;
+        boolean found = false;
+        for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            if (info.isEncoder() || !isHardware(info)) {
+                continue;
+            }
+            for (String type : info.getSupportedTypes()) {
+                for (String wanted : MIME_TYPES) {
+                    if (wanted.equalsIgnoreCase(type)) {
+                        int instances = info.getCapabilitiesForType(type).getMaxSupportedInstances();
+                        Log.d(TAG, info.getName() + " supports " + instances + " instances");
+                        limit = Math.min(limit, instances);
+                        found = true;
+                    }
+                }
+            }
+        }
+        return found ? Math.max(1, limit) : DEFAULT_LIMIT;
+    }
+
+    private static boolean isHardware(MediaCodecInfo info) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return info.isHardwareAccelerated();
+        }
+        String name = info.getName().toLowerCase();
+        return !name.startsWith("omx.google.") && !name.startsWith("c2.android.");
+    }
+}
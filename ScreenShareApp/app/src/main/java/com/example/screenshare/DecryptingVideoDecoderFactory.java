@@ -0,0 +1,112 @@
+package com.example.screenshare;
+
+import android.util.Log;
+import org.webrtc.EncodedImage;
+import org.webrtc.VideoCodecInfo;
+import org.webrtc.VideoCodecStatus;
+import org.webrtc.VideoDecoder;
+import org.webrtc.VideoDecoderFactory;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+// Receiving side of EncryptingVideoEncoderFactory. Decoders are created once the session is
+// negotiated, after the host's 'media-key' arrived: with a key the (Java) hardware VP8 decoder
+// is wrapped to decrypt each frame first; without one the regular decoders are used, so
+// unencrypted hosts keep working. A frame that fails to authenticate is not decoded.
+public class DecryptingVideoDecoderFactory implements VideoDecoderFactory {
+    private static final String TAG = "DecryptingDecoder";
+    private static final String VP8 = "VP8";
+
+    private final VideoDecoderFactory plain;
+    private final VideoDecoderFactory hardware;
+    private final FrameCrypto crypto;
+
+    public DecryptingVideoDecoderFactory(VideoDecoderFactory plain, VideoDecoderFactory hardware, FrameCrypto crypto) {
+        this.plain = plain;
+        this.hardware = hardware;
+        this.crypto = crypto;
+    }
+
+    @Override
+    public VideoCodecInfo[] getSupportedCodecs() {
+        return plain.getSupportedCodecs();
+    }
+
+    @Override
+    public VideoDecoder createDecoder(VideoCodecInfo info) {
+        if (!crypto.hasKey()) {
+            return plain.createDecoder(info);
+        }
+        if (!VP8.equalsIgnoreCase(info.name)) {
+            Log.e(TAG, "Encrypted video must be VP8, got " + info.name);
+            return null;
+        }
+        VideoDecoder decoder = hardware.createDecoder(info);
+        if (decoder == null) {
+            Log.e(TAG, "No hardware VP8 decoder, encrypted video cannot be shown");
+            return null;
+        }
+        return new DecryptingDecoder(decoder, crypto.newTransform());
+    }
+
+    private static final class DecryptingDecoder implements VideoDecoder {
+        private final VideoDecoder delegate;
+        private final FrameCrypto.Transform transform;
+        // Decoder thread. Reused for every frame: the hardware decoder copies the input into
+        // a codec buffer before decode() returns.
+        private ByteBuffer plainBuffer = ByteBuffer.allocateDirect(0);
+        private long failedFrames;
+
+        DecryptingDecoder(VideoDecoder delegate, FrameCrypto.Transform transform) {
+            this.delegate = delegate;
+            this.transform = transform;
+        }
+
+        @Override
+        public VideoCodecStatus initDecode(Settings settings, Callback decodeCallback) {
+            return delegate.initDecode(settings, decodeCallback);
+        }
+
+        @Override
+        public VideoCodecStatus release() {
+            return delegate.release();
+        }
+
+        @Override
+        public VideoCodecStatus decode(EncodedImage frame, DecodeInfo info) {
+            int capacity = frame.buffer.remaining();
+            if (plainBuffer.capacity() < capacity) {
+                plainBuffer = ByteBuffer.allocateDirect(capacity + capacity / 4);
+            }
+            plainBuffer.clear();
+            int length;
+            try {
+                length = transform.decrypt(frame.buffer, plainBuffer);
+            } catch (GeneralSecurityException e) {
+                // Logged once in a while; an unencrypted or foreign stream fails on every frame
+                if (failedFrames++ % 100 == 0) {
+                    Log.w(TAG, "Frame failed to decrypt (" + failedFrames + " so far): " + e.getMessage());
+                }
+                return VideoCodecStatus.ERROR;
+            }
+            plainBuffer.limit(length);
+            EncodedImage decrypted = EncodedImage.builder()
+                    .setBuffer(plainBuffer.slice(), null)
+                    .setCaptureTimeNs(frame.captureTimeNs)
+                    .setFrameType(frame.frameType)
+                    .setEncodedWidth(frame.encodedWidth)
+                    .setEncodedHeight(frame.encodedHeight)
+                    .setRotation(frame.rotation)
+                    .setQp(frame.qp)
+                    .createEncodedImage();
+            VideoCodecStatus status = delegate.decode(decrypted, info);
+            decrypted.release();
+            return status;
+        }
+
+        @Override
+        public String getImplementationName() {
+            return delegate.getImplementationName() + " (encrypted)";
+        }
+    }
+}
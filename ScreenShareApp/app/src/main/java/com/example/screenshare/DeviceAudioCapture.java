@@ -0,0 +1,121 @@
+package com.example.screenshare;
+
+import android.annotation.SuppressLint;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioPlaybackCaptureConfiguration;
+import android.media.AudioRecord;
+import android.media.projection.MediaProjection;
+import android.os.Build;
+import android.util.Log;
+import androidx.annotation.RequiresApi;
+import org.webrtc.audio.JavaAudioDeviceModule;
+import java.nio.ByteBuffer;
+
+// Replaces the microphone samples recorded by WebRTC with the device's playback audio
+// (Android 10+ AudioPlaybackCapture). Until the MediaProjection is available, and whenever
+// playback capture fails, the buffer is zeroed so the microphone never leaks into the stream.
+@RequiresApi(api = Build.VERSION_CODES.Q)
+public class DeviceAudioCapture implements JavaAudioDeviceModule.AudioRecordDataCallback {
+    private static final String TAG = "DeviceAudioCapture";
+
+    private final Object lock = new Object();
+    private MediaProjection mediaProjection;
+    private AudioRecord playbackRecord;
+    private int recordSampleRate;
+    private int recordChannelCount;
+    private boolean released;
+
+    public void setMediaProjection(MediaProjection mediaProjection) {
+        synchronized (lock) {
+            this.mediaProjection = mediaProjection;
+            stopRecord();
+        }
+    }
+
+    @Override
+    public void onAudioDataRecorded(int audioFormat, int channelCount, int sampleRate, ByteBuffer audioBuffer) {
+        synchronized (lock) {
+            AudioRecord record = ensureRecord(audioFormat, channelCount, sampleRate);
+            int size = audioBuffer.remaining();
+            int position = audioBuffer.position();
+            int read = 0;
+            if (record != null) {
+                // Non-blocking so a quiet device never stalls WebRTC's recording thread
+                read = record.read(audioBuffer, size, AudioRecord.READ_NON_BLOCKING);
+                if (read < 0) {
+                    Log.w(TAG, "Playback capture read failed: " + read);
+                    read = 0;
+                }
+            }
+            for (int i = position + read; i < position + size; i++) {
+                audioBuffer.put(i, (byte) 0);
+            }
+            audioBuffer.position(position);
+        }
+    }
+
+    public void release() {
+        synchronized (lock) {
+            released = true;
+            stopRecord();
+            mediaProjection = null;
+        }
+    }
+
+    @SuppressLint("MissingPermission")
+    private AudioRecord ensureRecord(int audioFormat, int channelCount, int sampleRate) {
+        if (released || mediaProjection == null) {
+            return null;
+        }
+        if (playbackRecord != null && recordSampleRate == sampleRate && recordChannelCount == channelCount) {
+            return playbackRecord;
+        }
+        stopRecord();
+
+        try {
+            AudioPlaybackCaptureConfiguration config =
+                    new AudioPlaybackCaptureConfiguration.Builder(mediaProjection)
+                            .addMatchingUsage(AudioAttributes.USAGE_MEDIA)
+                            .addMatchingUsage(AudioAttributes.USAGE_GAME)
+                            .addMatchingUsage(AudioAttributes.USAGE_UNKNOWN)
+                            .build();
+            int channelMask = channelCount == 2
+                    ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO;
+            AudioFormat format = new AudioFormat.Builder()
+                    .setEncoding(audioFormat)
+                    .setSampleRate(sampleRate)
+                    .setChannelMask(channelMask)
+                    .build();
+            int minBuffer = AudioRecord.getMinBufferSize(sampleRate, channelMask, audioFormat);
+
+            playbackRecord = new AudioRecord.Builder()
+                    .setAudioFormat(format)
+                    .setBufferSizeInBytes(Math.max(minBuffer, sampleRate / 10 * channelCount * 2))
+                    .setAudioPlaybackCaptureConfig(config)
+                    .build();
+            playbackRecord.startRecording();
+            recordSampleRate = sampleRate;
+            recordChannelCount = channelCount;
+            Log.d(TAG, "Playback capture started: " + sampleRate + " Hz, " + channelCount + " ch");
+        } catch (Exception e) {
+            Log.e(TAG, "Could not start playback capture", e);
+            stopRecord();
+            // Do not retry on every 10 ms callback
+            mediaProjection = null;
+        }
+        return playbackRecord;
+    }
+
+    private void stopRecord() {
+        if (playbackRecord != null) {
+            try {
+                playbackRecord.stop();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Playback record already stopped", e);
+            }
+            playbackRecord.release();
+            playbackRecord = null;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.screenshare;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+// Samples thermal status, thermal headroom and battery state and runs them through a
+// QualityGovernor. Thermal status changes are evaluated immediately, everything else is polled.
+public class DeviceConditionMonitor {
+    private static final String TAG = "DeviceConditionMonitor";
+    private static final long POLL_INTERVAL_MS = 10000;
+    // How far ahead getThermalHeadroom forecasts
+    private static final int HEADROOM_FORECAST_SECONDS = 30;
+
+    public interface Listener {
+        void onQualityLevelChanged(QualityLevel level);
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final QualityGovernor governor = new QualityGovernor(QualityLevel.FULL);
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final PowerManager powerManager;
+    private PowerManager.OnThermalStatusChangedListener thermalListener;
+    private boolean running;
+
+    private final Runnable poll = new Runnable() {
+        @Override
+        public void run() {
+            evaluate();
+            handler.postDelayed(this, POLL_INTERVAL_MS);
+        }
+    };
+
+    public DeviceConditionMonitor(Context context, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+        this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && powerManager != null) {
+            thermalListener = status -> evaluate();
+            powerManager.addThermalStatusListener(thermalListener);
+        }
+        handler.post(poll);
+    }
+
+    public void stop() {
+        running = false;
+        handler.removeCallbacks(poll);
+        if (thermalListener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            powerManager.removeThermalStatusListener(thermalListener);
+            thermalListener = null;
+        }
+    }
+
+    public QualityLevel getCurrent() {
+        return governor.getCurrent();
+    }
+
+    private void evaluate() {
+        if (!running) {
+            return;
+        }
+        int thermalStatus = QualityGovernor.THERMAL_NONE;
+        float headroom = Float.NaN;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && powerManager != null) {
+            thermalStatus = powerManager.getCurrentThermalStatus();
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R && powerManager != null) {
+            headroom = powerManager.getThermalHeadroom(HEADROOM_FORECAST_SECONDS);
+        }
+
+        // Sticky broadcast, no receiver needed
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        int batteryPercent = -1;
+        boolean charging = false;
+        if (battery != null) {
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            if (level >= 0 && scale > 0) {
+                batteryPercent = level * 100 / scale;
+            }
+            charging = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        }
+
+        QualityLevel next = governor.onSample(SystemClock.elapsedRealtime(),
+                thermalStatus, headroom, batteryPercent, charging);
+        if (next != null) {
+            Log.d(TAG, "Quality " + next + " (thermal=" + thermalStatus + ", headroom=" + headroom
+                    + ", battery=" + batteryPercent + "%, charging=" + charging + ")");
+            listener.onQualityLevelChanged(next);
+        }
+    }
+}
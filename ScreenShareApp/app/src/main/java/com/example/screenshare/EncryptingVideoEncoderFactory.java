@@ -0,0 +1,191 @@
+package com.example.screenshare;
+
+import android.util.Log;
+import org.webrtc.EncodedImage;
+import org.webrtc.HardwareVideoEncoderFactory;
+import org.webrtc.VideoCodecInfo;
+import org.webrtc.VideoCodecStatus;
+import org.webrtc.VideoEncoder;
+import org.webrtc.VideoEncoderFactory;
+import org.webrtc.VideoFrame;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// Encrypts every encoded frame with FrameCrypto before it is packetized. RtpSender's
+// FrameEncryptor only takes a native implementation, so the transform wraps the encoders
+// instead: the hardware ones, which are Java (the software encoders are native and cannot
+// be wrapped). Only VP8 is offered, the codec whose clear header FrameCrypto knows; without
+// a hardware VP8 encoder no video could be sent, so callers check isAvailable() first.
+public class EncryptingVideoEncoderFactory implements VideoEncoderFactory {
+    private static final String TAG = "EncryptingEncoder";
+    private static final String VP8 = "VP8";
+    // Output buffers the native side may still hold while the next frames are encoded
+    private static final int POOL_SIZE = 8;
+
+    private final VideoEncoderFactory hardware;
+    private final FrameCrypto crypto;
+
+    public EncryptingVideoEncoderFactory(VideoEncoderFactory hardware, FrameCrypto crypto) {
+        this.hardware = hardware;
+        this.crypto = crypto;
+    }
+
+    // Whether this device has a hardware VP8 encoder to encrypt the output of. Lists the
+    // MediaCodecs, so not for a hot path.
+    public static boolean isAvailable() {
+        VideoEncoderFactory hardware = new HardwareVideoEncoderFactory(null, true, true);
+        for (VideoCodecInfo info : hardware.getSupportedCodecs()) {
+            if (VP8.equalsIgnoreCase(info.name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public VideoCodecInfo[] getSupportedCodecs() {
+        List<VideoCodecInfo> codecs = new ArrayList<>();
+        for (VideoCodecInfo info : hardware.getSupportedCodecs()) {
+            if (VP8.equalsIgnoreCase(info.name)) {
+                codecs.add(info);
+            }
+        }
+        if (codecs.isEmpty()) {
+            Log.e(TAG, "No hardware VP8 encoder, encrypted video cannot be sent");
+        }
+        return codecs.toArray(new VideoCodecInfo[0]);
+    }
+
+    @Override
+    public VideoEncoder createEncoder(VideoCodecInfo info) {
+        if (!VP8.equalsIgnoreCase(info.name)) {
+            return null;
+        }
+        VideoEncoder encoder = hardware.createEncoder(info);
+        return encoder != null ? new EncryptingEncoder(encoder, crypto.newTransform()) : null;
+    }
+
+    private static final class EncryptingEncoder implements VideoEncoder {
+        private final VideoEncoder delegate;
+        private final FrameCrypto.Transform transform;
+        private final ArrayDeque<PooledBuffer> pool = new ArrayDeque<>();
+        private final Callback encryptingCallback = this::onEncodedFrame;
+        // Encoder output thread
+        private Callback callback;
+
+        // Goes back to the pool when the native side releases the frame
+        private final class PooledBuffer implements Runnable {
+            final ByteBuffer buffer;
+
+            PooledBuffer(int capacity) {
+                buffer = ByteBuffer.allocateDirect(capacity);
+            }
+
+            @Override
+            public void run() {
+                synchronized (pool) {
+                    if (pool.size() < POOL_SIZE) {
+                        pool.push(this);
+                    }
+                }
+            }
+        }
+
+        EncryptingEncoder(VideoEncoder delegate, FrameCrypto.Transform transform) {
+            this.delegate = delegate;
+            this.transform = transform;
+        }
+
+        private PooledBuffer acquire(int capacity) {
+            PooledBuffer pooled;
+            synchronized (pool) {
+                pooled = pool.poll();
+            }
+            if (pooled == null || pooled.buffer.capacity() < capacity) {
+                // Headroom so the next, slightly bigger key frame still fits
+                pooled = new PooledBuffer(capacity + capacity / 4);
+            }
+            pooled.buffer.clear();
+            return pooled;
+        }
+
+        private void onEncodedFrame(EncodedImage frame, CodecSpecificInfo info) {
+            PooledBuffer out = acquire(frame.buffer.remaining() + FrameCrypto.OVERHEAD);
+            int length;
+            try {
+                length = transform.encrypt(frame.buffer, out.buffer);
+            } catch (GeneralSecurityException e) {
+                Log.e(TAG, "Dropping frame that failed to encrypt", e);
+                out.run();
+                return;
+            }
+            out.buffer.limit(length);
+            // The native side reads the whole capacity, so hand it an exact view
+            EncodedImage encrypted = EncodedImage.builder()
+                    .setBuffer(out.buffer.slice(), out)
+                    .setCaptureTimeNs(frame.captureTimeNs)
+                    .setFrameType(frame.frameType)
+                    .setEncodedWidth(frame.encodedWidth)
+                    .setEncodedHeight(frame.encodedHeight)
+                    .setRotation(frame.rotation)
+                    .setQp(frame.qp)
+                    .createEncodedImage();
+            callback.onEncodedFrame(encrypted, info);
+            encrypted.release();
+        }
+
+        @Override
+        public VideoCodecStatus initEncode(Settings settings, Callback encodeCallback) {
+            callback = encodeCallback;
+            return delegate.initEncode(settings, encryptingCallback);
+        }
+
+        @Override
+        public VideoCodecStatus release() {
+            return delegate.release();
+        }
+
+        @Override
+        public VideoCodecStatus encode(VideoFrame frame, EncodeInfo info) {
+            return delegate.encode(frame, info);
+        }
+
+        @Override
+        public VideoCodecStatus setRateAllocation(BitrateAllocation allocation, int framerate) {
+            return delegate.setRateAllocation(allocation, framerate);
+        }
+
+        @Override
+        public VideoCodecStatus setRates(RateControlParameters parameters) {
+            return delegate.setRates(parameters);
+        }
+
+        @Override
+        public ScalingSettings getScalingSettings() {
+            return delegate.getScalingSettings();
+        }
+
+        @Override
+        public ResolutionBitrateLimits[] getResolutionBitrateLimits() {
+            return delegate.getResolutionBitrateLimits();
+        }
+
+        @Override
+        public EncoderInfo getEncoderInfo() {
+            return delegate.getEncoderInfo();
+        }
+
+        @Override
+        public boolean isHardwareEncoder() {
+            return delegate.isHardwareEncoder();
+        }
+
+        @Override
+        public String getImplementationName() {
+            return delegate.getImplementationName() + " (encrypted)";
+        }
+    }
+}
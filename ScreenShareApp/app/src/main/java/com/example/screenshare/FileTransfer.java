@@ -0,0 +1,620 @@
+package com.example.screenshare;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.util.Log;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.webrtc.DataChannel;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// Files and clipboard text over one reliable, ordered DataChannel, in both directions.
+//
+// Control messages are JSON text frames, file data is binary frames of CHUNK_SIZE:
+//   sender   -> {"type":"file","id","name","size","sha256"}
+//   receiver -> {"type":"accept","id","offset"}   offset = bytes already received earlier
+//   sender   -> binary chunks from offset ..., then {"type":"end","id"}
+//   receiver -> {"type":"result","id","ok"}       after checking the SHA-256 of the whole file
+//   either   -> {"type":"cancel","id"} / {"type":"clipboard","text"}
+//
+// Data is streamed between FileChannels and the DataChannel through one direct buffer, never
+// the whole file. The sender keeps bufferedAmount between LOW_WATER and HIGH_WATER so SCTP
+// always has data queued without an unbounded send buffer, and can be paced below the link
+// rate (setMaxSendRateBps) to leave room for video. A partial download is kept under its
+// checksum, so sending the same file again resumes where the previous attempt stopped.
+public class FileTransfer {
+    private static final String TAG = "FileTransfer";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // 16 KiB messages are safe with every SCTP implementation, including browsers
+    static final int CHUNK_SIZE = 16 * 1024;
+    static final long HIGH_WATER = 1024 * 1024;
+    static final long LOW_WATER = 256 * 1024;
+    private static final long ACCEPT_TIMEOUT_MS = 30000;
+    private static final long RESULT_TIMEOUT_MS = 60000;
+    private static final long PROGRESS_INTERVAL_BYTES = 256 * 1024;
+    private static final String PART_SUFFIX = ".part";
+    // The checksum names the partial file, so it must not carry path separators or ".."
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+
+    public interface Listener {
+        void onTransferProgress(String name, long bytes, long total, boolean incoming);
+        void onFileSent(String name, long bytes, long elapsedMs);
+        void onFileReceived(File file);
+        void onTransferFailed(String name, String reason, boolean incoming);
+        void onClipboardReceived(String text);
+    }
+
+    private final DataChannel channel;
+    private final File receiveDir;
+    private final Listener listener;
+    // One outgoing transfer at a time; the receiver relies on that to attribute chunks
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "FileTransferSender"));
+    private final Object bufferLock = new Object();
+    private volatile boolean closed = false;
+    private volatile long maxSendRateBps = 0;
+
+    // Outgoing transfer waiting for its accept/result; written by the sender thread
+    private volatile Pending pending;
+    // Incoming transfer; WebRTC's network thread only
+    private Incoming incoming;
+
+    public FileTransfer(DataChannel channel, File receiveDir, Listener listener) {
+        this.channel = channel;
+        this.receiveDir = receiveDir;
+        this.listener = listener;
+        channel.registerObserver(new ChannelObserver());
+    }
+
+    public boolean isOpen() {
+        return !closed && channel.state() == DataChannel.State.OPEN;
+    }
+
+    // 0 = unlimited. Updated from the bandwidth estimate so files use what video leaves free.
+    public void setMaxSendRateBps(long bps) {
+        maxSendRateBps = bps;
+    }
+
+    public void sendFile(File file) {
+        enqueue(() -> {
+            try (FileInputStream in = new FileInputStream(file)) {
+                send(file.getName(), in.getChannel());
+            }
+        }, file.getName());
+    }
+
+    // A document picked with ACTION_OPEN_DOCUMENT or ACTION_GET_CONTENT
+    public void sendUri(ContentResolver resolver, Uri uri) {
+        String name = displayName(resolver, uri);
+        enqueue(() -> {
+            ParcelFileDescriptor descriptor = resolver.openFileDescriptor(uri, "r");
+            if (descriptor == null) {
+                throw new IOException("cannot open " + uri);
+            }
+            try (FileInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(descriptor)) {
+                send(name, in.getChannel());
+            }
+        }, name);
+    }
+
+    private static String displayName(ContentResolver resolver, Uri uri) {
+        try (Cursor cursor = resolver.query(uri, new String[]{OpenableColumns.DISPLAY_NAME}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getString(0);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "No display name for " + uri, e);
+        }
+        String last = uri.getLastPathSegment();
+        return last != null ? last : "file";
+    }
+
+    public boolean sendClipboard(String text) {
+        try {
+            JSONObject message = new JSONObject();
+            message.put("type", "clipboard");
+            message.put("text", text);
+            return sendControl(message);
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+
+    public void close() {
+        closed = true;
+        sender.shutdownNow();
+        synchronized (bufferLock) {
+            bufferLock.notifyAll();
+        }
+        Pending current = pending;
+        if (current != null) {
+            current.fail("closed");
+        }
+        channel.unregisterObserver();
+        channel.close();
+        channel.dispose();
+        // Called from the WebRTC worker; the network thread no longer delivers messages
+        if (incoming != null) {
+            incoming.close();
+            incoming = null;
+        }
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private void enqueue(Task task, String name) {
+        try {
+            sender.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    Log.e(TAG, "Sending " + name + " failed", e);
+                    listener.onTransferFailed(name, e.getMessage(), false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            listener.onTransferFailed(name, "closed", false);
+        }
+    }
+
+    // Sender thread
+    private void send(String name, FileChannel source) throws Exception {
+        long size = source.size();
+        String sha256 = sha256(source, size);
+        String id = UUID.randomUUID().toString();
+
+        Pending current = new Pending(id);
+        pending = current;
+        try {
+            JSONObject offer = new JSONObject();
+            offer.put("type", "file");
+            offer.put("id", id);
+            offer.put("name", name);
+            offer.put("size", size);
+            offer.put("sha256", sha256);
+            if (!sendControl(offer)) {
+                throw new IOException("channel not open");
+            }
+
+            long offset = current.awaitAccept(ACCEPT_TIMEOUT_MS);
+            if (offset > 0) {
+                Log.d(TAG, "Resuming " + name + " at " + offset + " of " + size);
+            }
+
+            long startNs = System.nanoTime();
+            stream(name, source, Math.min(offset, size), size);
+
+            JSONObject end = new JSONObject();
+            end.put("type", "end");
+            end.put("id", id);
+            sendControl(end);
+
+            if (!current.awaitResult(RESULT_TIMEOUT_MS)) {
+                throw new IOException("checksum mismatch on the receiver");
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+            Log.d(TAG, "Sent " + name + ": " + (size - offset) + " bytes in " + elapsedMs + " ms");
+            listener.onFileSent(name, size - offset, elapsedMs);
+        } finally {
+            pending = null;
+        }
+    }
+
+    private void stream(String name, FileChannel source, long position, long size) throws Exception {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        long nextSendNs = System.nanoTime();
+        long lastProgress = position;
+
+        while (position < size) {
+            if (channel.bufferedAmount() > HIGH_WATER) {
+                awaitBufferedBelow(LOW_WATER);
+            }
+            if (closed || pending == null || pending.failure != null) {
+                throw new IOException(pending != null && pending.failure != null ? pending.failure : "closed");
+            }
+
+            chunk.clear();
+            int read = source.read(chunk, position);
+            if (read <= 0) {
+                throw new IOException("file shrank while sending");
+            }
+            chunk.flip();
+
+            long rate = maxSendRateBps;
+            if (rate > 0) {
+                long now = System.nanoTime();
+                if (nextSendNs > now) {
+                    TimeUnit.NANOSECONDS.sleep(nextSendNs - now);
+                }
+                nextSendNs = Math.max(nextSendNs, now) + read * 8L * 1000000000L / rate;
+            }
+
+            // send() copies the data, so the buffer can be reused right away
+            if (!channel.send(new DataChannel.Buffer(chunk, true))) {
+                throw new IOException("send failed");
+            }
+            position += read;
+            if (position - lastProgress >= PROGRESS_INTERVAL_BYTES || position == size) {
+                lastProgress = position;
+                listener.onTransferProgress(name, position, size, false);
+            }
+        }
+    }
+
+    private void awaitBufferedBelow(long threshold) throws InterruptedException {
+        synchronized (bufferLock) {
+            while (!closed && channel.bufferedAmount() > threshold
+                    && channel.state() == DataChannel.State.OPEN) {
+                // Also re-checked periodically in case a notification is missed
+                bufferLock.wait(100);
+            }
+        }
+    }
+
+    private boolean sendControl(JSONObject message) {
+        if (closed || channel.state() != DataChannel.State.OPEN) {
+            return false;
+        }
+        ByteBuffer data = ByteBuffer.wrap(message.toString().getBytes(UTF_8));
+        return channel.send(new DataChannel.Buffer(data, false));
+    }
+
+    // Network thread
+    private void onControl(JSONObject message) throws JSONException {
+        String type = message.getString("type");
+        String id = message.optString("id");
+        Pending current = pending;
+        switch (type) {
+            case "file":
+                startIncoming(message);
+                break;
+            case "accept":
+                if (current != null && current.id.equals(id)) {
+                    current.accepted(message.getLong("offset"));
+                }
+                break;
+            case "end":
+                finishIncoming(id);
+                break;
+            case "result":
+                if (current != null && current.id.equals(id)) {
+                    current.result(message.getBoolean("ok"));
+                }
+                break;
+            case "cancel":
+                if (current != null && current.id.equals(id)) {
+                    current.fail("cancelled by peer");
+                }
+                if (incoming != null && incoming.id.equals(id)) {
+                    listener.onTransferFailed(incoming.name, "cancelled by peer", true);
+                    incoming.close();
+                    incoming = null;
+                }
+                break;
+            case "clipboard":
+                listener.onClipboardReceived(message.getString("text"));
+                break;
+            default:
+                Log.w(TAG, "Unknown message " + type);
+                break;
+        }
+    }
+
+    private void startIncoming(JSONObject message) throws JSONException {
+        String id = message.getString("id");
+        String name = sanitize(message.getString("name"));
+        long size = message.getLong("size");
+        String sha256 = message.getString("sha256");
+
+        if (incoming != null) {
+            incoming.close();
+            incoming = null;
+        }
+        if (size < 0 || !SHA256_HEX.matcher(sha256).matches()) {
+            Log.w(TAG, "Rejecting " + name + ": bad size or checksum in offer");
+            listener.onTransferFailed(name, "invalid offer", true);
+            sendCancel(id);
+            return;
+        }
+        try {
+            if (!receiveDir.isDirectory() && !receiveDir.mkdirs()) {
+                throw new IOException("cannot create " + receiveDir);
+            }
+            // Keyed by content, so a retry of the same file resumes
+            File part = new File(receiveDir, sha256 + "-" + size + PART_SUFFIX);
+            RandomAccessFile file = new RandomAccessFile(part, "rw");
+            long offset = Math.min(file.length(), size);
+            file.setLength(offset);
+            incoming = new Incoming(id, name, size, sha256, part, file);
+
+            JSONObject accept = new JSONObject();
+            accept.put("type", "accept");
+            accept.put("id", id);
+            accept.put("offset", offset);
+            sendControl(accept);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot receive " + name, e);
+            listener.onTransferFailed(name, e.getMessage(), true);
+            sendCancel(id);
+        }
+    }
+
+    private void sendCancel(String id) {
+        try {
+            JSONObject cancel = new JSONObject();
+            cancel.put("type", "cancel");
+            cancel.put("id", id);
+            sendControl(cancel);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error sending cancel", e);
+        }
+    }
+
+    private void onChunk(ByteBuffer data) {
+        Incoming current = incoming;
+        if (current == null) {
+            return;
+        }
+        try {
+            FileChannel out = current.file.getChannel();
+            if (out.position() + data.remaining() > current.size) {
+                // More than the offer announced: the peer is broken or hostile
+                Log.w(TAG, current.name + " exceeds its announced " + current.size + " bytes");
+                listener.onTransferFailed(current.name, "more data than announced", true);
+                current.close();
+                current.part.delete();
+                incoming = null;
+                sendCancel(current.id);
+                return;
+            }
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+            long received = out.position();
+            if (received - current.lastProgress >= PROGRESS_INTERVAL_BYTES || received == current.size) {
+                current.lastProgress = received;
+                listener.onTransferProgress(current.name, received, current.size, true);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Writing " + current.name + " failed", e);
+            listener.onTransferFailed(current.name, e.getMessage(), true);
+            current.close();
+            incoming = null;
+            sendCancel(current.id);
+        }
+    }
+
+    private void finishIncoming(String id) throws JSONException {
+        Incoming current = incoming;
+        if (current == null || !current.id.equals(id)) {
+            return;
+        }
+        incoming = null;
+
+        boolean ok = false;
+        File target = null;
+        try {
+            FileChannel channel = current.file.getChannel();
+            ok = channel.size() == current.size
+                    && current.sha256.equals(sha256(channel, current.size));
+            current.close();
+            if (ok) {
+                target = uniqueFile(current.name);
+                ok = current.part.renameTo(target);
+            } else {
+                // Corrupt, start from scratch next time
+                current.part.delete();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Verifying " + current.name + " failed", e);
+            current.close();
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("type", "result");
+        result.put("id", id);
+        result.put("ok", ok);
+        sendControl(result);
+
+        if (ok) {
+            Log.d(TAG, "Received " + target + " (" + current.size + " bytes)");
+            listener.onFileReceived(target);
+        } else {
+            listener.onTransferFailed(current.name, "checksum mismatch", true);
+        }
+    }
+
+    private File uniqueFile(String name) {
+        File file = new File(receiveDir, name);
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int i = 1; file.exists(); i++) {
+            file = new File(receiveDir, base + " (" + i + ")" + extension);
+        }
+        return file;
+    }
+
+    // Peer-supplied names must not escape receiveDir or collide with partial downloads
+    static String sanitize(String name) {
+        String clean = name.replace('\\', '/');
+        clean = clean.substring(clean.lastIndexOf('/') + 1).trim();
+        if (clean.isEmpty() || clean.equals(".") || clean.equals("..") || clean.endsWith(PART_SUFFIX)) {
+            clean = "received-" + System.currentTimeMillis();
+        }
+        return clean;
+    }
+
+    static String sha256(FileChannel channel, long size) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        long position = 0;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            buffer.flip();
+            digest.update(buffer);
+            position += read;
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private class ChannelObserver implements DataChannel.Observer {
+        @Override
+        public void onBufferedAmountChange(long previousAmount) {
+            if (channel.bufferedAmount() <= LOW_WATER) {
+                synchronized (bufferLock) {
+                    bufferLock.notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void onStateChange() {
+            DataChannel.State state = channel.state();
+            Log.d(TAG, "Channel " + state);
+            if (state == DataChannel.State.CLOSED) {
+                Pending current = pending;
+                if (current != null) {
+                    current.fail("channel closed");
+                }
+                // The partial file stays for a later resume
+                if (incoming != null) {
+                    listener.onTransferFailed(incoming.name, "channel closed", true);
+                    incoming.close();
+                    incoming = null;
+                }
+                synchronized (bufferLock) {
+                    bufferLock.notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void onMessage(DataChannel.Buffer buffer) {
+            if (buffer.binary) {
+                onChunk(buffer.data);
+                return;
+            }
+            byte[] bytes = new byte[buffer.data.remaining()];
+            buffer.data.get(bytes);
+            try {
+                onControl(new JSONObject(new String(bytes, UTF_8)));
+            } catch (JSONException e) {
+                Log.e(TAG, "Malformed control message", e);
+            }
+        }
+    }
+
+    private static class Pending {
+        final String id;
+        final CountDownLatch accept = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile long offset;
+        volatile boolean ok;
+        volatile String failure;
+
+        Pending(String id) {
+            this.id = id;
+        }
+
+        void accepted(long offset) {
+            this.offset = offset;
+            accept.countDown();
+        }
+
+        void result(boolean ok) {
+            this.ok = ok;
+            done.countDown();
+        }
+
+        void fail(String reason) {
+            failure = reason;
+            accept.countDown();
+            done.countDown();
+        }
+
+        long awaitAccept(long timeoutMs) throws Exception {
+            if (!accept.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IOException("no answer from peer");
+            }
+            if (failure != null) {
+                throw new IOException(failure);
+            }
+            return offset;
+        }
+
+        boolean awaitResult(long timeoutMs) throws Exception {
+            if (!done.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IOException("no result from peer");
+            }
+            if (failure != null) {
+                throw new IOException(failure);
+            }
+            return ok;
+        }
+    }
+
+    private static class Incoming {
+        final String id;
+        final String name;
+        final long size;
+        final String sha256;
+        final File part;
+        final RandomAccessFile file;
+        long lastProgress;
+
+        Incoming(String id, String name, long size, String sha256, File part, RandomAccessFile file)
+                throws IOException {
+            this.id = id;
+            this.name = name;
+            this.size = size;
+            this.sha256 = sha256;
+            this.part = part;
+            this.file = file;
+            file.getChannel().position(file.length());
+            this.lastProgress = file.length();
+        }
+
+        void close() {
+            try {
+                file.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing " + part, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.screenshare;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+// End-to-end encryption of encoded VP8 frames with AES-128-GCM, on top of DTLS, so a relay or
+// SFU in the media path only sees ciphertext. The key is made by the host and handed to the
+// viewer over signaling ('media-key'), wrapped by MediaKeyExchange so the signaling server
+// cannot read it either; trust in the key rests on the users comparing the safety codes both
+// sides show, since the server relays the exchange's public keys. A frame becomes
+//   [clear VP8 header][ciphertext][16-byte tag][12-byte IV][key id]
+// The first 10 bytes of a key frame (3 of a delta frame) stay readable for the RTP
+// packetizer and jitter buffer, and are authenticated as associated data.
+// Plain Java, so tools/jmh can benchmark it on a desktop JVM.
+public class FrameCrypto {
+    public static final int KEY_LENGTH = 16;
+    private static final int TAG_LENGTH = 16;
+    private static final int IV_LENGTH = 12;
+    public static final int OVERHEAD = TAG_LENGTH + IV_LENGTH + 1;
+    private static final int KEY_FRAME_HEADER = 10;
+    private static final int DELTA_FRAME_HEADER = 3;
+
+    private static final class Key {
+        final int id;
+        final SecretKeySpec spec;
+        final byte[] raw;
+
+        Key(int id, byte[] raw) {
+            this.id = id;
+            this.raw = raw.clone();
+            this.spec = new SecretKeySpec(this.raw, "AES");
+        }
+    }
+
+    private final SecureRandom random = new SecureRandom();
+    private final boolean sending;
+    // Every IV is [4 random bytes of this instance][8-byte counter], never repeated for a key
+    private final int ivSalt = random.nextInt();
+    private final AtomicLong ivCounter = new AtomicLong();
+    // By key id, so frames under the previous key still decrypt while a new one takes over
+    private final AtomicReferenceArray<Key> keys = new AtomicReferenceArray<>(256);
+    private volatile Key current;
+
+    private FrameCrypto(boolean sending) {
+        this.sending = sending;
+    }
+
+    // Host: encrypts with a fresh key; send it to the viewer with getKeyId()/getKey()
+    public static FrameCrypto forSender() {
+        FrameCrypto crypto = new FrameCrypto(true);
+        crypto.rotateKey();
+        return crypto;
+    }
+
+    // Viewer: decrypts once setKey() was called, and leaves video alone until then
+    public static FrameCrypto forReceiver() {
+        return new FrameCrypto(false);
+    }
+
+    public boolean isSending() {
+        return sending;
+    }
+
+    public boolean hasKey() {
+        return current != null;
+    }
+
+    public synchronized void rotateKey() {
+        byte[] raw = new byte[KEY_LENGTH];
+        random.nextBytes(raw);
+        Key previous = current;
+        setKey(previous != null ? (previous.id + 1) & 0xFF : 0, raw);
+    }
+
+    public synchronized void setKey(int keyId, byte[] raw) {
+        if (raw.length != KEY_LENGTH) {
+            throw new IllegalArgumentException("Expected a " + KEY_LENGTH + "-byte key");
+        }
+        Key key = new Key(keyId & 0xFF, raw);
+        keys.set(key.id, key);
+        current = key;
+    }
+
+    public int getKeyId() {
+        return current.id;
+    }
+
+    public byte[] getKey() {
+        return current.raw.clone();
+    }
+
+    // One per codec instance; not thread-safe
+    public Transform newTransform() {
+        try {
+            return new Transform(Cipher.getInstance("AES/GCM/NoPadding"));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM not available", e);
+        }
+    }
+
+    static int clearHeaderLength(ByteBuffer frame) {
+        if (!frame.hasRemaining()) {
+            return 0;
+        }
+        // VP8 payload header: bit 0 of the first byte is 0 for a key frame
+        boolean keyFrame = (frame.get(frame.position()) & 0x01) == 0;
+        return Math.min(frame.remaining(), keyFrame ? KEY_FRAME_HEADER : DELTA_FRAME_HEADER);
+    }
+
+    // Works on the caller's buffers and restores their positions and limits instead of
+    // duplicating them, so the only per-frame allocations are the GCMParameterSpec and
+    // whatever the Cipher provider makes.
+    public final class Transform {
+        private final Cipher cipher;
+        private final byte[] iv = new byte[IV_LENGTH];
+        private final byte[] clear = new byte[KEY_FRAME_HEADER];
+
+        private Transform(Cipher cipher) {
+            this.cipher = cipher;
+        }
+
+        // Writes the encrypted form of frame's remaining bytes to out (at least
+        // remaining + OVERHEAD free); returns its length. Neither position changes.
+        public int encrypt(ByteBuffer frame, ByteBuffer out) throws GeneralSecurityException {
+            Key key = current;
+            if (key == null) {
+                throw new GeneralSecurityException("No key");
+            }
+            long counter = ivCounter.getAndIncrement();
+            iv[0] = (byte) (ivSalt >>> 24);
+            iv[1] = (byte) (ivSalt >>> 16);
+            iv[2] = (byte) (ivSalt >>> 8);
+            iv[3] = (byte) ivSalt;
+            for (int i = 0; i < 8; i++) {
+                iv[4 + i] = (byte) (counter >>> (56 - 8 * i));
+            }
+
+            int start = frame.position();
+            int outStart = out.position();
+            int header = clearHeaderLength(frame);
+            try {
+                frame.get(clear, 0, header);
+                cipher.init(Cipher.ENCRYPT_MODE, key.spec, new GCMParameterSpec(TAG_LENGTH * 8, iv));
+                cipher.updateAAD(clear, 0, header);
+                out.put(clear, 0, header);
+                cipher.doFinal(frame, out);
+                out.put(iv);
+                out.put((byte) key.id);
+                return out.position() - outStart;
+            } finally {
+                frame.position(start);
+                out.position(outStart);
+            }
+        }
+
+        // The inverse; returns the plain length written to out (at least remaining free).
+        // Throws when the frame was not encrypted with a known key or was tampered with.
+        public int decrypt(ByteBuffer frame, ByteBuffer out) throws GeneralSecurityException {
+            int length = frame.remaining();
+            int start = frame.position();
+            if (length < OVERHEAD) {
+                throw new GeneralSecurityException("Frame too short");
+            }
+            Key key = keys.get(frame.get(start + length - 1) & 0xFF);
+            if (key == null) {
+                throw new GeneralSecurityException("Unknown key id");
+            }
+            for (int i = 0; i < IV_LENGTH; i++) {
+                iv[i] = frame.get(start + length - 1 - IV_LENGTH + i);
+            }
+
+            int limit = frame.limit();
+            int outStart = out.position();
+            try {
+                frame.limit(start + length - 1 - IV_LENGTH);
+                int header = Math.min(clearHeaderLength(frame), frame.remaining() - TAG_LENGTH);
+                if (header < 0) {
+                    throw new GeneralSecurityException("Frame too short");
+                }
+                frame.get(clear, 0, header);
+                cipher.init(Cipher.DECRYPT_MODE, key.spec, new GCMParameterSpec(TAG_LENGTH * 8, iv));
+                cipher.updateAAD(clear, 0, header);
+                out.put(clear, 0, header);
+                cipher.doFinal(frame, out);
+                return out.position() - outStart;
+            } finally {
+                frame.limit(limit);
+                frame.position(start);
+                out.position(outStart);
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.screenshare;
+
+import org.webrtc.PeerConnection;
+
+// Which local candidate types a connection may use. Relay-only hides both peers' addresses and
+// is the reliable choice behind proxies that only let TURN/TLS out; it costs a TURN hop.
+public enum IceCandidatePolicy {
+    // Host, server-reflexive and relay candidates; ICE picks the best pair
+    ALL(PeerConnection.IceTransportsType.ALL),
+    // No host candidates: local addresses are not revealed to the other peer
+    NO_HOST(PeerConnection.IceTransportsType.NOHOST),
+    // Only TURN candidates
+    RELAY(PeerConnection.IceTransportsType.RELAY);
+
+    private final PeerConnection.IceTransportsType transportsType;
+
+    IceCandidatePolicy(PeerConnection.IceTransportsType transportsType) {
+        this.transportsType = transportsType;
+    }
+
+    public PeerConnection.IceTransportsType getTransportsType() {
+        return transportsType;
+    }
+}
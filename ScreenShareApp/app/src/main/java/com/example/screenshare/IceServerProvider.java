@@ -0,0 +1,150 @@
+package com.example.screenshare;
+
+import android.os.SystemClock;
+import android.util.Log;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.webrtc.PeerConnection;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// STUN/TURN servers for new connections. The signaling server's /ice-servers endpoint is open
+// to anyone and only lists STUN; TURN credentials come over the socket once a session is held
+// (SignalingEvents.onIceServers) and are cached here with update(). Credentials are
+// short-lived, so a list is cached for part of its TTL and refetched in the background;
+// prefetch() early (app start) keeps the fetch off the connection setup path.
+public class IceServerProvider {
+    private static final String TAG = "IceServerProvider";
+    private static final int TIMEOUT_MS = 3000;
+    // Refetch once this share of the credential lifetime has passed
+    private static final double REFRESH_FRACTION = 0.8;
+    static final String FALLBACK_STUN = "stun:stun.l.google.com:19302";
+
+    private final String url;
+    private List<PeerConnection.IceServer> servers;
+    private long expiresAtMs;
+    private CountDownLatch pending;
+
+    public IceServerProvider(String serverUrl) {
+        this.url = serverUrl.endsWith("/") ? serverUrl + "ice-servers" : serverUrl + "/ice-servers";
+    }
+
+    // Starts a background fetch unless a fresh list is cached or a fetch is running
+    public synchronized void prefetch() {
+        if (pending != null || (servers != null && SystemClock.elapsedRealtime() < expiresAtMs)) {
+            return;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        pending = done;
+        Thread thread = new Thread(() -> {
+            try {
+                fetch();
+            } catch (Exception e) {
+                Log.w(TAG, "Fetching ICE servers failed", e);
+            } finally {
+                synchronized (IceServerProvider.this) {
+                    pending = null;
+                }
+                done.countDown();
+            }
+        }, "IceServerProvider");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Blocks up to timeoutMs for a fresh list. Falls back to the last list (even if stale) or
+    // the public STUN server, so a slow or unreachable endpoint never prevents a connection.
+    public List<PeerConnection.IceServer> getIceServers(long timeoutMs) {
+        prefetch();
+        CountDownLatch done;
+        synchronized (this) {
+            done = pending;
+        }
+        if (done != null) {
+            try {
+                done.await(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (servers != null) {
+                return servers;
+            }
+        }
+        Log.w(TAG, "No ICE servers from the server, using " + FALLBACK_STUN);
+        return Collections.singletonList(PeerConnection.IceServer.builder(FALLBACK_STUN).createIceServer());
+    }
+
+    // A list the signaling server sent with a session
+    public synchronized void update(List<PeerConnection.IceServer> list, long ttlSeconds) {
+        servers = list;
+        expiresAtMs = SystemClock.elapsedRealtime() + (long) (ttlSeconds * 1000 * REFRESH_FRACTION);
+    }
+
+    private void fetch() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IllegalStateException("HTTP " + connection.getResponseCode());
+            }
+
+            StringBuilder body = new StringBuilder();
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(connection.getInputStream(), "UTF-8"))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    body.append(line);
+                }
+            }
+
+            JSONObject result = new JSONObject(body.toString());
+            List<PeerConnection.IceServer> parsed = parse(result.getJSONArray("iceServers"));
+            long ttlMs = result.optLong("ttl", 0) * 1000;
+            synchronized (this) {
+                servers = parsed;
+                expiresAtMs = SystemClock.elapsedRealtime() + (long) (ttlMs * REFRESH_FRACTION);
+            }
+            Log.d(TAG, "Got " + parsed.size() + " ICE servers, ttl " + ttlMs / 1000 + " s");
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // [{ urls: string | string[], username?, credential? }], the RTCIceServer shape
+    static List<PeerConnection.IceServer> parse(JSONArray array) throws Exception {
+        List<PeerConnection.IceServer> result = new ArrayList<>();
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject server = array.getJSONObject(i);
+            List<String> urls = new ArrayList<>();
+            JSONArray urlArray = server.optJSONArray("urls");
+            if (urlArray != null) {
+                for (int j = 0; j < urlArray.length(); j++) {
+                    urls.add(urlArray.getString(j));
+                }
+            } else {
+                urls.add(server.getString("urls"));
+            }
+            if (urls.isEmpty()) {
+                continue;
+            }
+
+            PeerConnection.IceServer.Builder builder = PeerConnection.IceServer.builder(urls);
+            if (server.has("username")) {
+                builder.setUsername(server.getString("username"));
+                builder.setPassword(server.optString("credential"));
+            }
+            result.add(builder.createIceServer());
+        }
+        return result;
+    }
+}
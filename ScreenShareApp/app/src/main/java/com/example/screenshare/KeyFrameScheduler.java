@@ -0,0 +1,84 @@
+package com.example.screenshare;
+
+// Decides which frames the host's encoder turns into key frames. Receivers ask for one (PLI/FIR)
+// whenever they cannot decode; while a viewer reconnects, or its first key frame is lost, the
+// requests come in bursts, and a key frame is several times the size of a delta frame. So at
+// most one requested key frame is encoded per window: requests that arrive less than a window
+// after the last key frame are held and served together when the window ends. A key frame
+// forced by the host itself, e.g. for a viewer that just connected, is never held.
+// Plain Java and thread-safe: frames come from the encoder thread, forced requests from the
+// WebRTC worker.
+public class KeyFrameScheduler {
+    public static final long DEFAULT_WINDOW_MS = 300;
+
+    private final long windowMs;
+    private boolean forced;
+    private boolean pending;
+    private long lastKeyFrameMs = Long.MIN_VALUE / 2;
+    // Encoders currently feeding frames through onFrame()
+    private int encoders;
+    private long receiverRequests;
+    // Requests not served by the frame they arrived with
+    private long heldRequests;
+    private long forcedKeyFrames;
+    private long keyFrames;
+
+    public KeyFrameScheduler() {
+        this(DEFAULT_WINDOW_MS);
+    }
+
+    public KeyFrameScheduler(long windowMs) {
+        this.windowMs = windowMs;
+    }
+
+    // The next frame becomes a key frame. False when no encoder goes through this scheduler
+    // (none running yet, or a software encoder), so the caller has to get one another way.
+    public synchronized boolean requestKeyFrame() {
+        forced = true;
+        return encoders > 0;
+    }
+
+    // Before each frame is encoded; requested is whether the receivers asked for a key frame.
+    // Returns whether to encode a key frame.
+    public synchronized boolean onFrame(boolean requested, long nowMs) {
+        if (requested) {
+            receiverRequests++;
+            pending = true;
+        }
+        if (forced) {
+            forced = false;
+            pending = false;
+            forcedKeyFrames++;
+            lastKeyFrameMs = nowMs;
+            return true;
+        }
+        if (pending && nowMs - lastKeyFrameMs >= windowMs) {
+            pending = false;
+            lastKeyFrameMs = nowMs;
+            return true;
+        }
+        if (requested && pending) {
+            heldRequests++;
+        }
+        return false;
+    }
+
+    // Every key frame the encoder produced, including the ones it decided on itself
+    public synchronized void onKeyFrameEncoded(long nowMs) {
+        keyFrames++;
+        lastKeyFrameMs = Math.max(lastKeyFrameMs, nowMs);
+    }
+
+    public synchronized void onEncoderStarted() {
+        encoders++;
+    }
+
+    public synchronized void onEncoderReleased() {
+        encoders = Math.max(0, encoders - 1);
+    }
+
+    public synchronized String summary() {
+        return keyFrames + " key frames encoded, " + receiverRequests + " requested by receivers ("
+                + heldRequests + " held for the window), " + forcedKeyFrames + " forced";
+    }
+}
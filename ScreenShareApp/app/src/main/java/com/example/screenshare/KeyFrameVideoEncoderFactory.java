@@ -0,0 +1,141 @@
+package com.example.screenshare;
+
+import android.os.SystemClock;
+import android.util.Log;
+import org.webrtc.EncodedImage;
+import org.webrtc.VideoCodecInfo;
+import org.webrtc.VideoCodecStatus;
+import org.webrtc.VideoEncoder;
+import org.webrtc.VideoEncoderFactory;
+import org.webrtc.VideoEncoderFallback;
+import org.webrtc.VideoFrame;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// Routes the hardware encoders' key frame decisions through a KeyFrameScheduler. Like
+// DefaultVideoEncoderFactory it falls back to the software encoders (when given them) for
+// codecs without a hardware encoder, and when a hardware encoder fails. The software encoders
+// are native and cannot be wrapped; they keep WebRTC's own handling of key frame requests.
+public class KeyFrameVideoEncoderFactory implements VideoEncoderFactory {
+    private static final String TAG = "KeyFrameEncoder";
+    private static final EncodedImage.FrameType[] KEY = {EncodedImage.FrameType.VideoFrameKey};
+    private static final EncodedImage.FrameType[] DELTA = {EncodedImage.FrameType.VideoFrameDelta};
+
+    private final VideoEncoderFactory hardware;
+    private final VideoEncoderFactory software;
+    private final KeyFrameScheduler scheduler;
+
+    // software may be null: hardware encoders only
+    public KeyFrameVideoEncoderFactory(VideoEncoderFactory hardware, VideoEncoderFactory software,
+                                       KeyFrameScheduler scheduler) {
+        this.hardware = hardware;
+        this.software = software;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public VideoCodecInfo[] getSupportedCodecs() {
+        Set<VideoCodecInfo> codecs = new LinkedHashSet<>();
+        if (software != null) {
+            for (VideoCodecInfo info : software.getSupportedCodecs()) {
+                codecs.add(info);
+            }
+        }
+        for (VideoCodecInfo info : hardware.getSupportedCodecs()) {
+            codecs.add(info);
+        }
+        return codecs.toArray(new VideoCodecInfo[0]);
+    }
+
+    @Override
+    public VideoEncoder createEncoder(VideoCodecInfo info) {
+        VideoEncoder hardwareEncoder = hardware.createEncoder(info);
+        VideoEncoder softwareEncoder = software != null ? software.createEncoder(info) : null;
+        if (hardwareEncoder == null) {
+            return softwareEncoder;
+        }
+        VideoEncoder scheduled = new ScheduledEncoder(hardwareEncoder, scheduler);
+        return softwareEncoder != null ? new VideoEncoderFallback(softwareEncoder, scheduled) : scheduled;
+    }
+
+    private static final class ScheduledEncoder implements VideoEncoder {
+        private final VideoEncoder delegate;
+        private final KeyFrameScheduler scheduler;
+        private boolean started;
+
+        ScheduledEncoder(VideoEncoder delegate, KeyFrameScheduler scheduler) {
+            this.delegate = delegate;
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public VideoCodecStatus initEncode(Settings settings, Callback encodeCallback) {
+            VideoCodecStatus status = delegate.initEncode(settings, (frame, info) -> {
+                if (frame.frameType == EncodedImage.FrameType.VideoFrameKey) {
+                    scheduler.onKeyFrameEncoded(SystemClock.elapsedRealtime());
+                }
+                encodeCallback.onEncodedFrame(frame, info);
+            });
+            if (status == VideoCodecStatus.OK && !started) {
+                started = true;
+                scheduler.onEncoderStarted();
+            }
+            return status;
+        }
+
+        @Override
+        public VideoCodecStatus release() {
+            if (started) {
+                started = false;
+                scheduler.onEncoderReleased();
+                Log.d(TAG, scheduler.summary());
+            }
+            return delegate.release();
+        }
+
+        @Override
+        public VideoCodecStatus encode(VideoFrame frame, EncodeInfo info) {
+            boolean requested = false;
+            for (EncodedImage.FrameType type : info.frameTypes) {
+                requested |= type == EncodedImage.FrameType.VideoFrameKey;
+            }
+            boolean key = scheduler.onFrame(requested, SystemClock.elapsedRealtime());
+            return delegate.encode(frame, key == requested ? info : new EncodeInfo(key ? KEY : DELTA));
+        }
+
+        @Override
+        public VideoCodecStatus setRateAllocation(BitrateAllocation allocation, int framerate) {
+            return delegate.setRateAllocation(allocation, framerate);
+        }
+
+        @Override
+        public VideoCodecStatus setRates(RateControlParameters parameters) {
+            return delegate.setRates(parameters);
+        }
+
+        @Override
+        public ScalingSettings getScalingSettings() {
+            return delegate.getScalingSettings();
+        }
+
+        @Override
+        public ResolutionBitrateLimits[] getResolutionBitrateLimits() {
+            return delegate.getResolutionBitrateLimits();
+        }
+
+        @Override
+        public EncoderInfo getEncoderInfo() {
+            return delegate.getEncoderInfo();
+        }
+
+        @Override
+        public boolean isHardwareEncoder() {
+            return delegate.isHardwareEncoder();
+        }
+
+        @Override
+        public String getImplementationName() {
+            return delegate.getImplementationName();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.screenshare;
+
+// How the video stream recovers from packet loss. Applied to both local and remote SDP,
+// so switching profiles takes one renegotiation. Profiles only differ in FEC: NACK and RTX
+// stay negotiated in all of them, since FEC cannot repair every loss on its own.
+public enum LossResilienceProfile {
+    // Clean links: retransmissions are cheap, FEC would only waste bandwidth
+    NACK_ONLY(Fec.NONE),
+    // Moderate loss: RED/ULPFEC repairs single losses without waiting for a NACK round-trip
+    ULPFEC(Fec.ULPFEC),
+    // Heavy loss or long RTT: FlexFEC also protects H264 and recovers bursts
+    FLEXFEC(Fec.FLEXFEC);
+
+    public enum Fec {
+        NONE,
+        ULPFEC,
+        FLEXFEC
+    }
+
+    private final Fec fec;
+
+    LossResilienceProfile(Fec fec) {
+        this.fec = fec;
+    }
+
+    public Fec getFec() {
+        return fec;
+    }
+
+    public SdpTransformer toSdpTransformer() {
+        SdpTransformerChain chain = new SdpTransformerChain();
+        switch (fec) {
+            case NONE:
+                chain.add(SdpTransformers.removeFec());
+                break;
+            case ULPFEC:
+                chain.add(SdpTransformers.removeCodecs("video", "flexfec-03"));
+                break;
+            case FLEXFEC:
+                chain.add(SdpTransformers.removeCodecs("video", "red", "ulpfec"));
+                break;
+        }
+        return chain;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.screenshare;
+
+// Picks a LossResilienceProfile from periodic loss/RTT samples (remote-inbound-rtp stats).
+// Stepping up needs a few consecutive bad samples, stepping down a longer clean period,
+// so a single burst does not trigger a renegotiation.
+public class LossResilienceSelector {
+    static final double ULPFEC_LOSS = 0.01;
+    static final double FLEXFEC_LOSS = 0.04;
+    // Above this RTT a NACK round-trip costs more than a frame interval at 15fps
+    static final double HIGH_RTT_MS = 250;
+    static final int SAMPLES_TO_STEP_UP = 3;
+    static final int SAMPLES_TO_STEP_DOWN = 10;
+    private static final double SMOOTHING = 0.3;
+
+    private LossResilienceProfile current;
+    private double smoothedLoss = -1;
+    private double smoothedRttMs = -1;
+    private int upVotes;
+    private int downVotes;
+
+    public LossResilienceSelector(LossResilienceProfile initial) {
+        this.current = initial;
+    }
+
+    public LossResilienceProfile getCurrent() {
+        return current;
+    }
+
+    public double getSmoothedLoss() {
+        return smoothedLoss;
+    }
+
+    public double getSmoothedRttMs() {
+        return smoothedRttMs;
+    }
+
+    // Feeds one sample; returns the new profile when it changes, otherwise null
+    public LossResilienceProfile onSample(double lossFraction, double rttMs) {
+        smoothedLoss = smoothedLoss < 0 ? lossFraction : smoothedLoss + SMOOTHING * (lossFraction - smoothedLoss);
+        smoothedRttMs = smoothedRttMs < 0 ? rttMs : smoothedRttMs + SMOOTHING * (rttMs - smoothedRttMs);
+
+        LossResilienceProfile target = targetFor(smoothedLoss, smoothedRttMs);
+        if (target.ordinal() > current.ordinal()) {
+            downVotes = 0;
+            if (++upVotes >= SAMPLES_TO_STEP_UP) {
+                return switchTo(target);
+            }
+        } else if (target.ordinal() < current.ordinal()) {
+            upVotes = 0;
+            if (++downVotes >= SAMPLES_TO_STEP_DOWN) {
+                // One step at a time on the way down
+                return switchTo(LossResilienceProfile.values()[current.ordinal() - 1]);
+            }
+        } else {
+            upVotes = 0;
+            downVotes = 0;
+        }
+        return null;
+    }
+
+    static LossResilienceProfile targetFor(double loss, double rttMs) {
+        if (loss >= FLEXFEC_LOSS || (loss >= ULPFEC_LOSS && rttMs >= HIGH_RTT_MS)) {
+            return LossResilienceProfile.FLEXFEC;
+        }
+        if (loss >= ULPFEC_LOSS) {
+            return LossResilienceProfile.ULPFEC;
+        }
+        return LossResilienceProfile.NACK_ONLY;
+    }
+
+    private LossResilienceProfile switchTo(LossResilienceProfile profile) {
+        current = profile;
+        upVotes = 0;
+        downVotes = 0;
+        return profile;
+    }
+}
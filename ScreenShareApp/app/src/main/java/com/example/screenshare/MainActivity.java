@@ -3,6 +3,7 @@ package com.example.screenshare;
 import android.Manifest;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Bundle;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
@@ -10,21 +11,50 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import com.google.android.material.button.MaterialButton;
+import com.google.android.material.switchmaterial.SwitchMaterial;
 
 public class MainActivity extends AppCompatActivity {
     private static final int PERMISSION_REQUEST_CODE = 100;
 
+    private SwitchMaterial hideSystemBarsSwitch;
+    private SwitchMaterial shareAudioSwitch;
+    private SwitchMaterial deviceAudioSwitch;
+    private SwitchMaterial tileModeSwitch;
+    private SwitchMaterial e2eeSwitch;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        // Open the shared signaling socket now so the first session skips the handshake
+        ScreenShareApplication.get(this).getSignalingClient().connect();
+        // Likewise fetch STUN/TURN servers (and TURN credentials) ahead of the first connection
+        ScreenShareApplication.get(this).getIceServerProvider().prefetch();
+
         MaterialButton shareButton = findViewById(R.id.shareButton);
         MaterialButton viewButton = findViewById(R.id.viewButton);
+        hideSystemBarsSwitch = findViewById(R.id.hideSystemBarsSwitch);
+        shareAudioSwitch = findViewById(R.id.shareAudioSwitch);
+        deviceAudioSwitch = findViewById(R.id.deviceAudioSwitch);
+        tileModeSwitch = findViewById(R.id.tileModeSwitch);
+        e2eeSwitch = findViewById(R.id.e2eeSwitch);
+
+        // AudioPlaybackCapture only exists on Android 10+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            deviceAudioSwitch.setVisibility(android.view.View.GONE);
+        }
+        shareAudioSwitch.setOnCheckedChangeListener((button, checked) -> deviceAudioSwitch.setEnabled(checked));
+        e2eeSwitch.setOnCheckedChangeListener((button, checked) -> {
+            if (checked && !EncryptingVideoEncoderFactory.isAvailable()) {
+                button.setChecked(false);
+                Toast.makeText(this, R.string.e2ee_unavailable, Toast.LENGTH_LONG).show();
+            }
+        });
 
         shareButton.setOnClickListener(v -> {
             if (checkPermissions()) {
-                startActivity(new Intent(MainActivity.this, ShareScreenActivity.class));
+                startSharing();
             } else {
                 requestPermissions();
             }
@@ -33,9 +63,46 @@ public class MainActivity extends AppCompatActivity {
         viewButton.setOnClickListener(v -> {
             startActivity(new Intent(MainActivity.this, ViewScreenActivity.class));
         });
+
+        findViewById(R.id.monitorWallButton).setOnClickListener(v ->
+                startActivity(new Intent(MainActivity.this, MonitorWallActivity.class)));
+    }
+
+    private void startSharing() {
+        Intent intent = new Intent(MainActivity.this, ShareScreenActivity.class);
+        intent.putExtra(ShareScreenActivity.EXTRA_STARTED_AT, android.os.SystemClock.elapsedRealtime());
+        intent.putExtra(ShareScreenActivity.EXTRA_HIDE_SYSTEM_BARS, hideSystemBarsSwitch.isChecked());
+        intent.putExtra(ShareScreenActivity.EXTRA_AUDIO_MODE, getAudioMode().name());
+        intent.putExtra(ShareScreenActivity.EXTRA_TILE_MODE, tileModeSwitch.isChecked());
+        intent.putExtra(ShareScreenActivity.EXTRA_E2EE, e2eeSwitch.isChecked());
+        // Lets tools/netem-loopback.sh pin a profile via "am start --es loss_profile ..."
+        String lossProfile = getIntent().getStringExtra(ShareScreenActivity.EXTRA_LOSS_PROFILE);
+        if (lossProfile != null) {
+            intent.putExtra(ShareScreenActivity.EXTRA_LOSS_PROFILE, lossProfile);
+        }
+        // Same for unattended runs: "--es synthetic_content SCROLLING_TEXT"
+        String synthetic = getIntent().getStringExtra(ShareScreenActivity.EXTRA_SYNTHETIC_CONTENT);
+        if (synthetic != null) {
+            intent.putExtra(ShareScreenActivity.EXTRA_SYNTHETIC_CONTENT, synthetic);
+            intent.putExtra(ShareScreenActivity.EXTRA_SYNTHETIC_FORMAT,
+                    getIntent().getStringExtra(ShareScreenActivity.EXTRA_SYNTHETIC_FORMAT));
+        }
+        startActivity(intent);
+    }
+
+    private WebRTCClient.AudioMode getAudioMode() {
+        if (!shareAudioSwitch.isChecked()) {
+            return WebRTCClient.AudioMode.NONE;
+        }
+        return deviceAudioSwitch.isChecked() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                ? WebRTCClient.AudioMode.DEVICE : WebRTCClient.AudioMode.MICROPHONE;
     }
 
     private boolean checkPermissions() {
+        // Recording permission is only needed when audio is shared
+        if (getAudioMode() == WebRTCClient.AudioMode.NONE) {
+            return true;
+        }
         return ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO)
                 == PackageManager.PERMISSION_GRANTED;
     }
@@ -53,7 +120,7 @@ public class MainActivity extends AppCompatActivity {
 
         if (requestCode == PERMISSION_REQUEST_CODE) {
             if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-                startActivity(new Intent(MainActivity.this, ShareScreenActivity.class));
+                startSharing();
             } else {
                 Toast.makeText(this, "Permissions required for screen sharing",
                         Toast.LENGTH_SHORT).show();
@@ -0,0 +1,67 @@
+package com.example.screenshare;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+// Debug-only detector for work that blocks the UI thread: a background thread keeps posting a
+// tick to the main looper and logs the main thread's stack when a tick is late.
+public class MainThreadWatchdog {
+    private static final String TAG = "MainThreadWatchdog";
+    private static final long CHECK_INTERVAL_MS = 500;
+    private static final long BLOCKED_THRESHOLD_MS = 250;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile long lastTickMs;
+    private volatile boolean running;
+    private Thread thread;
+
+    private final Runnable tick = () -> lastTickMs = SystemClock.uptimeMillis();
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::watch, "MainThreadWatchdog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private void watch() {
+        while (running) {
+            long postedAt = SystemClock.uptimeMillis();
+            mainHandler.post(tick);
+            try {
+                Thread.sleep(BLOCKED_THRESHOLD_MS);
+                if (lastTickMs < postedAt) {
+                    reportBlocked(postedAt);
+                }
+                Thread.sleep(CHECK_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void reportBlocked(long postedAt) throws InterruptedException {
+        Throwable stack = new Throwable("Main thread stack");
+        stack.setStackTrace(Looper.getMainLooper().getThread().getStackTrace());
+        Log.w(TAG, "Main thread blocked for over " + BLOCKED_THRESHOLD_MS + " ms", stack);
+
+        // Report how long the stall lasted once the tick finally runs
+        while (running && lastTickMs < postedAt) {
+            Thread.sleep(50);
+        }
+        Log.w(TAG, "Main thread was blocked for " + (lastTickMs - postedAt) + " ms");
+    }
+}
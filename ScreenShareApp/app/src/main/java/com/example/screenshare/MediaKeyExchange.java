@@ -0,0 +1,107 @@
+package com.example.screenshare;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Locale;
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+// Gets the FrameCrypto key from host to viewer without the signaling server, which relays it,
+// being able to read it. The viewer sends an ephemeral P-256 public key with join-session;
+// the host answers 'media-key' with its own ephemeral public key and the media key wrapped
+// with AES-GCM under HKDF-SHA256 of the ECDH secret. The server still relays the public keys
+// and could swap in its own to sit in the middle, so both sides show safetyCode(): the codes
+// only match when host and viewer agreed on each other's keys. Plain Java.
+public class MediaKeyExchange {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] WRAP_INFO = "screenshare media-key wrap v1".getBytes(UTF_8);
+    private static final int WRAP_KEY_LENGTH = 16;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    private final KeyPair keyPair;
+    private final SecureRandom random = new SecureRandom();
+
+    public MediaKeyExchange() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"), random);
+            keyPair = generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("P-256 not available", e);
+        }
+    }
+
+    // X.509 SubjectPublicKeyInfo, as sent over signaling
+    public byte[] getPublicKey() {
+        return keyPair.getPublic().getEncoded();
+    }
+
+    // Host: [12-byte IV][media key encrypted for the peer][16-byte tag]; keyId is authenticated
+    public byte[] wrap(byte[] peerPublicKey, int keyId, byte[] mediaKey) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, wrapKey(peerPublicKey), new GCMParameterSpec(TAG_BITS, iv));
+        cipher.updateAAD(new byte[]{(byte) keyId});
+        byte[] sealed = cipher.doFinal(mediaKey);
+        byte[] wrapped = Arrays.copyOf(iv, IV_LENGTH + sealed.length);
+        System.arraycopy(sealed, 0, wrapped, IV_LENGTH, sealed.length);
+        return wrapped;
+    }
+
+    // Viewer: the media key, or an exception when it was not wrapped for this exchange
+    public byte[] unwrap(byte[] peerPublicKey, int keyId, byte[] wrapped) throws GeneralSecurityException {
+        if (wrapped.length <= IV_LENGTH) {
+            throw new GeneralSecurityException("Wrapped key too short");
+        }
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, wrapKey(peerPublicKey),
+                new GCMParameterSpec(TAG_BITS, wrapped, 0, IV_LENGTH));
+        cipher.updateAAD(new byte[]{(byte) keyId});
+        return cipher.doFinal(wrapped, IV_LENGTH, wrapped.length - IV_LENGTH);
+    }
+
+    // Six digits both sides display, e.g. "482 913"; the same on both only without a key swap
+    public static String safetyCode(byte[] hostPublicKey, byte[] viewerPublicKey) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(hostPublicKey);
+            byte[] hash = digest.digest(viewerPublicKey);
+            int value = ((hash[0] & 0x7F) << 24 | (hash[1] & 0xFF) << 16 | (hash[2] & 0xFF) << 8 | (hash[3] & 0xFF))
+                    % 1000000;
+            return String.format(Locale.US, "%03d %03d", value / 1000, value % 1000);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private SecretKeySpec wrapKey(byte[] peerPublicKey) throws GeneralSecurityException {
+        PublicKey peer = KeyFactory.getInstance("EC").generatePublic(new X509EncodedKeySpec(peerPublicKey));
+        KeyAgreement agreement = KeyAgreement.getInstance("ECDH");
+        agreement.init(keyPair.getPrivate());
+        agreement.doPhase(peer, true);
+        byte[] secret = agreement.generateSecret();
+
+        // HKDF-SHA256 with an all-zero salt; one expand block is plenty for a 16-byte key
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(new byte[32], "HmacSHA256"));
+        byte[] prk = mac.doFinal(secret);
+        mac.init(new SecretKeySpec(prk, "HmacSHA256"));
+        mac.update(WRAP_INFO);
+        byte[] okm = mac.doFinal(new byte[]{1});
+        return new SecretKeySpec(Arrays.copyOf(okm, WRAP_KEY_LENGTH), "AES");
+    }
+}
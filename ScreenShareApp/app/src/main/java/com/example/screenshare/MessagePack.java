@@ -0,0 +1,288 @@
+package com.example.screenshare;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// MessagePack subset used by the binary signaling encoding: nil, bool, int, float64, str, bin,
+// array and map. Mirrors signaling-server/msgpack.js.
+public final class MessagePack {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private MessagePack() {
+    }
+
+    public static byte[] encode(Object value) {
+        Writer writer = new Writer();
+        writer.writeValue(value);
+        return writer.toByteArray();
+    }
+
+    public static Object decode(byte[] data) {
+        return decode(data, 0, data.length);
+    }
+
+    public static Object decode(byte[] data, int offset, int length) {
+        Reader reader = new Reader(data, offset, offset + length);
+        Object value = reader.read();
+        if (reader.position != reader.end) {
+            throw new IllegalArgumentException("Trailing bytes after MessagePack value");
+        }
+        return value;
+    }
+
+    private static final class Writer extends ByteArrayOutputStream {
+        Writer() {
+            super(256);
+        }
+
+        void writeValue(Object value) {
+            if (value == null) {
+                write(0xc0);
+            } else if (value instanceof Boolean) {
+                write((Boolean) value ? 0xc3 : 0xc2);
+            } else if (value instanceof Float || value instanceof Double) {
+                writeDouble(((Number) value).doubleValue());
+            } else if (value instanceof Number) {
+                writeLong(((Number) value).longValue());
+            } else if (value instanceof String) {
+                writeString((String) value);
+            } else if (value instanceof byte[]) {
+                writeBinary((byte[]) value);
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                writeHeader(map.size(), 0x80, 0xde, 0xdf);
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeString(String.valueOf(entry.getKey()));
+                    writeValue(entry.getValue());
+                }
+            } else if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                writeHeader(list.size(), 0x90, 0xdc, 0xdd);
+                for (Object item : list) {
+                    writeValue(item);
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported MessagePack type: " + value.getClass());
+            }
+        }
+
+        private void writeLong(long value) {
+            if (value >= 0 && value < 128) {
+                write((int) value);
+            } else if (value < 0 && value >= -32) {
+                write((int) (value & 0xff));
+            } else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                write(0xd2);
+                writeInt((int) value);
+            } else {
+                write(0xd3);
+                writeInt((int) (value >>> 32));
+                writeInt((int) value);
+            }
+        }
+
+        private void writeDouble(double value) {
+            long bits = Double.doubleToLongBits(value);
+            write(0xcb);
+            writeInt((int) (bits >>> 32));
+            writeInt((int) bits);
+        }
+
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(UTF_8);
+            if (bytes.length < 32) {
+                write(0xa0 | bytes.length);
+            } else if (bytes.length < 0x100) {
+                write(0xd9);
+                write(bytes.length);
+            } else if (bytes.length < 0x10000) {
+                write(0xda);
+                writeShort(bytes.length);
+            } else {
+                write(0xdb);
+                writeInt(bytes.length);
+            }
+            write(bytes, 0, bytes.length);
+        }
+
+        private void writeBinary(byte[] bytes) {
+            if (bytes.length < 0x100) {
+                write(0xc4);
+                write(bytes.length);
+            } else if (bytes.length < 0x10000) {
+                write(0xc5);
+                writeShort(bytes.length);
+            } else {
+                write(0xc6);
+                writeInt(bytes.length);
+            }
+            write(bytes, 0, bytes.length);
+        }
+
+        private void writeHeader(int size, int fixPrefix, int prefix16, int prefix32) {
+            if (size < 16) {
+                write(fixPrefix | size);
+            } else if (size < 0x10000) {
+                write(prefix16);
+                writeShort(size);
+            } else {
+                write(prefix32);
+                writeInt(size);
+            }
+        }
+
+        private void writeShort(int value) {
+            write((value >>> 8) & 0xff);
+            write(value & 0xff);
+        }
+
+        private void writeInt(int value) {
+            write((value >>> 24) & 0xff);
+            write((value >>> 16) & 0xff);
+            write((value >>> 8) & 0xff);
+            write(value & 0xff);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] data;
+        private final int end;
+        private int position;
+
+        Reader(byte[] data, int position, int end) {
+            this.data = data;
+            this.position = position;
+            this.end = end;
+        }
+
+        Object read() {
+            int type = readByte();
+            if (type <= 0x7f) {
+                return (long) type;
+            }
+            if (type >= 0xe0) {
+                return (long) (byte) type;
+            }
+            if ((type & 0xf0) == 0x80) {
+                return readMap(type & 0x0f);
+            }
+            if ((type & 0xf0) == 0x90) {
+                return readArray(type & 0x0f);
+            }
+            if ((type & 0xe0) == 0xa0) {
+                return readString(type & 0x1f);
+            }
+
+            switch (type) {
+                case 0xc0:
+                    return null;
+                case 0xc2:
+                    return Boolean.FALSE;
+                case 0xc3:
+                    return Boolean.TRUE;
+                case 0xc4:
+                    return readBinary(readByte());
+                case 0xc5:
+                    return readBinary(readShort());
+                case 0xc6:
+                    return readBinary(readInt());
+                case 0xca:
+                    return (double) Float.intBitsToFloat(readInt());
+                case 0xcb:
+                    return Double.longBitsToDouble(readLong());
+                case 0xcc:
+                    return (long) readByte();
+                case 0xcd:
+                    return (long) readShort();
+                case 0xce:
+                    return readInt() & 0xffffffffL;
+                case 0xcf:
+                case 0xd3:
+                    return readLong();
+                case 0xd0:
+                    return (long) (byte) readByte();
+                case 0xd1:
+                    return (long) (short) readShort();
+                case 0xd2:
+                    return (long) readInt();
+                case 0xd9:
+                    return readString(readByte());
+                case 0xda:
+                    return readString(readShort());
+                case 0xdb:
+                    return readString(readInt());
+                case 0xdc:
+                    return readArray(readShort());
+                case 0xdd:
+                    return readArray(readInt());
+                case 0xde:
+                    return readMap(readShort());
+                case 0xdf:
+                    return readMap(readInt());
+                default:
+                    throw new IllegalArgumentException("Unsupported MessagePack type 0x" + Integer.toHexString(type));
+            }
+        }
+
+        private Map<String, Object> readMap(int size) {
+            // Each entry takes at least a byte; a larger count must not size an allocation
+            require(size);
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                Object key = read();
+                map.put(String.valueOf(key), read());
+            }
+            return map;
+        }
+
+        private List<Object> readArray(int size) {
+            require(size);
+            List<Object> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(read());
+            }
+            return list;
+        }
+
+        private String readString(int length) {
+            require(length);
+            String value = new String(data, position, length, UTF_8);
+            position += length;
+            return value;
+        }
+
+        private byte[] readBinary(int length) {
+            require(length);
+            byte[] value = new byte[length];
+            System.arraycopy(data, position, value, 0, length);
+            position += length;
+            return value;
+        }
+
+        private int readByte() {
+            require(1);
+            return data[position++] & 0xff;
+        }
+
+        private int readShort() {
+            return (readByte() << 8) | readByte();
+        }
+
+        private int readInt() {
+            return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        }
+
+        private long readLong() {
+            return ((long) readInt() << 32) | (readInt() & 0xffffffffL);
+        }
+
+        private void require(int length) {
+            if (length < 0 || length > end - position) {
+                throw new IllegalArgumentException("Truncated MessagePack data");
+            }
+        }    }
+}
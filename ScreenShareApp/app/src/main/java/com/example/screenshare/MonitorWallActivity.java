@@ -0,0 +1,205 @@
+package com.example.screenshare;
+
+import android.content.res.Configuration;
+import android.graphics.Rect;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.GridLayout;
+import android.widget.ScrollView;
+import android.widget.TextView;
+import android.widget.Toast;
+import androidx.appcompat.app.AppCompatActivity;
+import com.google.android.material.textfield.TextInputEditText;
+import java.util.ArrayList;
+import java.util.List;
+
+// Watches several shared screens at once, e.g. on an operations tablet. Only as many screens
+// decode as the DecoderBudget allows: the focused one first, then the visible ones in grid
+// order. Screens scrolled out of view, over budget or behind a stopped activity are paused.
+// Tap a screen to focus it (the host sends full quality, the others a low layer), long-press
+// to remove it.
+public class MonitorWallActivity extends AppCompatActivity implements WallScreen.Listener {
+    private static final String TAG = "MonitorWallActivity";
+    private static final int MAX_SCREENS = 12;
+    // Scrolling settles before decoders are paused or resumed, each of which renegotiates
+    private static final long BUDGET_DELAY_MS = 300;
+
+    private final List<WallScreen> screens = new ArrayList<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable budgetUpdate = this::updateBudget;
+    private final Rect visibleRect = new Rect();
+    private SignalingClient signalingClient;
+    private DecoderBudget budget;
+    private GridLayout grid;
+    private ScrollView scrollView;
+    private TextView summaryTextView;
+    private TextInputEditText pinEditText;
+    private WallScreen focused;
+    private boolean started = false;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_monitor_wall);
+
+        signalingClient = ScreenShareApplication.get(this).getSignalingClient();
+        budget = DecoderBudget.forDevice();
+        Log.d(TAG, "Decoder budget: " + budget.getLimit());
+
+        grid = findViewById(R.id.wallGrid);
+        scrollView = findViewById(R.id.wallScrollView);
+        summaryTextView = findViewById(R.id.wallSummaryTextView);
+        pinEditText = findViewById(R.id.wallPinEditText);
+        grid.setColumnCount(columnCount());
+
+        findViewById(R.id.addScreenButton).setOnClickListener(v -> addScreen());
+        scrollView.getViewTreeObserver().addOnScrollChangedListener(this::scheduleBudgetUpdate);
+        updateSummary();
+    }
+
+    private void addScreen() {
+        String pin = pinEditText.getText() != null ? pinEditText.getText().toString().trim() : "";
+        if (pin.length() != 6) {
+            Toast.makeText(this, "Please enter a valid 6-digit PIN", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (screens.size() >= MAX_SCREENS) {
+            Toast.makeText(this, getString(R.string.wall_full, MAX_SCREENS), Toast.LENGTH_SHORT).show();
+            return;
+        }
+        for (WallScreen screen : screens) {
+            if (screen.getPin().equals(pin)) {
+                return;
+            }
+        }
+        pinEditText.setText("");
+
+        WallScreen screen = new WallScreen(this, pin, signalingClient, this);
+        screens.add(screen);
+        grid.addView(screen.getView(), tileLayoutParams());
+        screen.getView().setOnClickListener(v -> toggleFocus(screen));
+        screen.getView().setOnLongClickListener(v -> {
+            removeScreen(screen);
+            return true;
+        });
+        screen.start();
+        scheduleBudgetUpdate();
+    }
+
+    private void removeScreen(WallScreen screen) {
+        if (!screens.remove(screen)) {
+            return;
+        }
+        if (focused == screen) {
+            focused = null;
+        }
+        grid.removeView(screen.getView());
+        screen.release();
+        scheduleBudgetUpdate();
+    }
+
+    private void toggleFocus(WallScreen screen) {
+        if (focused != null) {
+            focused.setFocused(false);
+        }
+        focused = focused == screen ? null : screen;
+        if (focused != null) {
+            focused.setFocused(true);
+        }
+        updateBudget();
+    }
+
+    private void scheduleBudgetUpdate() {
+        mainHandler.removeCallbacks(budgetUpdate);
+        mainHandler.postDelayed(budgetUpdate, BUDGET_DELAY_MS);
+    }
+
+    private void updateBudget() {
+        mainHandler.removeCallbacks(budgetUpdate);
+        boolean[] visible = new boolean[screens.size()];
+        for (int i = 0; i < visible.length; i++) {
+            visible[i] = started && screens.get(i).getView().getLocalVisibleRect(visibleRect);
+        }
+        boolean[] active = budget.assign(visible, screens.indexOf(focused));
+        for (int i = 0; i < active.length; i++) {
+            screens.get(i).setActive(active[i]);
+        }
+        updateSummary();
+    }
+
+    private void updateSummary() {
+        int decoding = 0;
+        long memory = 0;
+        for (WallScreen screen : screens) {
+            if (screen.isConnected() && screen.isActive()) {
+                decoding++;
+            }
+            memory += screen.getDecoderMemoryBytes();
+        }
+        summaryTextView.setText(getString(R.string.wall_summary,
+                decoding, budget.getLimit(), memory / (1024 * 1024)));
+    }
+
+    private int columnCount() {
+        return getResources().getConfiguration().orientation == Configuration.ORIENTATION_LANDSCAPE ? 4 : 3;
+    }
+
+    // Portrait phone screens, letterboxed by the renderer otherwise
+    private GridLayout.LayoutParams tileLayoutParams() {
+        int width = getResources().getDisplayMetrics().widthPixels / grid.getColumnCount();
+        GridLayout.LayoutParams params = new GridLayout.LayoutParams();
+        params.width = width;
+        params.height = width * 16 / 9;
+        return params;
+    }
+
+    // Declared in the manifest so rotating does not drop every session
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        grid.setColumnCount(columnCount());
+        for (WallScreen screen : screens) {
+            screen.getView().setLayoutParams(tileLayoutParams());
+        }
+        scheduleBudgetUpdate();
+    }
+
+    // WallScreen.Listener implementation
+    @Override
+    public void onScreenChanged(WallScreen screen) {
+        updateSummary();
+    }
+
+    @Override
+    public void onScreenEnded(WallScreen screen, String reason) {
+        Toast.makeText(this, screen.getPin() + ": " + reason, Toast.LENGTH_SHORT).show();
+        removeScreen(screen);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        started = true;
+        scheduleBudgetUpdate();
+    }
+
+    // Nothing decodes while the wall is not on screen
+    @Override
+    protected void onStop() {
+        super.onStop();
+        started = false;
+        updateBudget();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mainHandler.removeCallbacks(budgetUpdate);
+        for (WallScreen screen : screens) {
+            screen.release();
+        }
+        screens.clear();
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.screenshare;
+
+import android.util.Log;
+import org.webrtc.PeerConnection;
+import org.webrtc.SessionDescription;
+
+// "Perfect negotiation" for one PeerConnection: either side may start a negotiation at any
+// time. When both offer at once (glare), the polite peer rolls back its own offer and answers,
+// and the impolite peer ignores the colliding offer. Rounds requested while one is in flight
+// are coalesced into a single follow-up round.
+// Single-threaded (WebRTCClient's worker) and synchronous: every Peer call has completed when
+// it returns.
+public class Negotiator {
+    private static final String TAG = "Negotiator";
+
+    // A PeerConnection as seen by the negotiator; results are null/false on failure
+    public interface Peer {
+        PeerConnection.SignalingState signalingState();
+        SessionDescription createOffer(boolean iceRestart);
+        SessionDescription createAnswer();
+        boolean setLocalDescription(SessionDescription description);
+        boolean setRemoteDescription(SessionDescription description);
+        // Hands our offer or answer to signaling
+        void sendDescription(SessionDescription description);
+    }
+
+    private final Peer peer;
+    private final boolean polite;
+    // Renegotiation events before the first round are covered by that round
+    private boolean started = false;
+    private boolean pending = false;
+    private boolean pendingIceRestart = false;
+
+    public Negotiator(Peer peer, boolean polite) {
+        this.peer = peer;
+        this.polite = polite;
+    }
+
+    // A round requested by the application, e.g. a (re)joining viewer. An offer that is still
+    // unanswered is replaced rather than waited for.
+    public void negotiate(boolean iceRestart) {
+        started = true;
+        if (state() == PeerConnection.SignalingState.HAVE_LOCAL_OFFER) {
+            Log.d(TAG, "Replacing unanswered offer");
+            if (!rollback()) {
+                return;
+            }
+        }
+        offerOrQueue(iceRestart);
+    }
+
+    // PeerConnection.Observer.onRenegotiationNeeded: tracks or transceivers changed
+    public void onRenegotiationNeeded() {
+        if (!started) {
+            return;
+        }
+        offerOrQueue(false);
+    }
+
+    public void onRemoteDescription(SessionDescription description) {
+        started = true;
+        if (description.type == SessionDescription.Type.OFFER) {
+            onRemoteOffer(description);
+        } else if (description.type == SessionDescription.Type.ANSWER) {
+            onRemoteAnswer(description);
+        }
+        flushPending();
+    }
+
+    private void onRemoteOffer(SessionDescription offer) {
+        boolean collision = state() != PeerConnection.SignalingState.STABLE;
+        if (collision && !polite) {
+            Log.d(TAG, "Offer collision, keeping ours");
+            return;
+        }
+        if (collision) {
+            Log.d(TAG, "Offer collision, rolling back ours");
+            if (!rollback()) {
+                return;
+            }
+            // Whatever our offer carried still has to be negotiated
+            pending = true;
+        }
+        if (!peer.setRemoteDescription(offer)) {
+            return;
+        }
+        SessionDescription answer = peer.createAnswer();
+        if (answer != null && peer.setLocalDescription(answer)) {
+            peer.sendDescription(answer);
+        }
+    }
+
+    private void onRemoteAnswer(SessionDescription answer) {
+        if (state() != PeerConnection.SignalingState.HAVE_LOCAL_OFFER) {
+            Log.w(TAG, "Ignoring answer in state " + state());
+            return;
+        }
+        if (peer.setRemoteDescription(answer)) {
+            return;
+        }
+        // Usually the answer to an offer we replaced since; the one to the current offer follows
+        Log.w(TAG, "Answer rejected, waiting for the next one");
+    }
+
+    private void offerOrQueue(boolean iceRestart) {
+        if (state() != PeerConnection.SignalingState.STABLE) {
+            pending = true;
+            pendingIceRestart |= iceRestart;
+            return;
+        }
+        SessionDescription offer = peer.createOffer(iceRestart);
+        if (offer != null && peer.setLocalDescription(offer)) {
+            peer.sendDescription(offer);
+        }
+    }
+
+    private void flushPending() {
+        if (!pending || state() != PeerConnection.SignalingState.STABLE) {
+            return;
+        }
+        boolean iceRestart = pendingIceRestart;
+        pending = false;
+        pendingIceRestart = false;
+        Log.d(TAG, "Running queued negotiation");
+        offerOrQueue(iceRestart);
+    }
+
+    private boolean rollback() {
+        return peer.setLocalDescription(new SessionDescription(SessionDescription.Type.ROLLBACK, ""));
+    }
+
+    private PeerConnection.SignalingState state() {
+        return peer.signalingState();
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.screenshare;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoSink;
+import java.util.ArrayDeque;
+
+// Render stage between a remote VideoTrack and its renderer. Decoded frames are queued and
+// handed on at most one per display vsync (Choreographer), so a burst from the network is
+// spread out instead of shown as judder. A frame that waited longer than the latency budget
+// is dropped when a newer one is queued, so stale frames never build up latency.
+// Also crops each frame to the zoom/pan viewport. cropAndScale() at 1:1 only changes the
+// texture matrix (or the plane offsets of an I420 buffer), so zooming costs no copy; the
+// renderer scales the crop on the GPU.
+public class PacedVideoSink implements VideoSink {
+    private static final String TAG = "PacedVideoSink";
+    public static final long DEFAULT_LATENCY_BUDGET_MS = 50;
+    public static final float MAX_ZOOM = 4f;
+    // Beyond this even fresh frames are dropped (oldest first)
+    private static final int MAX_QUEUE = 4;
+    private static final long STATS_INTERVAL_MS = 10000;
+
+    private static final class Queued {
+        final VideoFrame frame;
+        final long arrivedAtNs;
+
+        Queued(VideoFrame frame, long arrivedAtNs) {
+            this.frame = frame;
+            this.arrivedAtNs = arrivedAtNs;
+        }
+    }
+
+    private final VideoSink target;
+    private final long latencyBudgetNs;
+    private final HandlerThread thread = new HandlerThread("RenderPacer");
+    private final Handler handler;
+    private final ArrayDeque<Queued> queue = new ArrayDeque<>();
+    private final Choreographer.FrameCallback frameCallback = this::onVsync;
+    // Pacer thread only
+    private Choreographer choreographer;
+    private boolean callbackPosted = false;
+    private long statsSinceMs;
+
+    // Guarded by queue
+    private boolean released = false;
+    private long renderedFrames;
+    private long droppedFrames;
+    private long lateFrames;
+
+    // Normalized viewport: zoom 1 shows the whole frame
+    private volatile float zoom = 1f;
+    private volatile float centerX = 0.5f;
+    private volatile float centerY = 0.5f;
+
+    public PacedVideoSink(VideoSink target, long latencyBudgetMs) {
+        this.target = target;
+        this.latencyBudgetNs = latencyBudgetMs * 1000000L;
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        // A Choreographer belongs to the looper of the thread that gets it
+        handler.post(() -> {
+            choreographer = Choreographer.getInstance();
+            statsSinceMs = SystemClock.elapsedRealtime();
+        });
+    }
+
+    // Decoder thread
+    @Override
+    public void onFrame(VideoFrame frame) {
+        synchronized (queue) {
+            if (released) {
+                return;
+            }
+            frame.retain();
+            queue.addLast(new Queued(frame, System.nanoTime()));
+            while (queue.size() > MAX_QUEUE) {
+                queue.pollFirst().frame.release();
+                droppedFrames++;
+            }
+        }
+        handler.post(this::scheduleVsync);
+    }
+
+    // Zoom 1..MAX_ZOOM around a normalized center; the center is clamped so the viewport
+    // stays inside the frame
+    public void setViewport(float zoom, float centerX, float centerY) {
+        float clampedZoom = Math.max(1f, Math.min(MAX_ZOOM, zoom));
+        float half = 0.5f / clampedZoom;
+        this.centerX = Math.max(half, Math.min(1f - half, centerX));
+        this.centerY = Math.max(half, Math.min(1f - half, centerY));
+        this.zoom = clampedZoom;
+    }
+
+    public float getZoom() {
+        return zoom;
+    }
+
+    public float getCenterX() {
+        return centerX;
+    }
+
+    public float getCenterY() {
+        return centerY;
+    }
+
+    // Maps a normalized position on the view to the normalized position in the full frame
+    public float toFrameX(float viewX) {
+        return centerX + (viewX - 0.5f) / zoom;
+    }
+
+    public float toFrameY(float viewY) {
+        return centerY + (viewY - 0.5f) / zoom;
+    }
+
+    // The inverse, e.g. to draw an overlay at a frame position; outside 0..1 when zoomed away
+    public float toViewX(float frameX) {
+        return (frameX - centerX) * zoom + 0.5f;
+    }
+
+    public float toViewY(float frameY) {
+        return (frameY - centerY) * zoom + 0.5f;
+    }
+
+    public int getQueueDepth() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    public long getRenderedFrames() {
+        synchronized (queue) {
+            return renderedFrames;
+        }
+    }
+
+    // Frames never shown: superseded while over the latency budget, or queue overflow
+    public long getDroppedFrames() {
+        synchronized (queue) {
+            return droppedFrames;
+        }
+    }
+
+    // Frames shown although over the latency budget, because nothing newer had arrived
+    public long getLateFrames() {
+        synchronized (queue) {
+            return lateFrames;
+        }
+    }
+
+    // Drops the queued frames, e.g. once the sink is detached while the viewer is in the
+    // background, so the first frame shown on return is a fresh one
+    public void flush() {
+        synchronized (queue) {
+            for (Queued queued : queue) {
+                queued.frame.release();
+            }
+            queue.clear();
+        }
+    }
+
+    // Remove this sink from the track first
+    public void release() {
+        synchronized (queue) {
+            released = true;
+            for (Queued queued : queue) {
+                queued.frame.release();
+            }
+            queue.clear();
+        }
+        handler.post(() -> {
+            if (choreographer != null) {
+                choreographer.removeFrameCallback(frameCallback);
+            }
+        });
+        thread.quitSafely();
+    }
+
+    private void scheduleVsync() {
+        if (callbackPosted || choreographer == null) {
+            return;
+        }
+        callbackPosted = true;
+        choreographer.postFrameCallback(frameCallback);
+    }
+
+    private void onVsync(long frameTimeNanos) {
+        callbackPosted = false;
+        Queued next;
+        boolean more;
+        synchronized (queue) {
+            long now = System.nanoTime();
+            while (queue.size() > 1 && now - queue.peekFirst().arrivedAtNs > latencyBudgetNs) {
+                queue.pollFirst().frame.release();
+                droppedFrames++;
+            }
+            next = queue.pollFirst();
+            if (next == null) {
+                return;
+            }
+            if (now - next.arrivedAtNs > latencyBudgetNs) {
+                lateFrames++;
+            }
+            renderedFrames++;
+            more = !queue.isEmpty();
+        }
+
+        VideoFrame frame = next.frame;
+        VideoFrame viewport = crop(frame);
+        target.onFrame(viewport);
+        if (viewport != frame) {
+            viewport.release();
+        }
+        frame.release();
+
+        if (more) {
+            scheduleVsync();
+        }
+        logStats();
+    }
+
+    private VideoFrame crop(VideoFrame frame) {
+        float currentZoom = zoom;
+        // Viewer-side rotation does not happen for screen content; leave such frames alone
+        if (currentZoom <= 1f || frame.getRotation() != 0) {
+            return frame;
+        }
+        VideoFrame.Buffer buffer = frame.getBuffer();
+        int width = buffer.getWidth();
+        int height = buffer.getHeight();
+        // Even sizes and offsets keep the chroma planes aligned
+        int cropWidth = Math.max(2, Math.round(width / currentZoom) & ~1);
+        int cropHeight = Math.max(2, Math.round(height / currentZoom) & ~1);
+        int cropX = Math.max(0, Math.min(width - cropWidth, Math.round(centerX * width - cropWidth / 2f))) & ~1;
+        int cropY = Math.max(0, Math.min(height - cropHeight, Math.round(centerY * height - cropHeight / 2f))) & ~1;
+        VideoFrame.Buffer cropped = buffer.cropAndScale(cropX, cropY, cropWidth, cropHeight, cropWidth, cropHeight);
+        return new VideoFrame(cropped, frame.getRotation(), frame.getTimestampNs());
+    }
+
+    private void logStats() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - statsSinceMs < STATS_INTERVAL_MS) {
+            return;
+        }
+        statsSinceMs = now;
+        synchronized (queue) {
+            Log.d(TAG, "Rendered " + renderedFrames + ", dropped " + droppedFrames + ", late " + lateFrames
+                    + ", queued " + queue.size());
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.screenshare;
+
+import android.util.Log;
+import org.webrtc.DataChannel;
+import java.nio.ByteBuffer;
+
+// Pointer metadata on its own DataChannel, so pointer motion costs a few bytes instead of
+// re-encoded video, and touch moves skip the signaling server. Big-endian messages:
+//   TOUCH   viewer -> host   [1][u8 action][u16 x][u16 y]   remote touch input
+//   POINTER host -> viewer   [2][u8 shape][u16 x][u16 y]    the host's pointer, drawn by the viewer
+// Coordinates are normalized to 0..65535 across the shared region, like touch-event's 0..1.
+public class PointerChannel {
+    private static final String TAG = "PointerChannel";
+    public static final String LABEL = "pointer";
+    public static final int ID = 3;
+
+    private static final byte TOUCH = 1;
+    private static final byte POINTER = 2;
+    private static final int MESSAGE_SIZE = 6;
+    private static final String[] ACTIONS = {"DOWN", "MOVE", "UP"};
+    // Moves are skipped while this much is still queued; the next one carries the position
+    private static final long MOVE_HIGH_WATER = 4 * 1024;
+
+    public enum Shape {
+        HIDDEN,
+        // Finger lifted, shown briefly where it was
+        HOVER,
+        PRESSED
+    }
+
+    // Called on the WebRTC network thread
+    public interface Listener {
+        void onTouch(String action, float x, float y);
+        void onPointer(Shape shape, float x, float y);
+    }
+
+    // What the channel needs from a DataChannel, so the input path can run against a fake
+    // on a desktop JVM
+    public interface Transport {
+        boolean isOpen();
+        long bufferedAmount();
+        boolean send(ByteBuffer message);
+        void release();
+    }
+
+    private final Transport transport;
+    private final Listener listener;
+
+    public PointerChannel(DataChannel channel, Listener listener) {
+        this(new DataChannelTransport(channel), listener);
+        channel.registerObserver(new DataChannel.Observer() {
+            @Override
+            public void onBufferedAmountChange(long previousAmount) {
+            }
+
+            @Override
+            public void onStateChange() {
+                Log.d(TAG, "Pointer channel " + channel.state());
+            }
+
+            @Override
+            public void onMessage(DataChannel.Buffer buffer) {
+                if (buffer.binary) {
+                    PointerChannel.this.onMessage(buffer.data);
+                }
+            }
+        });
+    }
+
+    // Incoming messages go to onMessage()
+    public PointerChannel(Transport transport, Listener listener) {
+        this.transport = transport;
+        this.listener = listener;
+    }
+
+    public void onMessage(ByteBuffer data) {
+        if (data.remaining() < MESSAGE_SIZE) {
+            return;
+        }
+        byte type = data.get();
+        int value = data.get() & 0xFF;
+        float x = (data.getShort() & 0xFFFF) / 65535f;
+        float y = (data.getShort() & 0xFFFF) / 65535f;
+        if (type == TOUCH && value < ACTIONS.length) {
+            listener.onTouch(ACTIONS[value], x, y);
+        } else if (type == POINTER && value < Shape.values().length) {
+            listener.onPointer(Shape.values()[value], x, y);
+        }
+    }
+
+    public boolean isOpen() {
+        return transport.isOpen();
+    }
+
+    // False when the channel is not open; use signaling then. Under backpressure a move is
+    // skipped (and reported as sent).
+    public boolean sendTouch(String action, float x, float y) {
+        int index = -1;
+        for (int i = 0; i < ACTIONS.length; i++) {
+            if (ACTIONS[i].equals(action)) {
+                index = i;
+            }
+        }
+        if (index < 0 || !isOpen()) {
+            return false;
+        }
+        if (index == 1 && transport.bufferedAmount() > MOVE_HIGH_WATER) {
+            return true;
+        }
+        return send(TOUCH, index, x, y);
+    }
+
+    public boolean sendPointer(Shape shape, float x, float y) {
+        return isOpen() && send(POINTER, shape.ordinal(), x, y);
+    }
+
+    public void release() {
+        transport.release();
+    }
+
+    private boolean send(byte type, int value, float x, float y) {
+        ByteBuffer message = ByteBuffer.allocate(MESSAGE_SIZE);
+        message.put(type).put((byte) value).putShort(toU16(x)).putShort(toU16(y));
+        message.flip();
+        return transport.send(message);
+    }
+
+    private static short toU16(float normalized) {
+        return (short) Math.round(Math.max(0f, Math.min(1f, normalized)) * 65535);
+    }
+
+    private static final class DataChannelTransport implements Transport {
+        private final DataChannel channel;
+
+        DataChannelTransport(DataChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.state() == DataChannel.State.OPEN;
+        }
+
+        @Override
+        public long bufferedAmount() {
+            return channel.bufferedAmount();
+        }
+
+        @Override
+        public boolean send(ByteBuffer message) {
+            return channel.send(new DataChannel.Buffer(message, true));
+        }
+
+        // The channel itself is disposed by WebRTCClient
+        @Override
+        public void release() {
+            channel.unregisterObserver();
+        }
+    }
+}
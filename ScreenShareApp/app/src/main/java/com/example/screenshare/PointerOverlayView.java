@@ -0,0 +1,80 @@
+package com.example.screenshare;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+import androidx.core.content.ContextCompat;
+
+// Draws the host's pointer (from PointerChannel) over the remote screen, so it is composited
+// by the viewer instead of being encoded into the video. Follows the zoom of a PacedVideoSink
+// when one is set. A lifted pointer fades out after a moment.
+public class PointerOverlayView extends View {
+    private static final long HOVER_VISIBLE_MS = 800;
+    private static final float RADIUS_DP = 14;
+
+    private final Paint fill = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint ring = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final float radius;
+    private final Runnable hide = () -> setPointer(PointerChannel.Shape.HIDDEN, 0, 0);
+    private PacedVideoSink viewport;
+    private PointerChannel.Shape shape = PointerChannel.Shape.HIDDEN;
+    private float pointerX;
+    private float pointerY;
+
+    public PointerOverlayView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        float density = context.getResources().getDisplayMetrics().density;
+        radius = RADIUS_DP * density;
+        int accent = ContextCompat.getColor(context, R.color.accent);
+        fill.setColor(accent);
+        fill.setAlpha(0x80);
+        ring.setColor(accent);
+        ring.setStyle(Paint.Style.STROKE);
+        ring.setStrokeWidth(2 * density);
+    }
+
+    // Main thread
+    public void setViewport(PacedVideoSink viewport) {
+        this.viewport = viewport;
+        invalidate();
+    }
+
+    // Main thread; x and y normalized to the full remote screen
+    public void setPointer(PointerChannel.Shape shape, float x, float y) {
+        this.shape = shape;
+        pointerX = x;
+        pointerY = y;
+        removeCallbacks(hide);
+        if (shape == PointerChannel.Shape.HOVER) {
+            postDelayed(hide, HOVER_VISIBLE_MS);
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (shape == PointerChannel.Shape.HIDDEN) {
+            return;
+        }
+        float x = pointerX;
+        float y = pointerY;
+        if (viewport != null) {
+            x = viewport.toViewX(x);
+            y = viewport.toViewY(y);
+        }
+        x *= getWidth();
+        y *= getHeight();
+        if (shape == PointerChannel.Shape.PRESSED) {
+            canvas.drawCircle(x, y, radius, fill);
+        }
+        canvas.drawCircle(x, y, radius, ring);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(hide);
+    }
+}
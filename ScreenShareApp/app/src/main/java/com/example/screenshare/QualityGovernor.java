@@ -0,0 +1,109 @@
+package com.example.screenshare;
+
+// Picks a QualityLevel from thermal and battery samples. Worse conditions step down right away,
+// before the OS starts throttling; recovery goes one level at a time and only after conditions
+// have stayed clearly better (with margins) for STEP_UP_HOLD_MS. Plain Java so it can be driven
+// by synthetic timelines; DeviceConditionMonitor feeds it on the device.
+public class QualityGovernor {
+    // Same values as PowerManager.THERMAL_STATUS_*
+    static final int THERMAL_NONE = 0;
+    static final int THERMAL_LIGHT = 1;
+    static final int THERMAL_MODERATE = 2;
+    static final int THERMAL_SEVERE = 3;
+
+    // PowerManager.getThermalHeadroom(): 1.0 is where the OS starts throttling
+    static final float HEADROOM_LIGHT = 0.75f;
+    static final float HEADROOM_MODERATE = 0.85f;
+    static final float HEADROOM_SEVERE = 0.95f;
+    static final float HEADROOM_HYSTERESIS = 0.1f;
+
+    static final int BATTERY_REDUCED = 30;
+    static final int BATTERY_LOW = 15;
+    static final int BATTERY_HYSTERESIS = 5;
+
+    static final long STEP_UP_HOLD_MS = 60000;
+
+    private QualityLevel current;
+    private long betterSinceMs = -1;
+
+    public QualityGovernor(QualityLevel initial) {
+        this.current = initial;
+    }
+
+    public QualityLevel getCurrent() {
+        return current;
+    }
+
+    // Feeds one sample; headroom is NaN when unavailable (before Android 11). Returns the new
+    // level when it changes, otherwise null.
+    public QualityLevel onSample(long nowMs, int thermalStatus, float headroom,
+                                 int batteryPercent, boolean charging) {
+        QualityLevel target = targetFor(thermalStatus, headroom, batteryPercent, charging);
+        if (target.ordinal() > current.ordinal()) {
+            betterSinceMs = -1;
+            return switchTo(target);
+        }
+
+        // Only count towards recovery while even pessimistic readings allow a better level
+        QualityLevel recovery = targetFor(thermalStatus, headroom + HEADROOM_HYSTERESIS,
+                batteryPercent - BATTERY_HYSTERESIS, charging);
+        if (recovery.ordinal() >= current.ordinal()) {
+            betterSinceMs = -1;
+            return null;
+        }
+        if (betterSinceMs < 0) {
+            betterSinceMs = nowMs;
+            return null;
+        }
+        if (nowMs - betterSinceMs >= STEP_UP_HOLD_MS) {
+            betterSinceMs = nowMs;
+            return switchTo(QualityLevel.values()[current.ordinal() - 1]);
+        }
+        return null;
+    }
+
+    static QualityLevel targetFor(int thermalStatus, float headroom, int batteryPercent, boolean charging) {
+        int severity = Math.max(thermalStatus, headroomSeverity(headroom));
+        QualityLevel thermal;
+        if (severity >= THERMAL_SEVERE) {
+            thermal = QualityLevel.MINIMAL;
+        } else if (severity == THERMAL_MODERATE) {
+            thermal = QualityLevel.LOW;
+        } else if (severity == THERMAL_LIGHT) {
+            thermal = QualityLevel.REDUCED;
+        } else {
+            thermal = QualityLevel.FULL;
+        }
+
+        QualityLevel battery = QualityLevel.FULL;
+        if (!charging && batteryPercent >= 0) {
+            if (batteryPercent <= BATTERY_LOW) {
+                battery = QualityLevel.LOW;
+            } else if (batteryPercent <= BATTERY_REDUCED) {
+                battery = QualityLevel.REDUCED;
+            }
+        }
+        return thermal.ordinal() >= battery.ordinal() ? thermal : battery;
+    }
+
+    static int headroomSeverity(float headroom) {
+        if (Float.isNaN(headroom)) {
+            return THERMAL_NONE;
+        }
+        if (headroom >= HEADROOM_SEVERE) {
+            return THERMAL_SEVERE;
+        }
+        if (headroom >= HEADROOM_MODERATE) {
+            return THERMAL_MODERATE;
+        }
+        if (headroom >= HEADROOM_LIGHT) {
+            return THERMAL_LIGHT;
+        }
+        return THERMAL_NONE;
+    }
+
+    private QualityLevel switchTo(QualityLevel level) {
+        current = level;
+        return level;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.screenshare;
+
+// Capture and encoder settings the host can step through when the device runs hot or low
+// on battery. Ordered from best to cheapest.
+public enum QualityLevel {
+    FULL(720, 1280, 15, 0),
+    REDUCED(540, 960, 12, 1500),
+    LOW(360, 640, 10, 800),
+    MINIMAL(270, 480, 5, 400);
+
+    private final int width;
+    private final int height;
+    private final int fps;
+    // 0 leaves the bitrate to bandwidth estimation
+    private final int maxBitrateKbps;
+
+    QualityLevel(int width, int height, int fps, int maxBitrateKbps) {
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        this.maxBitrateKbps = maxBitrateKbps;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFps() {
+        return fps;
+    }
+
+    public int getMaxBitrateKbps() {
+        return maxBitrateKbps;
+    }
+}
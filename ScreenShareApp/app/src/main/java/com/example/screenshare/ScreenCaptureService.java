@@ -3,17 +3,101 @@ package com.example.screenshare;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
+import android.app.PendingIntent;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
+import android.app.Activity;
+import android.graphics.Point;
+import android.graphics.RectF;
+import android.media.projection.MediaProjection;
+import android.media.projection.MediaProjectionManager;
+import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.WindowManager;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
+import org.webrtc.IceCandidate;
+import org.webrtc.MediaStream;
+import org.webrtc.PeerConnection;
+import org.webrtc.ScreenCapturerAndroid;
+import org.webrtc.SessionDescription;
+import org.webrtc.VideoCapturer;
+import java.security.GeneralSecurityException;
+import java.util.List;
 
-public class ScreenCaptureService extends Service {
+// Owns the host side of a sharing session (capturer, WebRTCClient and the signaling session),
+// so it keeps running across activity recreation and while the user is in other apps.
+// ShareScreenActivity binds to it and only renders its state.
+public class ScreenCaptureService extends Service implements
+        SignalingClient.SignalingEvents, WebRTCClient.WebRTCEvents {
+    private static final String TAG = "ScreenCaptureService";
     private static final String CHANNEL_ID = "ScreenCaptureChannel";
     private static final int NOTIFICATION_ID = 1;
 
+    // Result data of the MediaProjection permission request
+    public static final String EXTRA_PROJECTION_DATA = "projection_data";
+    public static final String EXTRA_PERMISSION_RESULT_AT = "permission_result_at";
+    public static final String ACTION_STOP = "com.example.screenshare.action.STOP_SHARING";
+
+    // How long a joining viewer may wait for an unfinished bandwidth probe
+    private static final long PROBE_WAIT_MS = 1500;
+    // Longer screen edge in tile mode; tile messages carry 16-bit sizes
+    private static final int MAX_TILE_SCREEN_EDGE = 1920;
+
+    public enum State {
+        IDLE,
+        WAITING_FOR_VIEWER,
+        CONNECTING,
+        CONNECTED,
+        CONNECTION_LOST,
+        STOPPED
+    }
+
+    // Called on the main thread
+    public interface Listener {
+        void onStateChanged(State state);
+        void onError(String message);
+    }
+
+    public class LocalBinder extends Binder {
+        public ScreenCaptureService getService() {
+            return ScreenCaptureService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Null until the server has allocated it
+    private volatile String pin;
+    private String createRequestId;
+    private volatile State state = State.IDLE;
+    private Listener listener;
+    private volatile SignalingClient signalingClient;
+    private volatile WebRTCClient webRTCClient;
+    private BandwidthProbe bandwidthProbe;
+    private volatile long viewerJoinedAtMs;
+    private DeviceConditionMonitor conditionMonitor;
+    private SessionTimeline timeline;
+    // The encoder runs at the cheaper of the two
+    private volatile QualityLevel deviceQuality = QualityLevel.FULL;
+    private volatile QualityLevel viewerQuality = QualityLevel.FULL;
+    // Tile mode only
+    private MediaProjection tileProjection;
+    private volatile TileSender tileSender;
+    // Null unless the video is end-to-end encrypted
+    private FrameCrypto frameCrypto;
+    // Of the current viewer's key exchange; null without E2EE or viewer
+    private volatile String safetyCode;
+    private volatile PointerChannel pointerChannel;
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -22,22 +106,607 @@ public class ScreenCaptureService extends Service {
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle("Screen Sharing")
-                .setContentText("Your screen is being shared")
-                .setSmallIcon(android.R.drawable.ic_menu_share)
-                .setPriority(NotificationCompat.PRIORITY_LOW)
-                .build();
+        if (intent != null && ACTION_STOP.equals(intent.getAction())) {
+            stopSharing();
+            return START_NOT_STICKY;
+        }
 
-        startForeground(NOTIFICATION_ID, notification);
+        // MediaProjection may only be created once the service is in the foreground
+        startForeground(NOTIFICATION_ID, buildNotification());
 
+        Intent projectionData = intent != null ? intent.getParcelableExtra(EXTRA_PROJECTION_DATA) : null;
+        if (webRTCClient == null && projectionData != null) {
+            try {
+                startSharing(intent, projectionData);
+            } catch (Exception e) {
+                Log.e(TAG, "Initialization failed", e);
+                notifyError(e.getMessage());
+                stopSharing();
+            }
+        }
         return START_NOT_STICKY;
     }
 
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return binder;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getPin() {
+        return pin;
+    }
+
+    // For the user to compare with the viewer's, see MediaKeyExchange
+    public String getSafetyCode() {
+        return safetyCode;
+    }
+
+    public boolean isSharing() {
+        return state != State.IDLE && state != State.STOPPED;
+    }
+
+    // Null while not sharing; usable once a viewer is connected
+    public FileTransfer getFileTransfer() {
+        WebRTCClient client = webRTCClient;
+        return client != null ? client.getFileTransfer() : null;
+    }
+
+    private void startSharing(Intent options, Intent projectionData) {
+        pin = null;
+        timeline = new SessionTimeline("host", options.getLongExtra(ShareScreenActivity.EXTRA_STARTED_AT, 0));
+        timeline.markAt("permission_result", options.getLongExtra(EXTRA_PERMISSION_RESULT_AT, 0));
+        timeline.mark("service_started");
+
+        Log.d(TAG, "Starting WebRTC initialization...");
+        initializeWebRTC(options, projectionData);
+        webRTCClient.setTimeline(timeline);
+        Log.d(TAG, "WebRTC initialized successfully!");
+
+        // Register on the shared signaling connection after WebRTC is ready
+        signalingClient = ScreenShareApplication.get(this).getSignalingClient();
+        createRequestId = signalingClient.createSession(this);
+
+        // Step quality down before thermal throttling or a flat battery degrade the stream
+        conditionMonitor = new DeviceConditionMonitor(this, level -> {
+            deviceQuality = level;
+            applyQualityLevel();
+        });
+        conditionMonitor.start();
+
+        setState(State.WAITING_FOR_VIEWER);
+    }
+
+    private void initializeWebRTC(Intent options, Intent projectionData) {
+        boolean e2ee = options.getBooleanExtra(ShareScreenActivity.EXTRA_E2EE, false);
+        if (e2ee && !EncryptingVideoEncoderFactory.isAvailable()) {
+            // Sharing anyway would either send nothing or send the video unencrypted
+            throw new IllegalStateException(getString(R.string.e2ee_unavailable));
+        }
+        frameCrypto = e2ee ? FrameCrypto.forSender() : null;
+        webRTCClient = new WebRTCClient(this, this, resolveAudioMode(options), frameCrypto);
+        webRTCClient.setIceCandidatePolicy(resolveIcePolicy(options));
+        webRTCClient.enableFileTransfer(TransferNotifier.receiveDir(this), new TransferNotifier(this));
+        if (options.getBooleanExtra(ShareScreenActivity.EXTRA_TILE_MODE, false)) {
+            initializeTileCapture(projectionData);
+        }
+        webRTCClient.addNegotiatedChannel(PointerChannel.LABEL, PointerChannel.ID,
+                channel -> pointerChannel = new PointerChannel(channel, new PointerChannel.Listener() {
+                    @Override
+                    public void onTouch(String action, float x, float y) {
+                        // Injecting forks a process; keep that off the network thread
+                        mainHandler.post(() -> onTouchEvent(x, y, action));
+                    }
+
+                    @Override
+                    public void onPointer(PointerChannel.Shape shape, float x, float y) {
+                        // Not used by the host
+                    }
+                }));
+        // Created now, while no viewer is connected yet, so candidates are pre-gathered
+        webRTCClient.initializePeerConnection();
+
+        String lossProfile = options.getStringExtra(ShareScreenActivity.EXTRA_LOSS_PROFILE);
+        if (lossProfile != null) {
+            try {
+                webRTCClient.setLossResilienceProfile(LossResilienceProfile.valueOf(lossProfile));
+                Log.d(TAG, "Pinning loss resilience profile: " + lossProfile);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Unknown loss resilience profile: " + lossProfile);
+            }
+        }
+
+        // Only offer the codecs the viewers decode in hardware; a smaller offer also shrinks signaling
+        webRTCClient.getLocalSdpTransformers()
+                .add(SdpTransformers.keepCodecs("video", "VP8", "H264", "VP9"));
+
+        if (tileProjection != null) {
+            return;
+        }
+
+        // Start screen capture
+        VideoCapturer capturer;
+        String synthetic = options.getStringExtra(ShareScreenActivity.EXTRA_SYNTHETIC_CONTENT);
+        if (synthetic != null) {
+            // The projection permission was still granted, but nothing is mirrored
+            Log.d(TAG, "Sharing synthetic content: " + synthetic);
+            capturer = SyntheticScreenCapturer.create(synthetic,
+                    options.getStringExtra(ShareScreenActivity.EXTRA_SYNTHETIC_FORMAT));
+        } else {
+            capturer = new ScreenCapturerAndroid(
+                    projectionData,
+                    new MediaProjection.Callback() {
+                        @Override
+                        public void onStop() {
+                            super.onStop();
+                            mainHandler.post(() -> stopSharing());
+                        }
+                    }
+            );
+        }
+
+        // Capture and encoding start only once a viewer joins
+        webRTCClient.setCaptureRegion(resolveCaptureRegion(options));
+        webRTCClient.prepareLocalVideoCapture(capturer);
+    }
+
+    // No video track: the screen goes over the tiles DataChannel. The capture region does not
+    // apply here.
+    private void initializeTileCapture(Intent projectionData) {
+        MediaProjectionManager manager =
+                (MediaProjectionManager) getSystemService(Context.MEDIA_PROJECTION_SERVICE);
+        tileProjection = manager.getMediaProjection(Activity.RESULT_OK, projectionData);
+        // Must be registered before creating a virtual display on Android 14
+        tileProjection.registerCallback(new MediaProjection.Callback() {
+            @Override
+            public void onStop() {
+                mainHandler.post(() -> stopSharing());
+            }
+        }, mainHandler);
+
+        Point size = new Point();
+        WindowManager windowManager = (WindowManager) getSystemService(Context.WINDOW_SERVICE);
+        windowManager.getDefaultDisplay().getRealSize(size);
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        float scale = Math.min(1f, (float) MAX_TILE_SCREEN_EDGE / Math.max(size.x, size.y));
+        int width = Math.round(size.x * scale);
+        int height = Math.round(size.y * scale);
+        int density = Math.round(metrics.densityDpi * scale);
+
+        MediaProjection projection = tileProjection;
+        webRTCClient.addNegotiatedChannel(TileProtocol.CHANNEL_LABEL, TileProtocol.CHANNEL_ID,
+                channel -> tileSender = new TileSender(channel, projection, width, height, density));
+    }
+
+    private WebRTCClient.AudioMode resolveAudioMode(Intent options) {
+        String mode = options.getStringExtra(ShareScreenActivity.EXTRA_AUDIO_MODE);
+        if (mode == null) {
+            return WebRTCClient.AudioMode.NONE;
+        }
+        try {
+            return WebRTCClient.AudioMode.valueOf(mode);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Unknown audio mode: " + mode);
+            return WebRTCClient.AudioMode.NONE;
+        }
+    }
+
+    private IceCandidatePolicy resolveIcePolicy(Intent options) {
+        String policy = options.getStringExtra(ShareScreenActivity.EXTRA_ICE_POLICY);
+        if (policy == null) {
+            return IceCandidatePolicy.ALL;
+        }
+        try {
+            return IceCandidatePolicy.valueOf(policy);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Unknown ICE candidate policy: " + policy);
+            return IceCandidatePolicy.ALL;
+        }
+    }
+
+    private RectF resolveCaptureRegion(Intent options) {
+        RectF region = options.getParcelableExtra(ShareScreenActivity.EXTRA_CAPTURE_REGION);
+        if (!options.getBooleanExtra(ShareScreenActivity.EXTRA_HIDE_SYSTEM_BARS, false)) {
+            return region;
+        }
+
+        RectF withoutBars = ScreenRegionProcessor.excludingSystemBars(this);
+        if (region == null) {
+            return withoutBars;
+        }
+        return region.intersect(withoutBars) ? region : withoutBars;
+    }
+
+    public void stopSharing() {
+        if (state == State.STOPPED) {
+            return;
+        }
+
+        if (conditionMonitor != null) {
+            conditionMonitor.stop();
+            conditionMonitor = null;
+        }
+
+        // Leave the shared socket open for the next session
+        if (signalingClient != null) {
+            if (pin != null) {
+                signalingClient.endSession(pin);
+            } else {
+                signalingClient.cancelCreate(createRequestId);
+            }
+            signalingClient = null;
+        }
+
+        // Before the client disposes its channels
+        if (tileSender != null) {
+            tileSender.release();
+            tileSender = null;
+        }
+        if (pointerChannel != null) {
+            pointerChannel.release();
+            pointerChannel = null;
+        }
+        if (tileProjection != null) {
+            tileProjection.stop();
+            tileProjection = null;
+        }
+
+        if (webRTCClient != null) {
+            webRTCClient.close();
+            webRTCClient = null;
+        }
+
+        setState(State.STOPPED);
+        stopForeground(true);
+        stopSelf();
+    }
+
+    private void setState(State newState) {
+        state = newState;
+        mainHandler.post(() -> {
+            if (listener != null) {
+                listener.onStateChanged(newState);
+            }
+        });
+    }
+
+    private void notifyError(String message) {
+        mainHandler.post(() -> {
+            if (listener != null) {
+                listener.onError(message);
+            }
+        });
+    }
+
+    // SignalingClient.SignalingEvents implementation
+    @Override
+    public void onSessionCreated(String pin) {
+        Log.d(TAG, "Session created with PIN: " + pin);
+        this.pin = pin;
+        // Re-render so the activity shows the PIN
+        setState(state);
+        SessionTimeline current = timeline;
+        SignalingClient client = signalingClient;
+        if (current != null && client != null) {
+            // Usually the shared socket was connected before the session started (offset 0)
+            current.markAt("socket_connected", client.getConnectedAtMs());
+            current.mark("session_created");
+        }
+
+        // Probe the uplink while waiting so the first offer can start at the right bitrate
+        bandwidthProbe = new BandwidthProbe(SignalingClient.SERVER_URL);
+        bandwidthProbe.start();
+    }
+
+    @Override
+    public void onSessionJoined(String pin) {
+        // Not used by the host
+    }
+
+    @Override
+    public void onViewerJoined(String viewerId, byte[] viewerPublicKey) {
+        Log.d(TAG, "Viewer joined: " + viewerId);
+        viewerJoinedAtMs = SystemClock.elapsedRealtime();
+        markTimeline("viewer_joined");
+
+        // A new key per viewer, sent ahead of the offer so the viewer's decoder is created with it
+        FrameCrypto crypto = frameCrypto;
+        SignalingClient signaling = signalingClient;
+        safetyCode = null;
+        if (crypto != null && signaling != null) {
+            sendMediaKey(crypto, signaling, viewerPublicKey);
+        }
+        setState(State.CONNECTING);
+
+        WebRTCClient client = webRTCClient;
+        BandwidthProbe probe = bandwidthProbe;
+        if (client == null) {
+            return;
+        }
+        TileSender sender = tileSender;
+        if (sender != null) {
+            sender.resume();
+        } else {
+            client.resumeCapture();
+        }
+        if (probe == null) {
+            client.createOffer();
+            return;
+        }
+
+        // Usually finished already; otherwise wait briefly without holding up signaling
+        new Thread(() -> {
+            int startKbps = probe.awaitStartBitrateKbps(PROBE_WAIT_MS);
+            Log.d(TAG, "Start bitrate from probe: " + startKbps + " kbps");
+            client.setStartBitrate(startKbps);
+
+            // Create and send offer
+            client.createOffer();
+        }).start();
+    }
+
+    // WebRTCClient queues these on its own worker. Offers come from viewer-side renegotiation;
+    // ours win when both collide.
+    @Override
+    public void onOfferReceived(SessionDescription offer) {
+        Log.d(TAG, "Offer received");
+        WebRTCClient client = webRTCClient;
+        if (client != null) {
+            client.setRemoteDescription(offer);
+        }
+    }
+
+    @Override
+    public void onAnswerReceived(SessionDescription answer) {
+        Log.d(TAG, "Answer received");
+        markTimeline("answer_received");
+        WebRTCClient client = webRTCClient;
+        if (client != null) {
+            client.setRemoteDescription(answer);
+        }
+    }
+
+    @Override
+    public void onIceCandidateReceived(IceCandidate candidate) {
+        Log.d(TAG, "ICE candidate received");
+        WebRTCClient client = webRTCClient;
+        if (client != null) {
+            client.addIceCandidate(candidate);
+        }
+    }
+
+    @Override
+    public void onError(String message) {
+        Log.e(TAG, "Error: " + message);
+        notifyError(message);
+    }
+
+    @Override
+    public void onHostDisconnected() {
+        // Not used by the host
+    }
+
+    @Override
+    public void onViewerDisconnected() {
+        safetyCode = null;
+        WebRTCClient client = webRTCClient;
+        TileSender sender = tileSender;
+        if (sender != null) {
+            sender.pause();
+        } else if (client != null) {
+            client.pauseCapture();
+        }
+        // The next viewer starts from full quality
+        viewerQuality = QualityLevel.FULL;
+        applyQualityLevel();
+        setState(State.WAITING_FOR_VIEWER);
+    }
+
+    @Override
+    public void onSessionEnded() {
+        mainHandler.post(this::stopSharing);
+    }
+
+    @Override
+    public void onQualityHint(QualityLevel level) {
+        Log.d(TAG, "Viewer quality hint: " + level);
+        viewerQuality = level;
+        applyQualityLevel();
+    }
+
+    // Wrapped for the viewer's public key, so the signaling server cannot read it
+    private void sendMediaKey(FrameCrypto crypto, SignalingClient signaling, byte[] viewerPublicKey) {
+        if (viewerPublicKey == null) {
+            // Never fall back to sending the key in the clear
+            Log.w(TAG, "Viewer sent no public key, it cannot decrypt the video");
+            notifyError("The viewer's app cannot receive end-to-end encrypted video");
+            return;
+        }
+        crypto.rotateKey();
+        MediaKeyExchange exchange = new MediaKeyExchange();
+        try {
+            byte[] wrapped = exchange.wrap(viewerPublicKey, crypto.getKeyId(), crypto.getKey());
+            signaling.sendMediaKey(pin, crypto.getKeyId(), exchange.getPublicKey(), wrapped);
+            safetyCode = MediaKeyExchange.safetyCode(exchange.getPublicKey(), viewerPublicKey);
+        } catch (GeneralSecurityException e) {
+            Log.e(TAG, "Cannot wrap the media key", e);
+            notifyError("End-to-end key exchange failed");
+        }
+    }
+
+    @Override
+    public void onMediaKey(int keyId, byte[] hostPublicKey, byte[] wrappedKey) {
+        // Not used by the host
+    }
+
+    @Override
+    public void onIceServers(List<PeerConnection.IceServer> servers, long ttlSeconds) {
+        if (webRTCClient != null) {
+            webRTCClient.updateIceServers(servers, ttlSeconds);
+        }
+    }
+
+    @Override
+    public void onTouchEvent(float x, float y, String action) {
+        Log.d(TAG, "Touch event received: x=" + x + ", y=" + y + ", action=" + action);
+        // Note: Simulating touch events on Android requires either:
+        // 1. Root access
+        // 2. Accessibility Service
+        // 3. Using "input tap" via ADB shell commands
+        // For now, we'll use ADB shell commands which requires shell permissions
+
+        WebRTCClient client = webRTCClient;
+        if (client == null) {
+            return;
+        }
+        try {
+            // Get screen dimensions
+            android.view.WindowManager windowManager =
+                    (android.view.WindowManager) getSystemService(Context.WINDOW_SERVICE);
+            android.graphics.Point size = new android.graphics.Point();
+            windowManager.getDefaultDisplay().getRealSize(size);
+
+            // Viewer coordinates are relative to the shared region, map them back to the full screen
+            ScreenRegionProcessor region = client.getRegionProcessor();
+            int screenX = (int) (region.toScreenX(x) * size.x);
+            int screenY = (int) (region.toScreenY(y) * size.y);
+
+            // Execute touch using input command (requires shell permissions)
+            String cmd = "";
+            if ("DOWN".equals(action)) {
+                cmd = "input touchscreen swipe " + screenX + " " + screenY + " " + screenX + " " + screenY + " 100";
+            } else if ("UP".equals(action)) {
+                // Tap gesture
+                cmd = "input tap " + screenX + " " + screenY;
+            }
+
+            if (!cmd.isEmpty()) {
+                Runtime.getRuntime().exec(cmd);
+                Log.d(TAG, "Executed touch command: " + cmd);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error simulating touch", e);
+        }
+
+        // Echo where the touch landed, drawn by the viewer rather than encoded into the video
+        PointerChannel pointer = pointerChannel;
+        if (pointer != null) {
+            pointer.sendPointer("UP".equals(action) ? PointerChannel.Shape.HOVER : PointerChannel.Shape.PRESSED, x, y);
+        }
+    }
+
+    // WebRTCClient.WebRTCEvents implementation
+    @Override
+    public void onIceCandidate(IceCandidate candidate) {
+        Log.d(TAG, "Local ICE candidate: " + candidate);
+        SignalingClient client = signalingClient;
+        if (client != null) {
+            client.sendIceCandidate(pin, candidate);
+        }
+    }
+
+    @Override
+    public void onAddStream(MediaStream stream) {
+        // Not used by the host
+    }
+
+    @Override
+    public void onConnectionChange(PeerConnection.IceConnectionState state) {
+        Log.d(TAG, "Connection state: " + state);
+        switch (state) {
+            case CONNECTED:
+                setState(State.CONNECTED);
+                if (viewerJoinedAtMs > 0) {
+                    Log.d(TAG, "Viewer join to connected: "
+                            + (SystemClock.elapsedRealtime() - viewerJoinedAtMs) + " ms");
+                    viewerJoinedAtMs = 0;
+                }
+                break;
+            case DISCONNECTED:
+            case FAILED:
+                setState(State.CONNECTION_LOST);
+                break;
+            case CHECKING:
+                setState(State.CONNECTING);
+                break;
+        }
+    }
+
+    @Override
+    public void onOfferCreated(SessionDescription offer) {
+        Log.d(TAG, "Offer created, sending to signaling server");
+        markTimeline("offer_sent");
+        SignalingClient client = signalingClient;
+        if (client != null) {
+            client.sendOffer(pin, offer);
+        }
+    }
+
+    @Override
+    public void onAnswerCreated(SessionDescription answer) {
+        Log.d(TAG, "Answer created, sending to signaling server");
+        SignalingClient client = signalingClient;
+        if (client != null) {
+            client.sendAnswer(pin, answer);
+        }
+    }
+
+    @Override
+    public void onPeerConnectionChange(PeerConnection.PeerConnectionState state) {
+        // The host's part of the setup ends once DTLS is up; the viewer reports first frame
+        SessionTimeline current = timeline;
+        SignalingClient client = signalingClient;
+        if (state == PeerConnection.PeerConnectionState.CONNECTED && current != null && client != null
+                && current.finish()) {
+            client.sendTimeline(pin, current.toJson());
+        }
+    }
+
+    private void applyQualityLevel() {
+        WebRTCClient client = webRTCClient;
+        QualityLevel device = deviceQuality;
+        QualityLevel viewer = viewerQuality;
+        if (client != null) {
+            client.setQualityLevel(device.ordinal() >= viewer.ordinal() ? device : viewer);
+        }
+    }
+
+    private void markTimeline(String milestone) {
+        SessionTimeline current = timeline;
+        if (current != null) {
+            current.mark(milestone);
+        }
+    }
+
+    private Notification buildNotification() {
+        int immutable = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0;
+
+        Intent openIntent = new Intent(this, ShareScreenActivity.class)
+                .addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        PendingIntent open = PendingIntent.getActivity(this, 0, openIntent,
+                PendingIntent.FLAG_UPDATE_CURRENT | immutable);
+
+        Intent stopIntent = new Intent(this, ScreenCaptureService.class).setAction(ACTION_STOP);
+        PendingIntent stop = PendingIntent.getService(this, 1, stopIntent,
+                PendingIntent.FLAG_UPDATE_CURRENT | immutable);
+
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setContentTitle("Screen Sharing")
+                .setContentText("Your screen is being shared")
+                .setSmallIcon(android.R.drawable.ic_menu_share)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setContentIntent(open)
+                .addAction(android.R.drawable.ic_menu_close_clear_cancel, getString(R.string.stop_sharing), stop)
+                .setOngoing(true)
+                .build();
     }
 
     private void createNotificationChannel() {
@@ -58,6 +727,8 @@ public class ScreenCaptureService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        stopForeground(true);
+        if (isSharing()) {
+            stopSharing();
+        }
     }
 }
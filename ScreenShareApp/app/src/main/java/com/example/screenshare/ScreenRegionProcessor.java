@@ -0,0 +1,138 @@
+package com.example.screenshare;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.RectF;
+import android.util.DisplayMetrics;
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoProcessor;
+import org.webrtc.VideoSink;
+
+// Crops captured frames to a region of the screen before they reach the VideoSource.
+// cropAndScale on a texture buffer only adjusts the sampling matrix, so the crop stays on the GPU
+// and the encoder sees a frame that is exactly the size of the shared region.
+public class ScreenRegionProcessor implements VideoProcessor {
+    private final Object sinkLock = new Object();
+    private VideoSink sink;
+
+    // Normalized [0..1] coordinates, null means the whole screen
+    private volatile RectF region;
+    // While paused no frame reaches the encoder
+    private volatile boolean paused;
+
+    public void setRegion(RectF region) {
+        if (region == null || isFullScreen(region)) {
+            this.region = null;
+            return;
+        }
+        RectF clamped = new RectF(
+                clamp(region.left), clamp(region.top), clamp(region.right), clamp(region.bottom));
+        if (clamped.width() <= 0 || clamped.height() <= 0) {
+            throw new IllegalArgumentException("Empty capture region: " + region);
+        }
+        this.region = clamped;
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    public RectF getRegion() {
+        RectF current = region;
+        return current != null ? new RectF(current) : new RectF(0f, 0f, 1f, 1f);
+    }
+
+    // Maps a normalized point in the shared (cropped) image back to normalized screen coordinates
+    public float toScreenX(float x) {
+        RectF current = region;
+        return current == null ? x : current.left + x * current.width();
+    }
+
+    public float toScreenY(float y) {
+        RectF current = region;
+        return current == null ? y : current.top + y * current.height();
+    }
+
+    // Region covering the screen minus the status bar and navigation bar, so notifications
+    // and the system UI are never encoded
+    public static RectF excludingSystemBars(Context context) {
+        Resources resources = context.getResources();
+        DisplayMetrics metrics = resources.getDisplayMetrics();
+        android.view.WindowManager windowManager =
+                (android.view.WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        android.graphics.Point size = new android.graphics.Point();
+        windowManager.getDefaultDisplay().getRealSize(size);
+        if (size.y <= 0) {
+            size.y = metrics.heightPixels;
+        }
+
+        int statusBar = systemDimension(resources, "status_bar_height");
+        int navigationBar = systemDimension(resources, "navigation_bar_height");
+
+        float top = (float) statusBar / size.y;
+        float bottom = 1f - (float) navigationBar / size.y;
+        return new RectF(0f, top, 1f, bottom);
+    }
+
+    private static int systemDimension(Resources resources, String name) {
+        int id = resources.getIdentifier(name, "dimen", "android");
+        return id > 0 ? resources.getDimensionPixelSize(id) : 0;
+    }
+
+    @Override
+    public void setSink(VideoSink sink) {
+        synchronized (sinkLock) {
+            this.sink = sink;
+        }
+    }
+
+    @Override
+    public void onCapturerStarted(boolean success) {
+    }
+
+    @Override
+    public void onCapturerStopped() {
+    }
+
+    @Override
+    public void onFrameCaptured(VideoFrame frame) {
+        synchronized (sinkLock) {
+            if (sink == null || paused) {
+                return;
+            }
+
+            RectF current = region;
+            if (current == null) {
+                sink.onFrame(frame);
+                return;
+            }
+
+            VideoFrame.Buffer buffer = frame.getBuffer();
+            int width = buffer.getWidth();
+            int height = buffer.getHeight();
+
+            // Even offsets and sizes keep the I420 chroma planes aligned
+            int cropX = (int) (current.left * width) & ~1;
+            int cropY = (int) (current.top * height) & ~1;
+            int cropWidth = Math.min((int) (current.width() * width), width - cropX) & ~1;
+            int cropHeight = Math.min((int) (current.height() * height), height - cropY) & ~1;
+            if (cropWidth <= 0 || cropHeight <= 0) {
+                return;
+            }
+
+            VideoFrame.Buffer cropped = buffer.cropAndScale(
+                    cropX, cropY, cropWidth, cropHeight, cropWidth, cropHeight);
+            VideoFrame croppedFrame = new VideoFrame(cropped, frame.getRotation(), frame.getTimestampNs());
+            sink.onFrame(croppedFrame);
+            croppedFrame.release();
+        }
+    }
+
+    private static boolean isFullScreen(RectF region) {
+        return region.left <= 0f && region.top <= 0f && region.right >= 1f && region.bottom >= 1f;
+    }
+
+    private static float clamp(float value) {
+        return Math.max(0f, Math.min(1f, value));
+    }
+}
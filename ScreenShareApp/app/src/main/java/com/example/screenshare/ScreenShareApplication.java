@@ -0,0 +1,38 @@
+package com.example.screenshare;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+
+// Owns process-wide state that outlives a single activity, such as the signaling connection
+public class ScreenShareApplication extends Application {
+    private SignalingClient signalingClient;
+    private IceServerProvider iceServerProvider;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Debug builds only: flag anything that still stalls the UI thread
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            new MainThreadWatchdog().start();
+        }
+    }
+
+    public static ScreenShareApplication get(Context context) {
+        return (ScreenShareApplication) context.getApplicationContext();
+    }
+
+    public synchronized SignalingClient getSignalingClient() {
+        if (signalingClient == null) {
+            signalingClient = new SignalingClient();
+        }
+        return signalingClient;
+    }
+
+    public synchronized IceServerProvider getIceServerProvider() {
+        if (iceServerProvider == null) {
+            iceServerProvider = new IceServerProvider(SignalingClient.SERVER_URL);
+        }
+        return iceServerProvider;
+    }
+}
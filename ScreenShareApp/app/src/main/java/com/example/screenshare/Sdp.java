@@ -0,0 +1,285 @@
+package com.example.screenshare;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Minimal line-oriented SDP model. It keeps every line it does not understand verbatim, so
+// transforms only touch what they change. Output always ends lines with CRLF and has no blank
+// lines: a CRLF description without blank lines, as libwebrtc writes, round-trips byte for
+// byte through parse + toString, while LF endings become CRLF and blank lines are dropped.
+public class Sdp {
+    private static final String CRLF = "\r\n";
+
+    private final List<String> sessionLines = new ArrayList<>();
+    private final List<Media> media = new ArrayList<>();
+
+    public static Sdp parse(String description) {
+        Sdp sdp = new Sdp();
+        Media current = null;
+
+        int start = 0;
+        int length = description.length();
+        while (start < length) {
+            int end = description.indexOf('\n', start);
+            if (end < 0) {
+                end = length;
+            }
+            int lineEnd = end > start && description.charAt(end - 1) == '\r' ? end - 1 : end;
+            String line = description.substring(start, lineEnd);
+            start = end + 1;
+
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("m=")) {
+                current = Media.parse(line);
+                sdp.media.add(current);
+            } else if (current != null) {
+                current.lines.add(line);
+            } else {
+                sdp.sessionLines.add(line);
+            }
+        }
+        return sdp;
+    }
+
+    public List<String> getSessionLines() {
+        return sessionLines;
+    }
+
+    public List<Media> getMedia() {
+        return media;
+    }
+
+    public List<Media> getMedia(String kind) {
+        List<Media> result = new ArrayList<>();
+        for (Media section : media) {
+            if (section.kind.equals(kind)) {
+                result.add(section);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(1024 + media.size() * 1024);
+        for (String line : sessionLines) {
+            out.append(line).append(CRLF);
+        }
+        for (Media section : media) {
+            section.appendTo(out);
+        }
+        return out.toString();
+    }
+
+    public static class Media {
+        private final String kind;
+        private final String port;
+        private final String protocol;
+        private final List<String> payloads;
+        private final List<String> lines = new ArrayList<>();
+
+        Media(String kind, String port, String protocol, List<String> payloads) {
+            this.kind = kind;
+            this.port = port;
+            this.protocol = protocol;
+            this.payloads = payloads;
+        }
+
+        static Media parse(String mLine) {
+            String[] parts = mLine.substring(2).split(" ");
+            if (parts.length < 3) {
+                throw new IllegalArgumentException("Malformed media line: " + mLine);
+            }
+            List<String> payloads = new ArrayList<>(parts.length - 3);
+            for (int i = 3; i < parts.length; i++) {
+                payloads.add(parts[i]);
+            }
+            return new Media(parts[0], parts[1], parts[2], payloads);
+        }
+
+        public String getKind() {
+            return kind;
+        }
+
+        public List<String> getPayloads() {
+            return payloads;
+        }
+
+        public List<String> getLines() {
+            return lines;
+        }
+
+        public String getMid() {
+            String mid = getAttribute("mid");
+            return mid != null ? mid : "";
+        }
+
+        // Value of the first "a=<name>:<value>" line, or null
+        public String getAttribute(String name) {
+            String prefix = "a=" + name + ":";
+            for (String line : lines) {
+                if (line.startsWith(prefix)) {
+                    return line.substring(prefix.length());
+                }
+            }
+            return null;
+        }
+
+        public boolean hasAttribute(String name) {
+            String exact = "a=" + name;
+            for (String line : lines) {
+                if (line.equals(exact) || line.startsWith(exact + ":")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Codec name from a=rtpmap, e.g. "VP8", or null for unknown payload types
+        public String getCodecName(String payload) {
+            String line = findPayloadLine("a=rtpmap:", payload);
+            if (line == null) {
+                return null;
+            }
+            String rtpmap = line.substring(line.indexOf(' ') + 1);
+            int slash = rtpmap.indexOf('/');
+            return slash >= 0 ? rtpmap.substring(0, slash) : rtpmap;
+        }
+
+        public List<String> getPayloadsForCodec(String codecName) {
+            List<String> result = new ArrayList<>();
+            for (String payload : payloads) {
+                if (codecName.equalsIgnoreCase(getCodecName(payload))) {
+                    result.add(payload);
+                }
+            }
+            return result;
+        }
+
+        // fmtp parameters in declaration order; empty if the payload has no fmtp line
+        public Map<String, String> getFmtp(String payload) {
+            Map<String, String> params = new LinkedHashMap<>();
+            String line = findPayloadLine("a=fmtp:", payload);
+            if (line == null) {
+                return params;
+            }
+            String value = line.substring(line.indexOf(' ') + 1);
+            for (String param : value.split(";")) {
+                if (param.isEmpty()) {
+                    continue;
+                }
+                int eq = param.indexOf('=');
+                if (eq < 0) {
+                    params.put(param.trim(), null);
+                } else {
+                    params.put(param.substring(0, eq).trim(), param.substring(eq + 1).trim());
+                }
+            }
+            return params;
+        }
+
+        public void setFmtp(String payload, Map<String, String> params) {
+            int index = indexOfPayloadLine("a=fmtp:", payload);
+            if (params.isEmpty()) {
+                if (index >= 0) {
+                    lines.remove(index);
+                }
+                return;
+            }
+
+            StringBuilder line = new StringBuilder("a=fmtp:").append(payload).append(' ');
+            boolean first = true;
+            for (Map.Entry<String, String> param : params.entrySet()) {
+                if (!first) {
+                    line.append(';');
+                }
+                first = false;
+                line.append(param.getKey());
+                if (param.getValue() != null) {
+                    line.append('=').append(param.getValue());
+                }
+            }
+
+            if (index >= 0) {
+                lines.set(index, line.toString());
+            } else {
+                // fmtp conventionally follows the payload's rtpmap line
+                int rtpmap = indexOfPayloadLine("a=rtpmap:", payload);
+                lines.add(rtpmap >= 0 ? rtpmap + 1 : lines.size(), line.toString());
+            }
+        }
+
+        // Removes payload types from the m-line together with their rtpmap, fmtp and rtcp-fb lines
+        public void removePayloads(Collection<String> removed) {
+            if (removed.isEmpty()) {
+                return;
+            }
+            payloads.removeAll(removed);
+            Iterator<String> iterator = lines.iterator();
+            while (iterator.hasNext()) {
+                String line = iterator.next();
+                String payload = payloadOf(line);
+                if (payload != null && removed.contains(payload)) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        public void removeLines(String prefix) {
+            Iterator<String> iterator = lines.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().startsWith(prefix)) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        private String findPayloadLine(String prefix, String payload) {
+            int index = indexOfPayloadLine(prefix, payload);
+            return index >= 0 ? lines.get(index) : null;
+        }
+
+        private int indexOfPayloadLine(String prefix, String payload) {
+            String match = prefix + payload + " ";
+            for (int i = 0; i < lines.size(); i++) {
+                if (lines.get(i).startsWith(match)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // Payload type of an rtpmap/fmtp/rtcp-fb line, or null for other lines
+        private static String payloadOf(String line) {
+            String rest;
+            if (line.startsWith("a=rtpmap:")) {
+                rest = line.substring("a=rtpmap:".length());
+            } else if (line.startsWith("a=fmtp:")) {
+                rest = line.substring("a=fmtp:".length());
+            } else if (line.startsWith("a=rtcp-fb:")) {
+                rest = line.substring("a=rtcp-fb:".length());
+            } else {
+                return null;
+            }
+            int space = rest.indexOf(' ');
+            return space >= 0 ? rest.substring(0, space) : rest;
+        }
+
+        void appendTo(StringBuilder out) {
+            out.append("m=").append(kind).append(' ').append(port).append(' ').append(protocol);
+            for (String payload : payloads) {
+                out.append(' ').append(payload);
+            }
+            out.append(CRLF);
+            for (String line : lines) {
+                out.append(line).append(CRLF);
+            }
+        }
+    }
+}
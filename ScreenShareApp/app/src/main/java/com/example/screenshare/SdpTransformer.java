@@ -0,0 +1,7 @@
+package com.example.screenshare;
+
+// A single edit applied to a parsed session description before it is set or sent.
+// Transforms mutate the Sdp in place so a chain parses and serializes only once.
+public interface SdpTransformer {
+    void transform(Sdp sdp);
+}
@@ -0,0 +1,42 @@
+package com.example.screenshare;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Ordered list of SdpTransformers applied to one parse of the description
+public class SdpTransformerChain implements SdpTransformer {
+    private final List<SdpTransformer> transformers = new CopyOnWriteArrayList<>();
+
+    public SdpTransformerChain add(SdpTransformer transformer) {
+        transformers.add(transformer);
+        return this;
+    }
+
+    public void remove(SdpTransformer transformer) {
+        transformers.remove(transformer);
+    }
+
+    public void clear() {
+        transformers.clear();
+    }
+
+    public boolean isEmpty() {
+        return transformers.isEmpty();
+    }
+
+    @Override
+    public void transform(Sdp sdp) {
+        for (SdpTransformer transformer : transformers) {
+            transformer.transform(sdp);
+        }
+    }
+
+    public String apply(String description) {
+        if (transformers.isEmpty()) {
+            return description;
+        }
+        Sdp sdp = Sdp.parse(description);
+        transform(sdp);
+        return sdp.toString();
+    }
+}
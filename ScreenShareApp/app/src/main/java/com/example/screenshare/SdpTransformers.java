@@ -0,0 +1,233 @@
+package com.example.screenshare;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Stock SDP transforms: codec pruning, bitrate hints, RTX/FEC toggles and header extensions
+public final class SdpTransformers {
+    private static final Set<String> FEC_CODECS = new HashSet<>(Arrays.asList("red", "ulpfec", "flexfec-03"));
+    private static final String RTX = "rtx";
+
+    private SdpTransformers() {
+    }
+
+    // Keeps only the named codecs (plus their RTX and the FEC codecs) in sections of the given kind,
+    // ordered by the given preference
+    public static SdpTransformer keepCodecs(final String kind, final String... codecNames) {
+        return sdp -> {
+            for (Sdp.Media media : sdp.getMedia(kind)) {
+                List<String> ordered = new ArrayList<>();
+                for (String codec : codecNames) {
+                    ordered.addAll(media.getPayloadsForCodec(codec));
+                }
+                if (ordered.isEmpty()) {
+                    // Never leave a section without a usable codec
+                    continue;
+                }
+
+                List<String> removed = new ArrayList<>();
+                for (String payload : media.getPayloads()) {
+                    if (ordered.contains(payload)) {
+                        continue;
+                    }
+                    String codec = lowerCodec(media, payload);
+                    if (FEC_CODECS.contains(codec)) {
+                        ordered.add(payload);
+                    } else if (!RTX.equals(codec)) {
+                        removed.add(payload);
+                    }
+                }
+                // RTX stays only when its primary payload stays
+                for (String payload : media.getPayloads()) {
+                    if (RTX.equals(lowerCodec(media, payload))) {
+                        String apt = media.getFmtp(payload).get("apt");
+                        if (apt != null && ordered.contains(apt)) {
+                            ordered.add(payload);
+                        } else {
+                            removed.add(payload);
+                        }
+                    }
+                }
+
+                media.removePayloads(removed);
+                media.getPayloads().clear();
+                media.getPayloads().addAll(ordered);
+            }
+        };
+    }
+
+    // x-google bitrate hints for the video encoders; values <= 0 are left untouched.
+    // A positive max also caps the section with b=AS.
+    public static SdpTransformer bitrate(final int startKbps, final int minKbps, final int maxKbps) {
+        return sdp -> {
+            for (Sdp.Media media : sdp.getMedia("video")) {
+                for (String payload : media.getPayloads()) {
+                    if (!isPrimaryCodec(media, payload)) {
+                        continue;
+                    }
+                    Map<String, String> fmtp = media.getFmtp(payload);
+                    if (startKbps > 0) {
+                        fmtp.put("x-google-start-bitrate", String.valueOf(startKbps));
+                    }
+                    if (minKbps > 0) {
+                        fmtp.put("x-google-min-bitrate", String.valueOf(minKbps));
+                    }
+                    if (maxKbps > 0) {
+                        fmtp.put("x-google-max-bitrate", String.valueOf(maxKbps));
+                    }
+                    media.setFmtp(payload, fmtp);
+                }
+
+                if (maxKbps > 0) {
+                    setBandwidth(media, maxKbps);
+                }
+            }
+        };
+    }
+
+    public static SdpTransformer removeRtx() {
+        return sdp -> {
+            for (Sdp.Media media : sdp.getMedia()) {
+                removeCodecs(media, new HashSet<>(Arrays.asList(RTX)));
+            }
+        };
+    }
+
+    // Drops RED, ULPFEC and FlexFEC (and any RTX protecting them) from video sections
+    public static SdpTransformer removeFec() {
+        return sdp -> {
+            for (Sdp.Media media : sdp.getMedia("video")) {
+                removeCodecs(media, FEC_CODECS);
+            }
+        };
+    }
+
+    // Removes the named codecs (case-insensitive) and any RTX protecting them
+    public static SdpTransformer removeCodecs(final String kind, final String... codecNames) {
+        final Set<String> names = new HashSet<>();
+        for (String name : codecNames) {
+            names.add(name.toLowerCase(Locale.US));
+        }
+        return sdp -> {
+            for (Sdp.Media media : sdp.getMedia(kind)) {
+                removeCodecs(media, names);
+            }
+        };
+    }
+
+    // Removes an exact rtcp-fb type, e.g. "nack" (leaving "nack pli" alone)
+    public static SdpTransformer removeRtcpFeedback(final String kind, final String feedback) {
+        return sdp -> {
+            for (Sdp.Media media : sdp.getMedia(kind)) {
+                Iterator<String> lines = media.getLines().iterator();
+                while (lines.hasNext()) {
+                    String line = lines.next();
+                    if (line.startsWith("a=rtcp-fb:") && line.endsWith(" " + feedback)
+                            && line.indexOf(' ') == line.lastIndexOf(' ')) {
+                        lines.remove();
+                    }
+                }
+            }
+        };
+    }
+
+    // Removes a=extmap lines whose URI contains any of the given fragments
+    public static SdpTransformer removeHeaderExtensions(final String... uriFragments) {
+        return sdp -> {
+            for (Sdp.Media media : sdp.getMedia()) {
+                Iterator<String> lines = media.getLines().iterator();
+                while (lines.hasNext()) {
+                    String line = lines.next();
+                    if (!line.startsWith("a=extmap:")) {
+                        continue;
+                    }
+                    for (String fragment : uriFragments) {
+                        if (line.contains(fragment)) {
+                            lines.remove();
+                            break;
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    static void removeCodecs(Sdp.Media media, Set<String> lowerCaseNames) {
+        List<String> removed = new ArrayList<>();
+        for (String payload : media.getPayloads()) {
+            if (lowerCaseNames.contains(lowerCodec(media, payload))) {
+                removed.add(payload);
+            }
+        }
+        for (String payload : media.getPayloads()) {
+            if (RTX.equals(lowerCodec(media, payload)) && removed.contains(media.getFmtp(payload).get("apt"))) {
+                removed.add(payload);
+            }
+        }
+        media.removePayloads(removed);
+
+        if (lowerCaseNames.contains("flexfec-03")) {
+            removeFlexfecSsrcs(media);
+        }
+    }
+
+    // A FlexFEC sender also advertises "a=ssrc-group:FEC-FR <media> <fec>"; drop the group and the FEC ssrc
+    private static void removeFlexfecSsrcs(Sdp.Media media) {
+        Set<String> fecSsrcs = new HashSet<>();
+        Iterator<String> lines = media.getLines().iterator();
+        while (lines.hasNext()) {
+            String line = lines.next();
+            if (line.startsWith("a=ssrc-group:FEC-FR ")) {
+                String[] parts = line.split(" ");
+                if (parts.length >= 3) {
+                    fecSsrcs.add(parts[2]);
+                }
+                lines.remove();
+            }
+        }
+        if (fecSsrcs.isEmpty()) {
+            return;
+        }
+        lines = media.getLines().iterator();
+        while (lines.hasNext()) {
+            String line = lines.next();
+            if (line.startsWith("a=ssrc:")) {
+                int space = line.indexOf(' ');
+                String ssrc = line.substring("a=ssrc:".length(), space > 0 ? space : line.length());
+                if (fecSsrcs.contains(ssrc)) {
+                    lines.remove();
+                }
+            }
+        }
+    }
+
+    static boolean isPrimaryCodec(Sdp.Media media, String payload) {
+        String codec = lowerCodec(media, payload);
+        return codec != null && !RTX.equals(codec) && !FEC_CODECS.contains(codec);
+    }
+
+    private static String lowerCodec(Sdp.Media media, String payload) {
+        String codec = media.getCodecName(payload);
+        return codec != null ? codec.toLowerCase(Locale.US) : null;
+    }
+
+    private static void setBandwidth(Sdp.Media media, int kbps) {
+        List<String> lines = media.getLines();
+        media.removeLines("b=AS:");
+        media.removeLines("b=TIAS:");
+        // b= lines go after c= and before any attributes
+        int index = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).startsWith("c=") || lines.get(i).startsWith("i=")) {
+                index = i + 1;
+            }
+        }
+        lines.add(index, "b=AS:" + kbps);
+    }
+}
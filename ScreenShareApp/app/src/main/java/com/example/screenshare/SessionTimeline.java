@@ -0,0 +1,118 @@
+package com.example.screenshare;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Milestones of one session's connection setup, as millisecond offsets from the start (the
+// Share/Connect tap). Each milestone also opens an async android.os.Trace section that runs
+// until the next one, so a Perfetto trace shows the setup as consecutive phases.
+// Thread-safe: milestones come from the UI, Socket.IO and WebRTC threads.
+public class SessionTimeline {
+    private static final String TAG = "SessionTimeline";
+    private static final String TRACE_PREFIX = "screenshare:";
+    private static int nextCookie = 1;
+
+    private final String role;
+    private final long startMs;
+    private final int cookie;
+    private final Map<String, Long> milestones = new LinkedHashMap<>();
+    private final Map<String, String> attributes = new LinkedHashMap<>();
+    private String openSection;
+    private boolean reported;
+
+    public SessionTimeline(String role, long startMs) {
+        this.role = role;
+        this.startMs = startMs > 0 ? startMs : SystemClock.elapsedRealtime();
+        synchronized (SessionTimeline.class) {
+            this.cookie = nextCookie++;
+        }
+        beginSection("start");
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public long getStartMs() {
+        return startMs;
+    }
+
+    public void mark(String milestone) {
+        markAt(milestone, SystemClock.elapsedRealtime());
+    }
+
+    // Records a milestone that happened earlier (elapsedRealtime); the first occurrence wins
+    public synchronized void markAt(String milestone, long atMs) {
+        if (milestones.containsKey(milestone)) {
+            return;
+        }
+        long offset = Math.max(0, atMs - startMs);
+        milestones.put(milestone, offset);
+        Log.d(TAG, role + " " + milestone + " +" + offset + " ms");
+        beginSection(milestone);
+    }
+
+    // Describes the session, e.g. which candidate types connected; the last value wins
+    public synchronized void setAttribute(String key, String value) {
+        attributes.put(key, value);
+    }
+
+    public synchronized boolean has(String milestone) {
+        return milestones.containsKey(milestone);
+    }
+
+    // {"role":"host","milestones":{"permission_result":812,...},"attributes":{"local_candidate":"relay",...}}
+    public synchronized JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("role", role);
+            JSONObject values = new JSONObject();
+            for (Map.Entry<String, Long> entry : milestones.entrySet()) {
+                values.put(entry.getKey(), entry.getValue());
+            }
+            json.put("milestones", values);
+            JSONObject attributeValues = new JSONObject();
+            for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                attributeValues.put(entry.getKey(), entry.getValue());
+            }
+            json.put("attributes", attributeValues);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error serializing timeline", e);
+        }
+        return json;
+    }
+
+    // Logs the timeline once as a single structured line and closes the trace section.
+    // Returns false if it was already reported.
+    public synchronized boolean finish() {
+        if (reported) {
+            return false;
+        }
+        reported = true;
+        endSection();
+        Log.i(TAG, "timeline " + toJson());
+        return true;
+    }
+
+    private void beginSection(String name) {
+        endSection();
+        if (reported || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return;
+        }
+        openSection = TRACE_PREFIX + role + ":" + name;
+        Trace.beginAsyncSection(openSection, cookie);
+    }
+
+    private void endSection() {
+        if (openSection != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(openSection, cookie);
+        }
+        openSection = null;
+    }
+}
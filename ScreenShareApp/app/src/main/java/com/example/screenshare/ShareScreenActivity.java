@@ -1,42 +1,86 @@
 package com.example.screenshare;
 
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.media.projection.MediaProjection;
+import android.content.ServiceConnection;
 import android.media.projection.MediaProjectionManager;
+import android.net.Uri;
 import android.os.Bundle;
-import android.util.Log;
+import android.os.IBinder;
 import android.view.View;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
 import com.google.android.material.button.MaterialButton;
-import org.webrtc.IceCandidate;
-import org.webrtc.MediaStream;
-import org.webrtc.PeerConnection;
-import org.webrtc.ScreenCapturerAndroid;
-import org.webrtc.SessionDescription;
-import java.util.Random;
 
-public class ShareScreenActivity extends AppCompatActivity implements
-        SignalingClient.SignalingEvents, WebRTCClient.WebRTCEvents {
+// Shows the state of the sharing session run by ScreenCaptureService. The session survives
+// this activity being recreated or closed; only the stop button (or notification) ends it.
+public class ShareScreenActivity extends AppCompatActivity implements ScreenCaptureService.Listener {
 
     private static final String TAG = "ShareScreenActivity";
     private static final int SCREEN_CAPTURE_REQUEST_CODE = 1;
+    private static final int PICK_FILE_REQUEST_CODE = 2;
+    private static final String STATE_PROJECTION_REQUESTED = "projection_requested";
+    private static final String STATE_PENDING_FILE = "pending_file";
+
+    // Optional normalized RectF limiting what part of the screen is shared
+    public static final String EXTRA_CAPTURE_REGION = "capture_region";
+    // Crop the status bar and navigation bar out of the shared image
+    public static final String EXTRA_HIDE_SYSTEM_BARS = "hide_system_bars";
+    // WebRTCClient.AudioMode name; audio is off unless requested
+    public static final String EXTRA_AUDIO_MODE = "audio_mode";
+    // LossResilienceProfile name; pins the profile instead of choosing it from stats
+    public static final String EXTRA_LOSS_PROFILE = "loss_profile";
+    // IceCandidatePolicy name; defaults to ALL
+    public static final String EXTRA_ICE_POLICY = "ice_policy";
+    // Send lossless changed tiles over a DataChannel instead of video (see TileSender)
+    public static final String EXTRA_TILE_MODE = "tile_mode";
+    // Encrypt the video end to end on top of DTLS (see FrameCrypto)
+    public static final String EXTRA_E2EE = "e2ee";
+    // SyntheticScreenContent.Pattern name; sends generated content instead of the screen
+    public static final String EXTRA_SYNTHETIC_CONTENT = "synthetic_content";
+    // "WIDTHxHEIGHT@FPS" for the synthetic content; follows the quality level when absent
+    public static final String EXTRA_SYNTHETIC_FORMAT = "synthetic_format";
+    // elapsedRealtime of the Share tap, start of the SessionTimeline
+    public static final String EXTRA_STARTED_AT = "started_at";
 
     private TextView pinTextView;
     private TextView statusTextView;
     private ProgressBar progressBar;
     private MaterialButton stopButton;
 
-    private String pin;
-    private SignalingClient signalingClient;
-    private WebRTCClient webRTCClient;
-    private MediaProjectionManager projectionManager;
-    private Intent mediaProjectionPermissionResultData;
-    private boolean isConnected = false;
+    private ScreenCaptureService service;
+    private boolean projectionRequested = false;
+    // Picked while the picker had us stopped and unbound; sent once the service is back
+    private Uri pendingFile;
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            service = ((ScreenCaptureService.LocalBinder) binder).getService();
+            service.setListener(ShareScreenActivity.this);
+            sendPendingFile();
+
+            if (service.isSharing()) {
+                render(service.getState());
+            } else if (!projectionRequested) {
+                // Request screen capture permission
+                projectionRequested = true;
+                MediaProjectionManager projectionManager =
+                        (MediaProjectionManager) getSystemService(Context.MEDIA_PROJECTION_SERVICE);
+                startActivityForResult(projectionManager.createScreenCaptureIntent(), SCREEN_CAPTURE_REQUEST_CODE);
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            service = null;
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -48,53 +92,59 @@ public class ShareScreenActivity extends AppCompatActivity implements
         progressBar = findViewById(R.id.progressBar);
         stopButton = findViewById(R.id.stopButton);
 
-        // Generate random PIN
-        pin = generatePin();
-        pinTextView.setText(pin);
+        if (savedInstanceState != null) {
+            projectionRequested = savedInstanceState.getBoolean(STATE_PROJECTION_REQUESTED);
+            pendingFile = savedInstanceState.getParcelable(STATE_PENDING_FILE);
+        }
 
-        // Don't initialize SignalingClient yet - will do after WebRTC is ready
-        // to avoid Socket.IO conflicting with WebRTC native threads
+        stopButton.setOnClickListener(v -> stopSharing());
+        findViewById(R.id.sendFileButton).setOnClickListener(v -> pickFile());
+    }
 
-        // Request screen capture permission
-        projectionManager = (MediaProjectionManager) getSystemService(Context.MEDIA_PROJECTION_SERVICE);
-        startActivityForResult(projectionManager.createScreenCaptureIntent(), SCREEN_CAPTURE_REQUEST_CODE);
+    @Override
+    protected void onStart() {
+        super.onStart();
+        bindService(new Intent(this, ScreenCaptureService.class), connection, Context.BIND_AUTO_CREATE);
+    }
 
-        stopButton.setOnClickListener(v -> stopSharing());
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (service != null) {
+            service.setListener(null);
+            service = null;
+        }
+        unbindService(connection);
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putBoolean(STATE_PROJECTION_REQUESTED, projectionRequested);
+        outState.putParcelable(STATE_PENDING_FILE, pendingFile);
     }
 
     @Override
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
 
+        if (requestCode == PICK_FILE_REQUEST_CODE) {
+            if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+                pendingFile = data.getData();
+                sendPendingFile();
+            }
+            return;
+        }
+
         if (requestCode == SCREEN_CAPTURE_REQUEST_CODE) {
             if (resultCode == RESULT_OK && data != null) {
-                mediaProjectionPermissionResultData = data;
-
-                // Start foreground service
+                // The service goes foreground before it creates the MediaProjection
                 Intent serviceIntent = new Intent(this, ScreenCaptureService.class);
-                startService(serviceIntent);
-
-                // Wait for service to start, then initialize WebRTC
-                // MediaProjection requires the foreground service to be running
-                new android.os.Handler().postDelayed(() -> {
-                    try {
-                        Log.d(TAG, "Starting WebRTC initialization...");
-                        initializeWebRTC();
-                        Log.d(TAG, "WebRTC initialized successfully!");
-
-                        // Initialize Socket.IO after WebRTC is ready
-                        signalingClient = new SignalingClient(this);
-                        signalingClient.connect();
-                        signalingClient.createSession(pin);
-
-                        statusTextView.setText(R.string.waiting_connection);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Initialization failed", e);
-                        statusTextView.setText("Error: " + e.getMessage());
-                        Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    }
-                }, 1000); // 1 second delay to ensure foreground service is running
-
+                serviceIntent.putExtras(getIntent());
+                serviceIntent.putExtra(ScreenCaptureService.EXTRA_PROJECTION_DATA, data);
+                serviceIntent.putExtra(ScreenCaptureService.EXTRA_PERMISSION_RESULT_AT,
+                        android.os.SystemClock.elapsedRealtime());
+                ContextCompat.startForegroundService(this, serviceIntent);
             } else {
                 Toast.makeText(this, "Screen capture permission denied", Toast.LENGTH_SHORT).show();
                 finish();
@@ -102,211 +152,89 @@ public class ShareScreenActivity extends AppCompatActivity implements
         }
     }
 
-    private void initializeWebRTC() {
-        webRTCClient = new WebRTCClient(this, this);
-        webRTCClient.initializePeerConnection();
-
-        // Start screen capture
-        ScreenCapturerAndroid screenCapturer = new ScreenCapturerAndroid(
-                mediaProjectionPermissionResultData,
-                new MediaProjection.Callback() {
-                    @Override
-                    public void onStop() {
-                        super.onStop();
-                        runOnUiThread(() -> stopSharing());
-                    }
-                }
-        );
-
-        webRTCClient.startLocalVideoCapture(screenCapturer);
+    private void pickFile() {
+        FileTransfer transfer = service != null ? service.getFileTransfer() : null;
+        if (transfer == null || !transfer.isOpen()) {
+            Toast.makeText(this, R.string.transfer_not_ready, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT)
+                .addCategory(Intent.CATEGORY_OPENABLE)
+                .setType("*/*");
+        startActivityForResult(intent, PICK_FILE_REQUEST_CODE);
     }
 
-    private String generatePin() {
-        Random random = new Random();
-        int pinNumber = 100000 + random.nextInt(900000);
-        return String.valueOf(pinNumber);
+    // Waits for the service when unbound; the result arrives before onServiceConnected
+    private void sendPendingFile() {
+        if (pendingFile == null || service == null) {
+            return;
+        }
+        Uri uri = pendingFile;
+        pendingFile = null;
+        FileTransfer transfer = service.getFileTransfer();
+        if (transfer == null || !transfer.isOpen()) {
+            Toast.makeText(this, R.string.transfer_not_ready, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        transfer.sendUri(getContentResolver(), uri);
     }
 
     private void stopSharing() {
-        if (signalingClient != null) {
-            signalingClient.endSession();
-            signalingClient.disconnect();
-        }
-
-        if (webRTCClient != null) {
-            webRTCClient.close();
+        if (service != null) {
+            service.stopSharing();
+        } else {
+            startService(new Intent(this, ScreenCaptureService.class)
+                    .setAction(ScreenCaptureService.ACTION_STOP));
         }
-
-        Intent serviceIntent = new Intent(this, ScreenCaptureService.class);
-        stopService(serviceIntent);
-
         finish();
     }
 
-    // SignalingClient.SignalingEvents implementation
-    @Override
-    public void onSessionCreated(String pin) {
-        runOnUiThread(() -> {
-            Log.d(TAG, "Session created with PIN: " + pin);
-            statusTextView.setText(R.string.waiting_connection);
-        });
-    }
-
-    @Override
-    public void onSessionJoined(String pin) {
-        // Not used in share screen
-    }
-
-    @Override
-    public void onViewerJoined(String viewerId) {
-        runOnUiThread(() -> {
-            Log.d(TAG, "Viewer joined: " + viewerId);
-            statusTextView.setText("Viewer connected. Establishing connection...");
-            progressBar.setVisibility(View.VISIBLE);
-
-            // Create and send offer
-            webRTCClient.createOffer();
-        });
-    }
+    private void render(ScreenCaptureService.State state) {
+        String pin = service != null ? service.getPin() : null;
+        if (pin != null) {
+            pinTextView.setText(pin);
+        }
 
-    @Override
-    public void onOfferReceived(SessionDescription offer) {
-        // Not used in share screen
-    }
+        switch (state) {
+            case WAITING_FOR_VIEWER:
+                statusTextView.setText(R.string.waiting_connection);
+                progressBar.setVisibility(View.VISIBLE);
+                break;
+            case CONNECTING:
+                statusTextView.setText(R.string.connecting);
+                progressBar.setVisibility(View.VISIBLE);
+                break;
+            case CONNECTED:
+                statusTextView.setText(R.string.connected);
+                progressBar.setVisibility(View.GONE);
+                break;
+            case CONNECTION_LOST:
+                statusTextView.setText("Connection lost");
+                progressBar.setVisibility(View.GONE);
+                break;
+            case STOPPED:
+                finish();
+                break;
+            default:
+                break;
+        }
 
-    @Override
-    public void onAnswerReceived(SessionDescription answer) {
-        runOnUiThread(() -> {
-            Log.d(TAG, "Answer received");
-            webRTCClient.setRemoteDescription(answer);
-        });
+        String code = service != null ? service.getSafetyCode() : null;
+        if (code != null && (state == ScreenCaptureService.State.CONNECTING
+                || state == ScreenCaptureService.State.CONNECTED)) {
+            statusTextView.append("\n" + getString(R.string.e2ee_safety_code, code));
+        }
     }
 
+    // ScreenCaptureService.Listener implementation
     @Override
-    public void onIceCandidateReceived(IceCandidate candidate) {
-        runOnUiThread(() -> {
-            Log.d(TAG, "ICE candidate received");
-            webRTCClient.addIceCandidate(candidate);
-        });
+    public void onStateChanged(ScreenCaptureService.State state) {
+        render(state);
     }
 
     @Override
     public void onError(String message) {
-        runOnUiThread(() -> {
-            Toast.makeText(this, "Error: " + message, Toast.LENGTH_SHORT).show();
-            Log.e(TAG, "Error: " + message);
-        });
-    }
-
-    @Override
-    public void onHostDisconnected() {
-        // Not used in share screen
-    }
-
-    @Override
-    public void onViewerDisconnected() {
-        runOnUiThread(() -> {
-            statusTextView.setText(R.string.waiting_connection);
-            progressBar.setVisibility(View.VISIBLE);
-            isConnected = false;
-        });
-    }
-
-    @Override
-    public void onSessionEnded() {
-        runOnUiThread(this::stopSharing);
-    }
-
-    @Override
-    public void onTouchEvent(float x, float y, String action) {
-        Log.d(TAG, "Touch event received: x=" + x + ", y=" + y + ", action=" + action);
-        // Note: Simulating touch events on Android requires either:
-        // 1. Root access
-        // 2. Accessibility Service
-        // 3. Using "input tap" via ADB shell commands
-        // For now, we'll use ADB shell commands which requires shell permissions
-
-        runOnUiThread(() -> {
-            try {
-                // Get screen dimensions
-                android.view.Display display = getWindowManager().getDefaultDisplay();
-                android.graphics.Point size = new android.graphics.Point();
-                display.getRealSize(size);
-
-                // Convert normalized coordinates to actual screen coordinates
-                int screenX = (int) (x * size.x);
-                int screenY = (int) (y * size.y);
-
-                // Execute touch using input command (requires shell permissions)
-                String cmd = "";
-                if ("DOWN".equals(action)) {
-                    cmd = "input touchscreen swipe " + screenX + " " + screenY + " " + screenX + " " + screenY + " 100";
-                } else if ("UP".equals(action)) {
-                    // Tap gesture
-                    cmd = "input tap " + screenX + " " + screenY;
-                }
-
-                if (!cmd.isEmpty()) {
-                    Runtime.getRuntime().exec(cmd);
-                    Log.d(TAG, "Executed touch command: " + cmd);
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error simulating touch", e);
-            }
-        });
-    }
-
-    // WebRTCClient.WebRTCEvents implementation
-    @Override
-    public void onIceCandidate(IceCandidate candidate) {
-        Log.d(TAG, "Local ICE candidate: " + candidate);
-        signalingClient.sendIceCandidate(pin, candidate);
-    }
-
-    @Override
-    public void onAddStream(MediaStream stream) {
-        // Not used in share screen
-    }
-
-    @Override
-    public void onConnectionChange(PeerConnection.IceConnectionState state) {
-        runOnUiThread(() -> {
-            Log.d(TAG, "Connection state: " + state);
-            switch (state) {
-                case CONNECTED:
-                    statusTextView.setText(R.string.connected);
-                    progressBar.setVisibility(View.GONE);
-                    isConnected = true;
-                    break;
-                case DISCONNECTED:
-                case FAILED:
-                    statusTextView.setText("Connection lost");
-                    progressBar.setVisibility(View.GONE);
-                    isConnected = false;
-                    break;
-                case CHECKING:
-                    statusTextView.setText(R.string.connecting);
-                    progressBar.setVisibility(View.VISIBLE);
-                    break;
-            }
-        });
-    }
-
-    @Override
-    public void onOfferCreated(SessionDescription offer) {
-        Log.d(TAG, "Offer created, sending to signaling server");
-        signalingClient.sendOffer(pin, offer);
-    }
-
-    @Override
-    public void onAnswerCreated(SessionDescription answer) {
-        Log.d(TAG, "Answer created, sending to signaling server");
-        signalingClient.sendAnswer(pin, answer);
-    }
-
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        stopSharing();
+        statusTextView.setText("Error: " + message);
+        Toast.makeText(this, "Error: " + message, Toast.LENGTH_SHORT).show();
     }
 }
@@ -1,32 +1,65 @@
 package com.example.screenshare;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Base64;
 import android.util.Log;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import io.socket.client.IO;
 import io.socket.client.Socket;
+import io.socket.engineio.client.transports.WebSocket;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.webrtc.IceCandidate;
+import org.webrtc.PeerConnection;
 import org.webrtc.SessionDescription;
 import java.net.URISyntaxException;
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// One Socket.IO connection shared by the whole app (see ScreenShareApplication). Every
+// session registers its own SignalingEvents under its PIN and the server tags each message
+// with the PIN, so several sessions can run over the same socket without a new handshake.
+// The server forgets a socket's sessions when it drops, so after a reconnect every session is
+// claimed back with the token the server issued for it; failures reach SignalingEvents.onError.
 public class SignalingClient {
     private static final String TAG = "SignalingClient";
 
     // IMPORTANT: Change this to your server URL
     // For Android Emulator: http://10.0.2.2:3000
     // For real device: http://YOUR_COMPUTER_IP:3000
-    private static final String SERVER_URL = "https://rtc.dharunashokkumar.com/";
+    static final String SERVER_URL = "https://rtc.dharunashokkumar.com/";
+
+    // Keep the socket open this long after the last session ends so the next one reuses it
+    private static final long IDLE_DISCONNECT_MS = 5 * 60 * 1000;
 
     private Socket socket;
-    private SignalingEvents events;
+    private final Map<String, SignalingEvents> sessions = new ConcurrentHashMap<>();
+    // Hosts waiting for the server to allocate their PIN, by create-session requestId
+    private final Map<String, SignalingEvents> pendingCreates = new ConcurrentHashMap<>();
+    // Reconnect tokens of the sessions this app hosts and views, by PIN
+    private final Map<String, String> hostTokens = new ConcurrentHashMap<>();
+    private final Map<String, String> viewerTokens = new ConcurrentHashMap<>();
+    // MediaKeyExchange public keys the viewers joined with (base64), sent again on a rejoin
+    private final Map<String, String> viewerPublicKeys = new ConcurrentHashMap<>();
+    private final Handler idleHandler = new Handler(Looper.getMainLooper());
+    private final Runnable idleDisconnect = this::disconnect;
     private Gson gson = new Gson();
+    // Set once the server accepts the binary encoding in its 'hello' reply
+    private volatile boolean binaryEncoding = false;
+    // elapsedRealtime of the last successful connect, for SessionTimeline
+    private volatile long connectedAtMs;
 
     public interface SignalingEvents {
         void onSessionCreated(String pin);
         void onSessionJoined(String pin);
-        void onViewerJoined(String viewerId);
+        // viewerPublicKey: the viewer's MediaKeyExchange key, null from viewers without one
+        void onViewerJoined(String viewerId, byte[] viewerPublicKey);
         void onOfferReceived(SessionDescription offer);
         void onAnswerReceived(SessionDescription answer);
         void onIceCandidateReceived(IceCandidate candidate);
@@ -35,12 +68,24 @@ public class SignalingClient {
         void onViewerDisconnected();
         void onSessionEnded();
         void onTouchEvent(float x, float y, String action);
+        // Host side: the most the viewer currently wants, e.g. LOW for a small tile on a wall
+        void onQualityHint(QualityLevel level);
+        // Viewer side: the host's FrameCrypto key for end-to-end encrypted video, wrapped for
+        // this viewer's MediaKeyExchange
+        void onMediaKey(int keyId, byte[] hostPublicKey, byte[] wrappedKey);
+        // STUN plus TURN credentials, which the server only gives to peers holding a session
+        void onIceServers(List<PeerConnection.IceServer> servers, long ttlSeconds);
     }
 
-    public SignalingClient(SignalingEvents events) {
-        this.events = events;
+    public SignalingClient() {
         try {
-            socket = IO.socket(SERVER_URL);
+            IO.Options options = new IO.Options();
+            // Skip the long-polling handshake and upgrade; go straight to a websocket
+            options.transports = new String[]{WebSocket.NAME};
+            options.reconnectionDelay = 500;
+            options.reconnectionDelayMax = 5000;
+            options.timeout = 10000;
+            socket = IO.socket(SERVER_URL, options);
             setupSocketListeners();
         } catch (URISyntaxException e) {
             Log.e(TAG, "Socket connection error", e);
@@ -50,16 +95,51 @@ public class SignalingClient {
     private void setupSocketListeners() {
         socket.on(Socket.EVENT_CONNECT, args -> {
             Log.d(TAG, "Socket connected");
+            connectedAtMs = android.os.SystemClock.elapsedRealtime();
+            binaryEncoding = false;
+            sendHello();
+            restoreSessions();
         });
 
         socket.on(Socket.EVENT_DISCONNECT, args -> {
             Log.d(TAG, "Socket disconnected");
+            binaryEncoding = false;
         });
 
-        socket.on("session-created", args -> {
+        socket.on("hello", args -> {
             try {
                 JSONObject data = (JSONObject) args[0];
+                binaryEncoding = SignalingCodec.ENCODING.equals(data.optString("encoding"));
+                Log.d(TAG, "Signaling encoding: " + data.optString("encoding"));
+            } catch (ClassCastException e) {
+                Log.e(TAG, "Error parsing hello", e);
+            }
+        });
+
+        socket.on("session-created", args -> {
+            try {
+                JSONObject data = SignalingCodec.parse(args[0]);
                 String pin = data.getString("pin");
+                String requestId = data.optString("requestId", null);
+                if (requestId == null) {
+                    // Our session, claimed back after a reconnect
+                    SignalingEvents events = sessions.get(pin);
+                    if (events != null) {
+                        Log.d(TAG, "Session " + pin + " restored");
+                        hostTokens.put(pin, data.optString("token"));
+                        deliverIceServers(data, events);
+                    }
+                    return;
+                }
+                SignalingEvents events = pendingCreates.remove(requestId);
+                if (events == null) {
+                    // Cancelled while the server was allocating
+                    endSession(pin);
+                    return;
+                }
+                sessions.put(pin, events);
+                hostTokens.put(pin, data.optString("token"));
+                deliverIceServers(data, events);
                 events.onSessionCreated(pin);
             } catch (JSONException e) {
                 Log.e(TAG, "Error parsing session-created", e);
@@ -68,9 +148,19 @@ public class SignalingClient {
 
         socket.on("session-joined", args -> {
             try {
-                JSONObject data = (JSONObject) args[0];
+                JSONObject data = SignalingCodec.parse(args[0]);
                 String pin = data.getString("pin");
-                events.onSessionJoined(pin);
+                SignalingEvents events = sessions.get(pin);
+                if (events != null) {
+                    boolean restored = viewerTokens.containsKey(pin);
+                    viewerTokens.put(pin, data.optString("token"));
+                    deliverIceServers(data, events);
+                    if (restored) {
+                        Log.d(TAG, "Rejoined session " + pin);
+                    } else {
+                        events.onSessionJoined(pin);
+                    }
+                }
             } catch (JSONException e) {
                 Log.e(TAG, "Error parsing session-joined", e);
             }
@@ -78,9 +168,15 @@ public class SignalingClient {
 
         socket.on("viewer-joined", args -> {
             try {
-                JSONObject data = (JSONObject) args[0];
+                JSONObject data = SignalingCodec.parse(args[0]);
                 String viewerId = data.getString("viewerId");
-                events.onViewerJoined(viewerId);
+                String publicKey = data.optString("publicKey", null);
+                SignalingEvents events = eventsFor(data);
+                if (events != null) {
+                    // Before the host's offer, so it gathers with fresh credentials
+                    deliverIceServers(data, events);
+                    events.onViewerJoined(viewerId, publicKey != null ? base64(publicKey) : null);
+                }
             } catch (JSONException e) {
                 Log.e(TAG, "Error parsing viewer-joined", e);
             }
@@ -88,13 +184,16 @@ public class SignalingClient {
 
         socket.on("offer", args -> {
             try {
-                JSONObject data = (JSONObject) args[0];
+                JSONObject data = SignalingCodec.parse(args[0]);
                 JSONObject offerJson = data.getJSONObject("offer");
                 SessionDescription offer = new SessionDescription(
                         SessionDescription.Type.OFFER,
                         offerJson.getString("sdp")
                 );
-                events.onOfferReceived(offer);
+                SignalingEvents events = eventsFor(data);
+                if (events != null) {
+                    events.onOfferReceived(offer);
+                }
             } catch (JSONException e) {
                 Log.e(TAG, "Error parsing offer", e);
             }
@@ -102,13 +201,16 @@ public class SignalingClient {
 
         socket.on("answer", args -> {
             try {
-                JSONObject data = (JSONObject) args[0];
+                JSONObject data = SignalingCodec.parse(args[0]);
                 JSONObject answerJson = data.getJSONObject("answer");
                 SessionDescription answer = new SessionDescription(
                         SessionDescription.Type.ANSWER,
                         answerJson.getString("sdp")
                 );
-                events.onAnswerReceived(answer);
+                SignalingEvents events = eventsFor(data);
+                if (events != null) {
+                    events.onAnswerReceived(answer);
+                }
             } catch (JSONException e) {
                 Log.e(TAG, "Error parsing answer", e);
             }
@@ -116,14 +218,17 @@ public class SignalingClient {
 
         socket.on("ice-candidate", args -> {
             try {
-                JSONObject data = (JSONObject) args[0];
+                JSONObject data = SignalingCodec.parse(args[0]);
                 JSONObject candidateJson = data.getJSONObject("candidate");
                 IceCandidate candidate = new IceCandidate(
                         candidateJson.getString("sdpMid"),
                         candidateJson.getInt("sdpMLineIndex"),
                         candidateJson.getString("sdp")
                 );
-                events.onIceCandidateReceived(candidate);
+                SignalingEvents events = eventsFor(data);
+                if (events != null) {
+                    events.onIceCandidateReceived(candidate);
+                }
             } catch (JSONException e) {
                 Log.e(TAG, "Error parsing ice-candidate", e);
             }
@@ -131,66 +236,266 @@ public class SignalingClient {
 
         socket.on("error", args -> {
             try {
-                JSONObject data = (JSONObject) args[0];
+                JSONObject data = SignalingCodec.parse(args[0]);
                 String message = data.getString("message");
-                events.onError(message);
+                // Errors for a PIN that was never accepted still carry it; untagged ones go to everyone
+                SignalingEvents events = eventsFor(data);
+                if (events != null) {
+                    events.onError(message);
+                } else if (!data.has("pin")) {
+                    for (SignalingEvents listener : listeners()) {
+                        listener.onError(message);
+                    }
+                }
             } catch (JSONException e) {
                 Log.e(TAG, "Error parsing error message", e);
             }
         });
 
         socket.on("host-disconnected", args -> {
-            events.onHostDisconnected();
+            SignalingEvents events = eventsFor(args);
+            if (events != null) {
+                events.onHostDisconnected();
+            }
         });
 
         socket.on("viewer-disconnected", args -> {
-            events.onViewerDisconnected();
+            SignalingEvents events = eventsFor(args);
+            if (events != null) {
+                events.onViewerDisconnected();
+            }
         });
 
         socket.on("session-ended", args -> {
-            events.onSessionEnded();
+            SignalingEvents events = eventsFor(args);
+            if (events != null) {
+                events.onSessionEnded();
+            }
         });
 
         socket.on("touch-event", args -> {
             try {
-                JSONObject data = (JSONObject) args[0];
+                JSONObject data = SignalingCodec.parse(args[0]);
                 float x = (float) data.getDouble("x");
                 float y = (float) data.getDouble("y");
                 String action = data.getString("action");
-                events.onTouchEvent(x, y, action);
+                SignalingEvents events = eventsFor(data);
+                if (events != null) {
+                    events.onTouchEvent(x, y, action);
+                }
             } catch (JSONException e) {
                 Log.e(TAG, "Error parsing touch-event", e);
             }
         });
+
+        socket.on("media-key", args -> {
+            try {
+                JSONObject data = SignalingCodec.parse(args[0]);
+                int keyId = data.getInt("keyId");
+                byte[] publicKey = base64(data.getString("publicKey"));
+                byte[] wrappedKey = base64(data.getString("wrappedKey"));
+                SignalingEvents events = eventsFor(data);
+                if (events != null) {
+                    events.onMediaKey(keyId, publicKey, wrappedKey);
+                }
+            } catch (JSONException e) {
+                Log.e(TAG, "Error parsing media-key", e);
+            }
+        });
+
+        socket.on("quality-hint", args -> {
+            try {
+                JSONObject data = SignalingCodec.parse(args[0]);
+                QualityLevel level = qualityLevel(data.getString("level"));
+                SignalingEvents events = eventsFor(data);
+                if (events != null) {
+                    events.onQualityHint(level);
+                }
+            } catch (JSONException e) {
+                Log.e(TAG, "Error parsing quality-hint", e);
+            }
+        });
+    }
+
+    private static void deliverIceServers(JSONObject data, SignalingEvents events) {
+        JSONArray servers = data.optJSONArray("iceServers");
+        if (servers == null) {
+            return;
+        }
+        try {
+            events.onIceServers(IceServerProvider.parse(servers), data.optLong("ttl", 0));
+        } catch (Exception e) {
+            Log.e(TAG, "Error parsing ICE servers", e);
+        }
+    }
+
+    // Field values the server relays unchecked; a bad one makes the message malformed like any
+    // other parse error
+    private static byte[] base64(String value) throws JSONException {
+        try {
+            return Base64.decode(value, Base64.NO_WRAP);
+        } catch (IllegalArgumentException e) {
+            throw new JSONException("Malformed Base64");
+        }
+    }
+
+    private static QualityLevel qualityLevel(String name) throws JSONException {
+        try {
+            return QualityLevel.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new JSONException("Unknown quality level " + name);
+        }
+    }
+
+    private SignalingEvents eventsFor(JSONObject data) {
+        String requestId = data.optString("requestId", null);
+        if (requestId != null && pendingCreates.containsKey(requestId)) {
+            return pendingCreates.remove(requestId);
+        }
+        String pin = data.optString("pin", null);
+        return pin != null ? sessions.get(pin) : null;
+    }
+
+    private SignalingEvents eventsFor(Object[] args) {
+        try {
+            return args.length > 0 ? eventsFor(SignalingCodec.parse(args[0])) : null;
+        } catch (JSONException e) {
+            Log.e(TAG, "Error parsing session PIN", e);
+            return null;
+        }
+    }
+
+    private List<SignalingEvents> listeners() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    // Claims back the sessions the server dropped with the previous connection. A host whose
+    // session ended meanwhile gets it created again under the same PIN within the server's PIN
+    // reuse delay, and "Session ended" through onError after it; a viewer whose host is gone
+    // gets "Invalid PIN".
+    private void restoreSessions() {
+        try {
+            for (Map.Entry<String, String> entry : hostTokens.entrySet()) {
+                if (sessions.containsKey(entry.getKey())) {
+                    Log.d(TAG, "Restoring session " + entry.getKey());
+                    JSONObject data = new JSONObject();
+                    data.put("pin", entry.getKey());
+                    data.put("token", entry.getValue());
+                    emit("create-session", data);
+                }
+            }
+            for (Map.Entry<String, String> entry : viewerTokens.entrySet()) {
+                if (sessions.containsKey(entry.getKey())) {
+                    Log.d(TAG, "Rejoining session " + entry.getKey());
+                    JSONObject data = new JSONObject();
+                    data.put("pin", entry.getKey());
+                    data.put("token", entry.getValue());
+                    data.put("publicKey", viewerPublicKeys.get(entry.getKey()));
+                    emit("join-session", data);
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Error restoring sessions", e);
+        }
+    }
+
+    private void sendHello() {
+        try {
+            JSONObject hello = new JSONObject();
+            hello.put("encodings", new JSONArray().put(SignalingCodec.ENCODING).put(SignalingCodec.JSON));
+            socket.emit("hello", hello);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error sending hello", e);
+        }
+    }
+
+    // Large messages (SDP) go out as binary frames once negotiated; everything else stays JSON
+    private void emit(String event, JSONObject data) throws JSONException {
+        if (binaryEncoding) {
+            String json = data.toString();
+            if (json.length() >= SignalingCodec.BINARY_THRESHOLD) {
+                socket.emit(event, (Object) SignalingCodec.encode(data));
+                return;
+            }
+        }
+        socket.emit(event, data);
+    }
+
+    // Starts receiving messages for a session. Call before joinSession.
+    public void registerSession(String pin, SignalingEvents events) {
+        sessions.put(pin, events);
+        connect();
+        idleHandler.removeCallbacks(idleDisconnect);
+    }
+
+    public void unregisterSession(String pin) {
+        sessions.remove(pin);
+        hostTokens.remove(pin);
+        viewerTokens.remove(pin);
+        viewerPublicKeys.remove(pin);
+        if (sessions.isEmpty() && pendingCreates.isEmpty()) {
+            idleHandler.removeCallbacks(idleDisconnect);
+            idleHandler.postDelayed(idleDisconnect, IDLE_DISCONNECT_MS);
+        }
     }
 
     public void connect() {
-        if (!socket.connected()) {
+        if (socket != null && !socket.connected()) {
             socket.connect();
         }
+        if (sessions.isEmpty() && pendingCreates.isEmpty()) {
+            idleHandler.removeCallbacks(idleDisconnect);
+            idleHandler.postDelayed(idleDisconnect, IDLE_DISCONNECT_MS);
+        }
+    }
+
+    public long getConnectedAtMs() {
+        return connectedAtMs;
     }
 
     public void disconnect() {
-        if (socket.connected()) {
+        if (socket != null && socket.connected()) {
+            Log.d(TAG, "Closing idle signaling connection");
             socket.disconnect();
         }
     }
 
-    public void createSession(String pin) {
+    // The server allocates a free PIN and reports it through events.onSessionCreated, after
+    // which the session is registered under it. Returns the id for cancelCreate.
+    public String createSession(SignalingEvents events) {
+        String requestId = UUID.randomUUID().toString();
+        pendingCreates.put(requestId, events);
+        connect();
+        idleHandler.removeCallbacks(idleDisconnect);
         try {
             JSONObject data = new JSONObject();
-            data.put("pin", pin);
-            socket.emit("create-session", data);
+            data.put("requestId", requestId);
+            emit("create-session", data);
         } catch (JSONException e) {
             Log.e(TAG, "Error creating session", e);
         }
+        return requestId;
     }
 
-    public void joinSession(String pin) {
+    // For a host that stops before its PIN arrived; a session created anyway is ended
+    public void cancelCreate(String requestId) {
+        if (pendingCreates.remove(requestId) != null && sessions.isEmpty() && pendingCreates.isEmpty()) {
+            idleHandler.removeCallbacks(idleDisconnect);
+            idleHandler.postDelayed(idleDisconnect, IDLE_DISCONNECT_MS);
+        }
+    }
+
+    // publicKey: the viewer's MediaKeyExchange key, for end-to-end encrypted video
+    public void joinSession(String pin, byte[] publicKey) {
         try {
             JSONObject data = new JSONObject();
             data.put("pin", pin);
-            socket.emit("join-session", data);
+            if (publicKey != null) {
+                String encoded = Base64.encodeToString(publicKey, Base64.NO_WRAP);
+                viewerPublicKeys.put(pin, encoded);
+                data.put("publicKey", encoded);
+            }
+            emit("join-session", data);
         } catch (JSONException e) {
             Log.e(TAG, "Error joining session", e);
         }
@@ -206,7 +511,7 @@ public class SignalingClient {
             data.put("pin", pin);
             data.put("offer", offerJson);
 
-            socket.emit("offer", data);
+            emit("offer", data);
         } catch (JSONException e) {
             Log.e(TAG, "Error sending offer", e);
         }
@@ -222,7 +527,7 @@ public class SignalingClient {
             data.put("pin", pin);
             data.put("answer", answerJson);
 
-            socket.emit("answer", data);
+            emit("answer", data);
         } catch (JSONException e) {
             Log.e(TAG, "Error sending answer", e);
         }
@@ -239,7 +544,7 @@ public class SignalingClient {
             data.put("pin", pin);
             data.put("candidate", candidateJson);
 
-            socket.emit("ice-candidate", data);
+            emit("ice-candidate", data);
         } catch (JSONException e) {
             Log.e(TAG, "Error sending ice candidate", e);
         }
@@ -253,13 +558,73 @@ public class SignalingClient {
             data.put("y", y);
             data.put("action", action);
 
-            socket.emit("touch-event", data);
+            emit("touch-event", data);
         } catch (JSONException e) {
             Log.e(TAG, "Error sending touch event", e);
         }
     }
 
-    public void endSession() {
-        socket.emit("end-session");
+    public void sendQualityHint(String pin, QualityLevel level) {
+        try {
+            JSONObject data = new JSONObject();
+            data.put("pin", pin);
+            data.put("level", level.name());
+
+            emit("quality-hint", data);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error sending quality hint", e);
+        }
+    }
+
+    // Host to viewer, relayed by the server, which cannot unwrap the key (see MediaKeyExchange)
+    public void sendMediaKey(String pin, int keyId, byte[] publicKey, byte[] wrappedKey) {
+        try {
+            JSONObject data = new JSONObject();
+            data.put("pin", pin);
+            data.put("keyId", keyId);
+            data.put("publicKey", Base64.encodeToString(publicKey, Base64.NO_WRAP));
+            data.put("wrappedKey", Base64.encodeToString(wrappedKey, Base64.NO_WRAP));
+
+            emit("media-key", data);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error sending media key", e);
+        }
+    }
+
+    // Connection setup milestones of one session (SessionTimeline.toJson()) for server-side percentiles
+    public void sendTimeline(String pin, JSONObject timeline) {
+        try {
+            JSONObject data = new JSONObject();
+            data.put("pin", pin);
+            data.put("role", timeline.getString("role"));
+            data.put("milestones", timeline.getJSONObject("milestones"));
+            data.put("attributes", timeline.optJSONObject("attributes"));
+            emit("session-timeline", data);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error sending timeline", e);
+        }
+    }
+
+    public void endSession(String pin) {
+        try {
+            JSONObject data = new JSONObject();
+            data.put("pin", pin);
+            emit("end-session", data);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error ending session", e);
+        }
+        unregisterSession(pin);
+    }
+
+    // Viewer side: leaves the session to the host and the next viewer
+    public void leaveSession(String pin) {
+        try {
+            JSONObject data = new JSONObject();
+            data.put("pin", pin);
+            emit("leave-session", data);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error leaving session", e);
+        }
+        unregisterSession(pin);
     }
 }
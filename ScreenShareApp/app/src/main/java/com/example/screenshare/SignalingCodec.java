@@ -0,0 +1,153 @@
+package com.example.screenshare;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Binary signaling encoding "ssb1": [version][flags][MessagePack map], with the map raw-deflated
+// when it is large (SDP). Mirrors signaling-server/codec.js.
+public final class SignalingCodec {
+    public static final String ENCODING = "ssb1";
+    public static final String JSON = "json";
+
+    private static final int VERSION = 1;
+    private static final int FLAG_DEFLATE = 0x01;
+    private static final int HEADER_SIZE = 2;
+    // Below this, deflate costs more than it saves
+    private static final int DEFLATE_THRESHOLD = 512;
+    // Small messages stay JSON: Socket.IO's binary attachment placeholder outweighs the savings
+    public static final int BINARY_THRESHOLD = 1024;
+    // Inflated bodies beyond this are rejected, as in codec.js
+    static final int MAX_INFLATED_BYTES = 1024 * 1024;
+
+    private SignalingCodec() {
+    }
+
+    public static byte[] encode(JSONObject message) throws JSONException {
+        byte[] body = MessagePack.encode(toMap(message));
+        int flags = 0;
+        if (body.length >= DEFLATE_THRESHOLD) {
+            byte[] deflated = deflate(body);
+            if (deflated.length < body.length) {
+                body = deflated;
+                flags |= FLAG_DEFLATE;
+            }
+        }
+
+        byte[] frame = new byte[HEADER_SIZE + body.length];
+        frame[0] = (byte) VERSION;
+        frame[1] = (byte) flags;
+        System.arraycopy(body, 0, frame, HEADER_SIZE, body.length);
+        return frame;
+    }
+
+    public static JSONObject decode(byte[] frame) throws JSONException {
+        if (frame.length < HEADER_SIZE || (frame[0] & 0xff) != VERSION) {
+            throw new JSONException("Unsupported signaling frame version");
+        }
+        int flags = frame[1] & 0xff;
+        Object value;
+        // Malformed frames surface as JSONException, which every event handler logs and drops
+        try {
+            if ((flags & FLAG_DEFLATE) != 0) {
+                byte[] body = inflate(frame, HEADER_SIZE, frame.length - HEADER_SIZE);
+                value = MessagePack.decode(body);
+            } else {
+                value = MessagePack.decode(frame, HEADER_SIZE, frame.length - HEADER_SIZE);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new JSONException("Malformed signaling frame: " + e.getMessage());
+        }
+        if (!(value instanceof Map)) {
+            throw new JSONException("Signaling frame is not a map");
+        }
+        return new JSONObject((Map<?, ?>) value);
+    }
+
+    // Accepts either encoding as delivered by Socket.IO
+    public static JSONObject parse(Object arg) throws JSONException {
+        if (arg instanceof byte[]) {
+            return decode((byte[]) arg);
+        }
+        if (arg instanceof JSONObject) {
+            return (JSONObject) arg;
+        }
+        throw new JSONException("Unexpected signaling payload: " + arg);
+    }
+
+    private static Map<String, Object> toMap(JSONObject object) throws JSONException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            map.put(key, toValue(object.get(key)));
+        }
+        return map;
+    }
+
+    private static Object toValue(Object value) throws JSONException {
+        if (value instanceof JSONObject) {
+            return toMap((JSONObject) value);
+        }
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            List<Object> list = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                list.add(toValue(array.get(i)));
+            }
+            return list;
+        }
+        return value == JSONObject.NULL ? null : value;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int offset, int length) throws JSONException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data, offset, length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(length * 3, MAX_INFLATED_BYTES));
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    // Raw deflate streams from zlib may omit the final empty block
+                    break;
+                }
+                if (out.size() + count > MAX_INFLATED_BYTES) {
+                    throw new JSONException("Deflated signaling frame exceeds " + MAX_INFLATED_BYTES + " bytes");
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new JSONException("Corrupt deflated signaling frame");
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.screenshare;
+
+import android.content.Context;
+import android.util.Log;
+import org.webrtc.CapturerObserver;
+import org.webrtc.JavaI420Buffer;
+import org.webrtc.SurfaceTextureHelper;
+import org.webrtc.VideoCapturer;
+import org.webrtc.VideoFrame;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Feeds SyntheticScreenContent into the video pipeline in place of ScreenCapturerAndroid, so
+// a share can run unattended with the same content every time (see EXTRA_SYNTHETIC_CONTENT).
+// Follows the format WebRTCClient asks for, like the screen capturer, unless one is pinned.
+// Frames are numbered from the first startCapture(), so a given frame number always shows the
+// same image, however late it was produced.
+public class SyntheticScreenCapturer implements VideoCapturer {
+    private static final String TAG = "SyntheticCapturer";
+
+    private final SyntheticScreenContent.Pattern pattern;
+    // 0 follows startCapture()/changeCaptureFormat()
+    private final int pinnedWidth;
+    private final int pinnedHeight;
+    private final int pinnedFps;
+    private ScheduledExecutorService executor;
+    private CapturerObserver observer;
+    // Guarded by this
+    private SyntheticScreenContent content;
+    private ScheduledFuture<?> ticker;
+    private long frameIndex;
+
+    public SyntheticScreenCapturer(SyntheticScreenContent.Pattern pattern) {
+        this(pattern, 0, 0, 0);
+    }
+
+    public SyntheticScreenCapturer(SyntheticScreenContent.Pattern pattern, int width, int height, int fps) {
+        this.pattern = pattern;
+        this.pinnedWidth = width;
+        this.pinnedHeight = height;
+        this.pinnedFps = fps;
+    }
+
+    // "1920x1080@30" -> a pinned capturer; null or "" follows WebRTCClient's format
+    public static SyntheticScreenCapturer create(String pattern, String format) {
+        SyntheticScreenContent.Pattern value = SyntheticScreenContent.Pattern.valueOf(pattern);
+        if (format == null || format.isEmpty()) {
+            return new SyntheticScreenCapturer(value);
+        }
+        String[] parts = format.split("[x@]");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Expected WIDTHxHEIGHT@FPS, got " + format);
+        }
+        return new SyntheticScreenCapturer(value, Integer.parseInt(parts[0]),
+                Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+    }
+
+    @Override
+    public void initialize(SurfaceTextureHelper surfaceTextureHelper, Context context,
+                           CapturerObserver capturerObserver) {
+        observer = capturerObserver;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SyntheticCapture");
+            thread.setPriority(Thread.MAX_PRIORITY);
+            return thread;
+        });
+    }
+
+    @Override
+    public synchronized void startCapture(int width, int height, int fps) {
+        schedule(width, height, fps);
+        observer.onCapturerStarted(true);
+    }
+
+    @Override
+    public synchronized void changeCaptureFormat(int width, int height, int fps) {
+        if (ticker != null) {
+            schedule(width, height, fps);
+        }
+    }
+
+    @Override
+    public synchronized void stopCapture() {
+        if (ticker == null) {
+            return;
+        }
+        ticker.cancel(false);
+        ticker = null;
+        observer.onCapturerStopped();
+    }
+
+    @Override
+    public void dispose() {
+        stopCapture();
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public boolean isScreencast() {
+        return true;
+    }
+
+    private void schedule(int width, int height, int fps) {
+        int w = pinnedWidth > 0 ? pinnedWidth : width;
+        int h = pinnedHeight > 0 ? pinnedHeight : height;
+        int rate = Math.max(1, pinnedFps > 0 ? pinnedFps : fps);
+        if (ticker != null) {
+            ticker.cancel(false);
+        }
+        if (content == null || content.getWidth() != w || content.getHeight() != h) {
+            content = new SyntheticScreenContent(pattern, w, h);
+        }
+        Log.d(TAG, "Generating " + pattern + " at " + w + "x" + h + "@" + rate);
+        long intervalUs = 1000000L / rate;
+        ticker = executor.scheduleAtFixedRate(this::produceFrame, 0, intervalUs, TimeUnit.MICROSECONDS);
+    }
+
+    private void produceFrame() {
+        SyntheticScreenContent frameContent;
+        long index;
+        synchronized (this) {
+            if (ticker == null) {
+                return;
+            }
+            frameContent = content;
+            index = frameIndex++;
+        }
+        JavaI420Buffer buffer = JavaI420Buffer.allocate(frameContent.getWidth(), frameContent.getHeight());
+        frameContent.render(index, buffer.getDataY(), buffer.getStrideY(),
+                buffer.getDataU(), buffer.getStrideU(), buffer.getDataV(), buffer.getStrideV());
+        VideoFrame frame = new VideoFrame(buffer, 0, System.nanoTime());
+        observer.onFrameCaptured(frame);
+        frame.release();
+    }
+}
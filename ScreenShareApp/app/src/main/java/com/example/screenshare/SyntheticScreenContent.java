@@ -0,0 +1,248 @@
+package com.example.screenshare;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+// Deterministic stand-in for the screen, so encoder and network runs can be repeated without
+// a person driving the host. Frame n of a pattern is always the same image for a given size:
+//   STATIC_PAGE     a page of text with a blinking cursor; almost nothing changes
+//   SCROLLING_TEXT  the same page scrolling up a few pixels per frame
+//   FULL_MOTION     two textures sliding across each other, like video playing full screen
+// Renders straight into I420 planes. Plain Java, so tools/synthetic-content can write the
+// same frames to a Y4M file on a desktop JVM.
+public class SyntheticScreenContent {
+    private static final long SEED = 0x5EED;
+    private static final int BACKGROUND = 235;
+    private static final int INK = 40;
+    private static final int GLYPHS = 64;
+    // 5x7 cells, like a bitmap console font
+    private static final int GLYPH_COLUMNS = 5;
+    private static final int GLYPH_ROWS = 7;
+    private static final int CURSOR_PERIOD_FRAMES = 15;
+    private static final int TEXTURE_SIZE = 256;
+
+    public enum Pattern {
+        STATIC_PAGE,
+        SCROLLING_TEXT,
+        FULL_MOTION
+    }
+
+    private final Pattern pattern;
+    private final int width;
+    private final int height;
+    private final int scrollStep;
+    // Luma of the text page; twice the frame height, so a scroll takes a while to repeat
+    private byte[] page;
+    private int pageHeight;
+    private int cursorX;
+    private int cursorY;
+    private int cursorWidth;
+    private int cursorHeight;
+    private byte[] texture;
+    // Sum of two texels -> video-range luma, without a division per pixel
+    private byte[] lumaOfSum;
+
+    public SyntheticScreenContent(Pattern pattern, int width, int height) {
+        this.pattern = pattern;
+        this.width = width;
+        this.height = height;
+        // 4 pixels a frame at 1080p, scaled so every size scrolls through the page equally fast
+        this.scrollStep = Math.max(1, height / 270);
+        if (pattern == Pattern.FULL_MOTION) {
+            buildTexture();
+        } else {
+            buildPage();
+        }
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Planes must hold width x height luma and (width+1)/2 x (height+1)/2 chroma at the given
+    // strides, from position 0. Positions are left alone.
+    public void render(long frameIndex, ByteBuffer dataY, int strideY,
+                       ByteBuffer dataU, int strideU, ByteBuffer dataV, int strideV) {
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        switch (pattern) {
+            case STATIC_PAGE:
+                renderPage(0, dataY, strideY);
+                if ((frameIndex / CURSOR_PERIOD_FRAMES) % 2 == 0) {
+                    fill(dataY, strideY, cursorX, cursorY, cursorWidth, cursorHeight, INK);
+                }
+                fill(dataU, strideU, 0, 0, chromaWidth, chromaHeight, 128);
+                fill(dataV, strideV, 0, 0, chromaWidth, chromaHeight, 128);
+                break;
+            case SCROLLING_TEXT:
+                renderPage((int) (frameIndex * scrollStep % pageHeight), dataY, strideY);
+                fill(dataU, strideU, 0, 0, chromaWidth, chromaHeight, 128);
+                fill(dataV, strideV, 0, 0, chromaWidth, chromaHeight, 128);
+                break;
+            case FULL_MOTION:
+                renderMotion(frameIndex, dataY, strideY, dataU, strideU, dataV, strideV);
+                break;
+        }
+    }
+
+    private void renderPage(int offset, ByteBuffer dataY, int strideY) {
+        ByteBuffer out = dataY.duplicate();
+        for (int y = 0; y < height; y++) {
+            out.position(y * strideY);
+            out.put(page, ((offset + y) % pageHeight) * width, width);
+        }
+    }
+
+    // Luma is the sum of two textures moving in different directions, so the encoder cannot
+    // get away with one global motion vector; chroma drifts slowly through the hues
+    private void renderMotion(long frameIndex, ByteBuffer dataY, int strideY,
+                              ByteBuffer dataU, int strideU, ByteBuffer dataV, int strideV) {
+        int mask = TEXTURE_SIZE - 1;
+        int ax = (int) (frameIndex * 3);
+        int ay = (int) (frameIndex * 2);
+        int bx = (int) (frameIndex * -2);
+        int by = (int) (frameIndex * 5);
+        byte[] row = new byte[width];
+        ByteBuffer out = dataY.duplicate();
+        for (int y = 0; y < height; y++) {
+            int rowA = ((y + ay) & mask) * TEXTURE_SIZE;
+            int rowB = (((y >> 1) + by) & mask) * TEXTURE_SIZE;
+            for (int x = 0; x < width; x++) {
+                int a = texture[rowA + ((x + ax) & mask)] & 0xFF;
+                int b = texture[rowB + (((x >> 1) + bx) & mask)] & 0xFF;
+                row[x] = lumaOfSum[a + b];
+            }
+            out.position(y * strideY);
+            out.put(row, 0, width);
+        }
+
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        ByteBuffer outU = dataU.duplicate();
+        ByteBuffer outV = dataV.duplicate();
+        for (int y = 0; y < chromaHeight; y++) {
+            for (int x = 0; x < chromaWidth; x++) {
+                row[x] = (byte) (128 + ((x + y + frameIndex) & 63) - 32);
+            }
+            outU.position(y * strideU);
+            outU.put(row, 0, chromaWidth);
+            for (int x = 0; x < chromaWidth; x++) {
+                row[x] = (byte) (128 + ((x - y + 2 * frameIndex) & 63) - 32);
+            }
+            outV.position(y * strideV);
+            outV.put(row, 0, chromaWidth);
+        }
+    }
+
+    private static void fill(ByteBuffer plane, int stride, int left, int top, int w, int h, int value) {
+        ByteBuffer out = plane.duplicate();
+        byte[] row = new byte[w];
+        Arrays.fill(row, (byte) value);
+        for (int y = top; y < top + h; y++) {
+            out.position(y * stride + left);
+            out.put(row);
+        }
+    }
+
+    // Lines of random "words" in a random 5x7 font, scaled with the frame height so a 720p and
+    // a 1080p run show the same amount of text
+    private void buildPage() {
+        Random random = new Random(SEED);
+        boolean[][] font = new boolean[GLYPHS][GLYPH_COLUMNS * GLYPH_ROWS];
+        for (boolean[] glyph : font) {
+            for (int i = 0; i < glyph.length; i++) {
+                glyph[i] = random.nextInt(5) < 2;
+            }
+        }
+
+        int pixel = Math.max(1, height / 360);
+        int cellWidth = (GLYPH_COLUMNS + 1) * pixel;
+        int lineHeight = (GLYPH_ROWS + 4) * pixel;
+        int margin = Math.max(cellWidth, width / 20);
+        pageHeight = height * 2;
+        page = new byte[width * pageHeight];
+        Arrays.fill(page, (byte) BACKGROUND);
+
+        int columns = Math.max(1, (width - 2 * margin) / cellWidth);
+        int lastLine = 0;
+        for (int top = lineHeight; top + lineHeight < pageHeight; top += lineHeight) {
+            // An empty line now and then, as between paragraphs
+            if (random.nextInt(8) == 0) {
+                continue;
+            }
+            int length = columns / 2 + random.nextInt(columns / 2 + 1);
+            int column = 0;
+            while (column < length) {
+                int word = 2 + random.nextInt(8);
+                for (int i = 0; i < word && column < length; i++, column++) {
+                    drawGlyph(font[random.nextInt(GLYPHS)], margin + column * cellWidth, top, pixel);
+                }
+                column++;
+            }
+            if (top + lineHeight < height) {
+                lastLine = top;
+                cursorX = margin + Math.min(column, columns - 1) * cellWidth;
+            }
+        }
+        cursorY = lastLine;
+        cursorWidth = Math.max(1, pixel * 2);
+        cursorHeight = GLYPH_ROWS * pixel;
+    }
+
+    private void drawGlyph(boolean[] glyph, int left, int top, int pixel) {
+        for (int row = 0; row < GLYPH_ROWS; row++) {
+            for (int col = 0; col < GLYPH_COLUMNS; col++) {
+                if (!glyph[row * GLYPH_COLUMNS + col]) {
+                    continue;
+                }
+                for (int dy = 0; dy < pixel; dy++) {
+                    int start = (top + row * pixel + dy) * width + left + col * pixel;
+                    Arrays.fill(page, start, start + pixel, (byte) INK);
+                }
+            }
+        }
+    }
+
+    // Smoothed noise, so the motion has both flat areas and detail
+    private void buildTexture() {
+        Random random = new Random(SEED);
+        int cells = 16;
+        int cell = TEXTURE_SIZE / cells;
+        int[] lattice = new int[cells * cells];
+        for (int i = 0; i < lattice.length; i++) {
+            lattice[i] = random.nextInt(256);
+        }
+        texture = new byte[TEXTURE_SIZE * TEXTURE_SIZE];
+        lumaOfSum = new byte[511];
+        for (int sum = 0; sum < lumaOfSum.length; sum++) {
+            lumaOfSum[sum] = (byte) (16 + sum * 219 / 510);
+        }
+        for (int y = 0; y < TEXTURE_SIZE; y++) {
+            int cy = y / cell;
+            int fy = y % cell;
+            for (int x = 0; x < TEXTURE_SIZE; x++) {
+                int cx = x / cell;
+                int fx = x % cell;
+                int a = lattice[cy * cells + cx];
+                int b = lattice[cy * cells + (cx + 1) % cells];
+                int c = lattice[((cy + 1) % cells) * cells + cx];
+                int d = lattice[((cy + 1) % cells) * cells + (cx + 1) % cells];
+                int top = a * (cell - fx) + b * fx;
+                int bottom = c * (cell - fx) + d * fx;
+                int value = (top * (cell - fy) + bottom * fy) / (cell * cell);
+                // A little per-pixel grain on top
+                value += random.nextInt(33) - 16;
+                texture[y * TEXTURE_SIZE + x] = (byte) Math.max(0, Math.min(255, value));
+            }
+        }
+    }
+}
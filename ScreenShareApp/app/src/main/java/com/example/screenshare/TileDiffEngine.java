@@ -0,0 +1,231 @@
+package com.example.screenshare;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Splits 32-bit frames into square tiles, hashes them and reports which tiles changed since
+// the previous diff. Hashing and encoding are spread over a fixed pool, one band of tile rows
+// per task. Plain Java (no Android types) so it can be benchmarked on a desktop JVM, see
+// tools/tile-bench.sh. Not thread-safe: one caller at a time.
+public class TileDiffEngine {
+
+    // Turns one tile's pixels into bytes for the wire (e.g. lossless WebP)
+    public interface TileCodec {
+        byte[] encode(int[] pixels, int width, int height);
+    }
+
+    public static final class EncodedTile {
+        public final int index;
+        public final long hash;
+        public final byte[] data;
+
+        EncodedTile(int index, long hash, byte[] data) {
+            this.index = index;
+            this.hash = hash;
+            this.data = data;
+        }
+    }
+
+    // Per pool thread, one tile of pixels for the codec
+    private static final ThreadLocal<int[]> SCRATCH = new ThreadLocal<>();
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int columns;
+    private final int rows;
+    private final int threads;
+    private final ExecutorService pool;
+    private long[] previous;
+    private long[] current;
+    private boolean hasPrevious = false;
+
+    public TileDiffEngine(int width, int height, int tileSize, int threads) {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.columns = (width + tileSize - 1) / tileSize;
+        this.rows = (height + tileSize - 1) / tileSize;
+        this.threads = Math.max(1, threads);
+        this.previous = new long[columns * rows];
+        this.current = new long[columns * rows];
+        AtomicInteger count = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "TileDiff-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getTileCount() {
+        return columns * rows;
+    }
+
+    public int tileX(int index) {
+        return (index % columns) * tileSize;
+    }
+
+    public int tileY(int index) {
+        return (index / columns) * tileSize;
+    }
+
+    public int tileWidth(int index) {
+        return Math.min(tileSize, width - tileX(index));
+    }
+
+    public int tileHeight(int index) {
+        return Math.min(tileSize, height - tileY(index));
+    }
+
+    // Hash of a tile from the last diff
+    public long hashOf(int index) {
+        return previous[index];
+    }
+
+    // Next diff reports every tile as changed, e.g. for a viewer that starts from nothing
+    public void reset() {
+        hasPrevious = false;
+    }
+
+    // Indices of tiles that differ from the previous call, in row-major order. pixels holds
+    // height rows of stride ints each.
+    public int[] diff(int[] pixels, int stride) {
+        int bands = Math.min(threads, rows);
+        List<Callable<Void>> tasks = new ArrayList<>(bands);
+        for (int band = 0; band < bands; band++) {
+            int firstRow = rows * band / bands;
+            int lastRow = rows * (band + 1) / bands;
+            tasks.add(() -> {
+                for (int row = firstRow; row < lastRow; row++) {
+                    hashRow(pixels, stride, row);
+                }
+                return null;
+            });
+        }
+        invokeAll(tasks);
+
+        int changedCount = 0;
+        int[] changed = new int[current.length];
+        for (int i = 0; i < current.length; i++) {
+            if (!hasPrevious || current[i] != previous[i]) {
+                changed[changedCount++] = i;
+            }
+        }
+        long[] swap = previous;
+        previous = current;
+        current = swap;
+        hasPrevious = true;
+
+        int[] result = new int[changedCount];
+        System.arraycopy(changed, 0, result, 0, changedCount);
+        return result;
+    }
+
+    // Encodes the given tiles of the frame last passed to diff() in parallel; order is kept
+    public List<EncodedTile> encode(int[] pixels, int stride, int[] tiles, TileCodec codec) {
+        List<Callable<EncodedTile>> tasks = new ArrayList<>(tiles.length);
+        for (int index : tiles) {
+            tasks.add(() -> {
+                int[] scratch = SCRATCH.get();
+                if (scratch == null || scratch.length < tileSize * tileSize) {
+                    scratch = new int[tileSize * tileSize];
+                    SCRATCH.set(scratch);
+                }
+                int w = tileWidth(index);
+                int h = tileHeight(index);
+                copyTile(pixels, stride, index, scratch);
+                return new EncodedTile(index, previous[index], codec.encode(scratch, w, h));
+            });
+        }
+        return invokeAll(tasks);
+    }
+
+    // Copies a tile into dst as tileWidth x tileHeight, rows packed
+    public void copyTile(int[] pixels, int stride, int index, int[] dst) {
+        int x = tileX(index);
+        int y = tileY(index);
+        int w = tileWidth(index);
+        int h = tileHeight(index);
+        for (int row = 0; row < h; row++) {
+            System.arraycopy(pixels, (y + row) * stride + x, dst, row * w, w);
+        }
+    }
+
+    public void release() {
+        pool.shutdownNow();
+    }
+
+    private void hashRow(int[] pixels, int stride, int row) {
+        int y0 = row * tileSize;
+        int h = Math.min(tileSize, height - y0);
+        for (int column = 0; column < columns; column++) {
+            int x0 = column * tileSize;
+            int w = Math.min(tileSize, width - x0);
+            long hash = 0x9E3779B97F4A7C15L;
+            for (int y = 0; y < h; y++) {
+                int offset = (y0 + y) * stride + x0;
+                long line = 0;
+                for (int x = 0; x < w; x++) {
+                    line = (line + pixels[offset + x]) * 0x100000001B3L;
+                }
+                hash = mix(hash ^ line);
+            }
+            current[row * columns + column] = hash;
+        }
+    }
+
+    // MurmurHash3 fmix64
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85EC1L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.size() == 1) {
+            try {
+                results.add(tasks.get(0).call());
+                return results;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.screenshare;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Binary messages of the tile transport, one per DataChannel message, big-endian:
+//   CONFIG    [1][u16 width][u16 height][u16 tileSize]   new screen; the viewer clears its cache
+//   TILE      [2][u32 index][i64 hash][image bytes]       encoded tile, added to the viewer cache
+//   REF       [3][u32 index][i64 hash]                    tile already in the viewer cache
+//   FRAME_END [4][u32 frame]                              tiles so far form a consistent frame
+// Host and viewer keep a Cache of the same capacity and touch it in the same order (TILE puts,
+// REF gets) over a reliable ordered channel, so the host knows exactly what the viewer holds.
+public final class TileProtocol {
+    public static final byte CONFIG = 1;
+    public static final byte TILE = 2;
+    public static final byte REF = 3;
+    public static final byte FRAME_END = 4;
+
+    public static final String CHANNEL_LABEL = "tiles";
+    public static final int CHANNEL_ID = 2;
+    public static final int CACHE_TILES = 2048;
+    private static final int TILE_HEADER = 1 + 4 + 8;
+
+    private TileProtocol() {
+    }
+
+    public static ByteBuffer config(int width, int height, int tileSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(7);
+        buffer.put(CONFIG).putShort((short) width).putShort((short) height).putShort((short) tileSize);
+        buffer.flip();
+        return buffer;
+    }
+
+    public static ByteBuffer tile(int index, long hash, byte[] data) {
+        ByteBuffer buffer = ByteBuffer.allocate(TILE_HEADER + data.length);
+        buffer.put(TILE).putInt(index).putLong(hash).put(data);
+        buffer.flip();
+        return buffer;
+    }
+
+    public static ByteBuffer ref(int index, long hash) {
+        ByteBuffer buffer = ByteBuffer.allocate(TILE_HEADER);
+        buffer.put(REF).putInt(index).putLong(hash);
+        buffer.flip();
+        return buffer;
+    }
+
+    public static ByteBuffer frameEnd(int frame) {
+        ByteBuffer buffer = ByteBuffer.allocate(5);
+        buffer.put(FRAME_END).putInt(frame);
+        buffer.flip();
+        return buffer;
+    }
+
+    // Unsigned 16-bit fields of CONFIG
+    public static int readU16(ByteBuffer buffer) {
+        return buffer.getShort() & 0xFFFF;
+    }
+
+    // LRU keyed by tile hash
+    public static final class Cache<V> extends LinkedHashMap<Long, V> {
+        private final int capacity;
+
+        public Cache(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.screenshare;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import org.webrtc.DataChannel;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+// Viewer side of the tile transport: decodes tiles off the network thread and draws them into
+// one screen-sized bitmap, reusing cached tiles for REF messages (see TileProtocol).
+public class TileReceiver {
+    private static final String TAG = "TileReceiver";
+
+    // Main thread
+    public interface Listener {
+        void onScreenConfigured(Bitmap screen);
+        // The bitmap holds a complete frame; invalidate the view showing it
+        void onTileFrame();
+    }
+
+    private final DataChannel channel;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService decoder = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "TileDecoder"));
+    private final TileProtocol.Cache<Bitmap> cache = new TileProtocol.Cache<>(TileProtocol.CACHE_TILES);
+
+    // Decoder thread only
+    private Bitmap screen;
+    private Canvas canvas;
+    private int tileSize;
+    private int columns;
+
+    public TileReceiver(DataChannel channel, Listener listener) {
+        this.channel = channel;
+        this.listener = listener;
+        channel.registerObserver(new DataChannel.Observer() {
+            @Override
+            public void onBufferedAmountChange(long previousAmount) {
+            }
+
+            @Override
+            public void onStateChange() {
+                Log.d(TAG, "Tile channel " + channel.state());
+            }
+
+            @Override
+            public void onMessage(DataChannel.Buffer buffer) {
+                // Only valid during this callback
+                ByteBuffer copy = ByteBuffer.allocate(buffer.data.remaining());
+                copy.put(buffer.data);
+                copy.flip();
+                try {
+                    decoder.execute(() -> handle(copy));
+                } catch (RejectedExecutionException e) {
+                    // Released
+                }
+            }
+        });
+    }
+
+    public void release() {
+        channel.unregisterObserver();
+        decoder.shutdownNow();
+    }
+
+    private void handle(ByteBuffer message) {
+        byte type = message.get();
+        switch (type) {
+            case TileProtocol.CONFIG:
+                int width = TileProtocol.readU16(message);
+                int height = TileProtocol.readU16(message);
+                tileSize = TileProtocol.readU16(message);
+                columns = (width + tileSize - 1) / tileSize;
+                // A new bitmap rather than reuse: the view may still be drawing the old one
+                screen = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                canvas = new Canvas(screen);
+                cache.clear();
+                Bitmap configured = screen;
+                mainHandler.post(() -> listener.onScreenConfigured(configured));
+                break;
+            case TileProtocol.TILE:
+                int index = message.getInt();
+                long hash = message.getLong();
+                Bitmap tile = BitmapFactory.decodeByteArray(message.array(),
+                        message.arrayOffset() + message.position(), message.remaining());
+                if (tile == null) {
+                    Log.w(TAG, "Undecodable tile " + index);
+                    return;
+                }
+                cache.put(hash, tile);
+                draw(index, tile);
+                break;
+            case TileProtocol.REF:
+                int refIndex = message.getInt();
+                Bitmap cached = cache.get(message.getLong());
+                if (cached == null) {
+                    Log.w(TAG, "Tile cache out of sync at " + refIndex);
+                    return;
+                }
+                draw(refIndex, cached);
+                break;
+            case TileProtocol.FRAME_END:
+                mainHandler.post(listener::onTileFrame);
+                break;
+            default:
+                Log.w(TAG, "Unknown tile message " + type);
+                break;
+        }
+    }
+
+    // Drawn in place: the view may briefly show a frame that is still being updated
+    private void draw(int index, Bitmap tile) {
+        if (canvas == null) {
+            return;
+        }
+        canvas.drawBitmap(tile, (index % columns) * tileSize, (index / columns) * tileSize, null);
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.screenshare;
+
+import android.graphics.PixelFormat;
+import android.hardware.display.DisplayManager;
+import android.hardware.display.VirtualDisplay;
+import android.media.Image;
+import android.media.ImageReader;
+import android.media.projection.MediaProjection;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import org.webrtc.DataChannel;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+// Host side of the tile transport. Mirrors the screen into an RGBA ImageReader (no chroma
+// subsampling, so text stays sharp), diffs each frame with TileDiffEngine and sends only the
+// changed tiles over the "tiles" DataChannel, as references when the viewer has them cached.
+// The virtual display only produces images when the screen changes, so static content costs
+// nothing. When the channel backs up, frames are skipped (never queued) and the newest one
+// is sent once it drains.
+public class TileSender {
+    private static final String TAG = "TileSender";
+    static final int TILE_SIZE = 64;
+    private static final int MAX_FPS = 10;
+    private static final long HIGH_WATER = 512 * 1024;
+    private static final long RETRY_MS = 50;
+    private static final long STATS_INTERVAL_MS = 10000;
+
+    private final DataChannel channel;
+    private final MediaProjection projection;
+    private final int width;
+    private final int height;
+    private final int density;
+    private final HandlerThread thread = new HandlerThread("TileCapture");
+    private final Handler handler;
+    private final TileDiffEngine engine;
+    private final TileDiffEngine.TileCodec codec = new BitmapTileCodec();
+    private final TileProtocol.Cache<Boolean> viewerCache = new TileProtocol.Cache<>(TileProtocol.CACHE_TILES);
+
+    // Capture thread only
+    private ImageReader reader;
+    private VirtualDisplay display;
+    private int[] frame;
+    private int stride;
+    private boolean frameDirty = false;
+    private boolean paused = true;
+    private boolean configSent = false;
+    private boolean sendScheduled = false;
+    private int frameNumber = 0;
+    private long lastSendMs;
+    private long statsSinceMs;
+    private int statsTiles;
+    private int statsRefs;
+    private long statsBytes;
+
+    public TileSender(DataChannel channel, MediaProjection projection, int width, int height, int density) {
+        this.channel = channel;
+        this.projection = projection;
+        this.width = width;
+        this.height = height;
+        this.density = density;
+        this.engine = new TileDiffEngine(width, height, TILE_SIZE,
+                Math.min(4, Runtime.getRuntime().availableProcessors()));
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        channel.registerObserver(new DataChannel.Observer() {
+            @Override
+            public void onBufferedAmountChange(long previousAmount) {
+                handler.post(TileSender.this::scheduleSend);
+            }
+
+            @Override
+            public void onStateChange() {
+                handler.post(TileSender.this::scheduleSend);
+            }
+
+            @Override
+            public void onMessage(DataChannel.Buffer buffer) {
+                // Viewer to host messages are not used
+            }
+        });
+    }
+
+    // A viewer starts from an empty screen and cache: resend everything
+    public void resume() {
+        handler.post(() -> {
+            if (display == null) {
+                reader = ImageReader.newInstance(width, height, PixelFormat.RGBA_8888, 2);
+                reader.setOnImageAvailableListener(r -> onImageAvailable(), handler);
+                display = projection.createVirtualDisplay("ScreenShareTiles", width, height, density,
+                        DisplayManager.VIRTUAL_DISPLAY_FLAG_AUTO_MIRROR, reader.getSurface(), null, handler);
+            } else {
+                display.setSurface(reader.getSurface());
+            }
+            paused = false;
+            engine.reset();
+            viewerCache.clear();
+            configSent = false;
+            frameDirty = frame != null;
+            statsSinceMs = SystemClock.elapsedRealtime();
+            scheduleSend();
+        });
+    }
+
+    // Keeps the virtual display (a MediaProjection may only create one) but stops rendering
+    public void pause() {
+        handler.post(() -> {
+            paused = true;
+            if (display != null) {
+                display.setSurface(null);
+            }
+        });
+    }
+
+    // Blocks until the capture thread is done, so the channel can be disposed right after
+    public void release() {
+        channel.unregisterObserver();
+        handler.post(() -> {
+            if (display != null) {
+                display.release();
+                display = null;
+            }
+            if (reader != null) {
+                reader.close();
+                reader = null;
+            }
+            engine.release();
+        });
+        thread.quitSafely();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void onImageAvailable() {
+        Image image = reader.acquireLatestImage();
+        if (image == null) {
+            return;
+        }
+        try {
+            Image.Plane plane = image.getPlanes()[0];
+            stride = plane.getRowStride() / plane.getPixelStride();
+            IntBuffer pixels = plane.getBuffer().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            if (frame == null || frame.length != stride * height) {
+                frame = new int[stride * height];
+            }
+            // The last row may be shorter than rowStride
+            pixels.get(frame, 0, Math.min(frame.length, pixels.remaining()));
+        } finally {
+            image.close();
+        }
+        frameDirty = true;
+        scheduleSend();
+    }
+
+    private void scheduleSend() {
+        if (paused || !frameDirty || sendScheduled || channel.state() != DataChannel.State.OPEN) {
+            return;
+        }
+        long wait = lastSendMs + 1000 / MAX_FPS - SystemClock.elapsedRealtime();
+        if (channel.bufferedAmount() > HIGH_WATER) {
+            wait = Math.max(wait, RETRY_MS);
+        }
+        if (wait > 0) {
+            sendScheduled = true;
+            handler.postDelayed(() -> {
+                sendScheduled = false;
+                scheduleSend();
+            }, wait);
+            return;
+        }
+        sendFrame();
+    }
+
+    private void sendFrame() {
+        frameDirty = false;
+        lastSendMs = SystemClock.elapsedRealtime();
+        if (!configSent) {
+            configSent = send(TileProtocol.config(width, height, TILE_SIZE));
+        }
+
+        // REFs first, then TILEs: the viewer then touches its cache in the same order we did
+        int[] changed = engine.diff(frame, stride);
+        List<Integer> refs = new ArrayList<>();
+        int[] toEncode = new int[changed.length];
+        int encodeCount = 0;
+        for (int index : changed) {
+            if (viewerCache.get(engine.hashOf(index)) != null) {
+                refs.add(index);
+            } else {
+                toEncode[encodeCount++] = index;
+            }
+        }
+        for (int index : refs) {
+            send(TileProtocol.ref(index, engine.hashOf(index)));
+        }
+        int[] encodeTiles = new int[encodeCount];
+        System.arraycopy(toEncode, 0, encodeTiles, 0, encodeCount);
+        for (TileDiffEngine.EncodedTile tile : engine.encode(frame, stride, encodeTiles, codec)) {
+            viewerCache.put(tile.hash, Boolean.TRUE);
+            send(TileProtocol.tile(tile.index, tile.hash, tile.data));
+            statsBytes += tile.data.length;
+        }
+        send(TileProtocol.frameEnd(frameNumber++));
+
+        statsTiles += encodeCount;
+        statsRefs += refs.size();
+        long now = SystemClock.elapsedRealtime();
+        if (now - statsSinceMs >= STATS_INTERVAL_MS) {
+            Log.d(TAG, "Tiles: " + statsTiles + " encoded (" + statsBytes / 1024 + " KB), "
+                    + statsRefs + " from cache in " + (now - statsSinceMs) + " ms");
+            statsSinceMs = now;
+            statsTiles = 0;
+            statsRefs = 0;
+            statsBytes = 0;
+        }
+    }
+
+    private boolean send(ByteBuffer message) {
+        return channel.send(new DataChannel.Buffer(message, true));
+    }
+}
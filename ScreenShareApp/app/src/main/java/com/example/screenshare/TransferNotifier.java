@@ -0,0 +1,64 @@
+package com.example.screenshare;
+
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.Toast;
+import java.io.File;
+
+// Default FileTransfer.Listener for both roles: toasts for finished or failed transfers and
+// received clipboard text goes straight to the system clipboard
+public class TransferNotifier implements FileTransfer.Listener {
+    private static final String TAG = "TransferNotifier";
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    public TransferNotifier(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @Override
+    public void onTransferProgress(String name, long bytes, long total, boolean incoming) {
+        Log.d(TAG, (incoming ? "Receiving " : "Sending ") + name + ": " + bytes + "/" + total);
+    }
+
+    @Override
+    public void onFileSent(String name, long bytes, long elapsedMs) {
+        toast(context.getString(R.string.file_sent, name));
+    }
+
+    @Override
+    public void onFileReceived(File file) {
+        toast(context.getString(R.string.file_received, file.getName()));
+    }
+
+    @Override
+    public void onTransferFailed(String name, String reason, boolean incoming) {
+        toast(context.getString(R.string.transfer_failed, name, reason));
+    }
+
+    @Override
+    public void onClipboardReceived(String text) {
+        handler.post(() -> {
+            ClipboardManager clipboard = (ClipboardManager) context.getSystemService(Context.CLIPBOARD_SERVICE);
+            if (clipboard != null) {
+                clipboard.setPrimaryClip(ClipData.newPlainText("Screen Share", text));
+                Toast.makeText(context, R.string.clipboard_received, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private void toast(String message) {
+        handler.post(() -> Toast.makeText(context, message, Toast.LENGTH_SHORT).show());
+    }
+
+    // Received files live in the app's external files dir, no storage permission needed
+    static File receiveDir(Context context) {
+        File base = context.getExternalFilesDir(null);
+        return new File(base != null ? base : context.getFilesDir(), "received");
+    }
+}
@@ -1,9 +1,16 @@
 package com.example.screenshare;
 
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
+import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
@@ -14,14 +21,18 @@ import com.google.android.material.textfield.TextInputEditText;
 import org.webrtc.IceCandidate;
 import org.webrtc.MediaStream;
 import org.webrtc.PeerConnection;
+import org.webrtc.RendererCommon;
 import org.webrtc.SessionDescription;
 import org.webrtc.SurfaceViewRenderer;
 import org.webrtc.VideoTrack;
+import java.security.GeneralSecurityException;
+import java.util.List;
 
 public class ViewScreenActivity extends AppCompatActivity implements
         SignalingClient.SignalingEvents, WebRTCClient.WebRTCEvents {
 
     private static final String TAG = "ViewScreenActivity";
+    private static final int PICK_FILE_REQUEST_CODE = 1;
 
     private LinearLayout pinInputLayout;
     private RelativeLayout remoteViewLayout;
@@ -30,11 +41,27 @@ public class ViewScreenActivity extends AppCompatActivity implements
     private MaterialButton disconnectButton;
     private TextView statusTextView;
     private SurfaceViewRenderer remoteVideoView;
+    // Shows the screen instead of remoteVideoView when the host shares in tile mode
+    private ImageView tileView;
+    private PointerOverlayView pointerOverlay;
 
     private String pin;
     private SignalingClient signalingClient;
-    private WebRTCClient webRTCClient;
+    private volatile WebRTCClient webRTCClient;
+    private volatile SessionTimeline timeline;
+    private volatile TileReceiver tileReceiver;
+    private volatile PointerChannel pointerChannel;
+    // Decrypts the video once the host sends its key; left alone for unencrypted hosts
+    private final FrameCrypto frameCrypto = FrameCrypto.forReceiver();
+    private final MediaKeyExchange keyExchange = new MediaKeyExchange();
+    // Main thread; between the remote track and remoteVideoView
+    private VideoTrack remoteVideoTrack;
+    private PacedVideoSink pacedSink;
+    // Main thread; a multi-finger gesture zooms locally and is not sent to the host
+    private boolean zoomGesture = false;
     private boolean isConnected = false;
+    // Main thread; between onStart and onStop
+    private boolean started = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -48,9 +75,11 @@ public class ViewScreenActivity extends AppCompatActivity implements
         disconnectButton = findViewById(R.id.disconnectButton);
         statusTextView = findViewById(R.id.statusTextView);
         remoteVideoView = findViewById(R.id.remoteVideoView);
+        tileView = findViewById(R.id.tileView);
+        pointerOverlay = findViewById(R.id.pointerOverlay);
 
-        // Initialize signaling client
-        signalingClient = new SignalingClient(this);
+        // Shared, usually already connected signaling socket
+        signalingClient = ScreenShareApplication.get(this).getSignalingClient();
 
         connectButton.setOnClickListener(v -> {
             String enteredPin = pinEditText.getText().toString().trim();
@@ -62,6 +91,8 @@ public class ViewScreenActivity extends AppCompatActivity implements
         });
 
         disconnectButton.setOnClickListener(v -> disconnect());
+        findViewById(R.id.sendFileButton).setOnClickListener(v -> pickFile());
+        findViewById(R.id.sendClipboardButton).setOnClickListener(v -> sendClipboard());
 
         // Setup touch listener for remote control
         setupTouchControl();
@@ -70,21 +101,151 @@ public class ViewScreenActivity extends AppCompatActivity implements
     private void connectToSession(String pin) {
         this.pin = pin;
         statusTextView.setText(R.string.connecting);
+        timeline = new SessionTimeline("viewer", 0);
 
         // Initialize WebRTC
-        webRTCClient = new WebRTCClient(this, this);
+        webRTCClient = new WebRTCClient(this, this, WebRTCClient.AudioMode.MICROPHONE, frameCrypto);
+        webRTCClient.setTimeline(timeline);
+        // The host's offers win collisions
+        webRTCClient.setPolite(true);
+        webRTCClient.enableFileTransfer(TransferNotifier.receiveDir(this), new TransferNotifier(this));
+        // Always added: only a host in tile mode sends anything on it
+        webRTCClient.addNegotiatedChannel(TileProtocol.CHANNEL_LABEL, TileProtocol.CHANNEL_ID,
+                channel -> tileReceiver = new TileReceiver(channel, new TileReceiver.Listener() {
+                    @Override
+                    public void onScreenConfigured(Bitmap screen) {
+                        tileView.setImageBitmap(screen);
+                        tileView.setVisibility(View.VISIBLE);
+                        remoteVideoView.setVisibility(View.GONE);
+                        pinInputLayout.setVisibility(View.GONE);
+                        remoteViewLayout.setVisibility(View.VISIBLE);
+                    }
+
+                    @Override
+                    public void onTileFrame() {
+                        tileView.invalidate();
+                        onFirstFrame();
+                    }
+                }));
+        webRTCClient.addNegotiatedChannel(PointerChannel.LABEL, PointerChannel.ID,
+                channel -> pointerChannel = new PointerChannel(channel, new PointerChannel.Listener() {
+                    @Override
+                    public void onTouch(String action, float x, float y) {
+                        // Not used in viewer
+                    }
+
+                    @Override
+                    public void onPointer(PointerChannel.Shape shape, float x, float y) {
+                        runOnUiThread(() -> pointerOverlay.setPointer(shape, x, y));
+                    }
+                }));
         webRTCClient.initializePeerConnection();
-        webRTCClient.initSurfaceView(remoteVideoView);
+        webRTCClient.initSurfaceView(remoteVideoView, new RendererCommon.RendererEvents() {
+            @Override
+            public void onFirstFrameRendered() {
+                onFirstFrame();
+            }
+
+            @Override
+            public void onFrameResolutionChanged(int width, int height, int rotation) {
+            }
+        });
+
+        // Join the session over the shared signaling connection
+        timeline.markAt("socket_connected", signalingClient.getConnectedAtMs());
+        signalingClient.registerSession(pin, this);
+        signalingClient.joinSession(pin, keyExchange.getPublicKey());
+    }
 
-        // Connect to signaling server and join session
-        signalingClient.connect();
-        signalingClient.joinSession(pin);
+    // Called on the renderer or main thread; the end of the viewer's connection setup
+    private void onFirstFrame() {
+        SessionTimeline current = timeline;
+        String currentPin = pin;
+        if (current == null || currentPin == null) {
+            return;
+        }
+        current.mark("first_frame_rendered");
+        if (current.finish()) {
+            signalingClient.sendTimeline(currentPin, current.toJson());
+        }
+    }
+
+    private void markTimeline(String milestone) {
+        SessionTimeline current = timeline;
+        if (current != null) {
+            current.mark(milestone);
+        }
+    }
+
+    // Null until connected, see enableFileTransfer
+    private FileTransfer openFileTransfer() {
+        WebRTCClient client = webRTCClient;
+        FileTransfer transfer = client != null ? client.getFileTransfer() : null;
+        if (transfer == null || !transfer.isOpen()) {
+            Toast.makeText(this, R.string.transfer_not_ready, Toast.LENGTH_SHORT).show();
+            return null;
+        }
+        return transfer;
+    }
+
+    private void pickFile() {
+        if (openFileTransfer() == null) {
+            return;
+        }
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT)
+                .addCategory(Intent.CATEGORY_OPENABLE)
+                .setType("*/*");
+        startActivityForResult(intent, PICK_FILE_REQUEST_CODE);
+    }
+
+    private void sendClipboard() {
+        ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
+        ClipData clip = clipboard != null ? clipboard.getPrimaryClip() : null;
+        FileTransfer transfer = openFileTransfer();
+        if (clip == null || clip.getItemCount() == 0 || transfer == null) {
+            return;
+        }
+        CharSequence text = clip.getItemAt(0).coerceToText(this);
+        if (transfer.sendClipboard(text.toString())) {
+            Toast.makeText(this, R.string.send_clipboard, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == PICK_FILE_REQUEST_CODE && resultCode == RESULT_OK
+                && data != null && data.getData() != null) {
+            FileTransfer transfer = openFileTransfer();
+            if (transfer != null) {
+                transfer.sendUri(getContentResolver(), data.getData());
+            }
+        }
     }
 
     private void disconnect() {
-        if (signalingClient != null) {
-            signalingClient.endSession();
-            signalingClient.disconnect();
+        if (signalingClient != null && pin != null) {
+            signalingClient.leaveSession(pin);
+            pin = null;
+        }
+
+        if (pacedSink != null) {
+            if (remoteVideoTrack != null) {
+                remoteVideoTrack.removeSink(pacedSink);
+                remoteVideoTrack = null;
+            }
+            pacedSink.release();
+            pacedSink = null;
+        }
+
+        // Before the client disposes its channels
+        if (tileReceiver != null) {
+            tileReceiver.release();
+            tileReceiver = null;
+        }
+        if (pointerChannel != null) {
+            pointerChannel.release();
+            pointerChannel = null;
         }
 
         if (webRTCClient != null) {
@@ -95,13 +256,63 @@ public class ViewScreenActivity extends AppCompatActivity implements
     }
 
     private void setupTouchControl() {
-        remoteVideoView.setOnTouchListener((v, event) -> {
+        ScaleGestureDetector zoomDetector = new ScaleGestureDetector(this,
+                new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                    private float lastFocusX;
+                    private float lastFocusY;
+
+                    @Override
+                    public boolean onScaleBegin(ScaleGestureDetector detector) {
+                        lastFocusX = detector.getFocusX();
+                        lastFocusY = detector.getFocusY();
+                        return pacedSink != null;
+                    }
+
+                    // Keeps the frame point under the fingers' focus there: zoom and pan at once
+                    @Override
+                    public boolean onScale(ScaleGestureDetector detector) {
+                        float width = remoteVideoView.getWidth();
+                        float height = remoteVideoView.getHeight();
+                        float frameX = pacedSink.toFrameX(lastFocusX / width);
+                        float frameY = pacedSink.toFrameY(lastFocusY / height);
+                        float zoom = Math.max(1f, Math.min(PacedVideoSink.MAX_ZOOM,
+                                pacedSink.getZoom() * detector.getScaleFactor()));
+                        pacedSink.setViewport(zoom,
+                                frameX - (detector.getFocusX() / width - 0.5f) / zoom,
+                                frameY - (detector.getFocusY() / height - 0.5f) / zoom);
+                        lastFocusX = detector.getFocusX();
+                        lastFocusY = detector.getFocusY();
+                        pointerOverlay.invalidate();
+                        return true;
+                    }
+                });
+
+        View.OnTouchListener touchListener = (v, event) -> {
             if (!isConnected) {
                 return false;
             }
 
+            if (v == remoteVideoView) {
+                zoomDetector.onTouchEvent(event);
+                if (event.getPointerCount() > 1) {
+                    zoomGesture = true;
+                }
+                if (zoomGesture) {
+                    if (event.getActionMasked() == MotionEvent.ACTION_UP
+                            || event.getActionMasked() == MotionEvent.ACTION_CANCEL) {
+                        zoomGesture = false;
+                    }
+                    return true;
+                }
+            }
+
             float x = event.getX() / v.getWidth();
             float y = event.getY() / v.getHeight();
+            // Touches land on the zoomed-in part of the host's screen
+            if (v == remoteVideoView && pacedSink != null) {
+                x = pacedSink.toFrameX(x);
+                y = pacedSink.toFrameY(y);
+            }
 
             String action;
             switch (event.getAction()) {
@@ -118,9 +329,15 @@ public class ViewScreenActivity extends AppCompatActivity implements
                     return false;
             }
 
-            signalingClient.sendTouchEvent(pin, x, y, action);
+            // Over the peer-to-peer pointer channel once it is open, skipping the server
+            PointerChannel pointer = pointerChannel;
+            if (pointer == null || !pointer.sendTouch(action, x, y)) {
+                signalingClient.sendTouchEvent(pin, x, y, action);
+            }
             return true;
-        });
+        };
+        remoteVideoView.setOnTouchListener(touchListener);
+        tileView.setOnTouchListener(touchListener);
     }
 
     // SignalingClient.SignalingEvents implementation
@@ -131,6 +348,7 @@ public class ViewScreenActivity extends AppCompatActivity implements
 
     @Override
     public void onSessionJoined(String pin) {
+        markTimeline("session_joined");
         runOnUiThread(() -> {
             Log.d(TAG, "Session joined: " + pin);
             statusTextView.setText("Joined session. Waiting for host...");
@@ -138,32 +356,38 @@ public class ViewScreenActivity extends AppCompatActivity implements
     }
 
     @Override
-    public void onViewerJoined(String viewerId) {
+    public void onViewerJoined(String viewerId, byte[] viewerPublicKey) {
         // Not used in viewer
     }
 
+    // WebRTCClient answers offers itself and resolves collisions with our own offers
     @Override
     public void onOfferReceived(SessionDescription offer) {
-        runOnUiThread(() -> {
-            Log.d(TAG, "Offer received");
-            webRTCClient.setRemoteDescription(offer);
-            webRTCClient.createAnswer();
-        });
+        Log.d(TAG, "Offer received");
+        markTimeline("offer_received");
+        WebRTCClient client = webRTCClient;
+        if (client != null) {
+            client.setRemoteDescription(offer);
+        }
     }
 
+    // Renegotiations started by the viewer
     @Override
     public void onAnswerReceived(SessionDescription answer) {
-        // Not used in viewer
+        Log.d(TAG, "Answer received");
+        WebRTCClient client = webRTCClient;
+        if (client != null) {
+            client.setRemoteDescription(answer);
+        }
     }
 
     @Override
     public void onIceCandidateReceived(IceCandidate candidate) {
-        runOnUiThread(() -> {
-            Log.d(TAG, "ICE candidate received");
-            if (webRTCClient != null) {
-                webRTCClient.addIceCandidate(candidate);
-            }
-        });
+        Log.d(TAG, "ICE candidate received");
+        WebRTCClient client = webRTCClient;
+        if (client != null) {
+            client.addIceCandidate(candidate);
+        }
     }
 
     @Override
@@ -201,6 +425,34 @@ public class ViewScreenActivity extends AppCompatActivity implements
         // Not used in viewer
     }
 
+    @Override
+    public void onQualityHint(QualityLevel level) {
+        // Not used in viewer
+    }
+
+    @Override
+    public void onMediaKey(int keyId, byte[] hostPublicKey, byte[] wrappedKey) {
+        try {
+            frameCrypto.setKey(keyId, keyExchange.unwrap(hostPublicKey, keyId, wrappedKey));
+        } catch (GeneralSecurityException e) {
+            Log.e(TAG, "Cannot unwrap end-to-end video key " + keyId, e);
+            onError("End-to-end key exchange failed");
+            return;
+        }
+        Log.d(TAG, "End-to-end video key " + keyId + " received");
+        String code = MediaKeyExchange.safetyCode(hostPublicKey, keyExchange.getPublicKey());
+        runOnUiThread(() -> Toast.makeText(this, getString(R.string.e2ee_safety_code, code),
+                Toast.LENGTH_LONG).show());
+    }
+
+    @Override
+    public void onIceServers(List<PeerConnection.IceServer> servers, long ttlSeconds) {
+        WebRTCClient client = webRTCClient;
+        if (client != null) {
+            client.updateIceServers(servers, ttlSeconds);
+        }
+    }
+
     // WebRTCClient.WebRTCEvents implementation
     @Override
     public void onIceCandidate(IceCandidate candidate) {
@@ -212,9 +464,14 @@ public class ViewScreenActivity extends AppCompatActivity implements
     public void onAddStream(MediaStream stream) {
         runOnUiThread(() -> {
             Log.d(TAG, "Remote stream added");
-            if (stream.videoTracks.size() > 0) {
-                VideoTrack remoteVideoTrack = stream.videoTracks.get(0);
-                remoteVideoTrack.addSink(remoteVideoView);
+            if (stream.videoTracks.size() > 0 && remoteVideoTrack == null) {
+                remoteVideoTrack = stream.videoTracks.get(0);
+                // Paced to vsync, late frames dropped; also does the pinch zoom
+                pacedSink = new PacedVideoSink(remoteVideoView, PacedVideoSink.DEFAULT_LATENCY_BUDGET_MS);
+                if (started) {
+                    remoteVideoTrack.addSink(pacedSink);
+                }
+                pointerOverlay.setViewport(pacedSink);
 
                 // Switch to video view
                 pinInputLayout.setVisibility(View.GONE);
@@ -231,6 +488,10 @@ public class ViewScreenActivity extends AppCompatActivity implements
                 case CONNECTED:
                     statusTextView.setText(R.string.connected);
                     isConnected = true;
+                    // Went to the background before the video transceiver existed
+                    if (!started && webRTCClient != null) {
+                        webRTCClient.setVideoReceiving(false);
+                    }
                     break;
                 case DISCONNECTED:
                 case FAILED:
@@ -247,15 +508,49 @@ public class ViewScreenActivity extends AppCompatActivity implements
 
     @Override
     public void onOfferCreated(SessionDescription offer) {
-        // Not used in viewer
+        Log.d(TAG, "Renegotiation offer created, sending to signaling server");
+        signalingClient.sendOffer(pin, offer);
     }
 
     @Override
     public void onAnswerCreated(SessionDescription answer) {
         Log.d(TAG, "Answer created, sending to signaling server");
+        markTimeline("answer_sent");
         signalingClient.sendAnswer(pin, answer);
     }
 
+    @Override
+    public void onPeerConnectionChange(PeerConnection.PeerConnectionState state) {
+        // The viewer's timeline ends at the first rendered frame
+    }
+
+    // Out of sight, the video is neither sent nor decoded. The connection stays up, so coming
+    // back only costs a renegotiation and the key frame the host starts with.
+    @Override
+    protected void onStart() {
+        super.onStart();
+        started = true;
+        if (remoteVideoTrack != null && pacedSink != null) {
+            remoteVideoTrack.addSink(pacedSink);
+        }
+        if (webRTCClient != null) {
+            webRTCClient.setVideoReceiving(true);
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        started = false;
+        if (remoteVideoTrack != null && pacedSink != null) {
+            remoteVideoTrack.removeSink(pacedSink);
+            pacedSink.flush();
+        }
+        if (webRTCClient != null) {
+            webRTCClient.setVideoReceiving(false);
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
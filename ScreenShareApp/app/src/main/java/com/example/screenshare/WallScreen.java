@@ -0,0 +1,323 @@
+package com.example.screenshare;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+import androidx.core.content.ContextCompat;
+import org.webrtc.IceCandidate;
+import org.webrtc.MediaStream;
+import org.webrtc.PeerConnection;
+import org.webrtc.RendererCommon;
+import org.webrtc.SessionDescription;
+import org.webrtc.SurfaceViewRenderer;
+import java.security.GeneralSecurityException;
+import java.util.List;
+
+// One screen of the MonitorWallActivity: a viewer session with its own WebRTCClient, and the
+// tile that shows it. The wall decides whether it decodes (setActive) and whether the host
+// sends full quality (setFocused).
+public class WallScreen implements SignalingClient.SignalingEvents, WebRTCClient.WebRTCEvents {
+    private static final String TAG = "WallScreen";
+
+    // Main thread
+    public interface Listener {
+        // Connected, disconnected or new stats
+        void onScreenChanged(WallScreen screen);
+        void onScreenEnded(WallScreen screen, String reason);
+    }
+
+    private final Context context;
+    private final String pin;
+    private final SignalingClient signalingClient;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final FrameLayout view;
+    private final SurfaceViewRenderer renderer;
+    private final TextView label;
+    private volatile WebRTCClient client;
+    private final FrameCrypto frameCrypto = FrameCrypto.forReceiver();
+    private final MediaKeyExchange keyExchange = new MediaKeyExchange();
+
+    // Main thread
+    private boolean connected = false;
+    private boolean active = true;
+    private boolean focused = false;
+    private double decodeMs = -1;
+    private int frameWidth;
+    private int frameHeight;
+    // Of the end-to-end key exchange, shown with the PIN
+    private String safetyCode;
+
+    public WallScreen(Context context, String pin, SignalingClient signalingClient, Listener listener) {
+        this.context = context;
+        this.pin = pin;
+        this.signalingClient = signalingClient;
+        this.listener = listener;
+
+        view = new FrameLayout(context);
+        view.setBackgroundColor(Color.BLACK);
+        renderer = new SurfaceViewRenderer(context);
+        view.addView(renderer, new FrameLayout.LayoutParams(
+                FrameLayout.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.MATCH_PARENT));
+        label = new TextView(context);
+        label.setTextColor(Color.WHITE);
+        label.setTextSize(TypedValue.COMPLEX_UNIT_SP, 12);
+        label.setBackgroundColor(0x99000000);
+        int padding = Math.round(4 * context.getResources().getDisplayMetrics().density);
+        label.setPadding(padding, padding, padding, padding);
+        view.addView(label, new FrameLayout.LayoutParams(
+                FrameLayout.LayoutParams.WRAP_CONTENT, FrameLayout.LayoutParams.WRAP_CONTENT,
+                Gravity.BOTTOM | Gravity.START));
+        updateLabel();
+    }
+
+    public String getPin() {
+        return pin;
+    }
+
+    public FrameLayout getView() {
+        return view;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public double getDecodeMs() {
+        return decodeMs;
+    }
+
+    // Estimated memory of this screen's decoder; 0 while paused or before the first frame
+    public long getDecoderMemoryBytes() {
+        if (!active || !connected || frameWidth == 0) {
+            return 0;
+        }
+        return DecoderBudget.estimateMemoryBytes(frameWidth, frameHeight);
+    }
+
+    public void start() {
+        client = new WebRTCClient(context, this, WebRTCClient.AudioMode.NONE, frameCrypto);
+        client.setPolite(true);
+        client.setReceiveStatsListener((decodeMs, width, height, fps) -> mainHandler.post(() -> {
+            this.decodeMs = decodeMs;
+            frameWidth = width;
+            frameHeight = height;
+            updateLabel();
+            listener.onScreenChanged(this);
+        }));
+        client.initializePeerConnection();
+        client.initSurfaceView(renderer, null);
+        renderer.setScalingType(RendererCommon.ScalingType.SCALE_ASPECT_FIT);
+
+        signalingClient.registerSession(pin, this);
+        signalingClient.joinSession(pin, keyExchange.getPublicKey());
+    }
+
+    // Paused screens keep their connection but neither the host encodes nor we decode
+    public void setActive(boolean active) {
+        if (this.active == active) {
+            return;
+        }
+        this.active = active;
+        if (client != null) {
+            client.setVideoReceiving(active);
+        }
+        if (!active) {
+            decodeMs = -1;
+        }
+        updateLabel();
+    }
+
+    public void setFocused(boolean focused) {
+        this.focused = focused;
+        sendQualityHint();
+        updateLabel();
+    }
+
+    public void release() {
+        signalingClient.leaveSession(pin);
+        renderer.release();
+        if (client != null) {
+            client.close();
+            client = null;
+        }
+    }
+
+    private void sendQualityHint() {
+        if (connected) {
+            signalingClient.sendQualityHint(pin, focused ? QualityLevel.FULL : QualityLevel.LOW);
+        }
+    }
+
+    private void updateLabel() {
+        String text;
+        if (!connected) {
+            text = context.getString(R.string.wall_screen_connecting, pin);
+        } else if (!active) {
+            text = context.getString(R.string.wall_screen_paused, pin);
+        } else if (decodeMs < 0) {
+            text = pin;
+        } else {
+            text = context.getString(R.string.wall_screen_stats, pin, decodeMs, frameWidth, frameHeight);
+        }
+        if (safetyCode != null) {
+            text = context.getString(R.string.wall_screen_safety_code, text, safetyCode);
+        }
+        label.setText(text);
+        label.setTextColor(focused ? ContextCompat.getColor(context, R.color.accent) : Color.WHITE);
+    }
+
+    // SignalingClient.SignalingEvents implementation
+    @Override
+    public void onSessionCreated(String pin) {
+        // Not used by a viewer
+    }
+
+    @Override
+    public void onSessionJoined(String pin) {
+        Log.d(TAG, "Joined " + pin);
+    }
+
+    @Override
+    public void onViewerJoined(String viewerId, byte[] viewerPublicKey) {
+        // Not used by a viewer
+    }
+
+    @Override
+    public void onOfferReceived(SessionDescription offer) {
+        WebRTCClient current = client;
+        if (current != null) {
+            current.setRemoteDescription(offer);
+        }
+    }
+
+    @Override
+    public void onAnswerReceived(SessionDescription answer) {
+        WebRTCClient current = client;
+        if (current != null) {
+            current.setRemoteDescription(answer);
+        }
+    }
+
+    @Override
+    public void onIceCandidateReceived(IceCandidate candidate) {
+        WebRTCClient current = client;
+        if (current != null) {
+            current.addIceCandidate(candidate);
+        }
+    }
+
+    @Override
+    public void onError(String message) {
+        mainHandler.post(() -> listener.onScreenEnded(this, message));
+    }
+
+    @Override
+    public void onHostDisconnected() {
+        mainHandler.post(() -> listener.onScreenEnded(this, "Host disconnected"));
+    }
+
+    @Override
+    public void onViewerDisconnected() {
+        // Not used by a viewer
+    }
+
+    @Override
+    public void onSessionEnded() {
+        mainHandler.post(() -> listener.onScreenEnded(this, "Session ended by host"));
+    }
+
+    @Override
+    public void onTouchEvent(float x, float y, String action) {
+        // Not used by a viewer
+    }
+
+    @Override
+    public void onQualityHint(QualityLevel level) {
+        // Not used by a viewer
+    }
+
+    @Override
+    public void onMediaKey(int keyId, byte[] hostPublicKey, byte[] wrappedKey) {
+        try {
+            frameCrypto.setKey(keyId, keyExchange.unwrap(hostPublicKey, keyId, wrappedKey));
+        } catch (GeneralSecurityException e) {
+            Log.e(TAG, "Cannot unwrap end-to-end video key for " + pin, e);
+            return;
+        }
+        String code = MediaKeyExchange.safetyCode(hostPublicKey, keyExchange.getPublicKey());
+        mainHandler.post(() -> {
+            safetyCode = code;
+            updateLabel();
+        });
+    }
+
+    @Override
+    public void onIceServers(List<PeerConnection.IceServer> servers, long ttlSeconds) {
+        WebRTCClient current = client;
+        if (current != null) {
+            current.updateIceServers(servers, ttlSeconds);
+        }
+    }
+
+    // WebRTCClient.WebRTCEvents implementation
+    @Override
+    public void onIceCandidate(IceCandidate candidate) {
+        signalingClient.sendIceCandidate(pin, candidate);
+    }
+
+    @Override
+    public void onAddStream(MediaStream stream) {
+        mainHandler.post(() -> {
+            if (!stream.videoTracks.isEmpty() && client != null) {
+                stream.videoTracks.get(0).addSink(renderer);
+            }
+        });
+    }
+
+    @Override
+    public void onConnectionChange(PeerConnection.IceConnectionState state) {
+        mainHandler.post(() -> {
+            boolean nowConnected = state == PeerConnection.IceConnectionState.CONNECTED
+                    || state == PeerConnection.IceConnectionState.COMPLETED;
+            if (nowConnected == connected) {
+                return;
+            }
+            connected = nowConnected;
+            if (connected) {
+                // Decided before the video transceiver existed
+                if (!active && client != null) {
+                    client.setVideoReceiving(false);
+                }
+                sendQualityHint();
+            }
+            updateLabel();
+            listener.onScreenChanged(this);
+        });
+    }
+
+    @Override
+    public void onOfferCreated(SessionDescription offer) {
+        signalingClient.sendOffer(pin, offer);
+    }
+
+    @Override
+    public void onAnswerCreated(SessionDescription answer) {
+        signalingClient.sendAnswer(pin, answer);
+    }
+
+    @Override
+    public void onPeerConnectionChange(PeerConnection.PeerConnectionState state) {
+        // Not used by the wall
+    }
+}
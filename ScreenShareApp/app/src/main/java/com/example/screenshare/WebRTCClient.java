@@ -1,45 +1,151 @@
 package com.example.screenshare;
 
 import android.content.Context;
+import android.graphics.RectF;
+import android.os.Build;
 import android.util.Log;
 import org.webrtc.AudioSource;
 import org.webrtc.AudioTrack;
 import org.webrtc.Camera1Enumerator;
 import org.webrtc.Camera2Enumerator;
+import org.webrtc.CandidatePairChangeEvent;
 import org.webrtc.CameraEnumerator;
 import org.webrtc.DataChannel;
 import org.webrtc.DefaultVideoDecoderFactory;
-import org.webrtc.DefaultVideoEncoderFactory;
 import org.webrtc.EglBase;
+import org.webrtc.HardwareVideoDecoderFactory;
+import org.webrtc.HardwareVideoEncoderFactory;
 import org.webrtc.IceCandidate;
 import org.webrtc.MediaConstraints;
 import org.webrtc.MediaStream;
+import org.webrtc.MediaStreamTrack;
 import org.webrtc.PeerConnection;
 import org.webrtc.PeerConnectionFactory;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+import org.webrtc.RendererCommon;
+import org.webrtc.RtpParameters;
 import org.webrtc.RtpReceiver;
+import org.webrtc.RtpSender;
+import org.webrtc.RtpTransceiver;
+import org.webrtc.ScreenCapturerAndroid;
 import org.webrtc.SdpObserver;
 import org.webrtc.SessionDescription;
+import org.webrtc.SoftwareVideoEncoderFactory;
 import org.webrtc.SurfaceTextureHelper;
 import org.webrtc.SurfaceViewRenderer;
 import org.webrtc.VideoCapturer;
+import org.webrtc.VideoDecoderFactory;
+import org.webrtc.VideoEncoderFactory;
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoSink;
 import org.webrtc.VideoSource;
 import org.webrtc.VideoTrack;
+import org.webrtc.audio.AudioDeviceModule;
+import org.webrtc.audio.JavaAudioDeviceModule;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+// All PeerConnection work runs in order on one worker thread, so callers on any thread (UI,
+// Socket.IO) never block on WebRTC and operations such as setRemoteDescription -> createAnswer
+// cannot overtake each other. WebRTCEvents callbacks arrive on WebRTC's own threads.
 public class WebRTCClient {
     private static final String TAG = "WebRTCClient";
 
+    // FlexFEC is advertised so it can be negotiated; LossResilienceProfile strips it when unused
+    private static final String FIELD_TRIALS =
+            "WebRTC-FlexFEC-03-Advertised/Enabled/WebRTC-FlexFEC-03/Enabled/";
+    private static final long STATS_INTERVAL_MS = 2000;
+    // Upper bound for one create/set description round trip on the worker
+    private static final long SDP_TIMEOUT_MS = 10000;
+    // Paused capture keeps a tiny virtual display so the MediaProjection stays valid
+    private static final int PAUSED_CAPTURE_SIZE = 64;
+    private static final int PAUSED_CAPTURE_FPS = 1;
+    // How long connection setup waits for /ice-servers before using the cached or fallback list
+    private static final long ICE_SERVERS_WAIT_MS = 2000;
+    // Gathered as soon as the PeerConnection exists, so the offer/answer does not wait for
+    // STUN/TURN round trips; one is enough with max-bundle
+    private static final int ICE_CANDIDATE_POOL_SIZE = 1;
+    // Pre-negotiated on both sides (no in-band open handshake), so either can create it first
+    private static final int FILE_CHANNEL_ID = 1;
+    // Files never get less than this, even when video uses the whole estimate
+    private static final long MIN_FILE_RATE_BPS = 250000;
+
     private Context context;
     private PeerConnectionFactory peerConnectionFactory;
     private PeerConnection peerConnection;
+    // Kept so updateIceServers() can change the servers and nothing else
+    private PeerConnection.RTCConfiguration rtcConfig;
     private EglBase eglBase;
     private VideoSource videoSource;
     private AudioSource audioSource;
     private VideoTrack localVideoTrack;
     private AudioTrack localAudioTrack;
     private VideoCapturer videoCapturer;
+    private RtpSender videoSender;
+    // Worker thread only
+    private boolean captureStarted = false;
+    private boolean capturePaused = false;
+    // Paused because the viewer set its video receiver inactive, e.g. while in the background
+    private boolean pausedForInactiveReceiver = false;
+    // Whether the last completed negotiation had us sending video; null before the first
+    private Boolean videoSendNegotiated;
+    private long idleSinceMs;
+    private long idleCpuStartMs;
+    private long idleFramesStart;
+    private QualityLevel qualityLevel = QualityLevel.FULL;
+    private volatile SessionTimeline timeline;
+    private volatile IceCandidatePolicy icePolicy = IceCandidatePolicy.ALL;
+    private File fileReceiveDir;
+    private FileTransfer.Listener fileTransferListener;
+    private volatile FileTransfer fileTransfer;
+    private final List<NegotiatedChannel> negotiatedChannels = new ArrayList<>();
+    // Worker thread only; from the last stats report
+    private double availableOutgoingBps = -1;
+    private long factoryReadyAtMs;
+    private final ScreenRegionProcessor regionProcessor = new ScreenRegionProcessor();
     private WebRTCEvents events;
+    private volatile int startBitrateKbps = -1;
+    private final SdpTransformerChain localSdpTransformers = new SdpTransformerChain();
+    private final SdpTransformerChain remoteSdpTransformers = new SdpTransformerChain();
+    private final AudioMode audioMode;
+    // End-to-end frame encryption (host) or decryption (viewer); null for neither
+    private final FrameCrypto frameCrypto;
+    // Host side: key frames for new viewers, and merged key frame requests
+    private final KeyFrameScheduler keyFrames = new KeyFrameScheduler();
+    // elapsedRealtime of the last DTLS CONNECTED
+    private volatile long connectedAtMs;
+    private AudioDeviceModule audioDeviceModule;
+    private DeviceAudioCapture deviceAudioCapture;
+    private boolean remoteOfferHasAudio = true;
+    private volatile boolean polite = false;
+    // Worker thread only; exists with the PeerConnection
+    private Negotiator negotiator;
+    private volatile LossResilienceProfile lossProfile = LossResilienceProfile.NACK_ONLY;
+    private volatile LossResilienceSelector lossSelector = new LossResilienceSelector(LossResilienceProfile.NACK_ONLY);
+    private final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "WebRTCWorker"));
+    private boolean statsPolling = false;
+    private volatile ReceiveStatsListener receiveStatsListener;
+    // Worker thread only; inbound video counters at the previous stats report
+    private double lastTotalDecodeTime;
+    private long lastFramesDecoded;
+    // Remote candidates that arrive before the remote description; worker thread only
+    private final List<IceCandidate> pendingCandidates = new ArrayList<>();
+
+    public enum AudioMode {
+        // Video only: no audio source, track or encoder
+        NONE,
+        MICROPHONE,
+        // Device playback via AudioPlaybackCapture, Android 10+
+        DEVICE
+    }
 
     public interface WebRTCEvents {
         void onIceCandidate(IceCandidate candidate);
@@ -47,13 +153,64 @@ public class WebRTCClient {
         void onConnectionChange(PeerConnection.IceConnectionState state);
         void onOfferCreated(SessionDescription offer);
         void onAnswerCreated(SessionDescription answer);
+        // DTLS included; CONNECTED means media can flow
+        void onPeerConnectionChange(PeerConnection.PeerConnectionState state);
+    }
+
+    // Viewer side, called on the worker every stats interval. decodeMs is the average decode
+    // time per frame over the interval, -1 when nothing was decoded.
+    public interface ReceiveStatsListener {
+        void onReceiveStats(double decodeMs, int frameWidth, int frameHeight, double framesPerSecond);
+    }
+
+    // Called on the worker thread once the channel exists. The channel is closed and disposed
+    // by close(); stop using it (and unregister its observer) before that.
+    public interface DataChannelHandler {
+        void onCreated(DataChannel channel);
+    }
+
+    private static final class NegotiatedChannel {
+        final String label;
+        final int id;
+        final DataChannelHandler handler;
+        DataChannel channel;
+
+        NegotiatedChannel(String label, int id, DataChannelHandler handler) {
+            this.label = label;
+            this.id = id;
+            this.handler = handler;
+        }
     }
 
     public WebRTCClient(Context context, WebRTCEvents events) {
+        this(context, events, AudioMode.MICROPHONE);
+    }
+
+    public WebRTCClient(Context context, WebRTCEvents events, AudioMode audioMode) {
+        this(context, events, audioMode, null);
+    }
+
+    // The codec factories are fixed when the factory is built, so the crypto comes in here
+    public WebRTCClient(Context context, WebRTCEvents events, AudioMode audioMode, FrameCrypto frameCrypto) {
         this.context = context;
         this.events = events;
+        this.frameCrypto = frameCrypto;
+        if (audioMode == AudioMode.DEVICE && Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            Log.w(TAG, "Device audio capture needs Android 10, using the microphone");
+            audioMode = AudioMode.MICROPHONE;
+        }
+        this.audioMode = audioMode;
+        // Created here so initSurfaceView can use it on the UI thread right away
         this.eglBase = EglBase.create();
-        initializePeerConnectionFactory();
+        post(this::initializePeerConnectionFactory);
+    }
+
+    private void post(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "WebRTC client closed, dropping task");
+        }
     }
 
     private void initializePeerConnectionFactory() {
@@ -61,6 +218,7 @@ public class WebRTCClient {
         PeerConnectionFactory.InitializationOptions initOptions =
                 PeerConnectionFactory.InitializationOptions.builder(context)
                         .setEnableInternalTracer(false)
+                        .setFieldTrials(FIELD_TRIALS)
                         .createInitializationOptions();
 
         Log.d(TAG, "Step 2: Calling PeerConnectionFactory.initialize()");
@@ -71,181 +229,676 @@ public class WebRTCClient {
         PeerConnectionFactory.Options options = new PeerConnectionFactory.Options();
 
         Log.d(TAG, "Step 5: Building PeerConnectionFactory");
-        peerConnectionFactory = PeerConnectionFactory.builder()
+        EglBase.Context eglContext = eglBase.getEglBaseContext();
+        VideoEncoderFactory hardwareEncoders = new HardwareVideoEncoderFactory(eglContext, true, true);
+        VideoEncoderFactory encoderFactory = new KeyFrameVideoEncoderFactory(
+                hardwareEncoders, new SoftwareVideoEncoderFactory(), keyFrames);
+        VideoDecoderFactory decoderFactory = new DefaultVideoDecoderFactory(eglContext);
+        if (frameCrypto != null && frameCrypto.isSending()) {
+            encoderFactory = new EncryptingVideoEncoderFactory(
+                    new KeyFrameVideoEncoderFactory(hardwareEncoders, null, keyFrames), frameCrypto);
+        } else if (frameCrypto != null) {
+            decoderFactory = new DecryptingVideoDecoderFactory(
+                    decoderFactory, new HardwareVideoDecoderFactory(eglContext), frameCrypto);
+        }
+        PeerConnectionFactory.Builder builder = PeerConnectionFactory.builder()
                 .setOptions(options)
-                .setVideoEncoderFactory(new DefaultVideoEncoderFactory(
-                        eglBase.getEglBaseContext(), true, true))
-                .setVideoDecoderFactory(new DefaultVideoDecoderFactory(eglBase.getEglBaseContext()))
-                .createPeerConnectionFactory();
+                .setVideoEncoderFactory(encoderFactory)
+                .setVideoDecoderFactory(decoderFactory);
+
+        if (audioMode == AudioMode.DEVICE && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            // Recorded microphone buffers are overwritten with playback audio before encoding
+            deviceAudioCapture = new DeviceAudioCapture();
+            audioDeviceModule = JavaAudioDeviceModule.builder(context)
+                    .setAudioRecordDataCallback(deviceAudioCapture)
+                    .createAudioDeviceModule();
+            builder.setAudioDeviceModule(audioDeviceModule);
+        }
+
+        peerConnectionFactory = builder.createPeerConnectionFactory();
+        factoryReadyAtMs = android.os.SystemClock.elapsedRealtime();
         Log.d(TAG, "Step 6: PeerConnectionFactory created successfully");
     }
 
     public void initializePeerConnection() {
+        post(this::createPeerConnection);
+    }
+
+    // Servers the signaling server sent with the session (TURN credentials included); the
+    // connection gathers with them from now on and later connections start with them
+    public void updateIceServers(List<PeerConnection.IceServer> servers, long ttlSeconds) {
+        ScreenShareApplication.get(context).getIceServerProvider().update(servers, ttlSeconds);
+        post(() -> {
+            if (peerConnection == null) {
+                return;
+            }
+            rtcConfig.iceServers = servers;
+            if (!peerConnection.setConfiguration(rtcConfig)) {
+                Log.w(TAG, "Could not apply " + servers.size() + " ICE servers");
+            }
+        });
+    }
+
+    // Call before initializePeerConnection
+    public void setIceCandidatePolicy(IceCandidatePolicy policy) {
+        icePolicy = policy;
+    }
+
+    // Call before initializePeerConnection. The polite peer gives way when both sides offer at
+    // once; exactly one of the two peers must be polite.
+    public void setPolite(boolean polite) {
+        this.polite = polite;
+    }
+
+    // Call before initializePeerConnection; both peers must enable it for the channel to open
+    public void enableFileTransfer(File receiveDir, FileTransfer.Listener listener) {
+        fileReceiveDir = receiveDir;
+        fileTransferListener = listener;
+    }
+
+    // Call before initializePeerConnection. Both peers must add a channel with the same id,
+    // which must not be FILE_CHANNEL_ID.
+    public void addNegotiatedChannel(String label, int id, DataChannelHandler handler) {
+        negotiatedChannels.add(new NegotiatedChannel(label, id, handler));
+    }
+
+    // Null until the PeerConnection exists or when file transfer is not enabled
+    public FileTransfer getFileTransfer() {
+        return fileTransfer;
+    }
+
+    private void createPeerConnection() {
         Log.d(TAG, "Step 7: Creating ICE servers list");
-        List<PeerConnection.IceServer> iceServers = new ArrayList<>();
-        iceServers.add(PeerConnection.IceServer.builder("stun:stun.l.google.com:19302").createIceServer());
+        List<PeerConnection.IceServer> iceServers = ScreenShareApplication.get(context)
+                .getIceServerProvider().getIceServers(ICE_SERVERS_WAIT_MS);
 
         Log.d(TAG, "Step 8: Creating RTCConfiguration");
-        PeerConnection.RTCConfiguration rtcConfig = new PeerConnection.RTCConfiguration(iceServers);
-        rtcConfig.tcpCandidatePolicy = PeerConnection.TcpCandidatePolicy.DISABLED;
+        rtcConfig = new PeerConnection.RTCConfiguration(iceServers);
+        // TCP candidates are the way out of networks that block UDP
+        rtcConfig.tcpCandidatePolicy = PeerConnection.TcpCandidatePolicy.ENABLED;
+        rtcConfig.iceTransportsType = icePolicy.getTransportsType();
+        rtcConfig.iceCandidatePoolSize = ICE_CANDIDATE_POOL_SIZE;
         rtcConfig.bundlePolicy = PeerConnection.BundlePolicy.MAXBUNDLE;
         rtcConfig.rtcpMuxPolicy = PeerConnection.RtcpMuxPolicy.REQUIRE;
         rtcConfig.continualGatheringPolicy = PeerConnection.ContinualGatheringPolicy.GATHER_CONTINUALLY;
         rtcConfig.keyType = PeerConnection.KeyType.ECDSA;
 
-        Log.d(TAG, "Step 9: Creating PeerConnection - THIS IS WHERE IT LIKELY CRASHES");
+        Log.d(TAG, "Step 9: Creating PeerConnection with " + iceServers.size() + " ICE servers, policy " + icePolicy);
         peerConnection = peerConnectionFactory.createPeerConnection(rtcConfig, new PeerConnectionObserver());
         Log.d(TAG, "Step 10: PeerConnection created successfully!");
+        negotiator = new Negotiator(new NegotiationPeer(), polite);
+
+        if (fileReceiveDir != null) {
+            DataChannel.Init init = new DataChannel.Init();
+            init.ordered = true;
+            init.negotiated = true;
+            init.id = FILE_CHANNEL_ID;
+            DataChannel channel = peerConnection.createDataChannel("transfer", init);
+            fileTransfer = new FileTransfer(channel, fileReceiveDir, fileTransferListener);
+        }
+
+        for (NegotiatedChannel negotiated : negotiatedChannels) {
+            DataChannel.Init init = new DataChannel.Init();
+            init.ordered = true;
+            init.negotiated = true;
+            init.id = negotiated.id;
+            negotiated.channel = peerConnection.createDataChannel(negotiated.label, init);
+            negotiated.handler.onCreated(negotiated.channel);
+        }
     }
 
     public void startLocalVideoCapture(VideoCapturer capturer) {
+        post(() -> {
+            prepareCapture(capturer);
+            doResumeCapture();
+        });
+    }
+
+    // Adds the video track so it can be negotiated, but does not capture or encode anything
+    // until resumeCapture()
+    public void prepareLocalVideoCapture(VideoCapturer capturer) {
+        post(() -> prepareCapture(capturer));
+    }
+
+    // Starts capture on first use, otherwise restores the full capture format. Re-enabling the
+    // encoding makes the encoder start with a keyframe.
+    public void resumeCapture() {
+        post(this::doResumeCapture);
+    }
+
+    // Stops feeding the encoder while keeping the capturer (and its MediaProjection) alive;
+    // ScreenCapturerAndroid.stopCapture() would end the projection for good
+    public void pauseCapture() {
+        post(this::doPauseCapture);
+    }
+
+    private void prepareCapture(VideoCapturer capturer) {
         this.videoCapturer = capturer;
 
         SurfaceTextureHelper surfaceTextureHelper = SurfaceTextureHelper.create(
                 "CaptureThread", eglBase.getEglBaseContext());
 
         videoSource = peerConnectionFactory.createVideoSource(capturer.isScreencast());
+        // Crop to the shared region before frames reach the encoder
+        videoSource.setVideoProcessor(regionProcessor);
 
         // Get the video processor (CapturerObserver) from the VideoSource
         org.webrtc.CapturerObserver capturerObserver = videoSource.getCapturerObserver();
 
         videoCapturer.initialize(surfaceTextureHelper, context, capturerObserver);
-        // Use lower resolution and higher framerate for better responsiveness
-        videoCapturer.startCapture(720, 1280, 15);
 
         localVideoTrack = peerConnectionFactory.createVideoTrack("video", videoSource);
         localVideoTrack.setEnabled(true);
 
-        // Add audio track
-        MediaConstraints audioConstraints = new MediaConstraints();
-        audioSource = peerConnectionFactory.createAudioSource(audioConstraints);
-        localAudioTrack = peerConnectionFactory.createAudioTrack("audio", audioSource);
-        localAudioTrack.setEnabled(true);
-
         // Use addTrack instead of deprecated addStream
         Log.d(TAG, "Adding video track to PeerConnection");
-        peerConnection.addTrack(localVideoTrack, java.util.Collections.singletonList("local_stream"));
-        Log.d(TAG, "Adding audio track to PeerConnection");
-        peerConnection.addTrack(localAudioTrack, java.util.Collections.singletonList("local_stream"));
+        videoSender = peerConnection.addTrack(localVideoTrack, java.util.Collections.singletonList("local_stream"));
+
+        // Nothing is captured until the first resumeCapture()
+        regionProcessor.setPaused(true);
+        capturePaused = true;
+        markIdle();
+
+        // Without an audio track WebRTC never opens the recorder, AEC or the Opus encoder
+        if (audioMode != AudioMode.NONE) {
+            MediaConstraints audioConstraints = new MediaConstraints();
+            audioSource = peerConnectionFactory.createAudioSource(audioConstraints);
+            localAudioTrack = peerConnectionFactory.createAudioTrack("audio", audioSource);
+            localAudioTrack.setEnabled(true);
+
+            Log.d(TAG, "Adding audio track to PeerConnection (" + audioMode + ")");
+            peerConnection.addTrack(localAudioTrack, java.util.Collections.singletonList("local_stream"));
+        }
         Log.d(TAG, "Tracks added successfully");
     }
 
-    public void createOffer() {
-        MediaConstraints constraints = new MediaConstraints();
-        constraints.mandatory.add(new MediaConstraints.KeyValuePair("OfferToReceiveVideo", "false"));
-        constraints.mandatory.add(new MediaConstraints.KeyValuePair("OfferToReceiveAudio", "false"));
-
-        peerConnection.createOffer(new SdpObserver() {
-            @Override
-            public void onCreateSuccess(SessionDescription sessionDescription) {
-                peerConnection.setLocalDescription(new SdpObserver() {
-                    @Override
-                    public void onCreateSuccess(SessionDescription sessionDescription) {
-                    }
+    // Milestones of the connection setup are recorded here (factory init, descriptions, ICE, DTLS)
+    public void setTimeline(SessionTimeline timeline) {
+        this.timeline = timeline;
+        // The factory is usually ready before the caller gets here
+        post(() -> {
+            if (factoryReadyAtMs > 0) {
+                timeline.markAt("factory_initialized", factoryReadyAtMs);
+            }
+        });
+    }
 
-                    @Override
-                    public void onSetSuccess() {
-                        Log.d(TAG, "Local description set successfully");
-                        // Notify that offer is ready to be sent
-                        events.onOfferCreated(sessionDescription);
-                    }
+    private void mark(String milestone) {
+        SessionTimeline current = timeline;
+        if (current != null) {
+            current.mark(milestone);
+        }
+    }
 
-                    @Override
-                    public void onCreateFailure(String s) {
-                    }
+    private void doResumeCapture() {
+        if (videoCapturer == null || !capturePaused) {
+            return;
+        }
+        logIdlePhase();
 
-                    @Override
-                    public void onSetFailure(String s) {
-                        Log.e(TAG, "Failed to set local description: " + s);
-                    }
-                }, sessionDescription);
+        if (!captureStarted) {
+            // Use lower resolution and higher framerate for better responsiveness
+            videoCapturer.startCapture(qualityLevel.getWidth(), qualityLevel.getHeight(), qualityLevel.getFps());
+            captureStarted = true;
+            mark("capture_started");
+            // The MediaProjection only exists once capture has started
+            if (deviceAudioCapture != null && videoCapturer instanceof ScreenCapturerAndroid) {
+                deviceAudioCapture.setMediaProjection(((ScreenCapturerAndroid) videoCapturer).getMediaProjection());
             }
+        } else {
+            videoCapturer.changeCaptureFormat(qualityLevel.getWidth(), qualityLevel.getHeight(), qualityLevel.getFps());
+        }
 
-            @Override
-            public void onSetSuccess() {
+        regionProcessor.setPaused(false);
+        updateVideoEncodings(true);
+        capturePaused = false;
+        pausedForInactiveReceiver = false;
+        Log.d(TAG, "Capture resumed");
+    }
+
+    private void doPauseCapture() {
+        if (videoCapturer == null || capturePaused) {
+            return;
+        }
+        regionProcessor.setPaused(true);
+        updateVideoEncodings(false);
+        videoCapturer.changeCaptureFormat(PAUSED_CAPTURE_SIZE, PAUSED_CAPTURE_SIZE, PAUSED_CAPTURE_FPS);
+        capturePaused = true;
+        markIdle();
+        Log.d(TAG, "Capture paused");
+    }
+
+    public void setReceiveStatsListener(ReceiveStatsListener listener) {
+        receiveStatsListener = listener;
+    }
+
+    // Viewer side: an inactive video transceiver pauses the host's capture and encoder and frees
+    // our decoder.
+    // The direction change is renegotiated (we offer; the host answers). Before the first
+    // negotiation there is no transceiver yet and this does nothing.
+    public void setVideoReceiving(boolean receiving) {
+        post(() -> {
+            if (peerConnection == null) {
+                return;
+            }
+            RtpTransceiver.RtpTransceiverDirection direction = receiving
+                    ? RtpTransceiver.RtpTransceiverDirection.RECV_ONLY
+                    : RtpTransceiver.RtpTransceiverDirection.INACTIVE;
+            for (RtpTransceiver transceiver : peerConnection.getTransceivers()) {
+                if (transceiver.getMediaType() == MediaStreamTrack.MediaType.MEDIA_TYPE_VIDEO
+                        && !transceiver.isStopped() && transceiver.getDirection() != direction) {
+                    Log.d(TAG, "Video receiver " + direction);
+                    transceiver.setDirection(direction);
+                }
             }
+        });
+    }
 
-            @Override
-            public void onCreateFailure(String s) {
-                Log.e(TAG, "Failed to create offer: " + s);
+    // Steps capture size, frame rate and bitrate cap, e.g. from a DeviceConditionMonitor
+    public void setQualityLevel(QualityLevel level) {
+        post(() -> {
+            if (level == qualityLevel) {
+                return;
             }
+            Log.d(TAG, "Quality level " + qualityLevel + " -> " + level);
+            qualityLevel = level;
+            // A paused capturer picks the new format up when it resumes
+            if (captureStarted && !capturePaused) {
+                videoCapturer.changeCaptureFormat(level.getWidth(), level.getHeight(), level.getFps());
+                updateVideoEncodings(true);
+            }
+        });
+    }
 
-            @Override
-            public void onSetFailure(String s) {
+    // An inactive encoding releases the encoder; reactivating it begins with a keyframe.
+    // Frame rate and bitrate caps follow the current quality level.
+    private void updateVideoEncodings(boolean active) {
+        if (videoSender == null) {
+            return;
+        }
+        RtpParameters parameters = videoSender.getParameters();
+        if (parameters == null || parameters.encodings.isEmpty()) {
+            return;
+        }
+        int maxKbps = qualityLevel.getMaxBitrateKbps();
+        for (RtpParameters.Encoding encoding : parameters.encodings) {
+            encoding.active = active;
+            encoding.maxFramerate = qualityLevel.getFps();
+            encoding.maxBitrateBps = maxKbps > 0 ? maxKbps * 1000 : null;
+        }
+        videoSender.setParameters(parameters);
+    }
+
+    // Host side, after every completed negotiation. A viewer that turns its video receiver off
+    // (see setVideoReceiving) makes our sender inactive; capture pauses until it is turned back
+    // on, and resuming starts with a key frame. The PeerConnection stays up throughout.
+    private void onNegotiationComplete() {
+        if (peerConnection == null || videoSender == null) {
+            return;
+        }
+        boolean sending = false;
+        for (RtpTransceiver transceiver : peerConnection.getTransceivers()) {
+            RtpTransceiver.RtpTransceiverDirection current = transceiver.getCurrentDirection();
+            if (transceiver.getMediaType() == MediaStreamTrack.MediaType.MEDIA_TYPE_VIDEO
+                    && (current == RtpTransceiver.RtpTransceiverDirection.SEND_ONLY
+                    || current == RtpTransceiver.RtpTransceiverDirection.SEND_RECV)) {
+                sending = true;
             }
-        }, constraints);
+        }
+        Boolean previous = videoSendNegotiated;
+        videoSendNegotiated = sending;
+        if (previous == null || previous == sending) {
+            return;
+        }
+        if (!sending && !capturePaused) {
+            Log.d(TAG, "Viewer stopped receiving video, pausing capture");
+            doPauseCapture();
+            pausedForInactiveReceiver = true;
+        } else if (sending && pausedForInactiveReceiver) {
+            Log.d(TAG, "Viewer receives video again, resuming capture");
+            doResumeCapture();
+        }
     }
 
-    public void createAnswer() {
-        MediaConstraints constraints = new MediaConstraints();
-        constraints.mandatory.add(new MediaConstraints.KeyValuePair("OfferToReceiveVideo", "true"));
-        constraints.mandatory.add(new MediaConstraints.KeyValuePair("OfferToReceiveAudio", "true"));
+    // Host side: a viewer that just connected, or reconnected, gets a key frame right away
+    // instead of after its own request made the round trip. A paused capture starts with one
+    // when it resumes.
+    private void forceKeyFrame() {
+        if (videoSender == null || capturePaused) {
+            return;
+        }
+        Log.d(TAG, "Forcing a key frame for the connected viewer");
+        if (!keyFrames.requestKeyFrame()) {
+            // A software encoder cannot be asked directly; re-activating the encoding restarts it
+            updateVideoEncodings(false);
+            updateVideoEncodings(true);
+        }
+    }
+
+    // Viewer side: time from DTLS connected to the first decoded frame, the
+    // "first_frame_decoded" milestone; /metrics on the server has the distribution
+    private void watchFirstFrame(VideoTrack track) {
+        track.addSink(new VideoSink() {
+            // Decoder thread
+            private boolean seen;
 
-        peerConnection.createAnswer(new SdpObserver() {
             @Override
-            public void onCreateSuccess(SessionDescription sessionDescription) {
-                peerConnection.setLocalDescription(new SdpObserver() {
-                    @Override
-                    public void onCreateSuccess(SessionDescription sessionDescription) {
-                    }
+            public void onFrame(VideoFrame frame) {
+                if (seen) {
+                    return;
+                }
+                seen = true;
+                mark("first_frame_decoded");
+                long connected = connectedAtMs;
+                if (connected > 0) {
+                    Log.d(TAG, "First frame decoded " + (android.os.SystemClock.elapsedRealtime() - connected)
+                            + " ms after connecting");
+                }
+                // Not from inside the callback, which runs under the track's sink lock
+                VideoSink sink = this;
+                post(() -> track.removeSink(sink));
+            }
+        });
+    }
 
-                    @Override
-                    public void onSetSuccess() {
-                        Log.d(TAG, "Local description set successfully");
-                        // Notify that answer is ready to be sent
-                        events.onAnswerCreated(sessionDescription);
-                    }
+    private void markIdle() {
+        idleSinceMs = android.os.SystemClock.elapsedRealtime();
+        idleCpuStartMs = android.os.Process.getElapsedCpuTime();
+        idleFramesStart = 0;
+        PeerConnection pc = peerConnection;
+        if (pc != null) {
+            pc.getStats(report -> post(() -> idleFramesStart = framesEncoded(report)));
+        }
+    }
 
-                    @Override
-                    public void onCreateFailure(String s) {
-                    }
+    // Process CPU time and frames the encoder produced while nobody was watching, to measure
+    // lazy capture. The encoder's own count, not the frames offered to it: any frame that
+    // slips past the pause shows up here.
+    private void logIdlePhase() {
+        long idleMs = android.os.SystemClock.elapsedRealtime() - idleSinceMs;
+        long cpuMs = android.os.Process.getElapsedCpuTime() - idleCpuStartMs;
+        PeerConnection pc = peerConnection;
+        if (pc == null) {
+            return;
+        }
+        pc.getStats(report -> post(() -> Log.d(TAG, "Idle phase: " + idleMs + " ms"
+                + ", cpu=" + cpuMs + " ms, framesEncoded=" + (framesEncoded(report) - idleFramesStart))));
+    }
 
-                    @Override
-                    public void onSetFailure(String s) {
-                        Log.e(TAG, "Failed to set local description: " + s);
-                    }
-                }, sessionDescription);
+    // Summed over the video outbound-rtp entries, one per simulcast layer
+    private static long framesEncoded(RTCStatsReport report) {
+        long frames = 0;
+        for (RTCStats stats : report.getStatsMap().values()) {
+            Object encoded = stats.getMembers().get("framesEncoded");
+            if ("outbound-rtp".equals(stats.getType()) && "video".equals(stats.getMembers().get("kind"))
+                    && encoded instanceof Number) {
+                frames += ((Number) encoded).longValue();
             }
+        }
+        return frames;
+    }
 
-            @Override
-            public void onSetSuccess() {
-            }
+    public void setCaptureRegion(RectF region) {
+        regionProcessor.setRegion(region);
+    }
 
-            @Override
-            public void onCreateFailure(String s) {
-                Log.e(TAG, "Failed to create answer: " + s);
-            }
+    public ScreenRegionProcessor getRegionProcessor() {
+        return regionProcessor;
+    }
 
-            @Override
-            public void onSetFailure(String s) {
+    // Seeds the sender's bandwidth estimate, e.g. from a BandwidthProbe result
+    public void setStartBitrate(int kbps) {
+        this.startBitrateKbps = kbps;
+    }
+
+    // Pins a profile and disables automatic selection; takes effect on the next offer
+    public void setLossResilienceProfile(LossResilienceProfile profile) {
+        lossProfile = profile;
+        lossSelector = null;
+    }
+
+    public LossResilienceProfile getLossResilienceProfile() {
+        return lossProfile;
+    }
+
+    // Starts a negotiation round, replacing an offer that is still unanswered. A peer that was
+    // connected before (e.g. a viewer joining again) also gets new ICE credentials.
+    public void createOffer() {
+        post(() -> {
+            if (negotiator != null) {
+                negotiator.negotiate(peerConnection.getRemoteDescription() != null);
             }
-        }, constraints);
+        });
     }
 
+    // An offer is answered automatically (onAnswerCreated); colliding offers are resolved by
+    // the polite/impolite roles
     public void setRemoteDescription(SessionDescription sessionDescription) {
-        peerConnection.setRemoteDescription(new SdpObserver() {
-            @Override
-            public void onCreateSuccess(SessionDescription sessionDescription) {
+        post(() -> {
+            if (negotiator != null) {
+                negotiator.onRemoteDescription(sessionDescription);
             }
+        });
+    }
 
-            @Override
-            public void onSetSuccess() {
-                Log.d(TAG, "Remote description set successfully");
+    private SessionDescription doCreateOffer(boolean iceRestart) {
+        MediaConstraints constraints = new MediaConstraints();
+        // Makes a sender's transceivers send-only. Not for a viewer's renegotiation: it would
+        // also turn off receiving on the transceivers it negotiated as recvonly.
+        if (videoSender != null || localAudioTrack != null) {
+            constraints.mandatory.add(new MediaConstraints.KeyValuePair("OfferToReceiveVideo", "false"));
+            constraints.mandatory.add(new MediaConstraints.KeyValuePair("OfferToReceiveAudio", "false"));
+        }
+        if (iceRestart) {
+            constraints.mandatory.add(new MediaConstraints.KeyValuePair("IceRestart", "true"));
+        }
+
+        SdpResult created = new SdpResult("create offer");
+        peerConnection.createOffer(created, constraints);
+        if (!created.await()) {
+            return null;
+        }
+        return transform(created.description, localSdpTransformers);
+    }
+
+    private SessionDescription doCreateAnswer() {
+        MediaConstraints constraints = new MediaConstraints();
+        constraints.mandatory.add(new MediaConstraints.KeyValuePair("OfferToReceiveVideo", "true"));
+        constraints.mandatory.add(new MediaConstraints.KeyValuePair("OfferToReceiveAudio",
+                String.valueOf(remoteOfferHasAudio)));
+
+        SdpResult created = new SdpResult("create answer");
+        peerConnection.createAnswer(created, constraints);
+        if (!created.await()) {
+            return null;
+        }
+        return transform(created.description, localSdpTransformers);
+    }
+
+    private boolean setLocalDescription(SessionDescription sessionDescription) {
+        SdpResult set = new SdpResult("set local description");
+        peerConnection.setLocalDescription(set, sessionDescription);
+        if (!set.await()) {
+            return false;
+        }
+        Log.d(TAG, "Local description set successfully");
+        return true;
+    }
+
+    private boolean doSetRemoteDescription(SessionDescription sessionDescription) {
+        // The sender's codec parameters come from the answer, so it is transformed too
+        sessionDescription = transform(sessionDescription, remoteSdpTransformers);
+        if (sessionDescription.type == SessionDescription.Type.OFFER) {
+            remoteOfferHasAudio = sessionDescription.description.contains("m=audio");
+        }
+
+        SdpResult set = new SdpResult("set remote description");
+        peerConnection.setRemoteDescription(set, sessionDescription);
+        if (!set.await()) {
+            return false;
+        }
+        Log.d(TAG, "Remote description set successfully");
+        mark("remote_description_set");
+
+        int startKbps = startBitrateKbps;
+        if (startKbps > 0) {
+            peerConnection.setBitrate(null, startKbps * 1000, null);
+        }
+
+        if (!pendingCandidates.isEmpty()) {
+            Log.d(TAG, "Adding " + pendingCandidates.size() + " queued ICE candidates");
+            for (IceCandidate candidate : pendingCandidates) {
+                peerConnection.addIceCandidate(candidate);
             }
+            pendingCandidates.clear();
+        }
+        return true;
+    }
 
-            @Override
-            public void onCreateFailure(String s) {
+    // Applied to our own offer/answer before setLocalDescription (and therefore before it is sent)
+    public SdpTransformerChain getLocalSdpTransformers() {
+        return localSdpTransformers;
+    }
+
+    // Applied to descriptions received from the remote peer before setRemoteDescription
+    public SdpTransformerChain getRemoteSdpTransformers() {
+        return remoteSdpTransformers;
+    }
+
+    private SessionDescription transform(SessionDescription sessionDescription, SdpTransformerChain chain) {
+        int startKbps = startBitrateKbps;
+        // Only the sending side decides how its video is protected
+        boolean sending = localVideoTrack != null;
+        if (chain.isEmpty() && startKbps <= 0 && !sending) {
+            return sessionDescription;
+        }
+
+        Sdp sdp = Sdp.parse(sessionDescription.description);
+        chain.transform(sdp);
+        if (sending) {
+            lossProfile.toSdpTransformer().transform(sdp);
+        }
+        if (startKbps > 0) {
+            SdpTransformers.bitrate(startKbps, 0, 0).transform(sdp);
+        }
+        return new SessionDescription(sessionDescription.type, sdp.toString());
+    }
+
+    private void startStatsPolling() {
+        if (statsPolling) {
+            return;
+        }
+        statsPolling = true;
+        executor.scheduleAtFixedRate(() -> {
+            PeerConnection pc = peerConnection;
+            if (pc != null) {
+                pc.getStats(report -> post(() -> {
+                    for (RTCStats stats : report.getStatsMap().values()) {
+                        if ("candidate-pair".equals(stats.getType())) {
+                            onCandidatePairStats(stats);
+                            continue;
+                        }
+                        if (!"video".equals(stats.getMembers().get("kind"))) {
+                            continue;
+                        }
+                        if ("remote-inbound-rtp".equals(stats.getType())) {
+                            onRemoteInboundStats(stats);
+                        } else if ("inbound-rtp".equals(stats.getType())) {
+                            logFreezeStats(stats);
+                            onInboundVideoStats(stats);
+                        } else if ("outbound-rtp".equals(stats.getType())) {
+                            onOutboundVideoStats(stats);
+                        }
+                    }
+                }));
             }
+        }, STATS_INTERVAL_MS, STATS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
 
-            @Override
-            public void onSetFailure(String s) {
-                Log.e(TAG, "Failed to set remote description: " + s);
+    private void onCandidatePairStats(RTCStats stats) {
+        Object available = stats.getMembers().get("availableOutgoingBitrate");
+        if (Boolean.TRUE.equals(stats.getMembers().get("nominated")) && available instanceof Number) {
+            availableOutgoingBps = ((Number) available).doubleValue();
+        }
+    }
+
+    // Files get what the bandwidth estimate leaves after the video encoder's target, so a
+    // transfer fills the link without pushing video into congestion
+    private void onOutboundVideoStats(RTCStats stats) {
+        FileTransfer transfer = fileTransfer;
+        Object target = stats.getMembers().get("targetBitrate");
+        if (transfer == null || availableOutgoingBps <= 0 || !(target instanceof Number)) {
+            return;
+        }
+        long spare = (long) (availableOutgoingBps - ((Number) target).doubleValue());
+        transfer.setMaxSendRateBps(Math.max(MIN_FILE_RATE_BPS, spare));
+    }
+
+    // Sender side: receiver reports drive the loss-resilience profile
+    private void onRemoteInboundStats(RTCStats stats) {
+        LossResilienceSelector selector = lossSelector;
+        Object fractionLost = stats.getMembers().get("fractionLost");
+        Object roundTripTime = stats.getMembers().get("roundTripTime");
+        if (selector == null || !(fractionLost instanceof Number) || !(roundTripTime instanceof Number)) {
+            return;
+        }
+
+        LossResilienceProfile next = selector.onSample(
+                ((Number) fractionLost).doubleValue(), ((Number) roundTripTime).doubleValue() * 1000);
+        if (next != null && next != lossProfile) {
+            Log.d(TAG, "Switching loss resilience to " + next + " (loss="
+                    + selector.getSmoothedLoss() + ", rtt=" + selector.getSmoothedRttMs() + "ms)");
+            lossProfile = next;
+            // Applied by the SDP transformers, so the browser-style event never fires for it
+            if (negotiator != null) {
+                negotiator.onRenegotiationNeeded();
             }
-        }, sessionDescription);
+        }
+    }
+
+    // Receiver side: freeze counters are what the netem runs compare across profiles
+    private void logFreezeStats(RTCStats stats) {
+        Log.d(TAG, "Freeze stats: freezeCount=" + stats.getMembers().get("freezeCount")
+                + " totalFreezesDuration=" + stats.getMembers().get("totalFreezesDuration")
+                + " framesDecoded=" + stats.getMembers().get("framesDecoded")
+                + " packetsLost=" + stats.getMembers().get("packetsLost"));
+    }
+
+    private void onInboundVideoStats(RTCStats stats) {
+        ReceiveStatsListener listener = receiveStatsListener;
+        Object totalDecodeTime = stats.getMembers().get("totalDecodeTime");
+        Object framesDecoded = stats.getMembers().get("framesDecoded");
+        if (listener == null || !(totalDecodeTime instanceof Number) || !(framesDecoded instanceof Number)) {
+            return;
+        }
+        double decodeTime = ((Number) totalDecodeTime).doubleValue();
+        long frames = ((Number) framesDecoded).longValue();
+        long newFrames = frames - lastFramesDecoded;
+        double decodeMs = newFrames > 0 ? (decodeTime - lastTotalDecodeTime) * 1000 / newFrames : -1;
+        lastTotalDecodeTime = decodeTime;
+        lastFramesDecoded = frames;
+
+        Object width = stats.getMembers().get("frameWidth");
+        Object height = stats.getMembers().get("frameHeight");
+        Object fps = stats.getMembers().get("framesPerSecond");
+        listener.onReceiveStats(decodeMs,
+                width instanceof Number ? ((Number) width).intValue() : 0,
+                height instanceof Number ? ((Number) height).intValue() : 0,
+                fps instanceof Number ? ((Number) fps).doubleValue() : 0);
     }
 
     public void addIceCandidate(IceCandidate candidate) {
-        peerConnection.addIceCandidate(candidate);
+        post(() -> {
+            if (peerConnection == null) {
+                return;
+            }
+            // Candidates can outrun the offer/answer through signaling; hold them until it is applied
+            if (peerConnection.getRemoteDescription() == null) {
+                pendingCandidates.add(candidate);
+                return;
+            }
+            peerConnection.addIceCandidate(candidate);
+        });
     }
 
     public SessionDescription getLocalDescription() {
@@ -253,12 +906,37 @@ public class WebRTCClient {
     }
 
     public void initSurfaceView(SurfaceViewRenderer surface) {
-        surface.init(eglBase.getEglBaseContext(), null);
+        initSurfaceView(surface, null);
+    }
+
+    public void initSurfaceView(SurfaceViewRenderer surface, RendererCommon.RendererEvents rendererEvents) {
+        surface.init(eglBase.getEglBaseContext(), rendererEvents);
         surface.setEnableHardwareScaler(true);
         surface.setMirror(false);
     }
 
+    // Tears down on the worker after everything already queued; later calls are dropped
     public void close() {
+        post(this::release);
+        executor.shutdown();
+    }
+
+    // shutdown() has already cancelled the periodic stats task by the time this runs
+    private void release() {
+        pendingCandidates.clear();
+
+        if (fileTransfer != null) {
+            fileTransfer.close();
+            fileTransfer = null;
+        }
+        for (NegotiatedChannel negotiated : negotiatedChannels) {
+            if (negotiated.channel != null) {
+                negotiated.channel.close();
+                negotiated.channel.dispose();
+                negotiated.channel = null;
+            }
+        }
+
         if (videoCapturer != null) {
             try {
                 videoCapturer.stopCapture();
@@ -269,7 +947,9 @@ public class WebRTCClient {
             videoCapturer = null;
         }
 
+        videoSender = null;
         if (videoSource != null) {
+            videoSource.setVideoProcessor(null);
             videoSource.dispose();
             videoSource = null;
         }
@@ -279,6 +959,7 @@ public class WebRTCClient {
             audioSource = null;
         }
 
+        negotiator = null;
         if (peerConnection != null) {
             peerConnection.close();
             peerConnection = null;
@@ -289,24 +970,159 @@ public class WebRTCClient {
             peerConnectionFactory = null;
         }
 
+        if (deviceAudioCapture != null) {
+            deviceAudioCapture.release();
+            deviceAudioCapture = null;
+        }
+
+        if (audioDeviceModule != null) {
+            audioDeviceModule.release();
+            audioDeviceModule = null;
+        }
+
         if (eglBase != null) {
             eglBase.release();
             eglBase = null;
         }
     }
 
+    // Lets the worker wait for an asynchronous SDP operation so the next queued task sees its result
+    private static class SdpResult implements SdpObserver {
+        private final String operation;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private SessionDescription description;
+        private String error;
+
+        SdpResult(String operation) {
+            this.operation = operation;
+        }
+
+        boolean await() {
+            try {
+                if (!done.await(SDP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    Log.e(TAG, "Timed out waiting to " + operation);
+                    return false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (error != null) {
+                Log.e(TAG, "Failed to " + operation + ": " + error);
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void onCreateSuccess(SessionDescription sessionDescription) {
+            description = sessionDescription;
+            done.countDown();
+        }
+
+        @Override
+        public void onSetSuccess() {
+            done.countDown();
+        }
+
+        @Override
+        public void onCreateFailure(String s) {
+            error = s;
+            done.countDown();
+        }
+
+        @Override
+        public void onSetFailure(String s) {
+            error = s;
+            done.countDown();
+        }
+    }
+
+    // "candidate:842163049 1 udp 1677729535 203.0.113.7 46154 typ srflx raddr ..." -> value after key
+    static String candidateAttribute(String candidateSdp, String key) {
+        String[] fields = candidateSdp.split(" ");
+        for (int i = 0; i < fields.length - 1; i++) {
+            if (key.equals(fields[i])) {
+                return fields[i + 1];
+            }
+        }
+        return "unknown";
+    }
+
+    static String candidateProtocol(String candidateSdp) {
+        String[] fields = candidateSdp.split(" ");
+        return fields.length > 2 ? fields[2].toLowerCase() : "unknown";
+    }
+
+    // Runs on the worker, like every negotiator call
+    private class NegotiationPeer implements Negotiator.Peer {
+        @Override
+        public PeerConnection.SignalingState signalingState() {
+            return peerConnection.signalingState();
+        }
+
+        @Override
+        public SessionDescription createOffer(boolean iceRestart) {
+            return doCreateOffer(iceRestart);
+        }
+
+        @Override
+        public SessionDescription createAnswer() {
+            return doCreateAnswer();
+        }
+
+        @Override
+        public boolean setLocalDescription(SessionDescription description) {
+            return WebRTCClient.this.setLocalDescription(description);
+        }
+
+        @Override
+        public boolean setRemoteDescription(SessionDescription description) {
+            return doSetRemoteDescription(description);
+        }
+
+        @Override
+        public void sendDescription(SessionDescription description) {
+            if (description.type == SessionDescription.Type.OFFER) {
+                events.onOfferCreated(description);
+            } else {
+                events.onAnswerCreated(description);
+            }
+        }
+    }
+
     private class PeerConnectionObserver implements PeerConnection.Observer {
         @Override
         public void onSignalingChange(PeerConnection.SignalingState signalingState) {
             Log.d(TAG, "onSignalingChange: " + signalingState);
+            if (signalingState == PeerConnection.SignalingState.STABLE) {
+                post(WebRTCClient.this::onNegotiationComplete);
+            }
         }
 
         @Override
         public void onIceConnectionChange(PeerConnection.IceConnectionState iceConnectionState) {
             Log.d(TAG, "onIceConnectionChange: " + iceConnectionState);
+            if (iceConnectionState == PeerConnection.IceConnectionState.CHECKING) {
+                mark("ice_checking");
+            } else if (iceConnectionState == PeerConnection.IceConnectionState.CONNECTED) {
+                mark("ice_connected");
+                post(WebRTCClient.this::startStatsPolling);
+            }
             events.onConnectionChange(iceConnectionState);
         }
 
+        @Override
+        public void onConnectionChange(PeerConnection.PeerConnectionState newState) {
+            Log.d(TAG, "onConnectionChange: " + newState);
+            if (newState == PeerConnection.PeerConnectionState.CONNECTED) {
+                mark("dtls_connected");
+                connectedAtMs = android.os.SystemClock.elapsedRealtime();
+                post(WebRTCClient.this::forceKeyFrame);
+            }
+            events.onPeerConnectionChange(newState);
+        }
+
         @Override
         public void onIceConnectionReceivingChange(boolean b) {
             Log.d(TAG, "onIceConnectionReceivingChange: " + b);
@@ -315,6 +1131,25 @@ public class WebRTCClient {
         @Override
         public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {
             Log.d(TAG, "onIceGatheringChange: " + iceGatheringState);
+            if (iceGatheringState == PeerConnection.IceGatheringState.GATHERING) {
+                mark("ice_gathering");
+            }
+        }
+
+        @Override
+        public void onSelectedCandidatePairChanged(CandidatePairChangeEvent event) {
+            String localType = candidateAttribute(event.local.sdp, "typ");
+            String protocol = candidateProtocol(event.local.sdp);
+            Log.d(TAG, "Selected candidate pair: local " + localType + "/" + protocol
+                    + (event.local.serverUrl.isEmpty() ? "" : " via " + event.local.serverUrl)
+                    + ", remote " + candidateAttribute(event.remote.sdp, "typ")
+                    + " (" + event.reason + ")");
+            SessionTimeline current = timeline;
+            if (current != null) {
+                current.setAttribute("local_candidate", localType);
+                current.setAttribute("remote_candidate", candidateAttribute(event.remote.sdp, "typ"));
+                current.setAttribute("protocol", protocol);
+            }
         }
 
         @Override
@@ -331,6 +1166,9 @@ public class WebRTCClient {
         @Override
         public void onAddStream(MediaStream mediaStream) {
             Log.d(TAG, "onAddStream: " + mediaStream.videoTracks.size());
+            if (!mediaStream.videoTracks.isEmpty()) {
+                watchFirstFrame(mediaStream.videoTracks.get(0));
+            }
             events.onAddStream(mediaStream);
         }
 
@@ -347,6 +1185,11 @@ public class WebRTCClient {
         @Override
         public void onRenegotiationNeeded() {
             Log.d(TAG, "onRenegotiationNeeded");
+            post(() -> {
+                if (negotiator != null) {
+                    negotiator.onRenegotiationNeeded();
+                }
+            });
         }
 
         @Override
@@ -0,0 +1,90 @@
+package com.example.screenshare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class KeyFrameSchedulerTest {
+    private static final long WINDOW = KeyFrameScheduler.DEFAULT_WINDOW_MS;
+
+    private final KeyFrameScheduler scheduler = new KeyFrameScheduler();
+    // The encoder's clock; every frame is timestamped with it
+    private long nowMs = 10000;
+
+    private boolean frame(boolean requested) {
+        return scheduler.onFrame(requested, nowMs);
+    }
+
+    @Test
+    public void requestsInsideWindowMergeIntoOneKeyFrame() {
+        assertTrue(frame(true));
+        for (int i = 0; i < 5; i++) {
+            nowMs += 50;
+            assertFalse(frame(true));
+        }
+        // The held requests are served by the first frame after the window
+        nowMs += WINDOW - 250 - 1;
+        assertFalse(frame(false));
+        nowMs += 1;
+        assertTrue(frame(false));
+        nowMs += 33;
+        assertFalse(frame(false));
+        assertEquals("0 key frames encoded, 6 requested by receivers (5 held for the window), 0 forced",
+                scheduler.summary());
+    }
+
+    @Test
+    public void requestAfterWindowGetsNewKeyFrame() {
+        assertTrue(frame(true));
+        nowMs += WINDOW;
+        assertTrue(frame(true));
+        nowMs += 10 * WINDOW;
+        assertTrue(frame(true));
+    }
+
+    @Test
+    public void forcedKeyFrameSkipsWindow() {
+        assertTrue(frame(true));
+        nowMs += 10;
+        scheduler.requestKeyFrame();
+        assertTrue(frame(false));
+
+        // Receivers' requests count their window from the forced key frame
+        nowMs += 10;
+        assertFalse(frame(true));
+        nowMs += WINDOW - 10;
+        assertTrue(frame(false));
+    }
+
+    @Test
+    public void forcedKeyFrameServesPendingRequests() {
+        assertTrue(frame(true));
+        nowMs += 10;
+        assertFalse(frame(true));
+        scheduler.requestKeyFrame();
+        nowMs += 10;
+        assertTrue(frame(false));
+        nowMs += WINDOW;
+        assertFalse(frame(false));
+    }
+
+    @Test
+    public void encoderChosenKeyFrameStartsWindow() {
+        scheduler.onKeyFrameEncoded(nowMs);
+        nowMs += 100;
+        assertFalse(frame(true));
+        nowMs += WINDOW - 100;
+        assertTrue(frame(false));
+    }
+
+    @Test
+    public void requestKeyFrameReportsWhetherAnEncoderListens() {
+        assertFalse(scheduler.requestKeyFrame());
+        scheduler.onEncoderStarted();
+        assertTrue(scheduler.requestKeyFrame());
+        scheduler.onEncoderReleased();
+        assertFalse(scheduler.requestKeyFrame());
+    }
+}
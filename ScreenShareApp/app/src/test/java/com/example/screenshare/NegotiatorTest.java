@@ -0,0 +1,244 @@
+package com.example.screenshare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.webrtc.PeerConnection.SignalingState;
+import org.webrtc.SessionDescription;
+import org.webrtc.SessionDescription.Type;
+
+public class NegotiatorTest {
+    // The signaling state machine of a PeerConnection, without media. Descriptions are named
+    // "offer-<n>" and "answer-<n>"; an answer is only accepted for the current local offer.
+    private static class FakePeer implements Negotiator.Peer {
+        final String name;
+        final List<SessionDescription> sent = new ArrayList<>();
+        final List<Boolean> offerIceRestarts = new ArrayList<>();
+        SignalingState state = SignalingState.STABLE;
+        String localOffer;
+        String remoteOffer;
+        int offers;
+        int rollbacks;
+
+        FakePeer(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public SignalingState signalingState() {
+            return state;
+        }
+
+        @Override
+        public SessionDescription createOffer(boolean iceRestart) {
+            offerIceRestarts.add(iceRestart);
+            return new SessionDescription(Type.OFFER, name + "-offer-" + ++offers);
+        }
+
+        @Override
+        public SessionDescription createAnswer() {
+            return state == SignalingState.HAVE_REMOTE_OFFER
+                    ? new SessionDescription(Type.ANSWER, "answer-to-" + remoteOffer) : null;
+        }
+
+        @Override
+        public boolean setLocalDescription(SessionDescription description) {
+            switch (description.type) {
+                case OFFER:
+                    if (state != SignalingState.STABLE && state != SignalingState.HAVE_LOCAL_OFFER) {
+                        return false;
+                    }
+                    localOffer = description.description;
+                    state = SignalingState.HAVE_LOCAL_OFFER;
+                    return true;
+                case ANSWER:
+                    if (state != SignalingState.HAVE_REMOTE_OFFER) {
+                        return false;
+                    }
+                    state = SignalingState.STABLE;
+                    return true;
+                case ROLLBACK:
+                    if (state != SignalingState.HAVE_LOCAL_OFFER) {
+                        return false;
+                    }
+                    rollbacks++;
+                    localOffer = null;
+                    state = SignalingState.STABLE;
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public boolean setRemoteDescription(SessionDescription description) {
+            if (description.type == Type.OFFER) {
+                if (state != SignalingState.STABLE) {
+                    return false;
+                }
+                remoteOffer = description.description;
+                state = SignalingState.HAVE_REMOTE_OFFER;
+                return true;
+            }
+            if (description.type == Type.ANSWER) {
+                if (state != SignalingState.HAVE_LOCAL_OFFER
+                        || !description.description.equals("answer-to-" + localOffer)) {
+                    return false;
+                }
+                state = SignalingState.STABLE;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void sendDescription(SessionDescription description) {
+            sent.add(description);
+        }
+
+        List<String> sentNames() {
+            List<String> names = new ArrayList<>();
+            for (SessionDescription description : sent) {
+                names.add(description.description);
+            }
+            return names;
+        }
+    }
+
+    private static SessionDescription offer(String name) {
+        return new SessionDescription(Type.OFFER, name);
+    }
+
+    private static SessionDescription answer(String offerName) {
+        return new SessionDescription(Type.ANSWER, "answer-to-" + offerName);
+    }
+
+    @Test
+    public void negotiateSendsOffer() {
+        FakePeer peer = new FakePeer("a");
+        new Negotiator(peer, false).negotiate(false);
+        assertEquals(Arrays.asList("a-offer-1"), peer.sentNames());
+        assertEquals(SignalingState.HAVE_LOCAL_OFFER, peer.state);
+    }
+
+    @Test
+    public void renegotiationBeforeFirstRoundIsCoveredByIt() {
+        FakePeer peer = new FakePeer("a");
+        Negotiator negotiator = new Negotiator(peer, false);
+        negotiator.onRenegotiationNeeded();
+        assertTrue(peer.sent.isEmpty());
+        negotiator.negotiate(false);
+        assertEquals(Arrays.asList("a-offer-1"), peer.sentNames());
+    }
+
+    @Test
+    public void roundsDuringOfferAreQueuedIntoOne() {
+        FakePeer peer = new FakePeer("a");
+        Negotiator negotiator = new Negotiator(peer, false);
+        negotiator.negotiate(false);
+        negotiator.onRenegotiationNeeded();
+        negotiator.onRenegotiationNeeded();
+        assertEquals(Arrays.asList("a-offer-1"), peer.sentNames());
+
+        negotiator.onRemoteDescription(answer("a-offer-1"));
+        assertEquals(Arrays.asList("a-offer-1", "a-offer-2"), peer.sentNames());
+        negotiator.onRemoteDescription(answer("a-offer-2"));
+        assertEquals(2, peer.sent.size());
+        assertEquals(SignalingState.STABLE, peer.state);
+    }
+
+    @Test
+    public void negotiateReplacesUnansweredOffer() {
+        FakePeer peer = new FakePeer("a");
+        Negotiator negotiator = new Negotiator(peer, false);
+        negotiator.negotiate(false);
+        negotiator.negotiate(true);
+        assertEquals(1, peer.rollbacks);
+        assertEquals(Arrays.asList("a-offer-1", "a-offer-2"), peer.sentNames());
+        assertEquals(Arrays.asList(false, true), peer.offerIceRestarts);
+
+        // The answer to the replaced offer is dropped; the one to the current offer completes
+        negotiator.onRemoteDescription(answer("a-offer-1"));
+        assertEquals(SignalingState.HAVE_LOCAL_OFFER, peer.state);
+        negotiator.onRemoteDescription(answer("a-offer-2"));
+        assertEquals(SignalingState.STABLE, peer.state);
+    }
+
+    @Test
+    public void answerWithoutOfferIsIgnored() {
+        FakePeer peer = new FakePeer("a");
+        new Negotiator(peer, false).onRemoteDescription(answer("a-offer-1"));
+        assertEquals(SignalingState.STABLE, peer.state);
+        assertTrue(peer.sent.isEmpty());
+    }
+
+    @Test
+    public void remoteOfferIsAnswered() {
+        FakePeer peer = new FakePeer("a");
+        new Negotiator(peer, true).onRemoteDescription(offer("b-offer-1"));
+        assertEquals(Arrays.asList("answer-to-b-offer-1"), peer.sentNames());
+        assertEquals(SignalingState.STABLE, peer.state);
+    }
+
+    @Test
+    public void impolitePeerIgnoresCollidingOffer() {
+        FakePeer peer = new FakePeer("a");
+        Negotiator negotiator = new Negotiator(peer, false);
+        negotiator.negotiate(false);
+        negotiator.onRemoteDescription(offer("b-offer-1"));
+
+        assertEquals(0, peer.rollbacks);
+        assertEquals(Arrays.asList("a-offer-1"), peer.sentNames());
+        assertEquals(SignalingState.HAVE_LOCAL_OFFER, peer.state);
+    }
+
+    @Test
+    public void politePeerRollsBackAnswersAndRenegotiates() {
+        FakePeer peer = new FakePeer("a");
+        Negotiator negotiator = new Negotiator(peer, true);
+        negotiator.negotiate(false);
+        negotiator.onRemoteDescription(offer("b-offer-1"));
+
+        assertEquals(1, peer.rollbacks);
+        // What the rolled-back offer carried is offered again once stable
+        assertEquals(Arrays.asList("a-offer-1", "answer-to-b-offer-1", "a-offer-2"), peer.sentNames());
+        assertEquals(SignalingState.HAVE_LOCAL_OFFER, peer.state);
+    }
+
+    @Test
+    public void glareBetweenTwoPeersSettles() {
+        FakePeer polite = new FakePeer("polite");
+        FakePeer impolite = new FakePeer("impolite");
+        Negotiator politeNegotiator = new Negotiator(polite, true);
+        Negotiator impoliteNegotiator = new Negotiator(impolite, false);
+
+        // Both offer before either offer arrives
+        politeNegotiator.negotiate(false);
+        impoliteNegotiator.negotiate(false);
+
+        // Deliver everything each side sends until nothing is in flight
+        int politeDelivered = 0;
+        int impoliteDelivered = 0;
+        for (int round = 0; round < 10; round++) {
+            while (politeDelivered < polite.sent.size()) {
+                impoliteNegotiator.onRemoteDescription(polite.sent.get(politeDelivered++));
+            }
+            while (impoliteDelivered < impolite.sent.size()) {
+                politeNegotiator.onRemoteDescription(impolite.sent.get(impoliteDelivered++));
+            }
+        }
+
+        assertEquals(SignalingState.STABLE, polite.state);
+        assertEquals(SignalingState.STABLE, impolite.state);
+        assertEquals(0, impolite.rollbacks);
+        assertEquals(1, polite.rollbacks);
+        // The impolite offer won; the polite one was made again afterwards and answered
+        assertEquals(Arrays.asList("impolite-offer-1", "answer-to-polite-offer-2"), impolite.sentNames());
+        assertEquals(Arrays.asList("polite-offer-1", "answer-to-impolite-offer-1", "polite-offer-2"),
+                polite.sentNames());
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.screenshare;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class PointerChannelTest {
+    private static final float PRECISION = 1f / 65535;
+
+    private static class FakeTransport implements PointerChannel.Transport {
+        final List<byte[]> sent = new ArrayList<>();
+        boolean open = true;
+        long bufferedAmount;
+        boolean released;
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public long bufferedAmount() {
+            return bufferedAmount;
+        }
+
+        @Override
+        public boolean send(ByteBuffer message) {
+            byte[] bytes = new byte[message.remaining()];
+            message.get(bytes);
+            sent.add(bytes);
+            return true;
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+
+    private static class RecordingListener implements PointerChannel.Listener {
+        final List<String> events = new ArrayList<>();
+        float x;
+        float y;
+
+        @Override
+        public void onTouch(String action, float x, float y) {
+            events.add("touch " + action);
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public void onPointer(PointerChannel.Shape shape, float x, float y) {
+            events.add("pointer " + shape);
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private final FakeTransport transport = new FakeTransport();
+    private final RecordingListener received = new RecordingListener();
+    private final PointerChannel sender = new PointerChannel(transport, new RecordingListener());
+    private final PointerChannel receiver = new PointerChannel(new FakeTransport(), received);
+
+    private void deliver() {
+        for (byte[] message : transport.sent) {
+            receiver.onMessage(ByteBuffer.wrap(message));
+        }
+        transport.sent.clear();
+    }
+
+    @Test
+    public void touchIsSixBigEndianBytes() {
+        assertTrue(sender.sendTouch("UP", 0.25f, 0.75f));
+        // 0.25 * 65535 rounds to 0x4000, 0.75 * 65535 to 0xBFFF
+        assertArrayEquals(new byte[]{1, 2, 0x40, 0x00, (byte) 0xBF, (byte) 0xFF}, transport.sent.get(0));
+    }
+
+    @Test
+    public void touchAndPointerRoundTrip() {
+        sender.sendTouch("DOWN", 0.1f, 0.9f);
+        deliver();
+        assertEquals("touch DOWN", received.events.get(0));
+        assertEquals(0.1f, received.x, PRECISION);
+        assertEquals(0.9f, received.y, PRECISION);
+
+        sender.sendPointer(PointerChannel.Shape.PRESSED, 0.5f, 0f);
+        deliver();
+        assertEquals("pointer PRESSED", received.events.get(1));
+        assertEquals(0.5f, received.x, PRECISION);
+        assertEquals(0f, received.y, 0f);
+    }
+
+    @Test
+    public void coordinatesAreClamped() {
+        sender.sendTouch("MOVE", -0.5f, 1.5f);
+        deliver();
+        assertEquals(0f, received.x, 0f);
+        assertEquals(1f, received.y, 0f);
+    }
+
+    @Test
+    public void closedChannelFallsBackToSignaling() {
+        transport.open = false;
+        assertFalse(sender.sendTouch("DOWN", 0.5f, 0.5f));
+        assertFalse(sender.sendPointer(PointerChannel.Shape.HOVER, 0.5f, 0.5f));
+        assertTrue(transport.sent.isEmpty());
+    }
+
+    @Test
+    public void unknownActionIsNotSent() {
+        assertFalse(sender.sendTouch("CANCEL", 0.5f, 0.5f));
+        assertTrue(transport.sent.isEmpty());
+    }
+
+    @Test
+    public void backpressureSkipsOnlyMoves() {
+        transport.bufferedAmount = 4 * 1024 + 1;
+        assertTrue(sender.sendTouch("MOVE", 0.5f, 0.5f));
+        assertTrue(transport.sent.isEmpty());
+
+        assertTrue(sender.sendTouch("DOWN", 0.5f, 0.5f));
+        assertTrue(sender.sendTouch("UP", 0.5f, 0.5f));
+        assertEquals(2, transport.sent.size());
+
+        transport.bufferedAmount = 4 * 1024;
+        assertTrue(sender.sendTouch("MOVE", 0.5f, 0.5f));
+        assertEquals(3, transport.sent.size());
+    }
+
+    @Test
+    public void malformedMessagesAreIgnored() {
+        receiver.onMessage(ByteBuffer.wrap(new byte[]{1, 0, 0, 0, 0}));
+        receiver.onMessage(ByteBuffer.wrap(new byte[]{9, 0, 0, 0, 0, 0}));
+        receiver.onMessage(ByteBuffer.wrap(new byte[]{1, 3, 0, 0, 0, 0}));
+        receiver.onMessage(ByteBuffer.wrap(new byte[]{2, 3, 0, 0, 0, 0}));
+        assertTrue(received.events.isEmpty());
+    }
+
+    @Test
+    public void releaseReleasesTransport() {
+        sender.release();
+        assertTrue(transport.released);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.screenshare;
+
+import static com.example.screenshare.QualityGovernor.STEP_UP_HOLD_MS;
+import static com.example.screenshare.QualityGovernor.THERMAL_LIGHT;
+import static com.example.screenshare.QualityGovernor.THERMAL_MODERATE;
+import static com.example.screenshare.QualityGovernor.THERMAL_NONE;
+import static com.example.screenshare.QualityGovernor.THERMAL_SEVERE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+// Synthetic timelines through onSample: immediate step-down, one-level recovery after the
+// hold, and the hysteresis margins that keep borderline readings from flapping
+public class QualityGovernorTest {
+    private static final float NO_HEADROOM = Float.NaN;
+
+    @Test
+    public void stepsDownRightAway() {
+        QualityGovernor governor = new QualityGovernor(QualityLevel.FULL);
+        assertEquals(QualityLevel.LOW, governor.onSample(0, THERMAL_MODERATE, NO_HEADROOM, 80, false));
+        assertEquals(QualityLevel.MINIMAL, governor.onSample(1000, THERMAL_SEVERE, NO_HEADROOM, 80, false));
+        assertEquals(QualityLevel.MINIMAL, governor.getCurrent());
+    }
+
+    @Test
+    public void headroomStepsDownBeforeThermalStatus() {
+        QualityGovernor governor = new QualityGovernor(QualityLevel.FULL);
+        assertEquals(QualityLevel.REDUCED, governor.onSample(0, THERMAL_NONE, 0.8f, 80, false));
+        assertEquals(QualityLevel.MINIMAL, governor.onSample(1000, THERMAL_NONE, 0.96f, 80, false));
+    }
+
+    @Test
+    public void lowBatteryOnlyCountsWhileDischarging() {
+        QualityGovernor governor = new QualityGovernor(QualityLevel.FULL);
+        assertNull(governor.onSample(0, THERMAL_NONE, NO_HEADROOM, 25, true));
+        assertEquals(QualityLevel.REDUCED, governor.onSample(1000, THERMAL_NONE, NO_HEADROOM, 25, false));
+        assertEquals(QualityLevel.LOW, governor.onSample(2000, THERMAL_NONE, NO_HEADROOM, 15, false));
+    }
+
+    @Test
+    public void recoversOneLevelPerHold() {
+        QualityGovernor governor = new QualityGovernor(QualityLevel.MINIMAL);
+        assertNull(governor.onSample(0, THERMAL_NONE, NO_HEADROOM, 100, true));
+        assertNull(governor.onSample(STEP_UP_HOLD_MS - 1, THERMAL_NONE, NO_HEADROOM, 100, true));
+        assertEquals(QualityLevel.LOW, governor.onSample(STEP_UP_HOLD_MS, THERMAL_NONE, NO_HEADROOM, 100, true));
+        assertNull(governor.onSample(2 * STEP_UP_HOLD_MS - 1, THERMAL_NONE, NO_HEADROOM, 100, true));
+        assertEquals(QualityLevel.REDUCED,
+                governor.onSample(2 * STEP_UP_HOLD_MS, THERMAL_NONE, NO_HEADROOM, 100, true));
+        assertEquals(QualityLevel.FULL,
+                governor.onSample(3 * STEP_UP_HOLD_MS, THERMAL_NONE, NO_HEADROOM, 100, true));
+        assertNull(governor.onSample(4 * STEP_UP_HOLD_MS, THERMAL_NONE, NO_HEADROOM, 100, true));
+    }
+
+    @Test
+    public void interruptionRestartsTheHold() {
+        QualityGovernor governor = new QualityGovernor(QualityLevel.FULL);
+        assertEquals(QualityLevel.LOW, governor.onSample(0, THERMAL_MODERATE, NO_HEADROOM, 100, true));
+        assertNull(governor.onSample(10000, THERMAL_NONE, NO_HEADROOM, 100, true));
+        // Back at the current level's conditions: not worse, but not better either
+        assertNull(governor.onSample(40000, THERMAL_MODERATE, NO_HEADROOM, 100, true));
+        assertNull(governor.onSample(50000, THERMAL_NONE, NO_HEADROOM, 100, true));
+        assertNull(governor.onSample(50000 + STEP_UP_HOLD_MS - 1, THERMAL_NONE, NO_HEADROOM, 100, true));
+        assertEquals(QualityLevel.REDUCED,
+                governor.onSample(50000 + STEP_UP_HOLD_MS, THERMAL_NONE, NO_HEADROOM, 100, true));
+    }
+
+    @Test
+    public void headroomJustBelowThresholdDoesNotRecover() {
+        QualityGovernor governor = new QualityGovernor(QualityLevel.FULL);
+        assertEquals(QualityLevel.REDUCED, governor.onSample(0, THERMAL_NONE, 0.8f, 100, true));
+        // 0.7 is below HEADROOM_LIGHT, but not by the hysteresis margin
+        for (long t = 1000; t <= 3 * STEP_UP_HOLD_MS; t += 1000) {
+            assertNull(governor.onSample(t, THERMAL_NONE, 0.7f, 100, true));
+        }
+        long start = 4 * STEP_UP_HOLD_MS;
+        assertNull(governor.onSample(start, THERMAL_NONE, 0.6f, 100, true));
+        assertEquals(QualityLevel.FULL, governor.onSample(start + STEP_UP_HOLD_MS, THERMAL_NONE, 0.6f, 100, true));
+    }
+
+    @Test
+    public void batteryJustAboveThresholdDoesNotRecover() {
+        QualityGovernor governor = new QualityGovernor(QualityLevel.FULL);
+        assertEquals(QualityLevel.REDUCED, governor.onSample(0, THERMAL_NONE, NO_HEADROOM, 30, false));
+        assertNull(governor.onSample(1000, THERMAL_NONE, NO_HEADROOM, 34, false));
+        assertNull(governor.onSample(1000 + 2 * STEP_UP_HOLD_MS, THERMAL_NONE, NO_HEADROOM, 34, false));
+        long start = 3 * STEP_UP_HOLD_MS;
+        assertNull(governor.onSample(start, THERMAL_NONE, NO_HEADROOM, 36, false));
+        assertEquals(QualityLevel.FULL, governor.onSample(start + STEP_UP_HOLD_MS, THERMAL_NONE, NO_HEADROOM, 36, false));
+    }
+
+    @Test
+    public void lightThermalMapsToReduced() {
+        assertEquals(QualityLevel.REDUCED,
+                QualityGovernor.targetFor(THERMAL_LIGHT, NO_HEADROOM, -1, false));
+        assertEquals(QualityLevel.FULL, QualityGovernor.targetFor(THERMAL_NONE, NO_HEADROOM, -1, false));
+    }
+}
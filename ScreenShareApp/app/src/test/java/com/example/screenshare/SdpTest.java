@@ -0,0 +1,103 @@
+package com.example.screenshare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class SdpTest {
+    @Test
+    public void roundTripsLibwebrtcOfferByteForByte() throws IOException {
+        String offer = resource("offer.sdp");
+        assertEquals(offer, Sdp.parse(offer).toString());
+    }
+
+    @Test
+    public void writesCrlfAndDropsBlankLines() {
+        Sdp sdp = Sdp.parse("v=0\n\ns=-\r\nm=video 9 UDP/TLS/RTP/SAVPF 96\n\na=mid:0");
+        assertEquals("v=0\r\ns=-\r\nm=video 9 UDP/TLS/RTP/SAVPF 96\r\na=mid:0\r\n", sdp.toString());
+    }
+
+    @Test
+    public void splitsSessionAndMediaSections() throws IOException {
+        Sdp sdp = Sdp.parse(resource("offer.sdp"));
+        assertEquals("v=0", sdp.getSessionLines().get(0));
+        assertEquals(3, sdp.getMedia().size());
+        assertEquals(1, sdp.getMedia("video").size());
+        assertEquals("1", sdp.getMedia("video").get(0).getMid());
+        assertEquals("2", sdp.getMedia("application").get(0).getMid());
+    }
+
+    @Test
+    public void readsCodecsAndFmtp() throws IOException {
+        Sdp.Media video = Sdp.parse(resource("offer.sdp")).getMedia("video").get(0);
+        assertEquals("VP8", video.getCodecName("96"));
+        assertEquals("flexfec-03", video.getCodecName("35"));
+        assertNull(video.getCodecName("42"));
+        assertEquals(Arrays.asList("97", "103", "99", "101"), video.getPayloadsForCodec("RTX"));
+
+        Map<String, String> fmtp = video.getFmtp("102");
+        assertEquals(Arrays.asList("level-asymmetry-allowed", "packetization-mode", "profile-level-id",
+                "x-google-start-bitrate"), Arrays.asList(fmtp.keySet().toArray()));
+        assertEquals("42e01f", fmtp.get("profile-level-id"));
+        assertTrue(video.getFmtp("100").isEmpty());
+    }
+
+    @Test
+    public void setFmtpAddsLineAfterRtpmap() throws IOException {
+        Sdp.Media video = Sdp.parse(resource("offer.sdp")).getMedia("video").get(0);
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("a", "1");
+        params.put("b", null);
+        video.setFmtp("100", params);
+
+        int rtpmap = video.getLines().indexOf("a=rtpmap:100 red/90000");
+        assertEquals("a=fmtp:100 a=1;b", video.getLines().get(rtpmap + 1));
+
+        video.setFmtp("100", Collections.<String, String>emptyMap());
+        assertFalse(video.getLines().contains("a=fmtp:100 a=1;b"));
+    }
+
+    @Test
+    public void removePayloadsDropsTheirLines() throws IOException {
+        Sdp.Media video = Sdp.parse(resource("offer.sdp")).getMedia("video").get(0);
+        video.removePayloads(Arrays.asList("102", "103"));
+
+        assertFalse(video.getPayloads().contains("102"));
+        assertFalse(video.getPayloads().contains("103"));
+        for (String line : video.getLines()) {
+            assertFalse(line, line.matches("a=(rtpmap|fmtp|rtcp-fb):10[23] .*"));
+        }
+        // Lines that only mention the payload elsewhere stay
+        assertEquals("VP8", video.getCodecName("96"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformedMediaLine() {
+        Sdp.parse("v=0\r\nm=video 9\r\n");
+    }
+
+    static String resource(String name) throws IOException {
+        try (InputStream in = SdpTest.class.getResourceAsStream("/sdp/" + name)) {
+            if (in == null) {
+                throw new IOException("Missing test resource " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+            return new String(out.toByteArray(), "UTF-8");
+        }
+    }
+}
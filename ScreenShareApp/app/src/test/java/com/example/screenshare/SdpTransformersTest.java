@@ -0,0 +1,88 @@
+package com.example.screenshare;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import org.junit.Test;
+
+// Golden tests: each transform of sdp/offer.sdp must produce exactly the expected description
+public class SdpTransformersTest {
+    @Test
+    public void keepCodecsKeepsRtxAndFecOfKeptCodecs() throws IOException {
+        assertGolden("offer-keep-vp8.sdp", SdpTransformers.keepCodecs("video", "VP8"));
+    }
+
+    @Test
+    public void keepCodecsReordersByPreference() throws IOException {
+        Sdp sdp = Sdp.parse(SdpTest.resource("offer.sdp"));
+        SdpTransformers.keepCodecs("video", "VP9", "VP8").transform(sdp);
+        // Preferred codecs first, then FEC, then the RTX of what was kept
+        assertEquals("[98, 96, 100, 127, 35, 97, 99, 101]",
+                sdp.getMedia("video").get(0).getPayloads().toString());
+    }
+
+    @Test
+    public void keepCodecsLeavesSectionWithoutMatchingCodec() throws IOException {
+        String offer = SdpTest.resource("offer.sdp");
+        Sdp sdp = Sdp.parse(offer);
+        SdpTransformers.keepCodecs("video", "AV1").transform(sdp);
+        assertEquals(offer, sdp.toString());
+    }
+
+    @Test
+    public void bitrateSetsHintsOnPrimaryCodecsAndCapsSection() throws IOException {
+        assertGolden("offer-bitrate.sdp", SdpTransformers.bitrate(1500, 300, 2500));
+    }
+
+    @Test
+    public void removeFecDropsFecCodecsTheirRtxAndFlexfecSsrc() throws IOException {
+        assertGolden("offer-remove-fec.sdp", SdpTransformers.removeFec());
+    }
+
+    @Test
+    public void removeRtxDropsRtxFromEverySection() throws IOException {
+        assertGolden("offer-remove-rtx.sdp", SdpTransformers.removeRtx());
+    }
+
+    @Test
+    public void removeRtcpFeedbackKeepsLongerTypes() throws IOException {
+        Sdp sdp = Sdp.parse(SdpTest.resource("offer.sdp"));
+        SdpTransformers.removeRtcpFeedback("video", "nack").transform(sdp);
+        Sdp.Media video = sdp.getMedia("video").get(0);
+        assertFalse(video.getLines().contains("a=rtcp-fb:96 nack"));
+        assertTrue(video.getLines().contains("a=rtcp-fb:96 nack pli"));
+    }
+
+    @Test
+    public void removeHeaderExtensionsMatchesUriFragments() throws IOException {
+        Sdp sdp = Sdp.parse(SdpTest.resource("offer.sdp"));
+        SdpTransformers.removeHeaderExtensions("abs-send-time", "video-timing").transform(sdp);
+        String result = sdp.toString();
+        assertFalse(result.contains("abs-send-time"));
+        assertFalse(result.contains("video-timing"));
+        assertTrue(result.contains("a=extmap:3 urn:3gpp:video-orientation"));
+    }
+
+    @Test
+    public void chainAppliesInOrderWithOneParse() throws IOException {
+        String offer = SdpTest.resource("offer.sdp");
+        assertSame(offer, new SdpTransformerChain().apply(offer));
+
+        SdpTransformerChain chain = new SdpTransformerChain()
+                .add(SdpTransformers.removeFec())
+                .add(SdpTransformers.removeRtx());
+        Sdp expected = Sdp.parse(offer);
+        SdpTransformers.removeFec().transform(expected);
+        SdpTransformers.removeRtx().transform(expected);
+        assertEquals(expected.toString(), chain.apply(offer));
+    }
+
+    private static void assertGolden(String expected, SdpTransformer transformer) throws IOException {
+        Sdp sdp = Sdp.parse(SdpTest.resource("offer.sdp"));
+        transformer.transform(sdp);
+        assertEquals(SdpTest.resource(expected), sdp.toString());
+    }
+}
@@ -0,0 +1,11 @@
+#!/usr/bin/env bash
+# Benchmarks FrameCrypto (pure Java) with JMH on a desktop JVM; no Android SDK or Gradle
+# needed, only Maven. Checks the round trip and tamper rejection before measuring. Extra
+# arguments go to JMH, e.g. -prof gc for allocations per frame.
+#
+#   ./frame-crypto-bench.sh [jmh-options]
+set -euo pipefail
+
+HERE="$(cd "$(dirname "$0")" && pwd)"
+mvn -B -q -f "$HERE/jmh/pom.xml" package
+java -jar "$HERE/jmh/target/benchmarks.jar" FrameCryptoBenchmark "$@"
@@ -0,0 +1,86 @@
+package com.example.screenshare.jmh;
+
+import com.example.screenshare.TileDiffEngine;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Time for TileDiffEngine to diff a 1080p frame, per change pattern and pool size. Each call
+// alternates between two frames, so every diff hashes the whole frame and reports changes.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TileDiffBenchmark {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int TILE_SIZE = 64;
+
+    // static: nothing changes; typing: a word's worth of tiles; scroll: every tile
+    @Param({"static", "typing", "scroll"})
+    public String pattern;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private TileDiffEngine engine;
+    private int[] first;
+    private int[] second;
+    private boolean flip;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Text-like content: mostly white, dark glyph runs
+        Random random = new Random(7);
+        int[] base = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < base.length; i++) {
+            base[i] = random.nextInt(10) == 0 ? 0xFF202020 : 0xFFFFFFFF;
+        }
+        first = base;
+        switch (pattern) {
+            case "static":
+                second = base;
+                break;
+            case "typing":
+                second = base.clone();
+                for (int y = 500; y < 520; y++) {
+                    for (int x = 300; x < 420; x++) {
+                        second[y * WIDTH + x] = 0xFF000000;
+                    }
+                }
+                break;
+            case "scroll":
+                second = new int[base.length];
+                System.arraycopy(base, WIDTH, second, 0, base.length - WIDTH);
+                break;
+            default:
+                throw new IllegalArgumentException(pattern);
+        }
+        engine = new TileDiffEngine(WIDTH, HEIGHT, TILE_SIZE, threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.release();
+    }
+
+    @Benchmark
+    public int[] diff() {
+        flip = !flip;
+        return engine.diff(flip ? first : second, WIDTH);
+    }
+}
@@ -0,0 +1,63 @@
+#!/usr/bin/env bash
+# Network impairment harness for comparing loss-resilience profiles.
+#
+# Applies tc/netem loss and delay to an interface (loopback by default, which is what two
+# emulators on this machine use to reach each other), then starts a share with each pinned
+# LossResilienceProfile and reads the viewer's "Freeze stats" log line.
+#
+#   sudo ./netem-loopback.sh apply 3 40        # 3% loss, 40ms delay on lo
+#   sudo ./netem-loopback.sh clear
+#   sudo ./netem-loopback.sh run <host-serial> <viewer-serial> [seconds]
+#
+# For "run", start viewing on the viewer device once the host shows its PIN; the script waits
+# for the given duration per profile and loss rate, then prints one line per combination.
+
+set -euo pipefail
+
+IFACE="${IFACE:-lo}"
+PACKAGE="com.example.screenshare"
+PROFILES="NACK_ONLY ULPFEC FLEXFEC"
+LOSS_RATES="${LOSS_RATES:-0 2 5}"
+DELAY_MS="${DELAY_MS:-40}"
+
+apply() {
+    local loss="$1" delay="$2"
+    tc qdisc replace dev "$IFACE" root netem loss "${loss}%" delay "${delay}ms" 10ms distribution normal
+    echo "netem on $IFACE: loss=${loss}% delay=${delay}ms"
+}
+
+clear_netem() {
+    tc qdisc del dev "$IFACE" root 2>/dev/null || true
+    echo "netem cleared on $IFACE"
+}
+
+run() {
+    local host="$1" viewer="$2" seconds="${3:-60}"
+    trap clear_netem EXIT
+
+    printf '%-10s %-6s %s\n' "profile" "loss%" "viewer freeze stats"
+    for loss in $LOSS_RATES; do
+        apply "$loss" "$DELAY_MS" > /dev/null
+        for profile in $PROFILES; do
+            adb -s "$viewer" logcat -c
+            adb -s "$host" shell am force-stop "$PACKAGE"
+            adb -s "$host" shell am start -n "$PACKAGE/.MainActivity" --es loss_profile "$profile" > /dev/null
+            echo "[$profile @ ${loss}%] tap Share on the host and connect the viewer; measuring for ${seconds}s" >&2
+            sleep "$seconds"
+
+            local stats
+            stats=$(adb -s "$viewer" logcat -d -s WebRTCClient | grep "Freeze stats" | tail -n 1 | sed 's/.*Freeze stats: //')
+            printf '%-10s %-6s %s\n' "$profile" "$loss" "${stats:-no stats (viewer not connected?)}"
+        done
+    done
+}
+
+case "${1:-}" in
+    apply) apply "${2:?loss percent}" "${3:-$DELAY_MS}" ;;
+    clear) clear_netem ;;
+    run) run "${2:?host serial}" "${3:?viewer serial}" "${4:-60}" ;;
+    *)
+        sed -n '2,15p' "$0"
+        exit 1
+        ;;
+esac
@@ -0,0 +1,18 @@
+#!/usr/bin/env bash
+# Writes SyntheticScreenContent (pure Java) as a Y4M video on a desktop JVM, so encoder runs
+# in CI see exactly the frames SyntheticScreenCapturer sends on a device:
+#
+#   ./synthetic-content.sh SCROLLING_TEXT 1280x720@30 10 > scroll.y4m
+#   vpxenc --codec=vp8 --target-bitrate=1500 --rt -o scroll.ivf scroll.y4m
+#
+# Patterns: STATIC_PAGE, SCROLLING_TEXT, FULL_MOTION. The time spent generating each frame is
+# reported on stderr.
+set -euo pipefail
+
+HERE="$(cd "$(dirname "$0")" && pwd)"
+SRC="$HERE/../app/src/main/java/com/example/screenshare"
+OUT="$(mktemp -d)"
+trap 'rm -rf "$OUT"' EXIT
+
+javac -d "$OUT" "$SRC/SyntheticScreenContent.java" "$HERE/synthetic-content/SyntheticContentWriter.java"
+java -cp "$OUT" SyntheticContentWriter "$@"
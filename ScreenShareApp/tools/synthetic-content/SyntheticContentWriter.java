@@ -0,0 +1,47 @@
+import com.example.screenshare.SyntheticScreenContent;
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Renders a SyntheticScreenContent pattern to stdout as YUV4MPEG2 (I420); see
+// synthetic-content.sh. Arguments: PATTERN WIDTHxHEIGHT@FPS SECONDS
+public class SyntheticContentWriter {
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.err.println("usage: synthetic-content.sh PATTERN WIDTHxHEIGHT@FPS SECONDS");
+            System.exit(2);
+        }
+        SyntheticScreenContent.Pattern pattern = SyntheticScreenContent.Pattern.valueOf(args[0]);
+        String[] format = args[1].split("[x@]");
+        int width = Integer.parseInt(format[0]);
+        int height = Integer.parseInt(format[1]);
+        int fps = Integer.parseInt(format[2]);
+        int frames = Integer.parseInt(args[2]) * fps;
+
+        SyntheticScreenContent content = new SyntheticScreenContent(pattern, width, height);
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        ByteBuffer y = ByteBuffer.allocate(width * height);
+        ByteBuffer u = ByteBuffer.allocate(chromaWidth * chromaHeight);
+        ByteBuffer v = ByteBuffer.allocate(chromaWidth * chromaHeight);
+
+        OutputStream out = new BufferedOutputStream(System.out, 1 << 20);
+        String header = "YUV4MPEG2 W" + width + " H" + height + " F" + fps + ":1 Ip A1:1 C420jpeg\n";
+        out.write(header.getBytes(StandardCharsets.US_ASCII));
+        byte[] frameHeader = "FRAME\n".getBytes(StandardCharsets.US_ASCII);
+        long renderNs = 0;
+        for (int i = 0; i < frames; i++) {
+            long start = System.nanoTime();
+            content.render(i, y, width, u, chromaWidth, v, chromaWidth);
+            renderNs += System.nanoTime() - start;
+            out.write(frameHeader);
+            out.write(y.array());
+            out.write(u.array());
+            out.write(v.array());
+        }
+        out.flush();
+        System.err.printf("%s %dx%d: %d frames, %.2f ms per frame to generate%n",
+                pattern, width, height, frames, frames > 0 ? renderNs / 1e6 / frames : 0.0);
+    }
+}
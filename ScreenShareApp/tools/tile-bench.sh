@@ -0,0 +1,10 @@
+#!/usr/bin/env bash
+# Benchmarks TileDiffEngine (pure Java) with JMH on a desktop JVM; no Android SDK or Gradle
+# needed, only Maven. Extra arguments go to JMH, e.g. -p threads=1,2,8 or -prof gc.
+#
+#   ./tile-bench.sh [jmh-options]
+set -euo pipefail
+
+HERE="$(cd "$(dirname "$0")" && pwd)"
+mvn -B -q -f "$HERE/jmh/pom.xml" package
+java -jar "$HERE/jmh/target/benchmarks.jar" TileDiffBenchmark "$@"
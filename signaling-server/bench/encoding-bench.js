@@ -0,0 +1,118 @@
+// Compares the JSON and ssb1 signaling encodings for one session setup:
+// bytes on the wire (including Socket.IO packet framing) and time-to-connect over a
+// throttled local TCP link. No extra dependencies; run with `npm run bench:encoding`.
+//
+//   node bench/encoding-bench.js [kbps=128] [rttMs=80]
+const fs = require('fs');
+const net = require('net');
+const path = require('path');
+const codec = require('../codec');
+
+const KBPS = Number(process.argv[2] || 128);
+const RTT_MS = Number(process.argv[3] || 80);
+
+const offerSdp = fs.readFileSync(path.join(__dirname, 'fixtures', 'offer.sdp'), 'utf8');
+const answerSdp = offerSdp
+    .replace('a=setup:actpass', 'a=setup:active')
+    .replace('a=sendonly', 'a=recvonly')
+    .split('\r\n')
+    .filter((line) => !line.startsWith('a=ssrc'))
+    .join('\r\n');
+
+function candidate(i) {
+    return {
+        sdpMid: '0',
+        sdpMLineIndex: 0,
+        sdp: `candidate:${1000 + i} 1 udp ${2122260223 - i} 192.168.1.${10 + i} ${50000 + i} typ host generation 0 ufrag Zx2b network-id ${i + 1} network-cost 10`
+    };
+}
+
+// One session as seen by the server: [direction, event, payload]; direction flips cost an RTT
+const session = [
+    ['up', 'create-session', { pin: '123456' }],
+    ['down', 'session-created', { pin: '123456' }],
+    ['up', 'join-session', { pin: '123456' }],
+    ['down', 'viewer-joined', { viewerId: 'Yk3n2Qf0pL1xAAAB' }],
+    ['up', 'offer', { pin: '123456', offer: { type: 'offer', sdp: offerSdp } }],
+    ['down', 'answer', { pin: '123456', answer: { type: 'answer', sdp: answerSdp } }]
+];
+for (let i = 0; i < 6; i++) {
+    session.push(['up', 'ice-candidate', { pin: '123456', candidate: candidate(i) }]);
+}
+
+// Socket.IO v4 packet sizes: "42[...]" for JSON events, a placeholder packet plus the
+// attachment frame for binary events
+function wireBytes(encoding, event, payload) {
+    const wire = codec.serialize(encoding, payload);
+    if (Buffer.isBuffer(wire)) {
+        const header = `451-${JSON.stringify([event, { _placeholder: true, num: 0 }])}`;
+        return [Buffer.from(header), wire];
+    }
+    return [Buffer.from(`42${JSON.stringify([event, wire])}`)];
+}
+
+function throttledLink(kbps) {
+    return new Promise((resolve) => {
+        const server = net.createServer((socket) => {
+            socket.on('data', () => {});
+        });
+        server.listen(0, '127.0.0.1', () => {
+            const client = net.connect(server.address().port, '127.0.0.1', () => {
+                client.setNoDelay(true);
+                let busyUntil = Date.now();
+                const send = (buffers) => {
+                    const bytes = buffers.reduce((n, b) => n + b.length, 0);
+                    const start = Math.max(Date.now(), busyUntil);
+                    busyUntil = start + (bytes * 8) / kbps;
+                    return new Promise((done) => {
+                        setTimeout(() => {
+                            buffers.forEach((b) => client.write(b));
+                            done();
+                        }, busyUntil - Date.now());
+                    });
+                };
+                resolve({
+                    send,
+                    close: () => {
+                        client.destroy();
+                        server.close();
+                    }
+                });
+            });
+        });
+    });
+}
+
+async function run(encoding) {
+    const link = await throttledLink(KBPS);
+    let bytes = 0;
+    let encodeNs = 0n;
+    let lastDirection = null;
+    const start = Date.now();
+
+    for (const [direction, event, payload] of session) {
+        if (lastDirection !== null && direction !== lastDirection) {
+            await new Promise((r) => setTimeout(r, RTT_MS / 2));
+        }
+        lastDirection = direction;
+
+        const t0 = process.hrtime.bigint();
+        const buffers = wireBytes(encoding, event, payload);
+        encodeNs += process.hrtime.bigint() - t0;
+
+        bytes += buffers.reduce((n, b) => n + b.length, 0);
+        await link.send(buffers);
+    }
+    const elapsed = Date.now() - start;
+    link.close();
+    return { encoding, bytes, timeToConnectMs: elapsed, encodeUs: Number(encodeNs / 1000n) };
+}
+
+(async () => {
+    console.log(`Throttled link: ${KBPS} kbps, ${RTT_MS} ms RTT, ${session.length} messages`);
+    for (const encoding of [codec.JSON_ENCODING, codec.BINARY_ENCODING]) {
+        const r = await run(encoding);
+        console.log(`${r.encoding.padEnd(5)} bytes=${String(r.bytes).padStart(6)}  ` +
+            `time-to-connect=${String(r.timeToConnectMs).padStart(5)} ms  encode=${r.encodeUs} us`);
+    }
+})();
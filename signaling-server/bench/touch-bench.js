@@ -0,0 +1,113 @@
+// Drives a fast viewer (MOVE events at a high rate, a DOWN before and an UP after each
+// stroke) against a deliberately slow host connection, once forwarded directly and once
+// through touch-relay. Reports how late moves and DOWN/UP events reach the host and how many
+// moves were coalesced. The host socket is simulated: emitted packets sit in an Engine.IO-like
+// write buffer that drains at the given link rate. Run with `npm run bench:touch`.
+//
+//   node bench/touch-bench.js [kbps=64] [hz=240] [seconds=3]
+const touchRelay = require('../touch-relay');
+
+const KBPS = Number(process.argv[2] || 64);
+const HZ = Number(process.argv[3] || 240);
+const SECONDS = Number(process.argv[4] || 3);
+const STROKE_MS = 500;
+const TICK_MS = 5;
+
+function slowHostSocket(kbps, onDelivered) {
+    const conn = { writeBuffer: [] };
+    let budget = 0;
+    const timer = setInterval(() => {
+        budget += (kbps * 1000 / 8) * (TICK_MS / 1000);
+        while (conn.writeBuffer.length > 0 && budget >= conn.writeBuffer[0].data.length) {
+            const packet = conn.writeBuffer.shift();
+            budget -= packet.data.length;
+            onDelivered(packet.message);
+        }
+        if (conn.writeBuffer.length === 0) {
+            budget = Math.min(budget, 0);
+        }
+    }, TICK_MS);
+    return {
+        conn,
+        emit(event, message) {
+            conn.writeBuffer.push({ data: `42${JSON.stringify([event, message])}`, message });
+        },
+        close: () => clearInterval(timer)
+    };
+}
+
+function percentile(sorted, p) {
+    if (sorted.length === 0) {
+        return 0;
+    }
+    return sorted[Math.max(0, Math.ceil((p / 100) * sorted.length) - 1)];
+}
+
+function run(mode) {
+    return new Promise((resolve) => {
+        const sentAt = new Map();
+        const moveLag = [];
+        const downUpLag = [];
+        let sent = 0;
+        const host = slowHostSocket(KBPS, (message) => {
+            const lag = Date.now() - sentAt.get(message.seq);
+            (message.action === 'MOVE' ? moveLag : downUpLag).push(lag);
+        });
+        const session = { hostSocket: host };
+        const emit = (action, seq) => {
+            const message = { pin: '123456', x: Math.random(), y: Math.random(), action, seq };
+            sentAt.set(seq, Date.now());
+            if (mode === 'direct') {
+                host.emit('touch-event', message);
+            } else {
+                touchRelay.relay(session, message);
+            }
+        };
+
+        const start = Date.now();
+        let seq = 0;
+        let strokeStart = -1;
+        const viewer = setInterval(() => {
+            const elapsed = Date.now() - start;
+            if (elapsed >= SECONDS * 1000) {
+                clearInterval(viewer);
+                if (strokeStart >= 0) {
+                    emit('UP', seq++);
+                }
+                // Let the host catch up before reporting
+                const done = setInterval(() => {
+                    if (host.conn.writeBuffer.length > 0) {
+                        return;
+                    }
+                    clearInterval(done);
+                    host.close();
+                    const counters = mode === 'direct' ? { coalesced: 0 } : touchRelay.release(session);
+                    resolve({ mode, sent, delivered: moveLag.length, coalesced: counters.coalesced, moveLag, downUpLag });
+                }, 50);
+                return;
+            }
+            if (strokeStart < 0) {
+                strokeStart = elapsed;
+                emit('DOWN', seq++);
+            } else if (elapsed - strokeStart >= STROKE_MS) {
+                emit('UP', seq++);
+                strokeStart = -1;
+            } else {
+                emit('MOVE', seq++);
+                sent++;
+            }
+        }, 1000 / HZ);
+    });
+}
+
+(async () => {
+    console.log(`Host link: ${KBPS} kbps, viewer: ${HZ} Hz for ${SECONDS} s, buffer cap ${touchRelay.MAX_BUFFERED_BYTES} B`);
+    for (const mode of ['direct', 'relay']) {
+        const r = await run(mode);
+        r.moveLag.sort((a, b) => a - b);
+        r.downUpLag.sort((a, b) => a - b);
+        console.log(`${r.mode.padEnd(6)} moves sent=${r.sent} delivered=${r.delivered} coalesced=${r.coalesced}  ` +
+            `move lag p50=${percentile(r.moveLag, 50)} p99=${percentile(r.moveLag, 99)} ms  ` +
+            `DOWN/UP lag max=${percentile(r.downUpLag, 100)} ms`);
+    }
+})();
@@ -0,0 +1,82 @@
+// Signaling message encodings. "json" is what Socket.IO sends natively (web dashboard);
+// "ssb1" is [version][flags][MessagePack map], raw-deflated when large, negotiated via 'hello'.
+// Mirrors SignalingCodec.java in the Android app.
+const zlib = require('zlib');
+const msgpack = require('./msgpack');
+
+const JSON_ENCODING = 'json';
+const BINARY_ENCODING = 'ssb1';
+const VERSION = 1;
+const FLAG_DEFLATE = 0x01;
+const DEFLATE_THRESHOLD = 512;
+// Small messages stay JSON: Socket.IO's binary attachment placeholder outweighs the savings
+const BINARY_THRESHOLD = 1024;
+// Inflated bodies beyond this are dropped: a few KB of deflate can expand to gigabytes
+const MAX_INFLATED_BYTES = 1024 * 1024;
+
+function encode(message) {
+    let body = msgpack.encode(message);
+    let flags = 0;
+    if (body.length >= DEFLATE_THRESHOLD) {
+        const deflated = zlib.deflateRawSync(body);
+        if (deflated.length < body.length) {
+            body = deflated;
+            flags |= FLAG_DEFLATE;
+        }
+    }
+    return Buffer.concat([Buffer.from([VERSION, flags]), body]);
+}
+
+function decode(frame) {
+    if (frame.length < 2 || frame[0] !== VERSION) {
+        throw new Error('Unsupported signaling frame version');
+    }
+    let body = frame.subarray(2);
+    if (frame[1] & FLAG_DEFLATE) {
+        // Throws a RangeError past the limit; handle() drops the frame
+        body = zlib.inflateRawSync(body, { maxOutputLength: MAX_INFLATED_BYTES });
+    }
+    return msgpack.decode(body);
+}
+
+function isBinary(data) {
+    return Buffer.isBuffer(data) || data instanceof ArrayBuffer || ArrayBuffer.isView(data);
+}
+
+// Returns { message, frame } where frame is the original binary payload, if any
+function parse(data) {
+    if (isBinary(data)) {
+        const frame = Buffer.isBuffer(data) ? data : Buffer.from(data.buffer || data);
+        return { message: decode(frame), frame };
+    }
+    return { message: data || {}, frame: null };
+}
+
+// Chooses the wire form for a recipient: binary only for clients that negotiated it and
+// only when the message is large enough to benefit
+function serialize(encoding, message) {
+    if (encoding !== BINARY_ENCODING) {
+        return message;
+    }
+    const json = JSON.stringify(message);
+    if (json.length < BINARY_THRESHOLD) {
+        return message;
+    }
+    return encode(message);
+}
+
+function negotiate(offered) {
+    return Array.isArray(offered) && offered.includes(BINARY_ENCODING) ? BINARY_ENCODING : JSON_ENCODING;
+}
+
+module.exports = {
+    JSON_ENCODING,
+    BINARY_ENCODING,
+    BINARY_THRESHOLD,
+    MAX_INFLATED_BYTES,
+    encode,
+    decode,
+    parse,
+    serialize,
+    negotiate
+};
@@ -0,0 +1,194 @@
+// Minimal coturn stand-in for local testing of the TURN credential flow. It speaks enough
+// STUN/TURN over UDP (RFC 5389/5766) for libwebrtc to gather a relay candidate: Binding,
+// Allocate with the long-term credential challenge, Refresh, CreatePermission and ChannelBind.
+// Credentials are checked exactly like coturn's `use-auth-secret`. It does NOT relay media;
+// use a real coturn for that. Run with `npm run turn:standin`, then start the server with
+//
+//   TURN_SECRET=devsecret TURN_URLS=turn:<lan ip>:3478?transport=udp npm start
+//
+// with RELAY_IP=<lan ip> set for the stand-in as well.
+//
+//   node dev/turn-standin.js [port=3478] [secret=$TURN_SECRET or devsecret]
+const crypto = require('crypto');
+const dgram = require('dgram');
+
+const PORT = Number(process.argv[2] || 3478);
+const SECRET = process.argv[3] || process.env.TURN_SECRET || 'devsecret';
+const REALM = 'screenshare.local';
+const NONCE = crypto.randomBytes(8).toString('hex');
+const LIFETIME_SECONDS = 600;
+// Address advertised in relay candidates; set to the machine's LAN IP for device tests
+const RELAY_IP = process.env.RELAY_IP || '127.0.0.1';
+
+const MAGIC_COOKIE = 0x2112a442;
+const HEADER_SIZE = 20;
+
+const BINDING = 0x0001;
+const ALLOCATE = 0x0003;
+const REFRESH = 0x0004;
+const CREATE_PERMISSION = 0x0008;
+const CHANNEL_BIND = 0x0009;
+const SUCCESS = 0x0100;
+const ERROR = 0x0110;
+
+const ATTR_USERNAME = 0x0006;
+const ATTR_MESSAGE_INTEGRITY = 0x0008;
+const ATTR_ERROR_CODE = 0x0009;
+const ATTR_LIFETIME = 0x000d;
+const ATTR_REALM = 0x0014;
+const ATTR_NONCE = 0x0015;
+const ATTR_XOR_RELAYED_ADDRESS = 0x0016;
+const ATTR_XOR_MAPPED_ADDRESS = 0x0020;
+
+function parse(buf) {
+    if (buf.length < HEADER_SIZE || buf.readUInt32BE(4) !== MAGIC_COOKIE) {
+        return null;
+    }
+    const message = {
+        type: buf.readUInt16BE(0),
+        transactionId: buf.subarray(8, 20),
+        attributes: new Map(),
+        integrityOffset: -1
+    };
+    let offset = HEADER_SIZE;
+    const end = Math.min(buf.length, HEADER_SIZE + buf.readUInt16BE(2));
+    while (offset + 4 <= end) {
+        const type = buf.readUInt16BE(offset);
+        const length = buf.readUInt16BE(offset + 2);
+        if (type === ATTR_MESSAGE_INTEGRITY) {
+            message.integrityOffset = offset;
+        }
+        message.attributes.set(type, buf.subarray(offset + 4, offset + 4 + length));
+        offset += 4 + Math.ceil(length / 4) * 4;
+    }
+    message.raw = buf;
+    return message;
+}
+
+function attribute(type, value) {
+    const padded = Buffer.alloc(4 + Math.ceil(value.length / 4) * 4);
+    padded.writeUInt16BE(type, 0);
+    padded.writeUInt16BE(value.length, 2);
+    value.copy(padded, 4);
+    return padded;
+}
+
+function xorAddress(address, port) {
+    const value = Buffer.alloc(8);
+    value.writeUInt8(0x01, 1);
+    value.writeUInt16BE(port ^ (MAGIC_COOKIE >>> 16), 2);
+    const octets = address.split('.').map(Number);
+    value.writeUInt32BE((((octets[0] << 24) | (octets[1] << 16) | (octets[2] << 8) | octets[3]) ^ MAGIC_COOKIE) >>> 0, 4);
+    return value;
+}
+
+function longTermKey(username) {
+    return crypto.createHash('md5').update(`${username}:${REALM}:${credentialFor(username)}`).digest();
+}
+
+// The password coturn derives from the shared secret for a REST API username
+function credentialFor(username) {
+    return crypto.createHmac('sha1', SECRET).update(username).digest('base64');
+}
+
+// HMAC over the message up to MESSAGE-INTEGRITY, with the length field covering it
+function integrity(key, headerAndAttributes) {
+    const copy = Buffer.from(headerAndAttributes);
+    copy.writeUInt16BE(copy.length - HEADER_SIZE + 24, 2);
+    return crypto.createHmac('sha1', key).update(copy).digest();
+}
+
+function build(type, transactionId, attributes, key) {
+    const header = Buffer.alloc(HEADER_SIZE);
+    header.writeUInt16BE(type, 0);
+    header.writeUInt32BE(MAGIC_COOKIE, 4);
+    transactionId.copy(header, 8);
+    let message = Buffer.concat([header, ...attributes]);
+    if (key) {
+        message = Buffer.concat([message, attribute(ATTR_MESSAGE_INTEGRITY, integrity(key, message))]);
+    }
+    message.writeUInt16BE(message.length - HEADER_SIZE, 2);
+    return message;
+}
+
+function unauthorized(request) {
+    const code = Buffer.concat([Buffer.from([0, 0, 4, 1]), Buffer.from('Unauthorized')]);
+    return build(request.type | ERROR, request.transactionId, [
+        attribute(ATTR_ERROR_CODE, code),
+        attribute(ATTR_REALM, Buffer.from(REALM)),
+        attribute(ATTR_NONCE, Buffer.from(NONCE))
+    ]);
+}
+
+// Returns the long-term key when the request carries valid, unexpired REST credentials
+function authenticate(request) {
+    const username = request.attributes.get(ATTR_USERNAME);
+    if (!username || request.integrityOffset < 0) {
+        return null;
+    }
+    const name = username.toString();
+    const expiry = parseInt(name.split(':')[0], 10);
+    if (!Number.isFinite(expiry) || expiry * 1000 < Date.now()) {
+        console.log(`Rejected ${name}: expired or not a REST API username`);
+        return null;
+    }
+    const key = longTermKey(name);
+    const expected = integrity(key, request.raw.subarray(0, request.integrityOffset));
+    const actual = request.attributes.get(ATTR_MESSAGE_INTEGRITY);
+    if (!actual || actual.length !== expected.length || !crypto.timingSafeEqual(actual, expected)) {
+        console.log(`Rejected ${name}: bad MESSAGE-INTEGRITY (wrong secret?)`);
+        return null;
+    }
+    return key;
+}
+
+function lifetime(seconds) {
+    const value = Buffer.alloc(4);
+    value.writeUInt32BE(seconds, 0);
+    return attribute(ATTR_LIFETIME, value);
+}
+
+function handle(request, rinfo) {
+    const mapped = attribute(ATTR_XOR_MAPPED_ADDRESS, xorAddress(rinfo.address, rinfo.port));
+    if (request.type === BINDING) {
+        return build(BINDING | SUCCESS, request.transactionId, [mapped]);
+    }
+    if (![ALLOCATE, REFRESH, CREATE_PERMISSION, CHANNEL_BIND].includes(request.type)) {
+        return null;
+    }
+
+    const key = authenticate(request);
+    if (!key) {
+        return unauthorized(request);
+    }
+    if (request.type === ALLOCATE) {
+        console.log(`Allocation for ${request.attributes.get(ATTR_USERNAME)} from ${rinfo.address}:${rinfo.port}`);
+        const relayed = attribute(ATTR_XOR_RELAYED_ADDRESS, xorAddress(RELAY_IP, PORT + 1));
+        return build(ALLOCATE | SUCCESS, request.transactionId, [relayed, mapped, lifetime(LIFETIME_SECONDS)], key);
+    }
+    if (request.type === REFRESH) {
+        return build(REFRESH | SUCCESS, request.transactionId, [lifetime(LIFETIME_SECONDS)], key);
+    }
+    return build(request.type | SUCCESS, request.transactionId, [], key);
+}
+
+const server = dgram.createSocket('udp4');
+
+server.on('message', (buf, rinfo) => {
+    const request = parse(buf);
+    if (!request) {
+        return;
+    }
+    const response = handle(request, rinfo);
+    if (response) {
+        server.send(response, rinfo.port, rinfo.address);
+    }
+});
+
+if (require.main === module) {
+    server.bind(PORT, () => {
+        console.log(`TURN stand-in on udp ${PORT}, realm ${REALM} (no media relay)`);
+    });
+}
+
+module.exports = { server, parse, build, attribute, integrity, longTermKey, REALM };
@@ -0,0 +1,125 @@
+// Server metrics in the Prometheus text exposition format, for GET /metrics. No client
+// library: a handful of counters and histograms keyed by label value, plus gauges that are
+// read when scraped.
+
+const { monitorEventLoopDelay } = require('perf_hooks');
+
+const PREFIX = 'screenshare_';
+// Seconds; signaling handlers are expected to take well under a millisecond
+const LATENCY_BUCKETS = [0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.05, 0.1];
+
+const families = new Map();
+
+function family(name, type, help, label) {
+    let entry = families.get(name);
+    if (!entry) {
+        entry = { name: PREFIX + name, type, help, label, values: new Map() };
+        families.set(name, entry);
+    }
+    return entry;
+}
+
+function counter(name, help, label) {
+    const entry = family(name, 'counter', help, label);
+    return (labelValue, amount = 1) => {
+        const key = labelValue === undefined ? '' : String(labelValue);
+        entry.values.set(key, (entry.values.get(key) || 0) + amount);
+    };
+}
+
+function histogram(name, help, label, buckets) {
+    const entry = family(name, 'histogram', help, label);
+    entry.buckets = buckets;
+    return (labelValue, value) => {
+        let series = entry.values.get(labelValue);
+        if (!series) {
+            series = { counts: new Array(buckets.length).fill(0), sum: 0, count: 0 };
+            entry.values.set(labelValue, series);
+        }
+        for (let i = 0; i < buckets.length; i++) {
+            if (value <= buckets[i]) {
+                series.counts[i]++;
+            }
+        }
+        series.sum += value;
+        series.count++;
+    };
+}
+
+// Read at scrape time: name -> { help, read: () => number }
+const gauges = new Map();
+
+function gauge(name, help, read) {
+    gauges.set(name, { help, read });
+}
+
+const eventLoopDelay = monitorEventLoopDelay({ resolution: 20 });
+eventLoopDelay.enable();
+
+gauge('event_loop_lag_p99_seconds', 'Event loop delay, 99th percentile since the last scrape',
+    () => eventLoopDelay.percentile(99) / 1e9);
+gauge('event_loop_lag_max_seconds', 'Longest event loop delay since the last scrape',
+    () => eventLoopDelay.max / 1e9);
+
+const forwardedMessages = counter('forwarded_messages_total', 'Messages relayed between peers', 'type');
+const forwardedBytes = counter('forwarded_bytes_total', 'Payload bytes relayed between peers', 'type');
+const handlerLatency = histogram('handler_duration_seconds', 'Time spent in a Socket.IO event handler',
+    'event', LATENCY_BUCKETS);
+
+// A relayed message; frame is the binary payload when it was forwarded as-is
+function forwarded(type, payload) {
+    forwardedMessages(type);
+    if (Buffer.isBuffer(payload)) {
+        forwardedBytes(type, payload.length);
+    } else if (typeof payload === 'string') {
+        forwardedBytes(type, Buffer.byteLength(payload));
+    } else {
+        forwardedBytes(type, Buffer.byteLength(JSON.stringify(payload)));
+    }
+}
+
+function handled(event, startNs) {
+    handlerLatency(event, Number(process.hrtime.bigint() - startNs) / 1e9);
+}
+
+function escape(value) {
+    return value.replace(/\\/g, '\\\\').replace(/"/g, '\\"').replace(/\n/g, '\\n');
+}
+
+function labels(entry, key, extra) {
+    const parts = [];
+    if (entry.label && key !== '') {
+        parts.push(`${entry.label}="${escape(key)}"`);
+    }
+    if (extra) {
+        parts.push(extra);
+    }
+    return parts.length > 0 ? `{${parts.join(',')}}` : '';
+}
+
+function render() {
+    const lines = [];
+    for (const [name, { help, read }] of gauges) {
+        lines.push(`# HELP ${PREFIX}${name} ${help}`, `# TYPE ${PREFIX}${name} gauge`, `${PREFIX}${name} ${read()}`);
+    }
+    eventLoopDelay.reset();
+
+    for (const entry of families.values()) {
+        lines.push(`# HELP ${entry.name} ${entry.help}`, `# TYPE ${entry.name} ${entry.type}`);
+        for (const [key, value] of entry.values) {
+            if (entry.type === 'counter') {
+                lines.push(`${entry.name}${labels(entry, key)} ${value}`);
+                continue;
+            }
+            entry.buckets.forEach((bound, i) => {
+                lines.push(`${entry.name}_bucket${labels(entry, key, `le="${bound}"`)} ${value.counts[i]}`);
+            });
+            lines.push(`${entry.name}_bucket${labels(entry, key, 'le="+Inf"')} ${value.count}`);
+            lines.push(`${entry.name}_sum${labels(entry, key)} ${value.sum}`);
+            lines.push(`${entry.name}_count${labels(entry, key)} ${value.count}`);
+        }
+    }
+    return lines.join('\n') + '\n';
+}
+
+module.exports = { counter, histogram, gauge, forwarded, handled, render };
@@ -0,0 +1,178 @@
+// MessagePack subset used by the binary signaling encoding: nil, bool, int, float64, str, bin,
+// array and map. Mirrors MessagePack.java in the Android app.
+
+function encode(value) {
+    const chunks = [];
+    let size = 0;
+
+    const push = (buffer) => {
+        chunks.push(buffer);
+        size += buffer.length;
+    };
+
+    const header = (length, fix, prefix16, prefix32) => {
+        if (length < 16) {
+            push(Buffer.from([fix | length]));
+        } else if (length < 0x10000) {
+            const b = Buffer.alloc(3);
+            b[0] = prefix16;
+            b.writeUInt16BE(length, 1);
+            push(b);
+        } else {
+            const b = Buffer.alloc(5);
+            b[0] = prefix32;
+            b.writeUInt32BE(length, 1);
+            push(b);
+        }
+    };
+
+    const write = (v) => {
+        if (v === null || v === undefined) {
+            push(Buffer.from([0xc0]));
+        } else if (typeof v === 'boolean') {
+            push(Buffer.from([v ? 0xc3 : 0xc2]));
+        } else if (typeof v === 'number') {
+            if (Number.isInteger(v) && v >= -2147483648 && v <= 2147483647) {
+                if (v >= 0 && v < 128) {
+                    push(Buffer.from([v]));
+                } else if (v < 0 && v >= -32) {
+                    push(Buffer.from([v & 0xff]));
+                } else {
+                    const b = Buffer.alloc(5);
+                    b[0] = 0xd2;
+                    b.writeInt32BE(v, 1);
+                    push(b);
+                }
+            } else {
+                const b = Buffer.alloc(9);
+                b[0] = 0xcb;
+                b.writeDoubleBE(v, 1);
+                push(b);
+            }
+        } else if (typeof v === 'string') {
+            const bytes = Buffer.from(v, 'utf8');
+            if (bytes.length < 32) {
+                push(Buffer.from([0xa0 | bytes.length]));
+            } else if (bytes.length < 0x100) {
+                push(Buffer.from([0xd9, bytes.length]));
+            } else if (bytes.length < 0x10000) {
+                const b = Buffer.alloc(3);
+                b[0] = 0xda;
+                b.writeUInt16BE(bytes.length, 1);
+                push(b);
+            } else {
+                const b = Buffer.alloc(5);
+                b[0] = 0xdb;
+                b.writeUInt32BE(bytes.length, 1);
+                push(b);
+            }
+            push(bytes);
+        } else if (Buffer.isBuffer(v)) {
+            if (v.length < 0x100) {
+                push(Buffer.from([0xc4, v.length]));
+            } else if (v.length < 0x10000) {
+                const b = Buffer.alloc(3);
+                b[0] = 0xc5;
+                b.writeUInt16BE(v.length, 1);
+                push(b);
+            } else {
+                const b = Buffer.alloc(5);
+                b[0] = 0xc6;
+                b.writeUInt32BE(v.length, 1);
+                push(b);
+            }
+            push(v);
+        } else if (Array.isArray(v)) {
+            header(v.length, 0x90, 0xdc, 0xdd);
+            v.forEach(write);
+        } else if (typeof v === 'object') {
+            const keys = Object.keys(v).filter((k) => v[k] !== undefined);
+            header(keys.length, 0x80, 0xde, 0xdf);
+            keys.forEach((k) => {
+                write(k);
+                write(v[k]);
+            });
+        } else {
+            throw new TypeError(`Unsupported MessagePack type: ${typeof v}`);
+        }
+    };
+
+    write(value);
+    return Buffer.concat(chunks, size);
+}
+
+function decode(buffer) {
+    let pos = 0;
+
+    const require = (n) => {
+        if (pos + n > buffer.length) {
+            throw new RangeError('Truncated MessagePack data');
+        }
+    };
+    const u8 = () => { require(1); return buffer[pos++]; };
+    const u16 = () => { require(2); const v = buffer.readUInt16BE(pos); pos += 2; return v; };
+    const u32 = () => { require(4); const v = buffer.readUInt32BE(pos); pos += 4; return v; };
+    const str = (n) => { require(n); const v = buffer.toString('utf8', pos, pos + n); pos += n; return v; };
+    const bin = (n) => { require(n); const v = Buffer.from(buffer.subarray(pos, pos + n)); pos += n; return v; };
+    const map = (n) => {
+        const out = {};
+        for (let i = 0; i < n; i++) {
+            const key = read();
+            out[key] = read();
+        }
+        return out;
+    };
+    const arr = (n) => {
+        const out = new Array(n);
+        for (let i = 0; i < n; i++) {
+            out[i] = read();
+        }
+        return out;
+    };
+
+    const read = () => {
+        const type = u8();
+        if (type <= 0x7f) return type;
+        if (type >= 0xe0) return type - 0x100;
+        if ((type & 0xf0) === 0x80) return map(type & 0x0f);
+        if ((type & 0xf0) === 0x90) return arr(type & 0x0f);
+        if ((type & 0xe0) === 0xa0) return str(type & 0x1f);
+
+        let v;
+        switch (type) {
+            case 0xc0: return null;
+            case 0xc2: return false;
+            case 0xc3: return true;
+            case 0xc4: return bin(u8());
+            case 0xc5: return bin(u16());
+            case 0xc6: return bin(u32());
+            case 0xca: require(4); v = buffer.readFloatBE(pos); pos += 4; return v;
+            case 0xcb: require(8); v = buffer.readDoubleBE(pos); pos += 8; return v;
+            case 0xcc: return u8();
+            case 0xcd: return u16();
+            case 0xce: return u32();
+            case 0xcf: require(8); v = Number(buffer.readBigUInt64BE(pos)); pos += 8; return v;
+            case 0xd0: require(1); v = buffer.readInt8(pos); pos += 1; return v;
+            case 0xd1: require(2); v = buffer.readInt16BE(pos); pos += 2; return v;
+            case 0xd2: require(4); v = buffer.readInt32BE(pos); pos += 4; return v;
+            case 0xd3: require(8); v = Number(buffer.readBigInt64BE(pos)); pos += 8; return v;
+            case 0xd9: return str(u8());
+            case 0xda: return str(u16());
+            case 0xdb: return str(u32());
+            case 0xdc: return arr(u16());
+            case 0xdd: return arr(u32());
+            case 0xde: return map(u16());
+            case 0xdf: return map(u32());
+            default:
+                throw new TypeError(`Unsupported MessagePack type 0x${type.toString(16)}`);
+        }
+    };
+
+    const value = read();
+    if (pos !== buffer.length) {
+        throw new RangeError('Trailing bytes after MessagePack value');
+    }
+    return value;
+}
+
+module.exports = { encode, decode };
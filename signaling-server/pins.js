@@ -0,0 +1,69 @@
+// Server-side PIN allocation. Hosts used to pick a random PIN themselves and failed with
+// 'PIN already in use' on a collision; the server knows which PINs are taken and hands out a
+// free one instead. An ended session's PIN is not handed out again for REUSE_DELAY_MS, so a
+// viewer typing a stale PIN does not land in a stranger's new session. Clients cannot pick a
+// PIN; only the host of the ended session may take its PIN back during that delay (reclaim).
+
+const crypto = require('crypto');
+
+const MIN = 100000;
+const MAX = 1000000;
+const RANDOM_TRIES = 16;
+const REUSE_DELAY_MS = 10 * 60 * 1000;
+
+// PIN -> { until: time it may be reused, owner: host token of the session that ended }
+const released = new Map();
+
+function available(pin, inUse, now) {
+    if (inUse.has(pin)) {
+        return false;
+    }
+    const entry = released.get(pin);
+    return entry === undefined || entry.until <= now;
+}
+
+function prune(now) {
+    for (const [pin, entry] of released) {
+        if (entry.until <= now) {
+            released.delete(pin);
+        }
+    }
+}
+
+// inUse: anything with has(pin), e.g. the sessions Map. Null when every PIN is taken.
+function allocate(inUse, now = Date.now()) {
+    prune(now);
+    for (let i = 0; i < RANDOM_TRIES; i++) {
+        const pin = String(crypto.randomInt(MIN, MAX));
+        if (available(pin, inUse, now)) {
+            return pin;
+        }
+    }
+    // Random picks keep colliding only when nearly full; walk from a random start
+    const start = crypto.randomInt(0, MAX - MIN);
+    for (let i = 0; i < MAX - MIN; i++) {
+        const pin = String(MIN + (start + i) % (MAX - MIN));
+        if (available(pin, inUse, now)) {
+            return pin;
+        }
+    }
+    return null;
+}
+
+// owner: the ended session's host token, the only one that may reclaim the PIN
+function release(pin, owner, now = Date.now()) {
+    released.set(pin, { until: now + REUSE_DELAY_MS, owner });
+}
+
+// True, and the PIN is taken off the released list, when owner ended the session under this PIN
+// less than REUSE_DELAY_MS ago and nobody holds it
+function reclaim(pin, owner, inUse, now = Date.now()) {
+    const entry = released.get(pin);
+    if (!owner || inUse.has(pin) || entry === undefined || entry.until <= now || entry.owner !== owner) {
+        return false;
+    }
+    released.delete(pin);
+    return true;
+}
+
+module.exports = { allocate, release, reclaim };
@@ -30,7 +30,9 @@ class ScreenShareViewer {
             iceServers: [
                 { urls: 'stun:stun.l.google.com:19302' },
                 { urls: 'stun:stun1.l.google.com:19302' }
-            ]
+            ],
+            // Start gathering before the offer arrives
+            iceCandidatePoolSize: 1
         };
 
         this.init();
@@ -90,7 +92,8 @@ class ScreenShareViewer {
             // Initialize Socket.IO
             this.initSocket();
 
-            // Initialize WebRTC
+            // Initialize WebRTC with the server's STUN/TURN list
+            await this.loadIceServers();
             this.initPeerConnection();
 
             // Join session
@@ -113,6 +116,11 @@ class ScreenShareViewer {
 
         this.socket.on('session-joined', (data) => {
             console.log('Session joined:', data.pin);
+            // TURN credentials only come with the session; the host offers after this
+            if (data.iceServers && data.iceServers.length > 0 && this.peerConnection) {
+                this.rtcConfig.iceServers = data.iceServers;
+                this.peerConnection.setConfiguration(this.rtcConfig);
+            }
             this.showStatus('Joined session. Waiting for host...', 'success');
         });
 
@@ -152,6 +160,21 @@ class ScreenShareViewer {
         });
     }
 
+    // STUN only; keeps the default STUN servers if the endpoint is unreachable
+    async loadIceServers() {
+        try {
+            const response = await fetch('/ice-servers', { cache: 'no-store' });
+            if (response.ok) {
+                const { iceServers } = await response.json();
+                if (iceServers && iceServers.length > 0) {
+                    this.rtcConfig.iceServers = iceServers;
+                }
+            }
+        } catch (error) {
+            console.warn('Using default ICE servers:', error);
+        }
+    }
+
     initPeerConnection() {
         this.peerConnection = new RTCPeerConnection(this.rtcConfig);
 
@@ -342,7 +365,7 @@ class ScreenShareViewer {
         console.log('Disconnecting...');
 
         if (this.socket) {
-            this.socket.emit('end-session');
+            this.socket.emit('leave-session');
             this.socket.disconnect();
             this.socket = null;
         }
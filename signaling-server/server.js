@@ -6,12 +6,29 @@ const io = require('socket.io')(http, {
     cors: {
         origin: "*",
         methods: ["GET", "POST"]
-    }
+    },
+    // The app keeps one socket open across sessions; detect dead ones a little sooner
+    pingInterval: 20000,
+    pingTimeout: 15000
 });
 
+const codec = require('./codec');
+const timelines = require('./timelines');
+const touchRelay = require('./touch-relay');
+const turn = require('./turn');
+const crypto = require('crypto');
+
+const metrics = require('./metrics');
+const pins = require('./pins');
+
 const PORT = process.env.PORT || 3000;
+// A session still waiting for a viewer after this long without any message is ended
+const SESSION_IDLE_TTL_MS = parseInt(process.env.SESSION_IDLE_TTL || '1800', 10) * 1000;
+const REAP_INTERVAL_MS = 60 * 1000;
 
-// Store active sessions: PIN -> { hostSocketId, viewerSocketId, hostSocket, viewerSocket }
+// Store active sessions: PIN -> { hostSocketId, viewerSocketId, hostSocket, viewerSocket, lastActivity }
+// A socket may take part in several sessions at once (socket.sessions: PIN -> role), so every
+// session message carries its PIN for the client to route it.
 const sessions = new Map();
 
 // Serve static files from 'public' directory
@@ -21,99 +38,333 @@ app.get('/', (req, res) => {
     res.sendFile(path.join(__dirname, 'public', 'index.html'));
 });
 
+// Counts only; the PINs themselves would let anyone join a waiting session
 app.get('/status', (req, res) => {
     res.json({
         activeSessions: sessions.size,
-        sessions: Array.from(sessions.keys())
+        touch: touchRelay.stats()
+    });
+});
+
+const sessionsCreated = metrics.counter('sessions_created_total', 'Sessions created by hosts');
+const sessionJoins = metrics.counter('session_joins_total', 'Viewers that joined a session');
+const sessionsReaped = metrics.counter('sessions_reaped_total', 'Sessions ended by the server', 'reason');
+// Viewer's time from DTLS connected to its first decoded frame, from the reported timelines
+const firstFrame = metrics.histogram('viewer_first_frame_seconds',
+    'Time from a viewer connecting to its first decoded video frame', undefined,
+    [0.05, 0.1, 0.25, 0.5, 1, 2, 5, 10]);
+metrics.gauge('active_sessions', 'Sessions currently open', () => sessions.size);
+metrics.gauge('connected_sockets', 'Socket.IO connections currently open', () => io.engine.clientsCount);
+
+app.get('/metrics', (req, res) => {
+    res.set('Content-Type', 'text/plain; version=0.0.4');
+    res.send(metrics.render());
+});
+
+// STUN servers for prefetching before a session exists. Anyone can reach this, so TURN
+// credentials are not handed out here but on the socket, with session-created,
+// session-joined and viewer-joined (see sessionIceServers).
+app.get('/ice-servers', (req, res) => {
+    res.set('Cache-Control', 'no-store');
+    res.json(turn.iceServers());
+});
+
+// Base64 of an X.509 P-256 public key is 124 characters; anything much longer is not one
+const MAX_PUBLIC_KEY_LENGTH = 256;
+
+// Proves a reconnecting socket held a place in a session before (see rebind)
+function newToken() {
+    return crypto.randomBytes(16).toString('hex');
+}
+
+// Moves a host's or viewer's place in a session to the socket it reconnected with. The old
+// socket may not have timed out yet; it no longer speaks for the session.
+function rebind(session, pin, role, socket) {
+    const key = role === 'host' ? 'hostSocket' : 'viewerSocket';
+    const old = session[key];
+    if (old && old !== socket) {
+        old.sessions.delete(pin);
+    }
+    session[key] = socket;
+    session[key + 'Id'] = socket.id;
+    session.lastActivity = Date.now();
+    socket.sessions.set(pin, role);
+    console.log(`${role} of session ${pin} reconnected as ${socket.id}`);
+}
+
+// STUN plus fresh TURN credentials for a peer that just got a place in a session
+function sessionIceServers() {
+    return turn.iceServers(crypto.randomBytes(6).toString('hex'));
+}
+
+// Connection setup percentiles from the timelines the apps report once connected
+app.get('/timelines', (req, res) => {
+    res.json(timelines.summary());
+});
+
+// Uplink bandwidth probe: the host streams padding here before its first offer
+// and seeds the encoder start bitrate from the measured throughput
+const MAX_PROBE_BYTES = 2 * 1024 * 1024;
+
+app.post('/probe', (req, res) => {
+    let bytes = 0;
+    let firstByteAt = null;
+
+    req.on('data', (chunk) => {
+        if (firstByteAt === null) {
+            firstByteAt = process.hrtime.bigint();
+        }
+        bytes += chunk.length;
+        if (bytes > MAX_PROBE_BYTES) {
+            res.status(413).end();
+            req.destroy();
+        }
+    });
+
+    req.on('end', () => {
+        const durationMs = firstByteAt === null
+            ? 0
+            : Number((process.hrtime.bigint() - firstByteAt) / 1000000n);
+        res.json({ bytes, durationMs });
     });
 });
 
+// Sends a message in the recipient's negotiated encoding. A binary frame received from a
+// client that used the same encoding is forwarded as-is instead of being re-serialized.
+function send(target, event, message, frame) {
+    if (frame && target.encoding === codec.BINARY_ENCODING) {
+        target.emit(event, frame);
+        metrics.forwarded(event, frame);
+        return;
+    }
+    const payload = codec.serialize(target.encoding, message);
+    target.emit(event, payload);
+    metrics.forwarded(event, payload);
+}
+
+// The host's or viewer's socket opposite the sender in a session, if connected
+function otherPeer(socket, pin) {
+    const session = sessions.get(pin);
+    const role = socket.sessions.get(pin);
+    if (!session) {
+        return null;
+    }
+    if (role === 'host') {
+        return session.viewerSocket;
+    }
+    if (role === 'viewer') {
+        return session.hostSocket;
+    }
+    return null;
+}
+
+// Removes a session and stops relaying its touch events
+function deleteSession(pin) {
+    const session = sessions.get(pin);
+    if (!session) {
+        return;
+    }
+    const touch = touchRelay.release(session);
+    if (touch.coalesced > 0) {
+        console.log(`Session ${pin} touch moves: ${touch.forwarded} forwarded, ${touch.coalesced} coalesced`);
+    }
+    sessions.delete(pin);
+    pins.release(pin, session.hostToken);
+}
+
+// Frees the session's viewer slot; the host keeps the session and waits for the next viewer
+function detachViewer(pin, session) {
+    if (session.viewerSocket) {
+        session.viewerSocket.sessions.delete(pin);
+    }
+    session.viewerSocketId = null;
+    session.viewerToken = null;
+    session.viewerSocket = null;
+    if (session.hostSocket) {
+        session.hostSocket.emit('viewer-disconnected', { pin });
+    }
+    console.log(`Viewer left session ${pin}`);
+}
+
+// Ends sessions whose host is gone without a disconnect event having cleaned up, and sessions
+// that waited for a viewer for SESSION_IDLE_TTL_MS without any message. A session with a
+// viewer is quiet while the media flows peer-to-peer, so it is never reaped for being idle.
+function reapSessions() {
+    const now = Date.now();
+    for (const [pin, session] of sessions) {
+        if (session.viewerSocket && !session.viewerSocket.connected) {
+            session.viewerSocketId = null;
+            session.viewerToken = null;
+            session.viewerSocket = null;
+        }
+        const hostGone = !session.hostSocket || !session.hostSocket.connected;
+        const idle = !session.viewerSocket && now - session.lastActivity > SESSION_IDLE_TTL_MS;
+        if (!hostGone && !idle) {
+            continue;
+        }
+        for (const peer of [session.hostSocket, session.viewerSocket]) {
+            if (peer && peer.connected) {
+                peer.sessions.delete(pin);
+                peer.emit('session-ended', { pin });
+            }
+        }
+        deleteSession(pin);
+        sessionsReaped(hostGone ? 'host_gone' : 'idle');
+        console.log(`Session ${pin} reaped (${hostGone ? 'host gone' : 'idle'})`);
+    }
+}
+
+setInterval(reapSessions, REAP_INTERVAL_MS).unref();
+
+// Registers a handler that accepts both JSON and binary payloads
+function handle(socket, event, handler) {
+    socket.on(event, (data) => {
+        let parsed;
+        try {
+            parsed = codec.parse(data);
+        } catch (err) {
+            console.error(`Malformed ${event} from ${socket.id}: ${err.message}`);
+            return;
+        }
+        const pin = parsed.message && parsed.message.pin;
+        const session = pin ? sessions.get(pin) : null;
+        if (session) {
+            session.lastActivity = Date.now();
+        }
+        const start = process.hrtime.bigint();
+        handler(parsed.message, parsed.frame);
+        metrics.handled(event, start);
+    });
+}
+
 io.on('connection', (socket) => {
     console.log(`Client connected: ${socket.id}`);
+    socket.encoding = codec.JSON_ENCODING;
+    socket.sessions = new Map();
+
+    // Encoding negotiation; clients that never say hello (web dashboard) stay on JSON
+    socket.on('hello', (data) => {
+        socket.encoding = codec.negotiate(data && data.encodings);
+        socket.emit('hello', { encoding: socket.encoding });
+        console.log(`Client ${socket.id} uses ${socket.encoding} signaling`);
+    });
 
-    // Host creates a session with a PIN
-    socket.on('create-session', (data) => {
-        const { pin } = data;
+    // Host creates a session. The app sends a requestId and gets a free PIN back with it; a PIN
+    // the client asks for is ignored. After a reconnect the app sends { pin, token } to take its
+    // session back, or to create it again if it ended within the PIN reuse delay.
+    handle(socket, 'create-session', (data) => {
+        const { requestId } = data;
+        let pin;
+        if (data.pin && data.token) {
+            const existing = sessions.get(data.pin);
+            if (existing && data.token === existing.hostToken) {
+                rebind(existing, data.pin, 'host', socket);
+                socket.emit('session-created', { pin: data.pin, token: existing.hostToken, ...sessionIceServers() });
+                return;
+            }
+            if (!pins.reclaim(data.pin, data.token, sessions)) {
+                // Tagged with the PIN, so the restoring host learns that this session is gone
+                socket.emit('error', { pin: data.pin, requestId, message: 'Session ended' });
+                return;
+            }
+            pin = data.pin;
+        } else {
+            pin = pins.allocate(sessions);
+        }
         console.log(`Creating session with PIN: ${pin}`);
 
-        if (sessions.has(pin)) {
-            socket.emit('error', { message: 'PIN already in use' });
+        if (!pin) {
+            socket.emit('error', { requestId, message: 'No free PIN' });
             return;
         }
 
+        const token = newToken();
         sessions.set(pin, {
             hostSocketId: socket.id,
             hostSocket: socket,
+            hostToken: token,
             viewerSocketId: null,
-            viewerSocket: null
+            viewerSocket: null,
+            viewerToken: null,
+            lastActivity: Date.now()
         });
 
-        socket.pin = pin;
-        socket.role = 'host';
+        socket.sessions.set(pin, 'host');
+        sessionsCreated();
 
-        socket.emit('session-created', { pin });
+        socket.emit('session-created', { pin, requestId, token, ...sessionIceServers() });
         console.log(`Session created: ${pin} by ${socket.id}`);
     });
 
-    // Viewer joins a session with a PIN
-    socket.on('join-session', (data) => {
+    // Viewer joins a session with a PIN; { pin, token } after a reconnect takes its place back.
+    // publicKey is the viewer's half of the end-to-end key exchange, passed on to the host.
+    handle(socket, 'join-session', (data) => {
         const { pin } = data;
+        const publicKey = typeof data.publicKey === 'string' && data.publicKey.length <= MAX_PUBLIC_KEY_LENGTH
+            ? data.publicKey : undefined;
         console.log(`Viewer attempting to join session: ${pin}`);
 
         const session = sessions.get(pin);
 
         if (!session) {
-            socket.emit('error', { message: 'Invalid PIN' });
+            socket.emit('error', { pin, message: 'Invalid PIN' });
+            return;
+        }
+
+        if (session.viewerSocketId && data.token && data.token === session.viewerToken) {
+            rebind(session, pin, 'viewer', socket);
+            socket.emit('session-joined', { pin, token: session.viewerToken, ...sessionIceServers() });
             return;
         }
 
         if (session.viewerSocketId) {
-            socket.emit('error', { message: 'Session already has a viewer' });
+            socket.emit('error', { pin, message: 'Session already has a viewer' });
             return;
         }
 
         session.viewerSocketId = socket.id;
         session.viewerSocket = socket;
-        socket.pin = pin;
-        socket.role = 'viewer';
+        session.viewerToken = newToken();
+        socket.sessions.set(pin, 'viewer');
+        sessionJoins();
 
         // Notify both parties
-        socket.emit('session-joined', { pin });
-        session.hostSocket.emit('viewer-joined', { viewerId: socket.id });
+        socket.emit('session-joined', { pin, token: session.viewerToken, ...sessionIceServers() });
+        // The host may have waited longer than the TTL of the credentials it got at creation
+        session.hostSocket.emit('viewer-joined', { pin, viewerId: socket.id, publicKey, ...sessionIceServers() });
 
         console.log(`Viewer ${socket.id} joined session ${pin}`);
     });
 
-    // Forward WebRTC offer from host to viewer
-    socket.on('offer', (data) => {
+    // Offers and answers go to the other peer; either side may start a (re)negotiation
+    handle(socket, 'offer', (data, frame) => {
         const { pin, offer } = data;
-        const session = sessions.get(pin);
+        const target = otherPeer(socket, pin);
 
-        if (!session || !session.viewerSocket) {
-            socket.emit('error', { message: 'No viewer connected' });
+        if (!target) {
+            socket.emit('error', { pin, message: 'No peer connected' });
             return;
         }
 
-        console.log(`Forwarding offer from ${socket.id} to viewer`);
-        session.viewerSocket.emit('offer', { offer });
+        console.log(`Forwarding offer from ${socket.id} to ${target.id}`);
+        send(target, 'offer', { pin, offer }, frame);
     });
 
-    // Forward WebRTC answer from viewer to host
-    socket.on('answer', (data) => {
+    handle(socket, 'answer', (data, frame) => {
         const { pin, answer } = data;
-        const session = sessions.get(pin);
+        const target = otherPeer(socket, pin);
 
-        if (!session || !session.hostSocket) {
-            socket.emit('error', { message: 'Host not found' });
+        if (!target) {
+            socket.emit('error', { pin, message: 'No peer connected' });
             return;
         }
 
-        console.log(`Forwarding answer from ${socket.id} to host`);
-        session.hostSocket.emit('answer', { answer });
+        console.log(`Forwarding answer from ${socket.id} to ${target.id}`);
+        send(target, 'answer', { pin, answer }, frame);
     });
 
     // Forward ICE candidates
-    socket.on('ice-candidate', (data) => {
+    handle(socket, 'ice-candidate', (data, frame) => {
         const { pin, candidate } = data;
         const session = sessions.get(pin);
 
@@ -122,20 +373,58 @@ io.on('connection', (socket) => {
         }
 
         // Forward to the other peer
-        if (socket.role === 'host' && session.viewerSocket) {
-            session.viewerSocket.emit('ice-candidate', { candidate });
-        } else if (socket.role === 'viewer' && session.hostSocket) {
-            session.hostSocket.emit('ice-candidate', { candidate });
+        const role = socket.sessions.get(pin);
+        if (role === 'host' && session.viewerSocket) {
+            send(session.viewerSocket, 'ice-candidate', { pin, candidate }, frame);
+        } else if (role === 'viewer' && session.hostSocket) {
+            send(session.hostSocket, 'ice-candidate', { pin, candidate }, frame);
         }
     });
 
-    // Handle touch events from viewer
-    socket.on('touch-event', (data) => {
+    // Handle touch events from viewer; moves are coalesced while the host is backed up
+    handle(socket, 'touch-event', (data) => {
         const { pin, x, y, action } = data;
         const session = sessions.get(pin);
 
         if (session && session.hostSocket) {
-            session.hostSocket.emit('touch-event', { x, y, action });
+            touchRelay.relay(session, { pin, x, y, action });
+        }
+    });
+
+    // Viewer asks the host to cap its quality, e.g. while shown as a small tile
+    handle(socket, 'quality-hint', (data) => {
+        const { pin, level } = data;
+        const session = sessions.get(pin);
+
+        if (session && session.hostSocket && socket.sessions.get(pin) === 'viewer') {
+            session.hostSocket.emit('quality-hint', { pin, level });
+            metrics.forwarded('quality-hint', { pin, level });
+        }
+    });
+
+    // Host hands its viewer the key for end-to-end encrypted video, wrapped for the viewer's
+    // publicKey: the server only relays it and cannot unwrap it
+    handle(socket, 'media-key', (data) => {
+        const { pin, keyId, publicKey, wrappedKey } = data;
+        const session = sessions.get(pin);
+
+        if (session && session.viewerSocket && socket.sessions.get(pin) === 'host') {
+            const message = { pin, keyId, publicKey, wrappedKey };
+            session.viewerSocket.emit('media-key', message);
+            metrics.forwarded('media-key', message);
+        }
+    });
+
+    // Connection setup milestones (ms offsets from the Share/Connect tap) of one session
+    handle(socket, 'session-timeline', (data) => {
+        const { pin, role, milestones, attributes } = data;
+        if (socket.sessions.get(pin) !== role || !timelines.record(role, milestones, attributes)) {
+            return;
+        }
+        console.log(`Timeline ${pin} ${role}: ${JSON.stringify(milestones)} ${JSON.stringify(attributes || {})}`);
+        const decodedMs = milestones.first_frame_decoded - milestones.dtls_connected;
+        if (role === 'viewer' && decodedMs >= 0) {
+            firstFrame(undefined, decodedMs / 1000);
         }
     });
 
@@ -143,42 +432,65 @@ io.on('connection', (socket) => {
     socket.on('disconnect', () => {
         console.log(`Client disconnected: ${socket.id}`);
 
-        if (socket.pin) {
-            const session = sessions.get(socket.pin);
-
-            if (session) {
-                // Notify the other peer
-                if (socket.role === 'host') {
-                    if (session.viewerSocket) {
-                        session.viewerSocket.emit('host-disconnected');
-                    }
-                    sessions.delete(socket.pin);
-                    console.log(`Session ${socket.pin} deleted (host disconnected)`);
-                } else if (socket.role === 'viewer') {
-                    session.viewerSocketId = null;
-                    session.viewerSocket = null;
-                    if (session.hostSocket) {
-                        session.hostSocket.emit('viewer-disconnected');
-                    }
-                    console.log(`Viewer left session ${socket.pin}`);
+        for (const [pin, role] of socket.sessions) {
+            const session = sessions.get(pin);
+            if (!session) {
+                continue;
+            }
+
+            // Notify the other peer
+            if (role === 'host') {
+                if (session.viewerSocket) {
+                    session.viewerSocket.sessions.delete(pin);
+                    session.viewerSocket.emit('host-disconnected', { pin });
                 }
+                deleteSession(pin);
+                console.log(`Session ${pin} deleted (host disconnected)`);
+            } else if (role === 'viewer') {
+                detachViewer(pin, session);
             }
         }
+        socket.sessions.clear();
     });
 
-    socket.on('end-session', () => {
-        if (socket.pin) {
-            const session = sessions.get(socket.pin);
-            if (session) {
-                if (session.viewerSocket) {
-                    session.viewerSocket.emit('session-ended');
-                }
-                if (session.hostSocket) {
-                    session.hostSocket.emit('session-ended');
-                }
-                sessions.delete(socket.pin);
-                console.log(`Session ${socket.pin} ended by user`);
+    // The PINs an end-session or leave-session message is about: one, or all of this socket's
+    function targetPins(data) {
+        return data && data.pin ? [data.pin] : Array.from(socket.sessions.keys());
+    }
+
+    // A viewer leaves without ending the session
+    handle(socket, 'leave-session', (data) => {
+        for (const pin of targetPins(data)) {
+            const session = sessions.get(pin);
+            if (session && socket.sessions.get(pin) === 'viewer') {
+                detachViewer(pin, session);
+            }
+        }
+    });
+
+    // Ends one session, or every session of this socket when no PIN is given. Only the host
+    // ends a session; from a viewer (older clients) it means leave-session.
+    handle(socket, 'end-session', (data) => {
+        for (const pin of targetPins(data)) {
+            const session = sessions.get(pin);
+            const role = socket.sessions.get(pin);
+            if (!session || !role) {
+                continue;
+            }
+            if (role !== 'host') {
+                detachViewer(pin, session);
+                continue;
+            }
+            if (session.viewerSocket) {
+                session.viewerSocket.sessions.delete(pin);
+                session.viewerSocket.emit('session-ended', { pin });
+            }
+            if (session.hostSocket) {
+                session.hostSocket.sessions.delete(pin);
+                session.hostSocket.emit('session-ended', { pin });
             }
+            deleteSession(pin);
+            console.log(`Session ${pin} ended by user`);
         }
     });
 });
@@ -0,0 +1,104 @@
+// Connection setup timelines reported by the apps ('session-timeline'), kept in a bounded
+// ring and summarized per role and milestone for GET /timelines.
+// Names and values come from clients, so they are checked here and only ever used as Map
+// keys: a milestone called 'constructor' or '__proto__' is just another name.
+
+const MAX_TIMELINES = 1000;
+const PERCENTILES = [50, 90, 99];
+const NAME = /^[a-z_]{1,40}$/;
+// Per report; the apps send about 20 milestones and 3 attributes
+const MAX_MILESTONES = 40;
+const MAX_ATTRIBUTES = 10;
+const MAX_ATTRIBUTE_LENGTH = 32;
+
+const timelines = [];
+
+function record(role, milestones, attributes) {
+    if (typeof role !== 'string' || !NAME.test(role) || !milestones || typeof milestones !== 'object') {
+        return false;
+    }
+    const values = new Map();
+    for (const [name, offset] of Object.entries(milestones)) {
+        if (values.size >= MAX_MILESTONES) {
+            break;
+        }
+        if (NAME.test(name) && Number.isFinite(offset) && offset >= 0) {
+            values.set(name, offset);
+        }
+    }
+    const labels = new Map();
+    if (attributes && typeof attributes === 'object') {
+        for (const [name, value] of Object.entries(attributes)) {
+            if (labels.size >= MAX_ATTRIBUTES) {
+                break;
+            }
+            if (NAME.test(name) && typeof value === 'string' && value.length <= MAX_ATTRIBUTE_LENGTH) {
+                labels.set(name, value);
+            }
+        }
+    }
+    timelines.push({ role, milestones: values, attributes: labels });
+    if (timelines.length > MAX_TIMELINES) {
+        timelines.shift();
+    }
+    return true;
+}
+
+// Nearest-rank percentile of a sorted array
+function percentile(sorted, p) {
+    const rank = Math.ceil((p / 100) * sorted.length);
+    return sorted[Math.max(0, rank - 1)];
+}
+
+// { host: { sessions, milestones: { ice_connected: { n, p50, p90, p99 }, ... },
+//          attributes: { local_candidate: { relay: 3, srflx: 12 }, ... } }, viewer: ... }
+function getOrCreate(map, key, create) {
+    let value = map.get(key);
+    if (value === undefined) {
+        value = create();
+        map.set(key, value);
+    }
+    return value;
+}
+
+function summary() {
+    const byRole = new Map();
+    for (const { role, milestones, attributes } of timelines) {
+        const entry = getOrCreate(byRole, role, () => ({ sessions: 0, samples: new Map(), attributes: new Map() }));
+        entry.sessions++;
+        for (const [name, offset] of milestones) {
+            getOrCreate(entry.samples, name, () => []).push(offset);
+        }
+        for (const [name, value] of attributes) {
+            const counts = getOrCreate(entry.attributes, name, () => new Map());
+            counts.set(value, (counts.get(value) || 0) + 1);
+        }
+    }
+
+    // Plain objects only for the JSON response; Object.fromEntries defines own properties,
+    // so no key reaches a prototype
+    const result = [];
+    for (const [role, entry] of byRole) {
+        const milestones = [];
+        for (const [name, samples] of entry.samples) {
+            samples.sort((a, b) => a - b);
+            const stats = { n: samples.length };
+            for (const p of PERCENTILES) {
+                stats[`p${p}`] = percentile(samples, p);
+            }
+            milestones.push([name, stats]);
+        }
+        const attributes = [];
+        for (const [name, counts] of entry.attributes) {
+            attributes.push([name, Object.fromEntries(counts)]);
+        }
+        result.push([role, {
+            sessions: entry.sessions,
+            milestones: Object.fromEntries(milestones),
+            attributes: Object.fromEntries(attributes)
+        }]);
+    }
+    return Object.fromEntries(result);
+}
+
+module.exports = { record, summary, MAX_TIMELINES };
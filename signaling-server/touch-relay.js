@@ -0,0 +1,112 @@
+// Forwards 'touch-event' from a viewer to its host without letting a slow host connection
+// turn a burst of moves into seconds of input lag. DOWN and UP are always forwarded, in order.
+// A MOVE goes straight through while less than MAX_BUFFERED_BYTES are queued for the host
+// socket; otherwise it waits in the session's latest-wins slot, and a newer MOVE replaces it
+// (counted as coalesced). The slot is retried every RETRY_MS until the socket has drained.
+
+const metrics = require('./metrics');
+
+const MAX_BUFFERED_BYTES = parseInt(process.env.TOUCH_MAX_BUFFERED || '2048', 10);
+const RETRY_MS = 15;
+
+const totals = { forwarded: 0, coalesced: 0 };
+const coalescedMoves = metrics.counter('touch_moves_coalesced_total',
+    'Touch moves replaced by a newer one while the host socket was backed up');
+
+// Bytes waiting for a socket: Engine.IO's write buffer plus what the WebSocket has not sent yet
+function bufferedBytes(socket) {
+    const conn = socket.conn;
+    if (!conn) {
+        return 0;
+    }
+    let bytes = 0;
+    for (const packet of conn.writeBuffer || []) {
+        const data = packet.data;
+        bytes += typeof data === 'string' ? data.length : (data && data.length) || 0;
+    }
+    const ws = conn.transport && conn.transport.socket;
+    if (ws && typeof ws.bufferedAmount === 'number') {
+        bytes += ws.bufferedAmount;
+    }
+    return bytes;
+}
+
+function slotOf(session) {
+    return session.touch || (session.touch = { pending: null, timer: null, forwarded: 0, coalesced: 0 });
+}
+
+function forward(session, slot, message) {
+    session.hostSocket.emit('touch-event', message);
+    metrics.forwarded('touch-event', message);
+    slot.forwarded++;
+    totals.forwarded++;
+}
+
+function coalesce(slot) {
+    slot.coalesced++;
+    totals.coalesced++;
+    coalescedMoves();
+}
+
+function flush(session) {
+    const slot = slotOf(session);
+    slot.timer = null;
+    if (!slot.pending) {
+        return;
+    }
+    if (!session.hostSocket) {
+        slot.pending = null;
+        return;
+    }
+    if (bufferedBytes(session.hostSocket) >= MAX_BUFFERED_BYTES) {
+        slot.timer = setTimeout(() => flush(session), RETRY_MS);
+        return;
+    }
+    const message = slot.pending;
+    slot.pending = null;
+    forward(session, slot, message);
+}
+
+function relay(session, message) {
+    if (!session.hostSocket) {
+        return;
+    }
+    const slot = slotOf(session);
+    if (message.action !== 'MOVE') {
+        // Carries its own position, so a move still waiting is superseded
+        if (slot.pending) {
+            slot.pending = null;
+            coalesce(slot);
+        }
+        forward(session, slot, message);
+        return;
+    }
+    if (slot.pending) {
+        slot.pending = message;
+        coalesce(slot);
+        return;
+    }
+    if (bufferedBytes(session.hostSocket) < MAX_BUFFERED_BYTES) {
+        forward(session, slot, message);
+        return;
+    }
+    slot.pending = message;
+    slot.timer = setTimeout(() => flush(session), RETRY_MS);
+}
+
+// When the session goes away; returns its counters
+function release(session) {
+    const slot = slotOf(session);
+    if (slot.timer) {
+        clearTimeout(slot.timer);
+        slot.timer = null;
+    }
+    slot.pending = null;
+    return { forwarded: slot.forwarded, coalesced: slot.coalesced };
+}
+
+function stats() {
+    return { forwarded: totals.forwarded, coalesced: totals.coalesced, maxBufferedBytes: MAX_BUFFERED_BYTES };
+}
+
+module.exports = { relay, release, stats, bufferedBytes, MAX_BUFFERED_BYTES };
@@ -0,0 +1,58 @@
+// ICE server list for the apps, with short-lived TURN credentials in the TURN REST API format
+// that coturn accepts with `use-auth-secret` / `static-auth-secret`:
+//   username   = "<expiry unix seconds>:<name>"
+//   credential = base64(HMAC-SHA1(secret, username))
+// The secret never leaves the server; a leaked credential stops working after TURN_TTL.
+
+const crypto = require('crypto');
+
+function listFromEnv(value, fallback) {
+    if (value === undefined) {
+        return fallback;
+    }
+    return value.split(',').map((url) => url.trim()).filter((url) => url.length > 0);
+}
+
+const config = {
+    stunUrls: listFromEnv(process.env.STUN_URLS, ['stun:stun.l.google.com:19302']),
+    // e.g. turn:turn.example.com:3478?transport=udp,turn:turn.example.com:3478?transport=tcp,turns:turn.example.com:5349
+    turnUrls: listFromEnv(process.env.TURN_URLS, []),
+    turnSecret: process.env.TURN_SECRET || '',
+    ttlSeconds: parseInt(process.env.TURN_TTL || '3600', 10)
+};
+
+function sign(secret, username) {
+    return crypto.createHmac('sha1', secret).update(username).digest('base64');
+}
+
+function credentialsFor(name, nowMs = Date.now()) {
+    const expiry = Math.floor(nowMs / 1000) + config.ttlSeconds;
+    const username = `${expiry}:${name}`;
+    return { username, credential: sign(config.turnSecret, username) };
+}
+
+// What the TURN server checks; used by the dev stand-in and handy for debugging
+function verify(username, credential, secret = config.turnSecret, nowMs = Date.now()) {
+    const expiry = parseInt(String(username).split(':')[0], 10);
+    if (!Number.isFinite(expiry) || expiry * 1000 < nowMs) {
+        return false;
+    }
+    const expected = Buffer.from(sign(secret, username));
+    const actual = Buffer.from(String(credential));
+    return expected.length === actual.length && crypto.timingSafeEqual(expected, actual);
+}
+
+// { iceServers: [{ urls, username?, credential? }], ttl }. Without a name, STUN only: TURN
+// credentials are only for peers that hold a session.
+function iceServers(name) {
+    const servers = [];
+    if (config.stunUrls.length > 0) {
+        servers.push({ urls: config.stunUrls });
+    }
+    if (name && config.turnUrls.length > 0 && config.turnSecret) {
+        servers.push({ urls: config.turnUrls, ...credentialsFor(name) });
+    }
+    return { iceServers: servers, ttl: config.ttlSeconds };
+}
+
+module.exports = { config, credentialsFor, verify, iceServers };